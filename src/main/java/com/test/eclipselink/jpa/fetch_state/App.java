@@ -1,13 +1,33 @@
 package com.test.eclipselink.jpa.fetch_state;
 
+import com.test.eclipselink.jpa.fetch_state.load.LoadTest;
+
 /**
- * Hello world!
+ * Command line load driver: populates an in-memory HSQLDB database with RootEntity graphs, runs a workload mix
+ * against it for a while and prints throughput and latency percentiles (see LoadTest for the options and how
+ * latencies are measured). The entities must be woven, hence process-classes:
+ *
+ * mvn process-classes exec:java -Dexec.mainClass=com.test.eclipselink.jpa.fetch_state.App
+ * 		-Dexec.args="--threads=8 --duration=30 --rate=2000"
  *
  */
-public class App 
-{
-    public static void main( String[] args )
-    {
-        System.out.println( "Hello World!" );
-    }
+public class App {
+
+	public static void main(String[] args) {
+		if (args.length == 1 && ("--help".equals(args[0]) || "-h".equals(args[0]))) {
+			System.out.print(LoadTest.Options.usage());
+			return;
+		}
+		LoadTest.Options options;
+		try {
+			options = LoadTest.Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.print(LoadTest.Options.usage());
+			System.exit(2);
+			return;
+		}
+		new LoadTest(options).run().print(System.out);
+	}
+
 }
@@ -0,0 +1,312 @@
+package com.test.eclipselink.jpa.fetch_state.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+import org.eclipse.persistence.Version;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.jpa.metadata.ProjectCache;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.sessions.DatasourceLogin;
+import org.eclipse.persistence.sessions.Project;
+
+/**
+ * Keeps the EclipseLink project built from the annotations and orm.xml of a persistence unit in a local file, so that
+ * later starts deploy it as it is instead of processing the metadata again:
+ *
+ * 		eclipselink.project-cache=com.test.eclipselink.jpa.fetch_state.bootstrap.FingerprintedProjectCache
+ * 		fetch-state.project-cache.file=/var/cache/app/test.project
+ *
+ * ({@link #properties(File)} returns both.) The first start writes the file once the project is built, before the
+ * descriptor and session customizers run: these, the login and DDL generation run on every start, from the
+ * properties of that start, so only the metadata processing is saved.
+ *
+ * EclipseLink's own "java-serialization" cache loads whatever the file holds. Here the file also records a
+ * fingerprint of what the project was built from, checked before the project is read:
+ * 		-the EclipseLink version
+ * 		-every META-INF/persistence.xml and META-INF/orm.xml on the class path
+ * 		-the names of the classes under the roots of the persistence units, so that a new entity is picked up
+ * 		-the bytes of the mapped classes and of their superclasses
+ * A file that does not match, or cannot be read, is deleted and the project built as if there were none; the file is
+ * then written again. Problems with the file are logged as warnings, never failing the deployment. The file is written
+ * to a temporary file first and moved in place, so processes starting together read either the old or the new one.
+ *
+ * The password of the login is left out of the file (the deployment sets it from the properties again), so that it
+ * is not written to disk.
+ *
+ * Reading the file is Java deserialization of the descriptors and mappings, which in a new JVM costs the set up of
+ * every class it meets; whether that beats processing the annotations depends on the size of the persistence unit.
+ * StartupBenchmark measures both.
+ *
+ */
+public class FingerprintedProjectCache implements ProjectCache {
+
+	public static final String FILE_PROPERTY = "fetch-state.project-cache.file";
+
+	private static final int MAGIC = 0x46535043;
+	private static final String[] DESCRIPTOR_RESOURCES = { "META-INF/persistence.xml", "META-INF/orm.xml" };
+
+	/**
+	 * The class loader given to retrieveProject, used for the fingerprint of storeProject (which gets none).
+	 */
+	private ClassLoader loader;
+
+	/**
+	 * The properties that cache the project of a persistence unit in the given file.
+	 */
+	public static Map<String, Object> properties(File file) {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put(PersistenceUnitProperties.PROJECT_CACHE, FingerprintedProjectCache.class.getName());
+		properties.put(FILE_PROPERTY, file.getAbsolutePath());
+		return properties;
+	}
+
+	@Override
+	public Project retrieveProject(Map properties, ClassLoader classLoader, SessionLog log) {
+		this.loader = classLoader;
+		Path file = file(properties);
+		if (file == null || !Files.isRegularFile(file)) {
+			return null;
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				return discard(file, log, "it is not a project cache");
+			}
+			@SuppressWarnings("unchecked")
+			List<String> classNames = (List<String>) in.readObject();
+			long fingerprint = in.readLong();
+			if (!Long.valueOf(fingerprint).equals(fingerprint(classNames, classLoader))) {
+				return discard(file, log, "the persistence unit changed since it was written");
+			}
+			Project project = (Project) in.readObject();
+			log.log(SessionLog.CONFIG, SessionLog.JPA, "Project of {0} descriptors read from {1}",
+					new Object[] { project.getOrderedDescriptors().size(), file }, false);
+			return project;
+		} catch (IOException | ClassNotFoundException | ClassCastException e) {
+			return discard(file, log, e.toString());
+		}
+	}
+
+	@Override
+	public void storeProject(Project project, Map properties, SessionLog log) {
+		Path file = file(properties);
+		if (file == null) {
+			return;
+		}
+		ClassLoader classLoader = loader != null ? loader : Thread.currentThread().getContextClassLoader();
+		List<String> classNames = mappedClassNames(project, classLoader);
+		DatasourceLogin login = (DatasourceLogin) project.getDatasourceLogin();
+		Object password = login.getProperty("password");
+		Path temporary = null;
+		try {
+			Long fingerprint = fingerprint(classNames, classLoader);
+			if (fingerprint == null) {
+				log.log(SessionLog.WARNING, SessionLog.JPA, "Project not written to {0}: the mapped classes could "
+						+ "not be read from the class path", new Object[] { file }, false);
+				return;
+			}
+			Path directory = file.toAbsolutePath().getParent();
+			Files.createDirectories(directory);
+			temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			login.removeProperty("password");
+			try (ObjectOutputStream out = new ObjectOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeObject(new ArrayList<>(classNames));
+				out.writeLong(fingerprint);
+				out.writeObject(project);
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			temporary = null;
+			log.log(SessionLog.CONFIG, SessionLog.JPA, "Project of {0} descriptors written to {1}",
+					new Object[] { project.getOrderedDescriptors().size(), file }, false);
+		} catch (IOException | RuntimeException e) {
+			log.log(SessionLog.WARNING, SessionLog.JPA, "Project not written to {0}: {1}", new Object[] { file, e },
+					false);
+		} finally {
+			if (password != null) {
+				login.setProperty("password", password);
+			}
+			if (temporary != null) {
+				try {
+					Files.deleteIfExists(temporary);
+				} catch (IOException e) {
+					// left for the next start to overwrite
+				}
+			}
+		}
+	}
+
+	private static Path file(Map<?, ?> properties) {
+		Object value = properties == null ? null : properties.get(FILE_PROPERTY);
+		if (value == null) {
+			value = System.getProperty(FILE_PROPERTY);
+		}
+		return value == null || value.toString().trim().isEmpty() ? null : Paths.get(value.toString().trim());
+	}
+
+	private static Project discard(Path file, SessionLog log, String reason) {
+		log.log(SessionLog.WARNING, SessionLog.JPA, "Project cache {0} discarded: {1}", new Object[] { file, reason },
+				false);
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			// overwritten once the project is built
+		}
+		return null;
+	}
+
+	/**
+	 * The mapped classes of the project and their superclasses, other than those of the JDK.
+	 */
+	private static List<String> mappedClassNames(Project project, ClassLoader classLoader) {
+		TreeSet<String> classNames = new TreeSet<>();
+		for (ClassDescriptor descriptor : project.getOrderedDescriptors()) {
+			String className = descriptor.getJavaClassName();
+			classNames.add(className);
+			try {
+				Class<?> superclass = Class.forName(className, false, classLoader).getSuperclass();
+				while (superclass != null && !superclass.getName().startsWith("java.")) {
+					classNames.add(superclass.getName());
+					superclass = superclass.getSuperclass();
+				}
+			} catch (ClassNotFoundException | LinkageError e) {
+				// only the bytes of the class itself then
+			}
+		}
+		return new ArrayList<>(classNames);
+	}
+
+	/**
+	 * The checksums of what a project with the given mapped classes was built from, or null if some of it cannot be
+	 * read.
+	 */
+	static Long fingerprint(List<String> classNames, ClassLoader classLoader) throws IOException {
+		Fingerprint fingerprint = new Fingerprint();
+		fingerprint.update(Version.getVersionString());
+		for (String resource : DESCRIPTOR_RESOURCES) {
+			for (URL url : Collections.list(classLoader.getResources(resource))) {
+				fingerprint.update(url.toString());
+				try (InputStream in = url.openStream()) {
+					fingerprint.update(in);
+				}
+				if (resource.equals(DESCRIPTOR_RESOURCES[0])) {
+					for (String className : classNamesUnderRoot(url)) {
+						fingerprint.update(className);
+					}
+				}
+			}
+		}
+		for (String className : classNames) {
+			fingerprint.update(className);
+			try (InputStream in = classLoader.getResourceAsStream(className.replace('.', '/') + ".class")) {
+				if (in == null) {
+					return null;
+				}
+				fingerprint.update(in);
+			}
+		}
+		return fingerprint.value();
+	}
+
+	/**
+	 * The class files of the directory or jar holding the given META-INF/persistence.xml, sorted.
+	 */
+	private static TreeSet<String> classNamesUnderRoot(URL persistenceXml) throws IOException {
+		TreeSet<String> classNames = new TreeSet<>();
+		if ("file".equals(persistenceXml.getProtocol())) {
+			File root;
+			try {
+				root = new File(persistenceXml.toURI()).getParentFile().getParentFile();
+			} catch (Exception e) {
+				return classNames;
+			}
+			addClassNames(root, "", classNames);
+		} else if ("jar".equals(persistenceXml.getProtocol())) {
+			JarURLConnection connection = (JarURLConnection) persistenceXml.openConnection();
+			connection.setUseCaches(false);
+			try (JarFile jar = connection.getJarFile()) {
+				for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+					String name = entries.nextElement().getName();
+					if (name.endsWith(".class")) {
+						classNames.add(name);
+					}
+				}
+			}
+		}
+		return classNames;
+	}
+
+	private static void addClassNames(File directory, String path, TreeSet<String> classNames) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				addClassNames(file, path + file.getName() + "/", classNames);
+			} else if (file.getName().endsWith(".class")) {
+				classNames.add(path + file.getName());
+			}
+		}
+	}
+
+	/**
+	 * A CRC-32 and an Adler-32 of the same input, side by side. They detect changes, not tampering: the file is as
+	 * trusted as the class path it describes, and a cryptographic digest would take longer to set up, on every start,
+	 * than the rest of the check.
+	 */
+	private static final class Fingerprint {
+
+		private final CRC32 crc = new CRC32();
+		private final Adler32 adler = new Adler32();
+		private final byte[] buffer = new byte[8192];
+
+		void update(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			update(new byte[] { (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+					(byte) (bytes.length >>> 8), (byte) bytes.length }, 4);
+			update(bytes, bytes.length);
+		}
+
+		void update(InputStream in) throws IOException {
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+				update(buffer, read);
+			}
+		}
+
+		private void update(byte[] bytes, int length) {
+			crc.update(bytes, 0, length);
+			adler.update(bytes, 0, length);
+		}
+
+		long value() {
+			return crc.getValue() << 32 | adler.getValue();
+		}
+	}
+
+}
@@ -0,0 +1,225 @@
+package com.test.eclipselink.jpa.fetch_state.collection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+
+import org.eclipse.persistence.expressions.Expression;
+import org.eclipse.persistence.expressions.ExpressionBuilder;
+import org.eclipse.persistence.indirection.IndirectCollection;
+import org.eclipse.persistence.internal.helper.ConversionManager;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.ReportQuery;
+
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+
+/**
+ * Extra-lazy size(), isEmpty() and contains(id) for one-to-many associations (mappedBy or unidirectional with a join
+ * column), such as RootEntity.refCollectionAssoc or RootEntity.keyCollectionAssoc.
+ *
+ * Any of these on the mapped List loads every child. Here, a collection that is not loaded is answered by a query on
+ * the join column of the target table, and a loaded one in memory:
+ * 		-size: SELECT COUNT(ID) ... WHERE PARENT_ID = ?
+ * 		-isEmpty and contains: SELECT ID ... WHERE PARENT_ID = ? [AND ID = ?], limited to one row
+ * 		-sizes of many owners at once: SELECT PARENT_ID, COUNT(ID) ... WHERE PARENT_ID IN (...) GROUP BY PARENT_ID, one
+ * 			query per batchSize owners that are not loaded
+ *
+ * The mapped collection is never touched when it is not loaded, so LoadStateInspector, PersistenceUnitUtil and
+ * EntityManagerFactory.isLoaded keep reporting it as not loaded. A collection that is not loaded but holds deferred
+ * changes (children added or removed without loading it) is answered in memory too, which loads it: the database
+ * does not know about those changes.
+ *
+ * The queries run in the owners' EntityManager, after pending changes are flushed (FlushModeType.AUTO).
+ *
+ * Instances are thread-safe and meant to be shared, one per EntityManagerFactory.
+ *
+ */
+public class ExtraLazyCollections {
+
+	private final AbstractSession session;
+	private final LoadStateInspector inspector;
+	private final int batchSize;
+
+	private final ConcurrentMap<String, OneToManyJoin> joins = new ConcurrentHashMap<>();
+
+	public ExtraLazyCollections(EntityManagerFactory emf) {
+		this(emf, 500);
+	}
+
+	/**
+	 * @param batchSize
+	 *            the number of owners listed in the IN clause of a single GROUP BY query
+	 */
+	public ExtraLazyCollections(EntityManagerFactory emf, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive");
+		}
+		this.session = (AbstractSession) JpaHelper.getServerSession(emf);
+		this.inspector = new LoadStateInspector(session);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the owner is not managed by the EntityManager, or if the attribute is not a one-to-many
+	 *             association with a single column join
+	 */
+	public int size(EntityManager em, Object owner, String attributeName) {
+		OneToManyJoin join = join(em, owner, attributeName);
+		Collection<?> children = inMemory(owner, attributeName, join);
+		if (children != null) {
+			return children.size();
+		}
+		ReportQuery query = new ReportQuery(join.referenceClass, new ExpressionBuilder());
+		query.addCount("count", join.id(query.getExpressionBuilder()));
+		query.setSelectionCriteria(join.foreignKey(query.getExpressionBuilder()).equal(join.ownerKey(owner, session)));
+		return ((Number) execute(em, query, 0).get(0)).intValue();
+	}
+
+	public boolean isEmpty(EntityManager em, Object owner, String attributeName) {
+		OneToManyJoin join = join(em, owner, attributeName);
+		Collection<?> children = inMemory(owner, attributeName, join);
+		if (children != null) {
+			return children.isEmpty();
+		}
+		return !exists(em, owner, join, null);
+	}
+
+	/**
+	 * Whether the owner's collection holds the child with the given id.
+	 */
+	public boolean contains(EntityManager em, Object owner, String attributeName, Object childId) {
+		if (childId == null) {
+			throw new IllegalArgumentException("childId must not be null");
+		}
+		OneToManyJoin join = join(em, owner, attributeName);
+		Collection<?> children = inMemory(owner, attributeName, join);
+		if (children != null) {
+			for (Object child : children) {
+				if (childId.equals(join.id(child))) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return exists(em, owner, join, childId);
+	}
+
+	/**
+	 * The size of the collection of every owner, in the order of the owners: loaded collections are counted in
+	 * memory, the others with one GROUP BY query per batchSize owners of the same class.
+	 */
+	public <T> Map<T, Integer> sizes(EntityManager em, Collection<T> owners, String attributeName) {
+		Map<T, Integer> sizes = new LinkedHashMap<>();
+		//owners of different classes may map the attribute to different tables or join columns
+		Map<OneToManyJoin, Map<Object, List<T>>> queried = new LinkedHashMap<>();
+		for (T owner : owners) {
+			OneToManyJoin join = join(em, owner, attributeName);
+			Collection<?> children = inMemory(owner, attributeName, join);
+			sizes.put(owner, children == null ? 0 : children.size());
+			if (children == null) {
+				Map<Object, List<T>> byKey = queried.get(join);
+				if (byKey == null) {
+					byKey = new LinkedHashMap<>();
+					queried.put(join, byKey);
+				}
+				Object ownerKey = join.ownerKey(owner, session);
+				List<T> sharingKey = byKey.get(ownerKey);
+				if (sharingKey == null) {
+					sharingKey = new ArrayList<>();
+					byKey.put(ownerKey, sharingKey);
+				}
+				sharingKey.add(owner);
+			}
+		}
+
+		for (Map.Entry<OneToManyJoin, Map<Object, List<T>>> entry : queried.entrySet()) {
+			count(em, entry.getKey(), entry.getValue(), sizes);
+		}
+		return sizes;
+	}
+
+	/**
+	 * Puts the size of the collection of the owners, listed by the value of their join column, in sizes.
+	 */
+	private <T> void count(EntityManager em, OneToManyJoin join, Map<Object, List<T>> byKey, Map<T, Integer> sizes) {
+		List<Object> keys = new ArrayList<>(byKey.keySet());
+		for (int from = 0; from < keys.size(); from += batchSize) {
+			List<Object> batch = keys.subList(from, Math.min(from + batchSize, keys.size()));
+			ExpressionBuilder builder = new ExpressionBuilder();
+			ReportQuery query = new ReportQuery(join.referenceClass, builder);
+			query.addAttribute("owner", join.foreignKey(builder));
+			query.addCount("count", join.id(builder));
+			query.addGrouping(join.foreignKey(builder));
+			query.setSelectionCriteria(join.foreignKey(builder).in(batch));
+			Class<?> keyType = batch.get(0).getClass();
+			for (Object row : execute(em, query, 0)) {
+				Object ownerKey = ConversionManager.getDefaultManager().convertObject(((Object[]) row)[0], keyType);
+				for (T owner : byKey.get(ownerKey)) {
+					sizes.put(owner, ((Number) ((Object[]) row)[1]).intValue());
+				}
+			}
+		}
+	}
+
+	private boolean exists(EntityManager em, Object owner, OneToManyJoin join, Object childId) {
+		ExpressionBuilder builder = new ExpressionBuilder();
+		ReportQuery query = new ReportQuery(join.referenceClass, builder);
+		query.addAttribute("id", join.id(builder));
+		Expression criteria = join.foreignKey(builder).equal(join.ownerKey(owner, session));
+		if (childId != null) {
+			criteria = criteria.and(join.id(builder).equal(childId));
+		}
+		query.setSelectionCriteria(criteria);
+		return !execute(em, query, 1).isEmpty();
+	}
+
+	private static List<?> execute(EntityManager em, ReportQuery query, int maxRows) {
+		query.setShouldReturnWithoutReportQueryResult(true);
+		Query jpaQuery = JpaHelper.getEntityManager(em).createQuery(query);
+		if (maxRows > 0) {
+			jpaQuery.setMaxResults(maxRows);
+		}
+		return jpaQuery.getResultList();
+	}
+
+	/**
+	 * The owner's collection if it can be answered in memory, null if it takes a query.
+	 */
+	private Collection<?> inMemory(Object owner, String attributeName, OneToManyJoin join) {
+		if (inspector.isLoaded(owner, attributeName)) {
+			return (Collection<?>) join.mapping.getAttributeValueFromObject(owner);
+		}
+		Object value = join.mapping.getAttributeValueFromObject(owner);
+		if (value instanceof IndirectCollection && ((IndirectCollection) value).hasDeferredChanges()) {
+			return (Collection<?>) value;
+		}
+		return null;
+	}
+
+	private OneToManyJoin join(EntityManager em, Object owner, String attributeName) {
+		if (!em.contains(owner)) {
+			throw new IllegalArgumentException("The owner must be managed by the EntityManager: " + owner);
+		}
+		String key = owner.getClass().getName() + "." + attributeName;
+		OneToManyJoin join = joins.get(key);
+		if (join == null) {
+			join = OneToManyJoin.of(session, owner.getClass(), attributeName);
+			OneToManyJoin existing = joins.putIfAbsent(key, join);
+			if (existing != null) {
+				join = existing;
+			}
+		}
+		return join;
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.test.eclipselink.jpa.fetch_state.collection;
+
+import java.util.List;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.expressions.Expression;
+import org.eclipse.persistence.expressions.ExpressionBuilder;
+import org.eclipse.persistence.internal.helper.DatabaseField;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.OneToManyMapping;
+
+/**
+ * The single column join of a one-to-many association (mappedBy or unidirectional with a join column), as the
+ * queries of this package need it: the foreign key column of the target table, the owner's value for it and the id of
+ * the targets.
+ *
+ * Instances only hold descriptor metadata; they are immutable and can be shared.
+ *
+ */
+final class OneToManyJoin {
+
+	final String name;
+	final OneToManyMapping mapping;
+	final Class<?> referenceClass;
+	final DatabaseField foreignKey;
+	final DatabaseMapping idMapping;
+
+	private final ClassDescriptor ownerDescriptor;
+	private final DatabaseField sourceKey;
+
+	private OneToManyJoin(ClassDescriptor ownerDescriptor, OneToManyMapping mapping, DatabaseMapping idMapping) {
+		this.name = ownerDescriptor.getAlias() + "." + mapping.getAttributeName();
+		this.mapping = mapping;
+		this.referenceClass = mapping.getReferenceClass();
+		this.foreignKey = mapping.getTargetForeignKeyFields().get(0);
+		this.idMapping = idMapping;
+		this.ownerDescriptor = ownerDescriptor;
+		this.sourceKey = mapping.getSourceKeyFields().get(0);
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the attribute is not a one-to-many association with a single column join and a single column
+	 *             target id
+	 */
+	static OneToManyJoin of(AbstractSession session, Class<?> ownerClass, String attributeName) {
+		ClassDescriptor descriptor = session.getDescriptor(ownerClass);
+		if (descriptor == null) {
+			throw new IllegalArgumentException(ownerClass.getName() + " is not a persistent class");
+		}
+		DatabaseMapping mapping = descriptor.getObjectBuilder().getMappingForAttributeName(attributeName);
+		if (mapping == null || !mapping.isOneToManyMapping()) {
+			throw new IllegalArgumentException(descriptor.getAlias() + "." + attributeName
+					+ " is not a one-to-many association");
+		}
+		OneToManyMapping oneToMany = (OneToManyMapping) mapping;
+		List<DatabaseMapping> idMappings = oneToMany.getReferenceDescriptor().getObjectBuilder()
+				.getPrimaryKeyMappings();
+		if (oneToMany.getTargetForeignKeyFields().size() != 1 || idMappings.size() != 1) {
+			throw new IllegalArgumentException(descriptor.getAlias() + "." + attributeName
+					+ " has a composite join or target primary key, which is not supported");
+		}
+		return new OneToManyJoin(descriptor, oneToMany, idMappings.get(0));
+	}
+
+	/**
+	 * The value of the join column for the owner's children.
+	 */
+	Object ownerKey(Object owner, AbstractSession session) {
+		return ownerDescriptor.getObjectBuilder().extractValueFromObjectForField(owner, sourceKey, session);
+	}
+
+	Object id(Object child) {
+		return idMapping.getAttributeValueFromObject(child);
+	}
+
+	/**
+	 * The join column of the target table, in a query on the reference class.
+	 */
+	Expression foreignKey(ExpressionBuilder builder) {
+		return builder.getField(foreignKey);
+	}
+
+	Expression id(ExpressionBuilder builder) {
+		return builder.get(idMapping.getAttributeName());
+	}
+
+}
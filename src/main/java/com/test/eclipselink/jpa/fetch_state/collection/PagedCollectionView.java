@@ -0,0 +1,213 @@
+package com.test.eclipselink.jpa.fetch_state.collection;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.eclipse.persistence.expressions.Expression;
+import org.eclipse.persistence.expressions.ExpressionBuilder;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.ReadAllQuery;
+
+/**
+ * A paged, read-only view of the children of a one-to-many association (mappedBy or unidirectional with a join
+ * column), such as RootEntity.refCollectionAssoc or RootEntity.keyCollectionAssoc.
+ *
+ * Touching the mapped List loads every child at once, however many there are. The view reads them a page at a time
+ * straight from the target table, by the join column (PARENT_ID) and ordered by id, and leaves the mapped List alone:
+ * it is neither initialized nor replaced. Pages are read with keyset pagination (WHERE PARENT_ID = ? AND ID > ?), so
+ * reading the n-th page costs as much as reading the first one:
+ * 		-{@link #iterator()} streams the children, page by page
+ * 		-{@link #pages()} streams the pages themselves
+ * 		-{@link #pageAfter(Object)} reads the page following a given id, for callers that keep their own position
+ * {@link #slice(int, int)} reads an arbitrary window instead, with the row offset of the platform (LIMIT ? ? on
+ * HSQLDB): the database still walks past the first offset children.
+ *
+ * The children are read through the EntityManager, so they are managed like the results of any query, and changes
+ * pending in the persistence context are flushed first (FlushModeType.AUTO), so the pages see them. Managed children
+ * stay in the persistence context until it is cleared; to keep it from growing with the fan-out, the view returned by
+ * {@link #detaching()} detaches the children of a page once its iterators move past that page.
+ *
+ * Views are immutable; they are bound to their EntityManager and, like it, not thread-safe.
+ *
+ */
+public class PagedCollectionView<E> implements Iterable<E> {
+
+	private final EntityManager em;
+	private final OneToManyJoin join;
+	private final Object ownerKey;
+	private final int pageSize;
+	private final boolean detaching;
+
+	/**
+	 * @param attributeName
+	 *            a one-to-many association of the owner, with a single column join
+	 * @throws IllegalArgumentException
+	 *             if the owner is not managed by the EntityManager, or if the attribute is not such an association
+	 *             of elementType
+	 */
+	public PagedCollectionView(EntityManager em, Object owner, String attributeName, Class<E> elementType,
+			int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be positive");
+		}
+		if (!em.contains(owner)) {
+			throw new IllegalArgumentException("The owner must be managed by the EntityManager: " + owner);
+		}
+		AbstractSession session = (AbstractSession) JpaHelper.getEntityManager(em).getActiveSession();
+		OneToManyJoin join = OneToManyJoin.of(session, owner.getClass(), attributeName);
+		if (!elementType.isAssignableFrom(join.referenceClass)) {
+			throw new IllegalArgumentException(join.name + " holds " + join.referenceClass.getSimpleName() + ", not "
+					+ elementType.getSimpleName());
+		}
+
+		this.em = em;
+		this.join = join;
+		this.ownerKey = join.ownerKey(owner, session);
+		this.pageSize = pageSize;
+		this.detaching = false;
+	}
+
+	private PagedCollectionView(PagedCollectionView<E> view, boolean detaching) {
+		this.em = view.em;
+		this.join = view.join;
+		this.ownerKey = view.ownerKey;
+		this.pageSize = view.pageSize;
+		this.detaching = detaching;
+	}
+
+	/**
+	 * The same view, with iterators that detach the children of every page they have moved past. Changes made to
+	 * those children and not flushed yet are lost.
+	 */
+	public PagedCollectionView<E> detaching() {
+		return detaching ? this : new PagedCollectionView<>(this, true);
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public List<E> firstPage() {
+		return pageAfter(null);
+	}
+
+	/**
+	 * The page of children with ids greater than lastId, or the first page if lastId is null; an empty or short page
+	 * is the last one.
+	 */
+	public List<E> pageAfter(Object lastId) {
+		return read(lastId, 0, pageSize);
+	}
+
+	/**
+	 * Up to limit children, starting with the offset-th (0 based) in id order.
+	 */
+	public List<E> slice(int offset, int limit) {
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException("offset and limit must not be negative");
+		}
+		if (limit == 0) {
+			return Collections.emptyList();
+		}
+		return read(null, offset, limit);
+	}
+
+	/**
+	 * Iterates over the pages, reading each one when it is asked for; the iteration ends with the first short page
+	 * (or, when the children fill the last page exactly, with an extra query for the empty one).
+	 */
+	public Iterator<List<E>> pages() {
+		return new PageIterator();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		final Iterator<List<E>> pages = pages();
+		return new Iterator<E>() {
+
+			private Iterator<E> page = Collections.<E> emptyList().iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!page.hasNext() && pages.hasNext()) {
+					page = pages.next().iterator();
+				}
+				return page.hasNext();
+			}
+
+			@Override
+			public E next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return page.next();
+			}
+		};
+	}
+
+	private List<E> read(Object lastId, int offset, int limit) {
+		ReadAllQuery query = new ReadAllQuery(join.referenceClass);
+		ExpressionBuilder builder = query.getExpressionBuilder();
+		Expression criteria = join.foreignKey(builder).equal(ownerKey);
+		if (lastId != null) {
+			criteria = criteria.and(join.id(builder).greaterThan(lastId));
+		}
+		query.setSelectionCriteria(criteria);
+		query.addOrdering(join.id(builder).ascending());
+
+		JpaEntityManager jpaEntityManager = JpaHelper.getEntityManager(em);
+		Query page = jpaEntityManager.createQuery(query).setMaxResults(limit);
+		if (offset > 0) {
+			page.setFirstResult(offset);
+		}
+		@SuppressWarnings("unchecked")
+		List<E> children = page.getResultList();
+		return children;
+	}
+
+	private final class PageIterator implements Iterator<List<E>> {
+
+		private List<E> next;
+		private List<E> previous;
+		private boolean last;
+
+		@Override
+		public boolean hasNext() {
+			if (next == null && !last) {
+				Object lastId = null;
+				if (previous != null) {
+					lastId = join.id(previous.get(previous.size() - 1));
+					if (detaching) {
+						for (E child : previous) {
+							em.detach(child);
+						}
+					}
+				}
+				next = pageAfter(lastId);
+				last = next.size() < pageSize;
+				if (next.isEmpty()) {
+					next = null;
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public List<E> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			previous = next;
+			next = null;
+			return previous;
+		}
+	}
+
+}
@@ -0,0 +1,274 @@
+package com.test.eclipselink.jpa.fetch_state.collection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TransactionRequiredException;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.FetchGroupManager;
+import org.eclipse.persistence.descriptors.changetracking.ChangeTracker;
+import org.eclipse.persistence.expressions.ExpressionBuilder;
+import org.eclipse.persistence.indirection.ValueHolder;
+import org.eclipse.persistence.internal.indirection.DatabaseValueHolder;
+import org.eclipse.persistence.internal.sessions.AbstractRecord;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ForeignReferenceMapping;
+import org.eclipse.persistence.queries.DeleteAllQuery;
+import org.eclipse.persistence.queries.ModifyAllQuery;
+import org.eclipse.persistence.sessions.UnitOfWork;
+
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+
+/**
+ * Deletes the children of @PrivateOwned one-to-many associations (such as RootEntity.keyCollectionAssoc and
+ * RootEntity.refCollectionAssoc) with set-based DELETEs, without reading them.
+ *
+ * Clearing such a collection makes EclipseLink load it and delete every child with its own statement, and removing an
+ * owner costs one DELETE ... WHERE PARENT_ID = ? per owner and collection. Here the children of batchSize owners at a
+ * time go with one statement:
+ *
+ * 		DELETE FROM REF_COLLECTION_ASSOC WHERE (PARENT_ID IN (?, ?, ...))
+ *
+ * and the persistence context is kept in line with the database:
+ * 		-pending changes are flushed first, so that children persisted but not yet inserted are deleted too (and
+ * 			pending updates of children do not fail at commit)
+ * 		-children of those owners that are managed by the EntityManager, loaded through the collection or any other
+ * 			way, are detached
+ * 		-the collections of the owners are set to an empty, loaded collection, with no change recorded (backup clones
+ * 			included), so that neither the commit nor removing the owner goes after the children again
+ * The DELETEs run as DeleteAllQueries, which invalidate the deleted children in the shared cache when the
+ * transaction commits.
+ *
+ * The children of a unidirectional collection whose class has no basic mapping on the join column are only found
+ * through the collection when it is loaded: read by a separate query, they stay managed (and will not be found in the
+ * database anymore). KeyMappingCollectionAssoc is not such a class, as it maps PARENT_ID as parentId.
+ *
+ * Instances are thread-safe and meant to be shared, one per EntityManagerFactory. The EntityManager must be joined
+ * to a transaction.
+ *
+ */
+public class PrivateOwnedBulkDelete {
+
+	private final AbstractSession session;
+	private final LoadStateInspector inspector;
+	private final int batchSize;
+
+	public PrivateOwnedBulkDelete(EntityManagerFactory emf) {
+		this(emf, 500);
+	}
+
+	/**
+	 * @param batchSize
+	 *            the number of owners listed in the IN clause of a single DELETE
+	 */
+	public PrivateOwnedBulkDelete(EntityManagerFactory emf, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive");
+		}
+		this.session = (AbstractSession) JpaHelper.getServerSession(emf);
+		this.inspector = new LoadStateInspector(session);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Deletes every child of the owners' collection.
+	 *
+	 * @return the number of children deleted
+	 * @throws IllegalArgumentException
+	 *             if an owner is not managed, or if the attribute is not a private-owned one-to-many association with
+	 *             a single column join
+	 */
+	public int clear(EntityManager em, Collection<?> owners, String attributeName) {
+		checkTransaction(em);
+		if (owners.isEmpty()) {
+			return 0;
+		}
+		em.flush();
+		UnitOfWorkImpl unitOfWork = (UnitOfWorkImpl) em.unwrap(UnitOfWork.class);
+		int deleted = 0;
+		for (Class<?> ownerClass : ownerClasses(em, owners)) {
+			OneToManyJoin join = privateOwned(ownerClass, attributeName);
+			List<Object> sameClass = new ArrayList<>();
+			for (Object owner : owners) {
+				if (owner.getClass() == ownerClass) {
+					sameClass.add(owner);
+				}
+			}
+			deleted += clear(em, unitOfWork, sameClass, join);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Deletes the children of every private-owned one-to-many association of the owners, then removes the owners
+	 * (EntityManager.remove, which cascades as usual to everything else). As after any DeleteAllQuery in a unit of
+	 * work, EclipseLink checks at commit that every removed owner still exists, with one SELECT per owner.
+	 *
+	 * @return the number of children deleted
+	 */
+	public int remove(EntityManager em, Collection<?> owners) {
+		checkTransaction(em);
+		if (owners.isEmpty()) {
+			return 0;
+		}
+		em.flush();
+		UnitOfWorkImpl unitOfWork = (UnitOfWorkImpl) em.unwrap(UnitOfWork.class);
+		int deleted = 0;
+		for (Class<?> ownerClass : ownerClasses(em, owners)) {
+			List<Object> sameClass = new ArrayList<>();
+			for (Object owner : owners) {
+				if (owner.getClass() == ownerClass) {
+					sameClass.add(owner);
+				}
+			}
+			for (DatabaseMapping mapping : session.getDescriptor(ownerClass).getMappings()) {
+				if (mapping.isOneToManyMapping() && mapping.isPrivateOwned()) {
+					deleted += clear(em, unitOfWork, sameClass,
+							OneToManyJoin.of(session, ownerClass, mapping.getAttributeName()));
+				}
+			}
+		}
+		for (Object owner : owners) {
+			em.remove(owner);
+		}
+		return deleted;
+	}
+
+	private int clear(EntityManager em, UnitOfWorkImpl unitOfWork, List<Object> owners, OneToManyJoin join) {
+		Set<Object> ownerKeys = new LinkedHashSet<>();
+		for (Object owner : owners) {
+			ownerKeys.add(join.ownerKey(owner, session));
+		}
+
+		//detached first, so that the DeleteAllQuery does not check them one by one for invalidation
+		detachManagedChildren(em, unitOfWork, owners, ownerKeys, join);
+
+		int deleted = 0;
+		List<Object> keys = new ArrayList<>(ownerKeys);
+		for (int from = 0; from < keys.size(); from += batchSize) {
+			ExpressionBuilder builder = new ExpressionBuilder();
+			DeleteAllQuery query = new DeleteAllQuery(join.referenceClass,
+					join.foreignKey(builder).in(keys.subList(from, Math.min(from + batchSize, keys.size()))));
+			//executed right away, outside of the JDBC batch, so that the row count is known
+			query.setShouldDeferExecutionInUOW(false);
+			query.setIsBatchExecutionSupported(false);
+			query.setCacheUsage(ModifyAllQuery.INVALIDATE_CACHE);
+			deleted += JpaHelper.getEntityManager(em).createQuery(query).executeUpdate();
+		}
+
+		for (Object owner : owners) {
+			resetToEmpty(unitOfWork, owner, join);
+		}
+		return deleted;
+	}
+
+	private void detachManagedChildren(EntityManager em, UnitOfWorkImpl unitOfWork, List<Object> owners,
+			Set<Object> ownerKeys, OneToManyJoin join) {
+		Set<Object> children = new HashSet<>();
+		for (Object owner : owners) {
+			if (inspector.isLoaded(owner, join.mapping.getAttributeName())) {
+				children.addAll((Collection<?>) join.mapping.getAttributeValueFromObject(owner));
+			}
+		}
+		ClassDescriptor childDescriptor = join.mapping.getReferenceDescriptor();
+		DatabaseMapping foreignKeyMapping = childDescriptor.getObjectBuilder().getMappingForField(join.foreignKey);
+		if (foreignKeyMapping != null) {
+			Map<?, ?> cloneMapping = unitOfWork.getCloneMapping();
+			for (Object managed : new ArrayList<Object>(cloneMapping.keySet())) {
+				if (join.referenceClass.isInstance(managed)
+						&& ownerKeys.contains(foreignKey(managed, foreignKeyMapping, join, unitOfWork))) {
+					children.add(managed);
+				}
+			}
+		}
+		for (Object child : children) {
+			em.detach(child);
+		}
+	}
+
+	/**
+	 * The child's value for the join column. A lazy many-to-one that is not instantiated (such as
+	 * ReferenceMappingCollectionAssoc.parent) is read from the row its value holder was built from: instantiating it
+	 * could take a query.
+	 */
+	private static Object foreignKey(Object child, DatabaseMapping foreignKeyMapping, OneToManyJoin join,
+			UnitOfWorkImpl unitOfWork) {
+		if (foreignKeyMapping.isForeignReferenceMapping()) {
+			Object value = foreignKeyMapping.getAttributeValueFromObject(child);
+			if (!((ForeignReferenceMapping) foreignKeyMapping).getIndirectionPolicy().objectIsInstantiated(value)) {
+				Object valueHolder = value;
+				while (valueHolder instanceof DatabaseValueHolder) {
+					AbstractRecord row = ((DatabaseValueHolder) valueHolder).getRow();
+					if (row != null) {
+						return row.get(join.foreignKey);
+					}
+					valueHolder = ((DatabaseValueHolder) valueHolder).getWrappedValueHolder();
+				}
+			}
+		}
+		return join.mapping.getReferenceDescriptor().getObjectBuilder().extractValueFromObjectForField(child,
+				join.foreignKey, unitOfWork);
+	}
+
+	/**
+	 * Sets the owner's collection to an empty, instantiated collection the way ObjectBuilder sets attributes: no
+	 * change event, the owner's change listener handed to the new collection (with ATTRIBUTE change tracking, what is
+	 * added to it afterwards is recorded by that listener), and the same value in the backup clone.
+	 */
+	private static void resetToEmpty(UnitOfWorkImpl unitOfWork, Object owner, OneToManyJoin join) {
+		ClassDescriptor descriptor = unitOfWork.getDescriptor(owner);
+		FetchGroupManager fetchGroupManager = descriptor.getFetchGroupManager();
+		if (fetchGroupManager != null && !fetchGroupManager.isAttributeFetched(owner, join.mapping.getAttributeName())) {
+			//fetching the rest of the owner will read the (now empty) collection from the database
+			return;
+		}
+		Object empty = join.mapping.getContainerPolicy().containerInstance();
+		ValueHolder valueHolder = new ValueHolder(empty);
+		join.mapping.setAttributeValueInObject(owner, join.mapping.getIndirectionPolicy().buildIndirectObject(valueHolder));
+		if (owner instanceof ChangeTracker && ((ChangeTracker) owner)._persistence_getPropertyChangeListener() != null) {
+			join.mapping.setChangeListener(owner, ((ChangeTracker) owner)._persistence_getPropertyChangeListener(),
+					unitOfWork);
+		}
+		Object backup = unitOfWork.getCloneMapping().get(owner);
+		if (backup != null && backup != owner) {
+			join.mapping.buildBackupClone(owner, backup, unitOfWork);
+		}
+	}
+
+	private OneToManyJoin privateOwned(Class<?> ownerClass, String attributeName) {
+		OneToManyJoin join = OneToManyJoin.of(session, ownerClass, attributeName);
+		if (!join.mapping.isPrivateOwned()) {
+			throw new IllegalArgumentException(join.name + " is not @PrivateOwned: its children may not be deleted");
+		}
+		return join;
+	}
+
+	private static Set<Class<?>> ownerClasses(EntityManager em, Collection<?> owners) {
+		Set<Class<?>> classes = new LinkedHashSet<>();
+		for (Object owner : owners) {
+			if (!em.contains(owner)) {
+				throw new IllegalArgumentException("The owners must be managed by the EntityManager: " + owner);
+			}
+			classes.add(owner.getClass());
+		}
+		return classes;
+	}
+
+	private static void checkTransaction(EntityManager em) {
+		if (!em.isJoinedToTransaction()) {
+			throw new TransactionRequiredException("Set-based deletes need the EntityManager to be in a transaction");
+		}
+	}
+
+}
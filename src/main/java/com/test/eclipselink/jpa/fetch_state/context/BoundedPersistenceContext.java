@@ -0,0 +1,692 @@
+package com.test.eclipselink.jpa.fetch_state.context;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.changetracking.ObjectChangePolicy;
+import org.eclipse.persistence.indirection.IndirectContainer;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.RepeatableWriteUnitOfWork;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ForeignReferenceMapping;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionEventListener;
+import org.eclipse.persistence.sessions.SessionEventManager;
+import org.eclipse.persistence.sessions.UnitOfWork;
+
+/**
+ * A long-lived EntityManager whose persistence context is kept under a size limit, for batch workers that run many
+ * units of work through one EntityManager instead of creating one per unit of work.
+ *
+ * The size is tracked as the number of managed entities and as an estimate of the heap they keep (see
+ * {@link #estimateBytes(Object, ClassSize)}). Whenever a read query returns or a transaction commits with either
+ * above its limit, the least recently used entities are detached until both are back under 3/4 of their limits:
+ * 		-an entity is used when a query of the EntityManager returns it; entities loaded lazily count as used when they
+ * 			are first seen
+ * 		-entities connected through loaded associations (a root, its instantiated collections and their elements...)
+ * 			are detached together or not at all, so that no managed entity is left holding a detached one: a commit
+ * 			would cascade PERSIST to it as if it were new
+ * 		-groups holding a single dirty entity are kept: new, removed, modified or locked entities, and entities
+ * 			flushed in the current transaction
+ * 		-entities returned by the query that triggered the trim are kept, even if they alone exceed the limits
+ * Nothing but detaching is done to the entities that stay, so their load state (LoadStateInspector,
+ * PersistenceUnitUtil, the generated load states) is what it was. Detached entities are as after
+ * EntityManager.detach: the caller may keep using them, but they are no longer managed and finding them again reads
+ * them again.
+ *
+ * The context is found through a property of its EntityManager by a session event listener shared by all bounded
+ * contexts of the factory, so other EntityManagers of the factory pay one property lookup per query. After a
+ * rollback, the context follows the EntityManager into its new persistence context. Like the EntityManager, a
+ * context must only be used by one thread at a time; its gauges may be read from any thread.
+ *
+ */
+public class BoundedPersistenceContext implements AutoCloseable {
+
+	/**
+	 * The EntityManager property (passed on to its client session) that holds the context of an EntityManager.
+	 */
+	public static final String PROPERTY = "fetch-state.bounded-persistence-context";
+
+	/**
+	 * Fraction of the limits that a trim brings the persistence context back to, so that it does not run on every
+	 * query once the limits are reached.
+	 */
+	private static final double TRIM_TARGET = 0.75;
+
+	/**
+	 * The bookkeeping of a managed entity (its CacheKey, its entries in the identity map and in the clone mapping, its
+	 * boxed primary key and change listener) and of its value holders, which keep the row they were built from. Set
+	 * so that the estimate of BoundedPersistenceContextSoakBenchmark stays within 10% of the used heap on JDK 17.
+	 */
+	private static final int MANAGED_ENTITY_BYTES = 256;
+	private static final int VALUE_HOLDER_BYTES = 96;
+	private static final int INDIRECT_COLLECTION_BYTES = 120;
+	private static final int OBJECT_HEADER_BYTES = 12;
+	private static final int ARRAY_HEADER_BYTES = 16;
+	private static final int REFERENCE_BYTES = 4;
+
+	private static final SessionEventListener ROUTER = new Router();
+
+	private final EntityManager em;
+	private final int maxEntities;
+	private final long maxEstimatedBytes;
+
+	private final Map<Class<?>, ClassSize> classSizes = new HashMap<>();
+	private final Map<Object, Entry> entries = new IdentityHashMap<>();
+	private UnitOfWorkImpl unitOfWork;
+	private long trackedBytes;
+	private long clock;
+	private boolean trimming;
+
+	private volatile int managedEntities;
+	private volatile long estimatedBytes;
+	private volatile int peakManagedEntities;
+	private volatile long peakEstimatedBytes;
+	private volatile long trims;
+	private volatile long detachedEntities;
+	private volatile int retainedDirtyEntities;
+	private volatile int retainedInUseEntities;
+
+	/**
+	 * Creates the EntityManager of the context.
+	 *
+	 * @param maxEntities
+	 *            number of managed entities above which the context is trimmed; 0 for no limit
+	 * @param maxEstimatedBytes
+	 *            estimated bytes above which the context is trimmed; 0 for no limit
+	 */
+	public BoundedPersistenceContext(EntityManagerFactory emf, int maxEntities, long maxEstimatedBytes) {
+		if (maxEntities < 0 || maxEstimatedBytes < 0) {
+			throw new IllegalArgumentException("maxEntities and maxEstimatedBytes must not be negative");
+		}
+		this.maxEntities = maxEntities;
+		this.maxEstimatedBytes = maxEstimatedBytes;
+
+		SessionEventManager events = JpaHelper.getServerSession(emf).getEventManager();
+		synchronized (events) {
+			if (!events.getListeners().contains(ROUTER)) {
+				events.addListener(ROUTER);
+			}
+		}
+		Map<String, Object> properties = new HashMap<>();
+		properties.put(PROPERTY, this);
+		this.em = emf.createEntityManager(properties);
+	}
+
+	public EntityManager getEntityManager() {
+		return em;
+	}
+
+	/**
+	 * Trims the persistence context now if it is above either limit, as it would be after the next query, and
+	 * returns the number of entities detached. Does nothing during a flush or a commit.
+	 */
+	public int trim() {
+		UnitOfWorkImpl uow = (UnitOfWorkImpl) em.unwrap(UnitOfWork.class);
+		return follow(uow) ? trimIfOverLimits(null) : 0;
+	}
+
+	public Gauges getGauges() {
+		return new Gauges(this);
+	}
+
+	/**
+	 * Closes the EntityManager.
+	 */
+	@Override
+	public void close() {
+		em.close();
+	}
+
+	private void afterRead(UnitOfWorkImpl uow, Object result) {
+		if (!follow(uow)) {
+			return;
+		}
+		if (result instanceof Collection) {
+			for (Object element : (Collection<?>) result) {
+				touch(element);
+			}
+		} else {
+			touch(result);
+		}
+		trimIfOverLimits(result);
+	}
+
+	private void afterCommit(UnitOfWorkImpl uow) {
+		if (follow(uow)) {
+			trimIfOverLimits(null);
+		}
+	}
+
+	/**
+	 * Switches to the unit of work if the EntityManager has a new one, and tells whether the persistence context may
+	 * be inspected and trimmed: not during a flush or a commit, nor from within a trim.
+	 */
+	private boolean follow(UnitOfWorkImpl uow) {
+		if (uow != unitOfWork) {
+			unitOfWork = uow;
+			entries.clear();
+			trackedBytes = 0;
+		}
+		if (trimming || uow instanceof RepeatableWriteUnitOfWork && ((RepeatableWriteUnitOfWork) uow).isWithinFlush()) {
+			return false;
+		}
+		return uow.getLifecycle() == UnitOfWorkImpl.Birth || uow.isAfterWriteChangesButBeforeCommit();
+	}
+
+	private void touch(Object value) {
+		if (value instanceof Object[]) {
+			for (Object element : (Object[]) value) {
+				touch(element);
+			}
+			return;
+		}
+		if (value == null) {
+			return;
+		}
+		Entry entry = entries.get(value);
+		if (entry == null) {
+			if (!unitOfWork.getCloneMapping().containsKey(value)) {
+				return;
+			}
+			entry = track(value);
+		} else {
+			long bytes = estimateBytes(value, entry.size);
+			trackedBytes += bytes - entry.bytes;
+			entry.bytes = bytes;
+		}
+		entry.lastUsed = ++clock;
+	}
+
+	private Entry track(Object entity) {
+		ClassSize size = classSize(entity.getClass());
+		Entry entry = new Entry(entity, size, estimateBytes(entity, size));
+		entries.put(entity, entry);
+		trackedBytes += entry.bytes;
+		return entry;
+	}
+
+	/**
+	 * Brings the tracked entities in line with the clone mapping of the unit of work: entities lazily loaded since
+	 * the last query are tracked as used now, and entities detached or cleared by the caller are forgotten.
+	 */
+	private void reconcile() {
+		Map<?, ?> registered = unitOfWork.getCloneMapping();
+		entries.values().removeIf(entry -> {
+			if (registered.containsKey(entry.entity)) {
+				return false;
+			}
+			trackedBytes -= entry.bytes;
+			return true;
+		});
+		if (registered.size() > entries.size()) {
+			long now = ++clock;
+			for (Object entity : registered.keySet()) {
+				if (!entries.containsKey(entity)) {
+					track(entity).lastUsed = now;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param inUse
+	 *            the result of the query that triggered the trim, which must stay managed; null if none
+	 */
+	private int trimIfOverLimits(Object inUse) {
+		int registered = unitOfWork.getCloneMapping().size();
+		if (registered < entries.size()) {
+			reconcile();
+		}
+		long untracked = Math.max(0, registered - entries.size());
+		long averageBytes = entries.isEmpty() ? MANAGED_ENTITY_BYTES : trackedBytes / entries.size();
+		updateSizeGauges(registered, trackedBytes + untracked * averageBytes);
+		if (!isAbove(registered, estimatedBytes, 1)) {
+			return 0;
+		}
+
+		trimming = true;
+		try {
+			reconcile();
+			updateSizeGauges(entries.size(), trackedBytes);
+			if (!isAbove(entries.size(), trackedBytes, 1)) {
+				return 0;
+			}
+			Set<Object> protectedEntities = inUseEntities(inUse);
+			int detached = 0;
+			int dirty = 0;
+			int used = 0;
+			for (Group group : groupsByLastUse()) {
+				if (!isAbove(entries.size(), trackedBytes, TRIM_TARGET)) {
+					break;
+				}
+				if (group.contains(protectedEntities)) {
+					used += group.members.size();
+				} else if (group.isDirty(this)) {
+					dirty += group.members.size();
+				} else {
+					for (Entry member : group.members) {
+						em.detach(member.entity);
+						entries.remove(member.entity);
+						trackedBytes -= member.bytes;
+					}
+					detached += group.members.size();
+				}
+			}
+			trims++;
+			detachedEntities += detached;
+			retainedDirtyEntities = dirty;
+			retainedInUseEntities = used;
+			updateSizeGauges(entries.size(), trackedBytes);
+			return detached;
+		} finally {
+			trimming = false;
+		}
+	}
+
+	private boolean isAbove(int entities, long bytes, double fraction) {
+		return maxEntities > 0 && entities > maxEntities * fraction
+				|| maxEstimatedBytes > 0 && bytes > maxEstimatedBytes * fraction;
+	}
+
+	private void updateSizeGauges(int entities, long bytes) {
+		managedEntities = entities;
+		estimatedBytes = bytes;
+		if (entities > peakManagedEntities) {
+			peakManagedEntities = entities;
+		}
+		if (bytes > peakEstimatedBytes) {
+			peakEstimatedBytes = bytes;
+		}
+	}
+
+	private static Set<Object> inUseEntities(Object result) {
+		Set<Object> inUse = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		if (result instanceof Collection) {
+			for (Object element : (Collection<?>) result) {
+				addInUse(element, inUse);
+			}
+		} else {
+			addInUse(result, inUse);
+		}
+		return inUse;
+	}
+
+	private static void addInUse(Object value, Set<Object> inUse) {
+		if (value instanceof Object[]) {
+			Collections.addAll(inUse, (Object[]) value);
+		} else if (value != null) {
+			inUse.add(value);
+		}
+	}
+
+	/**
+	 * The tracked entities grouped by the loaded associations between them, least recently used group first.
+	 */
+	private List<Group> groupsByLastUse() {
+		for (Entry entry : entries.values()) {
+			entry.parent = entry;
+		}
+		for (Entry entry : entries.values()) {
+			for (DatabaseMapping mapping : entry.size.references) {
+				ForeignReferenceMapping reference = (ForeignReferenceMapping) mapping;
+				Object value = reference.getAttributeValueFromObject(entry.entity);
+				if (value == null || !reference.getIndirectionPolicy().objectIsInstantiated(value)) {
+					continue;
+				}
+				Object target = reference.getIndirectionPolicy().getRealAttributeValueFromObject(entry.entity, value);
+				if (target instanceof Map) {
+					target = ((Map<?, ?>) target).values();
+				}
+				if (target instanceof Collection) {
+					for (Object element : (Collection<?>) target) {
+						union(entry, entries.get(element));
+					}
+				} else if (target != null) {
+					union(entry, entries.get(target));
+				}
+			}
+		}
+		Map<Entry, Group> groups = new IdentityHashMap<>();
+		for (Entry entry : entries.values()) {
+			groups.computeIfAbsent(root(entry), root -> new Group()).add(entry);
+		}
+		List<Group> byLastUse = new ArrayList<>(groups.values());
+		byLastUse.sort((left, right) -> Long.compare(left.lastUsed, right.lastUsed));
+		return byLastUse;
+	}
+
+	private static void union(Entry entry, Entry other) {
+		if (other != null) {
+			root(other).parent = root(entry);
+		}
+	}
+
+	private static Entry root(Entry entry) {
+		while (entry.parent != entry) {
+			entry.parent = entry.parent.parent;
+			entry = entry.parent;
+		}
+		return entry;
+	}
+
+	/**
+	 * Whether the entity has to stay managed for the unit of work to commit what the caller did to it.
+	 */
+	private boolean isDirty(Object entity, ClassDescriptor descriptor) {
+		UnitOfWorkImpl uow = unitOfWork;
+		if (uow.isCloneNewObject(entity) || uow.isObjectDeleted(entity)
+				|| uow.hasPessimisticLockedObjects() && uow.isPessimisticLocked(entity)
+				|| uow.hasOptimisticReadLockObjects() && uow.getOptimisticReadLockObjects().containsKey(entity)) {
+			return true;
+		}
+		if (uow instanceof RepeatableWriteUnitOfWork) {
+			UnitOfWorkChangeSet flushed = ((RepeatableWriteUnitOfWork) uow).getCumulativeUOWChangeSet();
+			if (flushed != null && flushed.getObjectChangeSetForClone(entity) != null) {
+				return true;
+			}
+		}
+		ObjectChangePolicy policy = descriptor.getObjectChangePolicy();
+		if (!policy.shouldCompareExistingObjectForChange(entity, uow, descriptor)) {
+			return false;
+		}
+		if (!policy.isDeferredChangeDetectionPolicy()) {
+			//the change listener has recorded changes
+			return true;
+		}
+		ObjectChangeSet changes = policy.calculateChangesForExistingObject(entity, new UnitOfWorkChangeSet(uow), uow,
+				descriptor, false);
+		return changes != null && changes.hasChanges();
+	}
+
+	/**
+	 * An estimate of the heap an entity keeps while managed, assuming a 64-bit VM with compressed references: the
+	 * entity itself (twice if its change policy keeps a backup clone), its bookkeeping in the unit of work, its value
+	 * holders and indirect collections, the references held by its loaded collections and its Strings and byte
+	 * arrays. Associated entities are estimated on their own.
+	 */
+	private long estimateBytes(Object entity, ClassSize size) {
+		long bytes = size.fixedBytes;
+		for (DatabaseMapping mapping : size.variables) {
+			Object value = mapping.getAttributeValueFromObject(entity);
+			if (value instanceof String) {
+				bytes += align(OBJECT_HEADER_BYTES + 12) + align(ARRAY_HEADER_BYTES + ((String) value).length());
+			} else if (value instanceof byte[]) {
+				bytes += align(ARRAY_HEADER_BYTES + ((byte[]) value).length);
+			} else if (value instanceof IndirectContainer && !((IndirectContainer) value).isInstantiated()) {
+				continue;
+			} else if (value instanceof Collection) {
+				bytes += align(ARRAY_HEADER_BYTES + (long) ((Collection<?>) value).size() * REFERENCE_BYTES);
+			} else if (value instanceof Map) {
+				bytes += 32L * ((Map<?, ?>) value).size();
+			}
+		}
+		return bytes;
+	}
+
+	private ClassSize classSize(Class<?> entityClass) {
+		ClassSize size = classSizes.get(entityClass);
+		if (size == null) {
+			size = new ClassSize(unitOfWork.getDescriptor(entityClass));
+			classSizes.put(entityClass, size);
+		}
+		return size;
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	/**
+	 * What estimating, grouping and checking the entities of a class needs from its descriptor.
+	 */
+	private static final class ClassSize {
+
+		private final ClassDescriptor descriptor;
+		private final long fixedBytes;
+		/**
+		 * The associations, which are followed to group entities.
+		 */
+		private final List<DatabaseMapping> references = new ArrayList<>();
+		/**
+		 * The attributes whose size varies from entity to entity: Strings, byte arrays and collections.
+		 */
+		private final List<DatabaseMapping> variables = new ArrayList<>();
+
+		ClassSize(ClassDescriptor descriptor) {
+			this.descriptor = descriptor;
+			long shallow = OBJECT_HEADER_BYTES;
+			for (Class<?> type = descriptor.getJavaClass(); type != null && type != Object.class;
+					type = type.getSuperclass()) {
+				for (Field field : type.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers())) {
+						shallow += fieldBytes(field.getType());
+					}
+				}
+			}
+			long fixed = MANAGED_ENTITY_BYTES + align(shallow);
+			if (descriptor.getObjectChangePolicy().isDeferredChangeDetectionPolicy()) {
+				fixed += align(shallow);
+			}
+			for (DatabaseMapping mapping : descriptor.getMappings()) {
+				if (mapping.isForeignReferenceMapping()) {
+					references.add(mapping);
+					ForeignReferenceMapping reference = (ForeignReferenceMapping) mapping;
+					if (reference.isCollectionMapping()) {
+						variables.add(mapping);
+						fixed += reference.usesIndirection() ? INDIRECT_COLLECTION_BYTES : 0;
+					} else {
+						fixed += reference.usesIndirection() ? VALUE_HOLDER_BYTES : 0;
+					}
+				} else if (mapping.isDirectToFieldMapping() && (mapping.getAttributeClassification() == null
+						|| mapping.getAttributeClassification() == String.class
+						|| mapping.getAttributeClassification() == byte[].class)) {
+					variables.add(mapping);
+				}
+			}
+			this.fixedBytes = fixed;
+		}
+
+		private static int fieldBytes(Class<?> type) {
+			if (type == long.class || type == double.class) {
+				return 8;
+			}
+			if (type == int.class || type == float.class) {
+				return 4;
+			}
+			if (type == short.class || type == char.class) {
+				return 2;
+			}
+			if (type == byte.class || type == boolean.class) {
+				return 1;
+			}
+			return REFERENCE_BYTES;
+		}
+	}
+
+	private static final class Entry {
+
+		private final Object entity;
+		private final ClassSize size;
+		private long bytes;
+		private long lastUsed;
+		/**
+		 * Union-find link to the group of the entity, only meaningful during a trim.
+		 */
+		private Entry parent;
+
+		Entry(Object entity, ClassSize size, long bytes) {
+			this.entity = entity;
+			this.size = size;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Entities connected through loaded associations, which are detached together.
+	 */
+	private static final class Group {
+
+		private final List<Entry> members = new ArrayList<>();
+		private long lastUsed;
+
+		void add(Entry entry) {
+			members.add(entry);
+			lastUsed = Math.max(lastUsed, entry.lastUsed);
+		}
+
+		boolean contains(Set<Object> entities) {
+			if (!entities.isEmpty()) {
+				for (Entry member : members) {
+					if (entities.contains(member.entity)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		boolean isDirty(BoundedPersistenceContext context) {
+			for (Entry member : members) {
+				if (context.isDirty(member.entity, member.size.descriptor)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Passes the events of the units of work of bounded contexts on to their context.
+	 */
+	private static final class Router extends SessionEventAdapter {
+
+		@Override
+		public void postExecuteQuery(SessionEvent event) {
+			BoundedPersistenceContext context = contextOf(event.getSession());
+			if (context != null && event.getQuery().isReadQuery()) {
+				context.afterRead((UnitOfWorkImpl) event.getSession(), event.getResult());
+			}
+		}
+
+		@Override
+		public void postResumeUnitOfWork(SessionEvent event) {
+			BoundedPersistenceContext context = contextOf(event.getSession());
+			if (context != null) {
+				context.afterCommit((UnitOfWorkImpl) event.getSession());
+			}
+		}
+
+		private static BoundedPersistenceContext contextOf(Session session) {
+			if (!session.isUnitOfWork()) {
+				return null;
+			}
+			Object context = ((UnitOfWorkImpl) session).getParent().getProperty(PROPERTY);
+			return context instanceof BoundedPersistenceContext ? (BoundedPersistenceContext) context : null;
+		}
+	}
+
+	/**
+	 * A snapshot of the size of the persistence context and of what trimming did so far.
+	 */
+	public static final class Gauges {
+
+		private final int managedEntities;
+		private final long estimatedBytes;
+		private final int peakManagedEntities;
+		private final long peakEstimatedBytes;
+		private final long trims;
+		private final long detachedEntities;
+		private final int retainedDirtyEntities;
+		private final int retainedInUseEntities;
+
+		private Gauges(BoundedPersistenceContext context) {
+			this.managedEntities = context.managedEntities;
+			this.estimatedBytes = context.estimatedBytes;
+			this.peakManagedEntities = context.peakManagedEntities;
+			this.peakEstimatedBytes = context.peakEstimatedBytes;
+			this.trims = context.trims;
+			this.detachedEntities = context.detachedEntities;
+			this.retainedDirtyEntities = context.retainedDirtyEntities;
+			this.retainedInUseEntities = context.retainedInUseEntities;
+		}
+
+		/**
+		 * Managed entities as of the last query or commit.
+		 */
+		public int getManagedEntities() {
+			return managedEntities;
+		}
+
+		/**
+		 * Estimated heap of the managed entities as of the last query or commit; entities loaded lazily since the
+		 * last trim are counted at the average size.
+		 */
+		public long getEstimatedBytes() {
+			return estimatedBytes;
+		}
+
+		/**
+		 * The most managed entities seen after a query or commit, before trimming.
+		 */
+		public int getPeakManagedEntities() {
+			return peakManagedEntities;
+		}
+
+		public long getPeakEstimatedBytes() {
+			return peakEstimatedBytes;
+		}
+
+		public long getTrims() {
+			return trims;
+		}
+
+		/**
+		 * Entities detached by all trims.
+		 */
+		public long getDetachedEntities() {
+			return detachedEntities;
+		}
+
+		/**
+		 * Entities the last trim kept because their group was dirty.
+		 */
+		public int getRetainedDirtyEntities() {
+			return retainedDirtyEntities;
+		}
+
+		/**
+		 * Entities the last trim kept because their group was in the result of the query that triggered it.
+		 */
+		public int getRetainedInUseEntities() {
+			return retainedInUseEntities;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"managedEntities=%d, estimatedBytes=%d, peakManagedEntities=%d, peakEstimatedBytes=%d, trims=%d, "
+							+ "detachedEntities=%d, retainedDirtyEntities=%d, retainedInUseEntities=%d",
+					managedEntities, estimatedBytes, peakManagedEntities, peakEstimatedBytes, trims, detachedEntities,
+					retainedDirtyEntities, retainedInUseEntities);
+		}
+	}
+
+}
@@ -0,0 +1,389 @@
+package com.test.eclipselink.jpa.fetch_state.coordination;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.persistence.exceptions.CommunicationException;
+import org.eclipse.persistence.exceptions.RemoteCommandManagerException;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.internal.sessions.coordination.RemoteConnection;
+import org.eclipse.persistence.internal.sessions.coordination.broadcast.BroadcastRemoteConnection;
+import org.eclipse.persistence.sessions.coordination.RemoteCommandManager;
+import org.eclipse.persistence.sessions.coordination.broadcast.BroadcastTransportManager;
+import org.eclipse.persistence.sessions.serializers.JavaSerializer;
+
+import com.test.eclipselink.jpa.fetch_state.support.LatencyHistogram;
+
+/**
+ * An EclipseLink cache coordination transport over a CoordinationChannel, set up by CacheCoordination.
+ *
+ * EclipseLink hands the transport one command per commit (the ids of the objects to invalidate, with
+ * INVALIDATE_CHANGED_OBJECTS), on the committing thread. Commands are queued and sent by a thread of the transport in
+ * batches, one channel message per batch:
+ * 		-a batch is sent once it holds maxBatchSize commands, or maxBatchDelayMillis after its first command was
+ * 			queued, whichever comes first; with a delay of 0, every batch holds what queued up while the previous one
+ * 			was being sent
+ * 		-commits never wait for the channel; a batch the channel fails to send is counted and logged, not retried
+ * 		-received batches are unpacked and their commands processed in order, on the channel's receiving thread
+ *
+ * Every command carries the time it was queued, so that receivers measure the lag from the commit to the
+ * invalidation of their cache (batching delay, transport, deserialization and processing), see {@link #getMetrics()}.
+ * Times are wall clock times in nanoseconds, anchored once per JVM, so the lag is exact within a JVM and as accurate
+ * as the clock synchronization between JVMs.
+ *
+ */
+public class ChannelTransportManager extends BroadcastTransportManager {
+
+	private static final int MAGIC = 0x46534343;
+
+	private static final long EPOCH_NANOS_AT_NANO_TIME_ZERO = TimeUnit.MILLISECONDS
+			.toNanos(System.currentTimeMillis()) - System.nanoTime();
+
+	private final CoordinationChannel channel;
+	private final int maxBatchSize;
+	private final long maxBatchDelayNanos;
+
+	private final AtomicLong queuedCommands = new AtomicLong();
+	private final AtomicLong sentCommands = new AtomicLong();
+	private final AtomicLong sentBatches = new AtomicLong();
+	private final AtomicLong failedBatches = new AtomicLong();
+	private final AtomicLong receivedCommands = new AtomicLong();
+	private final AtomicLong receivedBatches = new AtomicLong();
+	private final AtomicLong failedCommands = new AtomicLong();
+	private final LatencyHistogram lag = new LatencyHistogram();
+
+	/**
+	 * Becomes the transport of the command manager.
+	 *
+	 * @param maxBatchSize
+	 *            the most commands sent in one message
+	 * @param maxBatchDelayMillis
+	 *            the longest a command waits for others to join its batch
+	 */
+	public ChannelTransportManager(RemoteCommandManager rcm, CoordinationChannel channel, int maxBatchSize,
+			long maxBatchDelayMillis) {
+		super(rcm);
+		if (maxBatchSize < 1 || maxBatchDelayMillis < 0) {
+			throw new IllegalArgumentException("maxBatchSize must be positive, maxBatchDelayMillis must not be negative");
+		}
+		this.channel = channel;
+		this.maxBatchSize = maxBatchSize;
+		this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+		setTopicName(channel.toString());
+	}
+
+	public CoordinationChannel getChannel() {
+		return channel;
+	}
+
+	@Override
+	public synchronized void createLocalConnection() {
+		if (localConnection == null) {
+			ChannelConnection connection = new ChannelConnection(rcm);
+			try {
+				channel.open(connection::receive);
+			} catch (IOException e) {
+				connection.close();
+				rcm.handleException(RemoteCommandManagerException.errorCreatingLocalJMSConnection(getTopicName(),
+						rcm.getUrl(), e));
+				return;
+			}
+			localConnection = connection;
+		}
+	}
+
+	/**
+	 * The local connection sends as well as receives, like a JMS topic connection.
+	 */
+	@Override
+	public Map<String, RemoteConnection> getConnectionsToExternalServicesForCommandPropagation() {
+		RemoteConnection connection = localConnection;
+		return connection == null ? Collections.<String, RemoteConnection> emptyMap()
+				: Collections.singletonMap(rcm.getServiceId().getId(), connection);
+	}
+
+	/**
+	 * Sends what is queued, then leaves the channel.
+	 */
+	@Override
+	public void removeLocalConnection() {
+		RemoteConnection connection;
+		synchronized (this) {
+			connection = localConnection;
+			localConnection = null;
+		}
+		if (connection != null) {
+			connection.close();
+		}
+	}
+
+	public Metrics getMetrics() {
+		return new Metrics(this);
+	}
+
+	private static long epochNanos() {
+		return EPOCH_NANOS_AT_NANO_TIME_ZERO + System.nanoTime();
+	}
+
+	private static final class Outgoing {
+
+		private static final Outgoing STOP = new Outgoing(null, 0);
+
+		private final byte[] command;
+		private final long queuedAt;
+
+		Outgoing(byte[] command, long queuedAt) {
+			this.command = command;
+			this.queuedAt = queuedAt;
+		}
+	}
+
+	private final class ChannelConnection extends BroadcastRemoteConnection {
+
+		private final BlockingQueue<Outgoing> queue = new LinkedBlockingQueue<>();
+		private final Thread sender;
+
+		ChannelConnection(RemoteCommandManager rcm) {
+			super(rcm);
+			this.sender = new Thread(this::sendBatches, "cache-coordination-" + channel);
+			this.sender.setDaemon(true);
+			this.sender.start();
+		}
+
+		@Override
+		protected Object executeCommandInternal(Object command) throws Exception {
+			byte[] bytes = command instanceof byte[] ? (byte[]) command
+					: (byte[]) JavaSerializer.instance.serialize(command, (AbstractSession) rcm.getCommandProcessor());
+			queue.add(new Outgoing(bytes, epochNanos()));
+			queuedCommands.incrementAndGet();
+			return null;
+		}
+
+		private void sendBatches() {
+			List<Outgoing> batch = new ArrayList<>(maxBatchSize);
+			boolean stopping = false;
+			while (!stopping) {
+				try {
+					Outgoing first = queue.take();
+					stopping = first == Outgoing.STOP;
+					if (!stopping) {
+						batch.add(first);
+					}
+					long deadline = System.nanoTime() + maxBatchDelayNanos;
+					while (!stopping && batch.size() < maxBatchSize) {
+						long wait = deadline - System.nanoTime();
+						Outgoing next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+						if (next == null) {
+							break;
+						}
+						stopping = next == Outgoing.STOP;
+						if (!stopping) {
+							batch.add(next);
+						}
+					}
+				} catch (InterruptedException e) {
+					stopping = true;
+				}
+				if (!batch.isEmpty()) {
+					send(batch);
+					batch.clear();
+				}
+			}
+		}
+
+		private void send(List<Outgoing> batch) {
+			try {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream out = new DataOutputStream(bytes);
+				out.writeInt(MAGIC);
+				out.writeUTF(serviceId.getId());
+				out.writeInt(batch.size());
+				for (Outgoing command : batch) {
+					out.writeLong(command.queuedAt);
+					out.writeInt(command.command.length);
+					out.write(command.command);
+				}
+				out.flush();
+				//counted before the channel delivers it: a receiver never sees a batch not counted yet
+				sentBatches.incrementAndGet();
+				sentCommands.addAndGet(batch.size());
+				try {
+					channel.send(bytes.toByteArray());
+				} catch (IOException | RuntimeException e) {
+					sentBatches.decrementAndGet();
+					sentCommands.addAndGet(-batch.size());
+					throw e;
+				}
+			} catch (IOException | RuntimeException e) {
+				failedBatches.incrementAndGet();
+				try {
+					rcm.handleException(CommunicationException.errorSendingMessage(toString(), e));
+				} catch (RuntimeException handled) {
+					// the batch is lost, and has been logged
+				}
+			}
+		}
+
+		void receive(byte[] message) {
+			List<byte[]> commands = new ArrayList<>();
+			List<Long> queuedAt = new ArrayList<>();
+			String sender;
+			try {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+				if (in.readInt() != MAGIC) {
+					throw new IOException("Not a cache coordination batch");
+				}
+				sender = in.readUTF();
+				for (int count = in.readInt(); count > 0; count--) {
+					queuedAt.add(in.readLong());
+					byte[] command = new byte[in.readInt()];
+					in.readFully(command);
+					commands.add(command);
+				}
+			} catch (IOException e) {
+				failDeserializeMessage(null, e);
+				return;
+			}
+			receivedBatches.incrementAndGet();
+			for (int i = 0; i < commands.size(); i++) {
+				try {
+					rcm.processCommandFromRemoteConnection(commands.get(i));
+					receivedCommands.incrementAndGet();
+					synchronized (lag) {
+						lag.record(Math.max(0, epochNanos() - queuedAt.get(i)));
+					}
+				} catch (RuntimeException e) {
+					failedCommands.incrementAndGet();
+					try {
+						rcm.handleException(RemoteCommandManagerException.errorProcessingRemoteCommand(toString(),
+								null, sender, "Command", e));
+					} catch (RuntimeException handled) {
+						// logged; the other commands of the batch still apply
+					}
+				}
+			}
+		}
+
+		@Override
+		protected void closeInternal() throws Exception {
+			queue.add(Outgoing.STOP);
+			sender.join(TimeUnit.SECONDS.toMillis(10));
+			channel.close();
+		}
+
+		@Override
+		protected void createDisplayString() {
+			this.displayString = "ChannelConnection[" + channel + ", " + serviceId.getId() + "]";
+		}
+	}
+
+	/**
+	 * A snapshot of what the transport sent and received, and of the lag of the commands it received.
+	 */
+	public static final class Metrics {
+
+		private final long queuedCommands;
+		private final long sentCommands;
+		private final long sentBatches;
+		private final long failedBatches;
+		private final long receivedCommands;
+		private final long receivedBatches;
+		private final long failedCommands;
+		private final double meanLagMillis;
+		private final double p99LagMillis;
+		private final double maxLagMillis;
+
+		private Metrics(ChannelTransportManager transport) {
+			this.receivedCommands = transport.receivedCommands.get();
+			this.receivedBatches = transport.receivedBatches.get();
+			this.failedCommands = transport.failedCommands.get();
+			this.sentCommands = transport.sentCommands.get();
+			this.sentBatches = transport.sentBatches.get();
+			this.failedBatches = transport.failedBatches.get();
+			this.queuedCommands = transport.queuedCommands.get();
+			synchronized (transport.lag) {
+				this.meanLagMillis = transport.lag.getMean() / 1e6;
+				this.p99LagMillis = transport.lag.getCount() == 0 ? 0 : transport.lag.percentile(99) / 1e6;
+				this.maxLagMillis = transport.lag.getMax() / 1e6;
+			}
+		}
+
+		/**
+		 * Commands handed to the transport by local commits.
+		 */
+		public long getQueuedCommands() {
+			return queuedCommands;
+		}
+
+		/**
+		 * Commands queued but not sent yet, nor failed.
+		 */
+		public long getPendingCommands() {
+			return Math.max(0, queuedCommands - sentCommands);
+		}
+
+		public long getSentCommands() {
+			return sentCommands;
+		}
+
+		public long getSentBatches() {
+			return sentBatches;
+		}
+
+		public long getFailedBatches() {
+			return failedBatches;
+		}
+
+		/**
+		 * Commands of other members processed without error.
+		 */
+		public long getReceivedCommands() {
+			return receivedCommands;
+		}
+
+		public long getReceivedBatches() {
+			return receivedBatches;
+		}
+
+		public long getFailedCommands() {
+			return failedCommands;
+		}
+
+		/**
+		 * Mean time from the commit of another member to the processing of its command here.
+		 */
+		public double getMeanLagMillis() {
+			return meanLagMillis;
+		}
+
+		public double getP99LagMillis() {
+			return p99LagMillis;
+		}
+
+		public double getMaxLagMillis() {
+			return maxLagMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"queuedCommands=%d, sentCommands=%d, sentBatches=%d, failedBatches=%d, receivedCommands=%d, "
+							+ "receivedBatches=%d, failedCommands=%d, meanLagMillis=%.3f, p99LagMillis=%.3f, "
+							+ "maxLagMillis=%.3f",
+					queuedCommands, sentCommands, sentBatches, failedBatches, receivedCommands, receivedBatches,
+					failedCommands, meanLagMillis, p99LagMillis, maxLagMillis);
+		}
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.test.eclipselink.jpa.fetch_state.coordination;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * The medium over which ChannelTransportManager exchanges cache coordination messages with the other members of a
+ * cluster: one channel instance per EntityManagerFactory, all members of a cluster on channels with the same name.
+ *
+ * Messages are opaque byte arrays, each a batch of commands. A channel only has to deliver them to the other members,
+ * each member's messages in the order they were sent; delivery may be best-effort, as a lost message only leaves
+ * entries in the receiving caches stale until they expire or are refreshed. Implementations must have a public
+ * constructor taking the channel name to be named in the fetch-state.cache-coordination.channel-class property (see
+ * CacheCoordination); InMemoryChannel connects the factories of one JVM.
+ *
+ */
+public interface CoordinationChannel {
+
+	/**
+	 * Joins the channel: from then on, the messages of the other members are passed to the receiver, one at a time,
+	 * on a thread of the channel.
+	 */
+	void open(Consumer<byte[]> receiver) throws IOException;
+
+	/**
+	 * Sends a message to the other members; must not wait for them to process it. The array must not be modified
+	 * afterwards, by the sender or by the receivers.
+	 */
+	void send(byte[] message) throws IOException;
+
+	/**
+	 * Leaves the channel; messages sent to this member afterwards are dropped.
+	 */
+	void close();
+
+}
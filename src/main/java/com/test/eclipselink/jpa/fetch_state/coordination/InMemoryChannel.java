@@ -0,0 +1,96 @@
+package com.test.eclipselink.jpa.fetch_state.coordination;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * A CoordinationChannel between the EntityManagerFactories of one JVM: every instance opened with the same name is a
+ * member of the same cluster, without any broker or socket in between.
+ *
+ * Each member receives on a thread of its own, so a sender never runs (or waits for) the receivers' processing, and
+ * receives the messages of every other member in the order they were sent. Messages are handed over as they are, not
+ * copied.
+ *
+ */
+public class InMemoryChannel implements CoordinationChannel {
+
+	private static final ConcurrentMap<String, List<InMemoryChannel>> CLUSTERS = new ConcurrentHashMap<>();
+
+	private final String name;
+	private volatile Consumer<byte[]> receiver;
+	private volatile ExecutorService delivery;
+
+	public InMemoryChannel(String name) {
+		if (name == null || name.trim().isEmpty()) {
+			throw new IllegalArgumentException("The channel needs a name");
+		}
+		this.name = name.trim();
+	}
+
+	/**
+	 * The number of open channels with the given name.
+	 */
+	public static int members(String name) {
+		return CLUSTERS.getOrDefault(name, Collections.<InMemoryChannel> emptyList()).size();
+	}
+
+	@Override
+	public synchronized void open(Consumer<byte[]> receiver) {
+		if (delivery != null) {
+			throw new IllegalStateException("Channel " + name + " is already open");
+		}
+		this.receiver = receiver;
+		this.delivery = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "in-memory-channel-" + name);
+			thread.setDaemon(true);
+			return thread;
+		});
+		CLUSTERS.computeIfAbsent(name, key -> new CopyOnWriteArrayList<>()).add(this);
+	}
+
+	@Override
+	public void send(byte[] message) {
+		for (InMemoryChannel member : CLUSTERS.getOrDefault(name, Collections.<InMemoryChannel> emptyList())) {
+			if (member != this) {
+				member.deliver(message);
+			}
+		}
+	}
+
+	private void deliver(byte[] message) {
+		ExecutorService delivery = this.delivery;
+		if (delivery == null) {
+			return;
+		}
+		try {
+			delivery.execute(() -> receiver.accept(message));
+		} catch (RejectedExecutionException closed) {
+			// left the channel in the meantime
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		CLUSTERS.computeIfPresent(name, (key, members) -> {
+			members.remove(this);
+			return members.isEmpty() ? null : members;
+		});
+		if (delivery != null) {
+			delivery.shutdown();
+			delivery = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "InMemoryChannel[" + name + "]";
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.test.eclipselink.jpa.fetch_state.customizers;
+
+import java.util.Locale;
+import java.util.Map;
+
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ForeignReferenceMapping;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * Chooses how each association is loaded from persistence unit properties, whatever its annotations say:
+ *
+ * 		fetch-state.fetch-strategy.RootEntity.ownedAssoc=BATCH_IN
+ * 		fetch-state.fetch-strategy.RootEntity.refCollectionAssoc=BATCH_EXISTS
+ *
+ * The part after the prefix is the entity name (or the fully qualified class name), a dot and the attribute, and the
+ * value is one of {@link Strategy}. Associations without a property keep what their annotations gave them.
+ *
+ * The strategy is a mapping default, so it applies to every query reading the entity, whether it goes on to use the
+ * association or not: a JOIN_FETCH association is read along with every root, a batch fetched one only once the
+ * first root of a query result touches it. Query hints (eclipselink.join-fetch, eclipselink.batch) still add to it.
+ * EclipseLink takes the size of an IN batch from the query that read the roots (eclipselink.batch.size, along with
+ * eclipselink.batch.type=IN; 500 when not given), not from the mapping, so it cannot be set here.
+ * BatchFetchStrategyBenchmark measures the strategies on the associations of RootEntity and prints the properties it
+ * recommends.
+ *
+ */
+public class AssociationFetchStrategies implements SessionCustomizer {
+
+	public static final String PROPERTY_PREFIX = "fetch-state.fetch-strategy.";
+
+	public enum Strategy {
+
+		/**
+		 * One SELECT per root, when the association is first accessed.
+		 */
+		LAZY {
+			@Override
+			void apply(ForeignReferenceMapping mapping) {
+				mapping.setJoinFetch(ForeignReferenceMapping.NONE);
+				mapping.setUsesBatchReading(false);
+				mapping.setBatchFetchType(null);
+			}
+		},
+
+		/**
+		 * Outer joined into every query reading the entity.
+		 */
+		JOIN_FETCH {
+			@Override
+			void apply(ForeignReferenceMapping mapping) {
+				mapping.setUsesBatchReading(false);
+				mapping.setBatchFetchType(null);
+				mapping.setJoinFetch(ForeignReferenceMapping.OUTER_JOIN);
+			}
+		},
+
+		/**
+		 * On first access, one SELECT for the whole result, joining the query that read the roots again.
+		 */
+		BATCH_JOIN(BatchFetchType.JOIN),
+
+		/**
+		 * On first access, one SELECT for the whole result, with the query that read the roots in an EXISTS subquery.
+		 */
+		BATCH_EXISTS(BatchFetchType.EXISTS),
+
+		/**
+		 * On first access, one SELECT per batch of roots, by the keys of the roots of the batch.
+		 */
+		BATCH_IN(BatchFetchType.IN);
+
+		private final BatchFetchType batchFetchType;
+
+		Strategy() {
+			this(null);
+		}
+
+		Strategy(BatchFetchType batchFetchType) {
+			this.batchFetchType = batchFetchType;
+		}
+
+		void apply(ForeignReferenceMapping mapping) {
+			mapping.setJoinFetch(ForeignReferenceMapping.NONE);
+			mapping.setUsesBatchReading(true);
+			mapping.setBatchFetchType(batchFetchType);
+		}
+	}
+
+	/**
+	 * The property that selects the strategy of the given association.
+	 */
+	public static String property(Class<?> entityClass, String attribute) {
+		return PROPERTY_PREFIX + entityClass.getSimpleName() + "." + attribute;
+	}
+
+	@Override
+	public void customize(Session session) throws Exception {
+		for (Map.Entry<Object, Object> property : session.getProperties().entrySet()) {
+			String key = property.getKey().toString();
+			if (!key.startsWith(PROPERTY_PREFIX) || property.getValue() == null) {
+				continue;
+			}
+			ForeignReferenceMapping mapping = mappingFor(session, PROPERTY_PREFIX, key);
+			Strategy strategy = property.getValue() instanceof Strategy ? (Strategy) property.getValue()
+					: Strategy.valueOf(property.getValue().toString().trim().toUpperCase(Locale.ROOT));
+			strategy.apply(mapping);
+			session.getSessionLog().log(SessionLog.CONFIG, SessionLog.PROPERTIES, "{0} fetch strategy for {1}.{2}",
+					new Object[] { strategy, mapping.getDescriptor().getJavaClassName(), mapping.getAttributeName() },
+					false);
+		}
+	}
+
+	/**
+	 * The association named by a [prefix][entity].[attribute] property.
+	 */
+	static ForeignReferenceMapping mappingFor(Session session, String prefix, String property) {
+		String path = property.substring(prefix.length());
+		int dot = path.lastIndexOf('.');
+		if (dot <= 0) {
+			throw new IllegalArgumentException(property + " does not name an [entity].[attribute]");
+		}
+		String entity = path.substring(0, dot);
+		String attribute = path.substring(dot + 1);
+		ClassDescriptor descriptor = null;
+		for (ClassDescriptor candidate : session.getDescriptors().values()) {
+			if (entity.equals(candidate.getAlias()) || entity.equals(candidate.getJavaClassName())) {
+				descriptor = candidate;
+				break;
+			}
+		}
+		if (descriptor == null) {
+			throw new IllegalArgumentException(property + " names entity '" + entity + "', which is not mapped");
+		}
+		DatabaseMapping mapping = descriptor.getMappingForAttributeName(attribute);
+		if (!(mapping instanceof ForeignReferenceMapping)) {
+			throw new IllegalArgumentException(property + " names attribute '" + attribute + "', which is not an "
+					+ "association of " + descriptor.getJavaClassName());
+		}
+		return (ForeignReferenceMapping) mapping;
+	}
+
+}
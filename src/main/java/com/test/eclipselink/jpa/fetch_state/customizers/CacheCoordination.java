@@ -0,0 +1,119 @@
+package com.test.eclipselink.jpa.fetch_state.customizers;
+
+import java.lang.reflect.Constructor;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.coordination.CommandManager;
+import org.eclipse.persistence.sessions.coordination.RemoteCommandManager;
+
+import com.test.eclipselink.jpa.fetch_state.coordination.ChannelTransportManager;
+import com.test.eclipselink.jpa.fetch_state.coordination.CoordinationChannel;
+import com.test.eclipselink.jpa.fetch_state.coordination.InMemoryChannel;
+
+/**
+ * Coordinates the shared caches of EntityManagerFactories over a CoordinationChannel (see ChannelTransportManager),
+ * given the name of the channel, which is also the name of the cluster:
+ *
+ * 		eclipselink.cache.shared.default=true
+ * 		fetch-state.cache-coordination.channel=orders
+ *
+ * Optional properties:
+ * 		-fetch-state.cache-coordination.channel-class: the CoordinationChannel implementation, default InMemoryChannel
+ * 			(factories of the same JVM); the channel property may also be a CoordinationChannel instance
+ * 		-fetch-state.cache-coordination.batch-size: the most commands sent in one message, default 100
+ * 		-fetch-state.cache-coordination.batch-delay-ms: the longest a command waits for others to join its batch,
+ * 			default 5
+ *
+ * Every descriptor is switched to INVALIDATE_CHANGED_OBJECTS: a commit only sends the ids of the objects it changed,
+ * and the other members invalidate them, to read them again on their next access. Sending the changes themselves
+ * would save those reads but make every command as large as the change set, and apply it to objects the receivers
+ * may never read again. Without a shared cache there is nothing to coordinate, and the commands are ignored.
+ *
+ * The command manager becomes the one of the server session, which therefore must not have one already; its
+ * transport can be looked up afterwards with {@link #transport(Session)}.
+ *
+ */
+public class CacheCoordination implements SessionCustomizer {
+
+	public static final String PROPERTY = "fetch-state.cache-coordination.channel";
+
+	public static final String CHANNEL_CLASS_PROPERTY = "fetch-state.cache-coordination.channel-class";
+
+	public static final String BATCH_SIZE_PROPERTY = "fetch-state.cache-coordination.batch-size";
+
+	public static final String BATCH_DELAY_PROPERTY = "fetch-state.cache-coordination.batch-delay-ms";
+
+	/**
+	 * The coordination transport of the session, or null if cache coordination is not configured.
+	 */
+	public static ChannelTransportManager transport(Session session) {
+		CommandManager manager = ((AbstractSession) session).getCommandManager();
+		return manager != null && manager.getTransportManager() instanceof ChannelTransportManager
+				? (ChannelTransportManager) manager.getTransportManager() : null;
+	}
+
+	@Override
+	public void customize(Session session) throws Exception {
+		Object value = session.getProperty(PROPERTY);
+		if (value == null || value.toString().trim().isEmpty()) {
+			return;
+		}
+		if (!session.isServerSession()) {
+			throw new IllegalArgumentException(PROPERTY + " needs a server session, not " + session);
+		}
+		AbstractSession server = (AbstractSession) session;
+		if (server.getCommandManager() != null) {
+			throw new IllegalArgumentException(PROPERTY + " cannot replace the command manager "
+					+ server.getCommandManager() + " of the session");
+		}
+		CoordinationChannel channel = value instanceof CoordinationChannel ? (CoordinationChannel) value
+				: channel(session, value.toString().trim());
+		int batchSize = intProperty(session, BATCH_SIZE_PROPERTY, 100, 1);
+		int batchDelay = intProperty(session, BATCH_DELAY_PROPERTY, 5, 0);
+
+		RemoteCommandManager rcm = new RemoteCommandManager(server);
+		rcm.setChannel(channel.toString());
+		new ChannelTransportManager(rcm, channel, batchSize, batchDelay);
+		// commands are only queued by the transport, so sending them on the committing thread costs nothing
+		rcm.setShouldPropagateAsynchronously(false);
+		server.setCommandManager(rcm);
+		server.setShouldPropagateChanges(true);
+		for (ClassDescriptor descriptor : server.getDescriptors().values()) {
+			descriptor.setCacheSynchronizationType(ClassDescriptor.INVALIDATE_CHANGED_OBJECTS);
+		}
+	}
+
+	private static CoordinationChannel channel(Session session, String name) throws ReflectiveOperationException {
+		Object value = session.getProperty(CHANNEL_CLASS_PROPERTY);
+		if (value == null || value.toString().trim().isEmpty()) {
+			return new InMemoryChannel(name);
+		}
+		Class<?> type = Class.forName(value.toString().trim(), true, CacheCoordination.class.getClassLoader());
+		if (!CoordinationChannel.class.isAssignableFrom(type)) {
+			throw new IllegalArgumentException(CHANNEL_CLASS_PROPERTY + " names " + type.getName()
+					+ ", which is not a " + CoordinationChannel.class.getSimpleName());
+		}
+		Constructor<?> constructor = type.getConstructor(String.class);
+		return (CoordinationChannel) constructor.newInstance(name);
+	}
+
+	private static int intProperty(Session session, String property, int defaultValue, int min) {
+		Object value = session.getProperty(property);
+		if (value == null || value.toString().trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			int result = Integer.parseInt(value.toString().trim());
+			if (result >= min) {
+				return result;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException(property + " must be a number >= " + min + ", not '" + value + "'");
+	}
+
+}
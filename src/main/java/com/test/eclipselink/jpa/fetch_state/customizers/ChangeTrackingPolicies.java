@@ -0,0 +1,122 @@
+package com.test.eclipselink.jpa.fetch_state.customizers;
+
+import java.util.Locale;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.changetracking.AttributeChangeTrackingPolicy;
+import org.eclipse.persistence.descriptors.changetracking.ChangeTracker;
+import org.eclipse.persistence.descriptors.changetracking.DeferredChangeDetectionPolicy;
+import org.eclipse.persistence.descriptors.changetracking.ObjectChangePolicy;
+import org.eclipse.persistence.descriptors.changetracking.ObjectChangeTrackingPolicy;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * Chooses the change tracking policy per entity class from persistence unit properties.
+ *
+ * Weaving (with its default set of capabilities) gives every entity attribute-level change tracking. That is a
+ * project-wide decision; these properties make it a per-entity one:
+ *
+ * 		fetch-state.change-tracking.default=DEFERRED
+ * 		fetch-state.change-tracking.RootEntity=ATTRIBUTE
+ *
+ * The part after the prefix is either the entity name or the fully qualified class name, and the value is one of
+ * {@link Policy}. Entities without a matching property (and no default) keep what weaving gave them.
+ *
+ * ATTRIBUTE and OBJECT need the class to be woven for change tracking (to implement ChangeTracker); DEFERRED works
+ * on any class. Switching a woven class to DEFERRED simply leaves its woven listener unset.
+ *
+ */
+public class ChangeTrackingPolicies implements SessionCustomizer {
+
+	public static final String PROPERTY_PREFIX = "fetch-state.change-tracking.";
+
+	public static final String DEFAULT_PROPERTY = PROPERTY_PREFIX + "default";
+
+	public enum Policy {
+
+		/**
+		 * Woven setters record each changed attribute; commit only looks at recorded changes.
+		 */
+		ATTRIBUTE {
+			@Override
+			ObjectChangePolicy newChangePolicy() {
+				return new AttributeChangeTrackingPolicy();
+			}
+		},
+
+		/**
+		 * Woven setters only flag the object as changed; commit compares flagged objects against their backup clone.
+		 */
+		OBJECT {
+			@Override
+			ObjectChangePolicy newChangePolicy() {
+				return new ObjectChangeTrackingPolicy();
+			}
+		},
+
+		/**
+		 * No listener at all; every managed object is backed up when registered and compared at commit.
+		 */
+		DEFERRED {
+			@Override
+			ObjectChangePolicy newChangePolicy() {
+				return new DeferredChangeDetectionPolicy();
+			}
+
+			@Override
+			boolean requiresChangeTracker() {
+				return false;
+			}
+		};
+
+		abstract ObjectChangePolicy newChangePolicy();
+
+		boolean requiresChangeTracker() {
+			return true;
+		}
+	}
+
+	/**
+	 * The property that selects the policy of the given entity.
+	 */
+	public static String property(Class<?> entityClass) {
+		return PROPERTY_PREFIX + entityClass.getSimpleName();
+	}
+
+	@Override
+	public void customize(Session session) throws Exception {
+		for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+			Policy policy = policyFor(session, descriptor);
+			if (policy == null) {
+				continue;
+			}
+			if (policy.requiresChangeTracker() && !ChangeTracker.class.isAssignableFrom(descriptor.getJavaClass())) {
+				throw new IllegalArgumentException("Change tracking policy " + policy + " was configured for "
+						+ descriptor.getJavaClassName() + ", which is not woven for change tracking.");
+			}
+			descriptor.setObjectChangePolicy(policy.newChangePolicy());
+			session.getSessionLog().log(SessionLog.CONFIG, SessionLog.PROPERTIES, "{0} change tracking for {1}",
+					new Object[] { policy, descriptor.getJavaClassName() }, false);
+		}
+	}
+
+	private static Policy policyFor(Session session, ClassDescriptor descriptor) {
+		Object value = session.getProperty(PROPERTY_PREFIX + descriptor.getAlias());
+		if (value == null) {
+			value = session.getProperty(PROPERTY_PREFIX + descriptor.getJavaClassName());
+		}
+		if (value == null) {
+			value = session.getProperty(DEFAULT_PROPERTY);
+		}
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof Policy) {
+			return (Policy) value;
+		}
+		return Policy.valueOf(value.toString().trim().toUpperCase(Locale.ROOT));
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.test.eclipselink.jpa.fetch_state.customizers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * The session customizer registered in persistence.xml ("eclipselink.session.customizer").
+ *
+ * EclipseLink only accepts a single session customizer per persistence unit, so this one simply runs each of the
+ * customizers of this package in turn. Each of them is driven by persistence unit properties and does nothing
+ * unless configured.
+ *
+ */
+public class FetchStateSessionCustomizer implements SessionCustomizer {
+
+	private final List<SessionCustomizer> customizers = Arrays.<SessionCustomizer> asList(new ChangeTrackingPolicies(),
+			new LazyJoinColumnIndexes(), new AssociationFetchStrategies(), new ReadReplicaRouting(),
+			new CacheCoordination(), new JoinColumnInserts());
+
+	@Override
+	public void customize(Session session) throws Exception {
+		for (SessionCustomizer customizer : customizers) {
+			customizer.customize(session);
+		}
+	}
+
+}
@@ -0,0 +1,301 @@
+package com.test.eclipselink.jpa.fetch_state.customizers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.DescriptorEvent;
+import org.eclipse.persistence.descriptors.DescriptorEventAdapter;
+import org.eclipse.persistence.expressions.Expression;
+import org.eclipse.persistence.expressions.ExpressionBuilder;
+import org.eclipse.persistence.internal.expressions.SQLUpdateStatement;
+import org.eclipse.persistence.internal.helper.DatabaseField;
+import org.eclipse.persistence.internal.queries.ContainerPolicy;
+import org.eclipse.persistence.internal.sessions.AbstractRecord;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.internal.sessions.CollectionChangeRecord;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.mappings.ForeignReferenceMapping;
+import org.eclipse.persistence.mappings.UnidirectionalOneToManyMapping;
+import org.eclipse.persistence.queries.DataModifyQuery;
+import org.eclipse.persistence.queries.ObjectLevelModifyQuery;
+import org.eclipse.persistence.sessions.DatabaseRecord;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+/**
+ * Writes the join column of a unidirectional one-to-many in the INSERT of its new targets, rather than in a second
+ * pass of UPDATEs:
+ *
+ * 		fetch-state.insert-join-column.RootEntity.keyCollectionAssoc=true
+ *
+ * The part after the prefix is the entity name (or the fully qualified class name), a dot and the attribute, as for
+ * AssociationFetchStrategies.
+ *
+ * EclipseLink inserts the targets of a unidirectional one-to-many without their foreign key, since the target does
+ * not map it, and sets it at the end of the commit with one UPDATE per target (batched with the other UPDATEs). With
+ * this customizer:
+ * 		-when a source is inserted or updated, the new targets added to its collection are noted along with the key of
+ * 			the source; sources are written before their targets, in the order of the commit
+ * 		-when a noted target is inserted, the foreign key is added to its INSERT row (replacing the column of a basic
+ * 			mapping of the target, such as KeyMappingCollectionAssoc.parentId, which is then left as it is in the object)
+ * 		-the UPDATE of a target that was inserted with the foreign key is skipped; the others (existing targets added
+ * 			to a collection) still run
+ * Removing targets is left to EclipseLink. The notes are kept in the properties of the UnitOfWork, and consumed by
+ * the commit.
+ *
+ * Collections with an @OrderColumn or a map key are written by the UPDATE as well, so they are rejected.
+ *
+ */
+public class JoinColumnInserts implements SessionCustomizer {
+
+	public static final String PROPERTY_PREFIX = "fetch-state.insert-join-column.";
+
+	/**
+	 * The property that enables the mode for the given association.
+	 */
+	public static String property(Class<?> entityClass, String attribute) {
+		return PROPERTY_PREFIX + entityClass.getSimpleName() + "." + attribute;
+	}
+
+	@Override
+	public void customize(Session session) throws Exception {
+		for (Map.Entry<Object, Object> property : session.getProperties().entrySet()) {
+			String key = property.getKey().toString();
+			if (!key.startsWith(PROPERTY_PREFIX) || property.getValue() == null
+					|| !Boolean.parseBoolean(property.getValue().toString().trim())) {
+				continue;
+			}
+			ForeignReferenceMapping mapping = AssociationFetchStrategies.mappingFor(session, PROPERTY_PREFIX, key);
+			if (!(mapping instanceof UnidirectionalOneToManyMapping)) {
+				throw new IllegalArgumentException(key + " names " + mapping.getAttributeName()
+						+ ", which is not a unidirectional one-to-many with a join column");
+			}
+			UnidirectionalOneToManyMapping collection = (UnidirectionalOneToManyMapping) mapping;
+			if (collection.getListOrderField() != null || collection.getContainerPolicy().isMapPolicy()) {
+				throw new IllegalArgumentException(key + " names " + mapping.getAttributeName()
+						+ ", which has an order column or a map key");
+			}
+			new Writer(session, collection).install();
+			session.getSessionLog().log(SessionLog.CONFIG, SessionLog.PROPERTIES, "Join column in INSERT for {0}.{1}",
+					new Object[] { mapping.getDescriptor().getJavaClassName(), mapping.getAttributeName() }, false);
+		}
+	}
+
+	/**
+	 * The foreign keys of one commit: noted for new targets, then written with their INSERT.
+	 */
+	private static final class Commit {
+
+		private final Map<Object, Object[]> noted = new IdentityHashMap<>();
+		private final Map<Object, Object[]> inserted = new HashMap<>();
+	}
+
+	private static final class Writer {
+
+		private final Session session;
+		private final UnidirectionalOneToManyMapping mapping;
+		private final ClassDescriptor source;
+		private final ClassDescriptor target;
+		private final String commitProperty;
+
+		Writer(Session session, UnidirectionalOneToManyMapping mapping) {
+			this.session = session;
+			this.mapping = mapping;
+			this.source = mapping.getDescriptor();
+			this.target = session.getDescriptor(mapping.getReferenceClass());
+			this.commitProperty = JoinColumnInserts.class.getName() + "." + source.getJavaClassName() + "."
+					+ mapping.getAttributeName();
+		}
+
+		void install() {
+			source.getEventManager().addListener(new DescriptorEventAdapter() {
+
+				@Override
+				public void aboutToInsert(DescriptorEvent event) {
+					noteNewTargets(event);
+				}
+
+				@Override
+				public void preUpdateWithChanges(DescriptorEvent event) {
+					noteNewTargets(event);
+				}
+			});
+			target.getEventManager().addListener(new DescriptorEventAdapter() {
+
+				@Override
+				public void aboutToInsert(DescriptorEvent event) {
+					writeForeignKey(event);
+				}
+			});
+			mapping.setCustomAddTargetQuery(new AddTargetQuery(this, buildAddTargetStatement()));
+			// targets noted but not inserted (flushed earlier) are dropped with the transaction
+			session.getEventManager().addListener(new SessionEventAdapter() {
+
+				@Override
+				public void postCommitTransaction(SessionEvent event) {
+					forget(event.getSession());
+				}
+
+				@Override
+				public void postRollbackTransaction(SessionEvent event) {
+					forget(event.getSession());
+				}
+			});
+		}
+
+		/**
+		 * The UPDATE EclipseLink would build for the mapping: SET [foreign key] = ? WHERE [target primary key] = ?.
+		 */
+		private SQLUpdateStatement buildAddTargetStatement() {
+			DatabaseRecord modifyRow = new DatabaseRecord();
+			for (DatabaseField foreignKey : mapping.getTargetForeignKeyFields()) {
+				modifyRow.put(foreignKey, null);
+			}
+			ExpressionBuilder builder = new ExpressionBuilder();
+			Expression where = null;
+			for (DatabaseField primaryKey : target.getPrimaryKeyFields()) {
+				where = builder.getField(primaryKey).equal(builder.getParameter(primaryKey)).and(where);
+			}
+			SQLUpdateStatement statement = new SQLUpdateStatement();
+			statement.setTable(target.getTables().get(0));
+			statement.setWhereClause(where);
+			statement.setModifyRow(modifyRow);
+			return statement;
+		}
+
+		private Commit commit(AbstractSession session, boolean create) {
+			Commit commit = (Commit) session.getProperty(commitProperty);
+			if (commit == null && create) {
+				commit = new Commit();
+				session.setProperty(commitProperty, commit);
+			}
+			return commit;
+		}
+
+		private void forget(Session session) {
+			if (session.isUnitOfWork()) {
+				((AbstractSession) session).getProperties().remove(commitProperty);
+			}
+		}
+
+		private void release(AbstractSession session, Commit commit) {
+			if (commit.noted.isEmpty() && commit.inserted.isEmpty()) {
+				session.getProperties().remove(commitProperty);
+			}
+		}
+
+		private void noteNewTargets(DescriptorEvent event) {
+			if (!event.getSession().isUnitOfWork() || !(event.getQuery() instanceof ObjectLevelModifyQuery)) {
+				return;
+			}
+			UnitOfWorkImpl uow = (UnitOfWorkImpl) event.getSession();
+			ObjectChangeSet changeSet = ((ObjectLevelModifyQuery) event.getQuery()).getObjectChangeSet();
+			List<Object> added = new ArrayList<>();
+			if (changeSet == null || changeSet.isNew()) {
+				// the change set of a new source has no record of its collections
+				ContainerPolicy containerPolicy = mapping.getContainerPolicy();
+				Object targets = mapping.getRealCollectionAttributeValueFromObject(event.getObject(), uow);
+				for (Object iterator = containerPolicy.iteratorFor(targets); containerPolicy.hasNext(iterator);) {
+					added.add(containerPolicy.next(iterator, uow));
+				}
+			} else {
+				CollectionChangeRecord changes = (CollectionChangeRecord) changeSet
+						.getChangesForAttributeNamed(mapping.getAttributeName());
+				if (changes != null) {
+					for (ObjectChangeSet addedChangeSet : changes.getAddObjectList().keySet()) {
+						added.add(addedChangeSet.getUnitOfWorkClone());
+					}
+				}
+			}
+			Object[] foreignKey = null;
+			Commit commit = null;
+			for (Object target : added) {
+				if (target == null || !uow.isCloneNewObject(target)) {
+					continue;
+				}
+				if (foreignKey == null) {
+					List<DatabaseField> sourceKeys = mapping.getSourceKeyFields();
+					foreignKey = new Object[sourceKeys.size()];
+					for (int i = 0; i < foreignKey.length; i++) {
+						foreignKey[i] = source.getObjectBuilder().extractValueFromObjectForField(event.getObject(),
+								sourceKeys.get(i), uow);
+					}
+					commit = commit(uow, true);
+				}
+				commit.noted.put(target, foreignKey);
+			}
+		}
+
+		private void writeForeignKey(DescriptorEvent event) {
+			AbstractSession session = event.getSession();
+			Commit commit = commit(session, false);
+			Object[] foreignKey = commit == null ? null : commit.noted.remove(event.getObject());
+			if (foreignKey == null) {
+				return;
+			}
+			List<DatabaseField> foreignKeyFields = mapping.getTargetForeignKeyFields();
+			for (int i = 0; i < foreignKey.length; i++) {
+				((AbstractRecord) event.getRecord()).put(foreignKeyFields.get(i), foreignKey[i]);
+			}
+			commit.inserted.put(target.getObjectBuilder().extractPrimaryKeyFromObject(event.getObject(), session),
+					foreignKey);
+		}
+
+		/**
+		 * Whether the UPDATE of the target in the row would only write the foreign key its INSERT wrote.
+		 */
+		boolean insertedWith(AbstractSession session, AbstractRecord row) {
+			Commit commit = commit(session, false);
+			if (commit == null || commit.inserted.isEmpty()) {
+				return false;
+			}
+			Object primaryKey = target.getObjectBuilder().extractPrimaryKeyFromRow(row, session);
+			Object[] foreignKey = commit.inserted.get(primaryKey);
+			if (foreignKey == null) {
+				return false;
+			}
+			List<DatabaseField> foreignKeyFields = mapping.getTargetForeignKeyFields();
+			for (int i = 0; i < foreignKey.length; i++) {
+				Object value = row.get(foreignKeyFields.get(i));
+				if (value == null ? foreignKey[i] != null : !value.equals(foreignKey[i])) {
+					return false;
+				}
+			}
+			commit.inserted.remove(primaryKey);
+			release(session, commit);
+			return true;
+		}
+	}
+
+	/**
+	 * The UPDATE that sets the foreign key of an added target, skipped for targets inserted with it.
+	 */
+	private static final class AddTargetQuery extends DataModifyQuery {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Writer writer;
+
+		AddTargetQuery(Writer writer, SQLUpdateStatement statement) {
+			this.writer = writer;
+			setSQLStatement(statement);
+		}
+
+		@Override
+		public Object execute(AbstractSession session, AbstractRecord translationRow) {
+			if (writer.insertedWith(session, translationRow)) {
+				return Integer.valueOf(0);
+			}
+			return super.execute(session, translationRow);
+		}
+	}
+
+}
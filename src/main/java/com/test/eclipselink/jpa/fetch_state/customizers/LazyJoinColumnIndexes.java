@@ -0,0 +1,210 @@
+package com.test.eclipselink.jpa.fetch_state.customizers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.helper.DatabaseField;
+import org.eclipse.persistence.internal.helper.DatabaseTable;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ForeignReferenceMapping;
+import org.eclipse.persistence.mappings.OneToManyMapping;
+import org.eclipse.persistence.mappings.OneToOneMapping;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.tools.schemaframework.IndexDefinition;
+
+/**
+ * Declares an index on every join column that a lazy association looks its target up through, so that DDL
+ * generation ("eclipselink.ddl-generation") creates them along with the tables:
+ *
+ * 		fetch-state.ddl.lazy-join-column-indexes=true
+ *
+ * DDL generation only creates foreign key constraints. Whether the database backs them with an index is up to the
+ * database (HSQLDB and MySQL do, PostgreSQL, Oracle and SQL Server do not), and without one every lazy collection
+ * load, and every mappedBy one-to-one lookup, is a full scan of the target table. The join columns are:
+ * 		-the target foreign key of a lazy one-to-many, mappedBy or unidirectional (KEY_COLLECTION_ASSOC.PARENT_ID,
+ * 			REF_COLLECTION_ASSOC.PARENT_ID)
+ * 		-the target foreign key of a lazy mappedBy one-to-one (OWNING_ASSOC.OWNED_PARENT)
+ * 		-the source foreign key of a lazy one-to-one or many-to-one (ROOT_ENTITY.OWNED_FK); the target itself is
+ * 			looked up by primary key, but every query walking the association the other way filters on it
+ *
+ * Columns that are already the primary key, or the leading columns of an index declared on the table (@Index), are
+ * left alone, and a column shared by both sides of an association gets a single index. The indexes are named like
+ * the foreign key constraints, with "IX_" instead of "FK_".
+ *
+ * The indexes actually created are reported at startup, one INFO line each in the "ddl" log category, and can be
+ * listed afterwards with {@link #createdIndexes(Session)}.
+ *
+ */
+public class LazyJoinColumnIndexes implements SessionCustomizer {
+
+	public static final String PROPERTY = "fetch-state.ddl.lazy-join-column-indexes";
+
+	/**
+	 * The indexes created by DDL generation, in the order they were created, or an empty list if none were declared.
+	 */
+	public static List<String> createdIndexes(Session session) {
+		for (Object listener : session.getEventManager().getListeners()) {
+			if (listener instanceof Report) {
+				return Collections.unmodifiableList(new ArrayList<>(((Report) listener).created));
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	@Override
+	public void customize(Session session) throws Exception {
+		Object value = session.getProperty(PROPERTY);
+		if (value == null || !Boolean.parseBoolean(value.toString().trim())) {
+			return;
+		}
+
+		Report report = new Report(session);
+		for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+			for (DatabaseMapping mapping : descriptor.getMappings()) {
+				if (!mapping.isLazy()) {
+					continue;
+				}
+				if (mapping.isOneToManyMapping()) {
+					OneToManyMapping oneToMany = (OneToManyMapping) mapping;
+					declare(session, report, mapping, referenceDescriptor(session, oneToMany),
+							oneToMany.getTargetForeignKeyFields());
+				} else if (mapping.isOneToOneMapping()) {
+					OneToOneMapping oneToOne = (OneToOneMapping) mapping;
+					if (oneToOne.isForeignKeyRelationship()) {
+						declare(session, report, mapping, descriptor, oneToOne.getForeignKeyFields());
+					} else {
+						declare(session, report, mapping, referenceDescriptor(session, oneToOne),
+								oneToOne.getTargetToSourceKeyFields().keySet());
+					}
+				}
+			}
+		}
+		if (!report.declared.isEmpty()) {
+			session.getEventManager().addListener(report);
+		}
+	}
+
+	/**
+	 * Reference descriptors are only set when the descriptors are initialized, at login.
+	 */
+	private static ClassDescriptor referenceDescriptor(Session session, ForeignReferenceMapping mapping) {
+		for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+			if (descriptor.getJavaClassName().equals(mapping.getReferenceClassName())) {
+				return descriptor;
+			}
+		}
+		return null;
+	}
+
+	private static void declare(Session session, Report report, DatabaseMapping mapping, ClassDescriptor owner,
+			Collection<DatabaseField> fields) {
+		if (owner == null || fields.isEmpty()) {
+			return;
+		}
+		DatabaseField first = fields.iterator().next();
+		DatabaseTable table = first.hasTableName() ? owner.getTable(first.getTableName()) : owner.getDefaultTable();
+		if (table == null) {
+			return;
+		}
+		List<String> columns = new ArrayList<>();
+		for (DatabaseField field : fields) {
+			columns.add(field.getName());
+		}
+		String attribute = mapping.getDescriptor().getAlias() + "." + mapping.getAttributeName();
+		if (isIndexed(owner, table, columns, report, attribute)) {
+			return;
+		}
+
+		IndexDefinition index = new IndexDefinition();
+		index.setName(indexName(session, table, columns));
+		index.setTargetTable(table.getQualifiedName());
+		index.getFields().addAll(columns);
+		table.addIndex(index);
+		List<String> attributes = new ArrayList<>();
+		attributes.add(attribute);
+		report.declared.put(index, attributes);
+	}
+
+	private static boolean isIndexed(ClassDescriptor owner, DatabaseTable table, List<String> columns, Report report,
+			String attribute) {
+		List<String> primaryKey = new ArrayList<>();
+		for (DatabaseField field : owner.getPrimaryKeyFields()) {
+			if (!field.hasTableName() || field.getTableName().equals(table.getName())) {
+				primaryKey.add(field.getName());
+			}
+		}
+		if (startsWith(primaryKey, columns)) {
+			return true;
+		}
+		if (table.hasIndexes()) {
+			for (IndexDefinition existing : table.getIndexes()) {
+				if (startsWith(existing.getFields(), columns)) {
+					if (report.declared.containsKey(existing)) {
+						report.declared.get(existing).add(attribute);
+					}
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean startsWith(List<String> indexed, List<String> columns) {
+		return indexed.size() >= columns.size() && indexed.subList(0, columns.size()).equals(columns);
+	}
+
+	private static String indexName(Session session, DatabaseTable table, List<String> columns) {
+		StringBuilder name = new StringBuilder("IX_").append(table.getName());
+		for (String column : columns) {
+			name.append('_').append(column);
+		}
+		int maxLength = session.getPlatform().getMaxIndexNameSize();
+		return name.length() > maxLength ? name.substring(0, maxLength) : name.toString();
+	}
+
+	/**
+	 * Watches the DDL statements for the CREATE INDEX of the declared indexes; the indexes of tables that already
+	 * existed are never created, and so never reported.
+	 */
+	private static final class Report extends SessionEventAdapter {
+
+		private final Session session;
+		private final Map<IndexDefinition, List<String>> declared = new LinkedHashMap<>();
+		private final List<String> created = Collections.synchronizedList(new ArrayList<String>());
+
+		private Report(Session session) {
+			this.session = session;
+		}
+
+		@Override
+		public void postExecuteQuery(SessionEvent event) {
+			if (!event.getQuery().isDataModifyQuery() || event.getQuery().getSQLString() == null) {
+				return;
+			}
+			String sql = event.getQuery().getSQLString();
+			if (!sql.startsWith("CREATE INDEX ")) {
+				return;
+			}
+			for (Map.Entry<IndexDefinition, List<String>> index : declared.entrySet()) {
+				IndexDefinition definition = index.getKey();
+				if (sql.startsWith("CREATE INDEX " + definition.getName() + " ")) {
+					created.add(definition.getName());
+					session.getSessionLog().log(SessionLog.INFO, SessionLog.DDL, "Created index {0} on {1} {2} for {3}",
+							new Object[] { definition.getName(), definition.getTargetTable(), definition.getFields(),
+									index.getValue() },
+							false);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.test.eclipselink.jpa.fetch_state.customizers;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.partitioning.PartitioningPolicy;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.server.ServerSession;
+
+import com.test.eclipselink.jpa.fetch_state.routing.ReadReplicaPolicy;
+
+/**
+ * Sends read-only and FetchGroup restricted reads to a read replica (see ReadReplicaPolicy), given the name of a
+ * connection pool that points at the replica:
+ *
+ * 		eclipselink.connection-pool.replica.url=jdbc:hsqldb:mem:test-replica
+ * 		fetch-state.read-replica.pool=replica
+ *
+ * The pool itself is an ordinary EclipseLink connection pool, configured with the "eclipselink.connection-pool.[name]."
+ * properties (url, min, max, user, password...); whatever it does not set is taken from the default login.
+ *
+ * The policy becomes the partitioning policy of the server session, which therefore must not have one already, and
+ * can be looked up afterwards with {@link #policy(Session)}.
+ *
+ */
+public class ReadReplicaRouting implements SessionCustomizer {
+
+	public static final String PROPERTY = "fetch-state.read-replica.pool";
+
+	/**
+	 * The routing policy of the session, or null if replica routing is not configured.
+	 */
+	public static ReadReplicaPolicy policy(Session session) {
+		PartitioningPolicy policy = ((AbstractSession) session).getPartitioningPolicy();
+		return policy instanceof ReadReplicaPolicy ? (ReadReplicaPolicy) policy : null;
+	}
+
+	@Override
+	public void customize(Session session) throws Exception {
+		Object value = session.getProperty(PROPERTY);
+		if (value == null || value.toString().trim().isEmpty()) {
+			return;
+		}
+		String pool = value.toString().trim();
+		if (!session.isServerSession()) {
+			throw new IllegalArgumentException(PROPERTY + " needs a server session, not " + session);
+		}
+		ServerSession server = (ServerSession) session;
+		if (server.getConnectionPool(pool) == null) {
+			throw new IllegalArgumentException(PROPERTY + " names connection pool '" + pool + "', which is not "
+					+ "configured: set eclipselink.connection-pool." + pool + ".url");
+		}
+		if (server.getPartitioningPolicy() != null) {
+			throw new IllegalArgumentException(PROPERTY + " cannot replace the partitioning policy "
+					+ server.getPartitioningPolicy() + " of the session");
+		}
+		server.setPartitioningPolicy(new ReadReplicaPolicy(pool));
+	}
+
+}
@@ -70,4 +70,19 @@ public class KeyMappingCollectionAssoc implements Serializable {
 		this.parentId = parentId;
 	}
 
+	@Override
+	public String toString() {
+		return LoadSafeObjects.toString(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return LoadSafeObjects.equals(this, obj);
+	}
+
+	@Override
+	public int hashCode() {
+		return LoadSafeObjects.hashCode(this);
+	}
+
 }
@@ -0,0 +1,297 @@
+package com.test.eclipselink.jpa.fetch_state.entities;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.Transient;
+
+import org.eclipse.persistence.indirection.IndirectContainer;
+import org.eclipse.persistence.indirection.ValueHolderInterface;
+import org.eclipse.persistence.internal.indirection.DatabaseValueHolder;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+
+/**
+ * toString, equals and hashCode for the entities of this package that never load anything: no lazy association,
+ * collection or attribute left out of a FetchGroup is read through its getter, no value holder is created, and no
+ * session is ever consulted, so they work the same on managed, detached and new entities, with the EntityManager
+ * open or closed, and never issue SQL.
+ *
+ * The entities delegate their own toString, equals and hashCode here. Everything is read from the fields directly,
+ * through getters resolved once per class from the mapping annotations (the entities' own methods would go through
+ * the woven field accessors, which load what they read):
+ * 		-attributes left out of the entity's FetchGroup print as &lt;not loaded&gt;
+ * 		-lazy to-one associations are read from the value holder woven next to them (_persistence_ownedAssoc_vh):
+ * 			an instantiated one prints as OwnedAssoc[id=1], one that is not as &lt;not loaded id=1&gt;, with the id of the
+ * 			target taken from the foreign key of the row the entity was built from, or &lt;not loaded id=?&gt; when the
+ * 			foreign key is on the other side (mappedBy)
+ * 		-collections print the ids of their elements once instantiated, &lt;not loaded id=?&gt; until then
+ * Associated entities are never printed in full, so cycles (RootEntity.owningAssoc.ownedParent) end there.
+ *
+ * Two entities are equal when they are of the same class and have the same, non-null id; an entity without an id
+ * is only equal to itself. The hash code follows the id, so ids must be assigned before entities are put in hash
+ * based collections, as they are here (no generated ids).
+ *
+ */
+public final class LoadSafeObjects {
+
+	private static final String NOT_LOADED = "<not loaded>";
+
+	private static final int MAX_PRINTED_ELEMENTS = 10;
+
+	private static final MethodType FIELD_GETTER = MethodType.methodType(Object.class, Object.class);
+
+	private static final ClassValue<ClassMetadata> METADATA = new ClassValue<ClassMetadata>() {
+		@Override
+		protected ClassMetadata computeValue(Class<?> type) {
+			return new ClassMetadata(type);
+		}
+	};
+
+	private LoadSafeObjects() {
+	}
+
+	/**
+	 * EntityClass[id=1, data1=..., data2=&lt;not loaded&gt;, ownedAssoc=&lt;not loaded id=1&gt;, ...]
+	 */
+	public static String toString(Object entity) {
+		if (entity == null) {
+			return "null";
+		}
+		ClassMetadata metadata = METADATA.get(entity.getClass());
+		FetchGroup fetchGroup = entity instanceof FetchGroupTracker
+				? ((FetchGroupTracker) entity)._persistence_getFetchGroup() : null;
+		StringBuilder result = new StringBuilder(entity.getClass().getSimpleName()).append('[');
+		for (int i = 0; i < metadata.attributes.size(); i++) {
+			Attribute attribute = metadata.attributes.get(i);
+			result.append(i == 0 ? "" : ", ").append(attribute.name).append('=');
+			if (fetchGroup != null && !attribute.isId && !fetchGroup.containsAttributeInternal(attribute.name)) {
+				result.append(NOT_LOADED);
+			} else {
+				attribute.print(entity, result);
+			}
+		}
+		return result.append(']').toString();
+	}
+
+	/**
+	 * Whether both are entities of the same class with the same id (or the same object).
+	 */
+	public static boolean equals(Object entity, Object other) {
+		if (entity == other) {
+			return true;
+		}
+		if (entity == null || other == null || entity.getClass() != other.getClass()) {
+			return false;
+		}
+		Object id = idOf(entity);
+		return id != null && id.equals(idOf(other));
+	}
+
+	/**
+	 * The hash code of the class and id of the entity, or its identity hash code if it has no id.
+	 */
+	public static int hashCode(Object entity) {
+		Object id = idOf(entity);
+		return id == null ? System.identityHashCode(entity) : 31 * entity.getClass().getName().hashCode() + id.hashCode();
+	}
+
+	/**
+	 * The id of the entity, read from its @Id field.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the class is not an entity with an @Id field
+	 */
+	public static Object idOf(Object entity) {
+		return METADATA.get(entity.getClass()).id.get(entity);
+	}
+
+	/**
+	 * The persistent attributes of an entity class, in declaration order (superclasses first).
+	 */
+	private static final class ClassMetadata {
+
+		private final Attribute id;
+		private final List<Attribute> attributes = new ArrayList<>();
+
+		ClassMetadata(Class<?> type) {
+			if (type.getAnnotation(Entity.class) == null) {
+				throw new IllegalArgumentException(type.getName() + " is not an entity");
+			}
+			List<Class<?>> hierarchy = new ArrayList<>();
+			for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+				hierarchy.add(0, current);
+			}
+			Attribute id = null;
+			for (Class<?> declaring : hierarchy) {
+				for (Field field : declaring.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())
+							|| field.isAnnotationPresent(Transient.class) || field.getName().startsWith("_persistence_")) {
+						continue;
+					}
+					Attribute attribute = new Attribute(declaring, field);
+					if (attribute.isId) {
+						id = attribute;
+					}
+					attributes.add(attribute);
+				}
+			}
+			if (id == null) {
+				throw new IllegalArgumentException(type.getName() + " has no @Id field");
+			}
+			this.id = id;
+		}
+
+	}
+
+	private static final class Attribute {
+
+		private final String name;
+		private final boolean isId;
+		private final boolean isToOne;
+		private final boolean isToMany;
+		private final MethodHandle field;
+		/**
+		 * The woven value holder of a lazy to-one association, if any.
+		 */
+		private final MethodHandle valueHolder;
+		/**
+		 * The foreign key column of a to-one association, if it is on this side.
+		 */
+		private final String joinColumn;
+
+		Attribute(Class<?> declaring, Field field) {
+			this.name = field.getName();
+			this.isId = field.isAnnotationPresent(Id.class);
+			this.isToMany = field.isAnnotationPresent(OneToMany.class) || field.isAnnotationPresent(ManyToMany.class)
+					|| field.isAnnotationPresent(ElementCollection.class);
+			this.field = getter(field);
+			this.isToOne = field.isAnnotationPresent(OneToOne.class) || field.isAnnotationPresent(ManyToOne.class);
+			MethodHandle valueHolder = null;
+			if (isToOne) {
+				try {
+					valueHolder = getter(declaring.getDeclaredField("_persistence_" + name + "_vh"));
+				} catch (NoSuchFieldException e) {
+					// not woven: the association is read from its field
+				}
+			}
+			this.valueHolder = valueHolder;
+			JoinColumn joinColumn = field.getAnnotation(JoinColumn.class);
+			this.joinColumn = isToOne && joinColumn != null ? joinColumn.name().toUpperCase() : null;
+		}
+
+		Object get(Object entity) {
+			return invoke(field, entity);
+		}
+
+		void print(Object entity, StringBuilder result) {
+			if (valueHolder != null) {
+				Object holder = invoke(valueHolder, entity);
+				if (holder instanceof ValueHolderInterface) {
+					ValueHolderInterface valueHolder = (ValueHolderInterface) holder;
+					if (!valueHolder.isInstantiated()) {
+						result.append("<not loaded id=").append(foreignKey(valueHolder)).append('>');
+						return;
+					}
+					appendReference(valueHolder.getValue(), result);
+					return;
+				}
+				// no value holder yet: a new entity, which holds the association in its field
+				appendReference(get(entity), result);
+				return;
+			}
+			Object value = get(entity);
+			if (isToMany) {
+				appendCollection(value, result);
+			} else if (isToOne) {
+				appendReference(value, result);
+			} else {
+				result.append(value);
+			}
+		}
+
+		/**
+		 * The foreign key of an uninstantiated value holder, from the row it would be instantiated from.
+		 */
+		private String foreignKey(ValueHolderInterface holder) {
+			if (joinColumn == null) {
+				return "?";
+			}
+			for (ValueHolderInterface current = holder; current instanceof DatabaseValueHolder;
+					current = ((DatabaseValueHolder) current).getWrappedValueHolder()) {
+				if (((DatabaseValueHolder) current).getRow() != null) {
+					Object key = ((DatabaseValueHolder) current).getRow().get(joinColumn);
+					return String.valueOf(key);
+				}
+			}
+			return "?";
+		}
+
+		private static void appendReference(Object value, StringBuilder result) {
+			if (value == null || value.getClass().getAnnotation(Entity.class) == null) {
+				result.append(value);
+			} else {
+				result.append(value.getClass().getSimpleName()).append("[id=").append(idOf(value)).append(']');
+			}
+		}
+
+		private static void appendCollection(Object value, StringBuilder result) {
+			if (value instanceof IndirectContainer && !((IndirectContainer) value).isInstantiated()) {
+				result.append("<not loaded id=?>");
+				return;
+			}
+			if (!(value instanceof Collection)) {
+				result.append(value);
+				return;
+			}
+			Collection<?> collection = (Collection<?>) value;
+			result.append('[');
+			Iterator<?> elements = collection.iterator();
+			for (int i = 0; elements.hasNext(); i++) {
+				if (i == MAX_PRINTED_ELEMENTS) {
+					result.append(", ... ").append(collection.size() - i).append(" more");
+					break;
+				}
+				result.append(i == 0 ? "" : ", ");
+				appendReference(elements.next(), result);
+			}
+			result.append(']');
+		}
+
+		private static MethodHandle getter(Field field) {
+			try {
+				field.setAccessible(true);
+				return MethodHandles.lookup().unreflectGetter(field).asType(FIELD_GETTER);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private static Object invoke(MethodHandle getter, Object entity) {
+			try {
+				return getter.invokeExact(entity);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+	}
+
+}
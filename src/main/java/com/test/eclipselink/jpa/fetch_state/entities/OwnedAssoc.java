@@ -64,4 +64,19 @@ public class OwnedAssoc implements Serializable {
 		this.data2 = data2;
 	}
 
+	@Override
+	public String toString() {
+		return LoadSafeObjects.toString(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return LoadSafeObjects.equals(this, obj);
+	}
+
+	@Override
+	public int hashCode() {
+		return LoadSafeObjects.hashCode(this);
+	}
+
 }
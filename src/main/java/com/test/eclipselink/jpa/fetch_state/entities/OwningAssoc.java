@@ -76,4 +76,19 @@ public class OwningAssoc implements Serializable {
 		this.ownedParent = ownedParent;
 	}
 
+	@Override
+	public String toString() {
+		return LoadSafeObjects.toString(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return LoadSafeObjects.equals(this, obj);
+	}
+
+	@Override
+	public int hashCode() {
+		return LoadSafeObjects.hashCode(this);
+	}
+
 }
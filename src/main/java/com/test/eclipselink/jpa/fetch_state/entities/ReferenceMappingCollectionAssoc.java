@@ -76,4 +76,19 @@ public class ReferenceMappingCollectionAssoc implements Serializable {
 		this.parent = parent;
 	}
 
+	@Override
+	public String toString() {
+		return LoadSafeObjects.toString(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return LoadSafeObjects.equals(this, obj);
+	}
+
+	@Override
+	public int hashCode() {
+		return LoadSafeObjects.hashCode(this);
+	}
+
 }
@@ -112,4 +112,19 @@ public class RootEntity implements Serializable {
 		refCollectionAssoc.add(assoc);
 	}
 
+	@Override
+	public String toString() {
+		return LoadSafeObjects.toString(this);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return LoadSafeObjects.equals(this, obj);
+	}
+
+	@Override
+	public int hashCode() {
+		return LoadSafeObjects.hashCode(this);
+	}
+
 }
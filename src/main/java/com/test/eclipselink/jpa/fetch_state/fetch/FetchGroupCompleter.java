@@ -0,0 +1,239 @@
+package com.test.eclipselink.jpa.fetch_state.fetch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.FetchGroupManager;
+import org.eclipse.persistence.internal.descriptors.ObjectBuilder;
+import org.eclipse.persistence.internal.helper.DatabaseField;
+import org.eclipse.persistence.internal.queries.EntityFetchGroup;
+import org.eclipse.persistence.internal.sessions.AbstractRecord;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.queries.DataReadQuery;
+import org.eclipse.persistence.queries.ReadObjectQuery;
+import org.eclipse.persistence.queries.SQLCall;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.UnitOfWork;
+
+/**
+ * Completes partially fetched entities with set-based queries.
+ *
+ * Touching an attribute that a FetchGroup left out makes EclipseLink fetch the rest of that one entity, with one
+ * SELECT per entity. Walking a list of partially fetched entities that way costs a query per row. The completer does
+ * the same work up front for the whole list:
+ * 		-the missing attributes of every entity are worked out from its FetchGroup (the FetchGroupTracker woven into
+ * 			it)
+ * 		-entities of the same class missing the same attributes form a group
+ * 		-every group is loaded with one query per batchSize entities, selecting the ids and the missing columns only
+ *
+ * The queries read plain rows in the entities' EntityManager (and transaction). The mappings of the missing attributes
+ * build their values from the rows, as ObjectBuilder does when it builds a clone, the FetchGroup of every entity is
+ * widened to include them, and attributes already fetched - changed or not - are left alone. Lazy relationships come
+ * out as value holders: completing them loads the foreign key, not the target entity.
+ *
+ */
+public class FetchGroupCompleter {
+
+	private final Session session;
+	private final int batchSize;
+
+	public FetchGroupCompleter(EntityManagerFactory emf) {
+		this(emf, 500);
+	}
+
+	/**
+	 * @param batchSize
+	 *            the number of ids listed in the IN clause of a single query
+	 */
+	public FetchGroupCompleter(EntityManagerFactory emf, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be positive");
+		}
+		this.session = JpaHelper.getServerSession(emf);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Fetches everything the entities miss from their class's default FetchGroup, or from all mapped attributes for
+	 * classes without one.
+	 *
+	 * @return the number of queries executed
+	 * @throws IllegalArgumentException
+	 *             if an entity is not managed by the EntityManager
+	 */
+	public int complete(EntityManager em, Collection<?> entities) {
+		return complete(em, entities, (String[]) null);
+	}
+
+	/**
+	 * Fetches the given attributes where the entities miss them.
+	 *
+	 * @return the number of queries executed
+	 * @throws IllegalArgumentException
+	 *             if an entity is not managed by the EntityManager, or has no such attribute
+	 */
+	public int complete(EntityManager em, Collection<?> entities, String... attributes) {
+		Map<Group, List<Object>> groups = new LinkedHashMap<>();
+		for (Object entity : entities) {
+			if (!em.contains(entity)) {
+				throw new IllegalArgumentException("Only managed entities can be completed: " + entity);
+			}
+			ClassDescriptor descriptor = session.getDescriptor(entity.getClass());
+			if (!descriptor.hasFetchGroupManager()) {
+				continue;
+			}
+			Set<String> missing = missingAttributes(entity, descriptor, attributes);
+			if (missing.isEmpty()) {
+				continue;
+			}
+			Group group = new Group(descriptor, missing);
+			List<Object> members = groups.get(group);
+			if (members == null) {
+				members = new ArrayList<>();
+				groups.put(group, members);
+			}
+			members.add(entity);
+		}
+
+		int queries = 0;
+		for (Map.Entry<Group, List<Object>> group : groups.entrySet()) {
+			queries += load(em, group.getKey(), group.getValue());
+		}
+		return queries;
+	}
+
+	private static Set<String> missingAttributes(Object entity, ClassDescriptor descriptor, String[] attributes) {
+		FetchGroupManager fetchGroupManager = descriptor.getFetchGroupManager();
+		Collection<String> wanted;
+		if (attributes != null) {
+			wanted = Arrays.asList(attributes);
+		} else if (fetchGroupManager.getDefaultFetchGroup() != null) {
+			wanted = fetchGroupManager.getDefaultFetchGroup().getAttributeNames();
+		} else {
+			wanted = new ArrayList<>();
+			for (DatabaseMapping mapping : descriptor.getMappings()) {
+				wanted.add(mapping.getAttributeName());
+			}
+		}
+
+		Set<String> missing = new TreeSet<>();
+		for (String attribute : wanted) {
+			if (descriptor.getObjectBuilder().getMappingForAttributeName(attribute) == null) {
+				throw new IllegalArgumentException(
+						descriptor.getJavaClass().getSimpleName() + " has no mapped attribute named '" + attribute + "'");
+			}
+			if (!fetchGroupManager.isAttributeFetched(entity, attribute)) {
+				missing.add(attribute);
+			}
+		}
+		return missing;
+	}
+
+	private int load(EntityManager em, Group group, List<Object> entities) {
+		ClassDescriptor descriptor = group.descriptor;
+		ObjectBuilder objectBuilder = descriptor.getObjectBuilder();
+		if (descriptor.getTables().size() != 1 || descriptor.getPrimaryKeyFields().size() != 1) {
+			throw new IllegalArgumentException(descriptor.getJavaClass().getSimpleName()
+					+ " is mapped to several tables or has a composite primary key, which is not supported");
+		}
+		DatabaseField idField = descriptor.getPrimaryKeyFields().get(0);
+		List<DatabaseMapping> mappings = new ArrayList<>();
+		Set<DatabaseField> fields = new LinkedHashSet<>();
+		fields.add(idField);
+		for (String attribute : group.missing) {
+			DatabaseMapping mapping = objectBuilder.getMappingForAttributeName(attribute);
+			mappings.add(mapping);
+			fields.addAll(mapping.getFields());
+		}
+		StringBuilder select = new StringBuilder("SELECT ");
+		for (DatabaseField field : fields) {
+			select.append(select.length() > 7 ? ", " : "").append(field.getName());
+		}
+		select.append(" FROM ").append(descriptor.getTables().get(0).getQualifiedName()).append(" WHERE ")
+				.append(idField.getName()).append(" IN (");
+
+		UnitOfWorkImpl unitOfWork = (UnitOfWorkImpl) em.unwrap(UnitOfWork.class);
+		ReadObjectQuery sourceQuery = new ReadObjectQuery(descriptor.getJavaClass());
+		sourceQuery.setDescriptor(descriptor);
+		sourceQuery.setSession(unitOfWork);
+		FetchGroupManager fetchGroupManager = descriptor.getFetchGroupManager();
+		EntityFetchGroup fetched = fetchGroupManager.getEntityFetchGroup(group.missing);
+
+		int queries = 0;
+		for (int from = 0; from < entities.size(); from += batchSize) {
+			Map<Object, Object> byId = new HashMap<>();
+			for (Object entity : entities.subList(from, Math.min(from + batchSize, entities.size()))) {
+				byId.put(objectBuilder.extractPrimaryKeyFromObject(entity, unitOfWork), entity);
+			}
+			StringBuilder sql = new StringBuilder(select);
+			DataReadQuery query = new DataReadQuery();
+			List<Object> ids = new ArrayList<>();
+			for (Object id : byId.keySet()) {
+				sql.append(ids.isEmpty() ? "#ID" : ", #ID").append(ids.size());
+				query.addArgument("ID" + ids.size());
+				ids.add(id);
+			}
+			query.setCall(new SQLCall(sql.append(")").toString()));
+			//plain rows: a query for the entities themselves would refresh them, replacing their FetchGroup with the
+			//missing attributes and dropping their pending changes
+			@SuppressWarnings("unchecked")
+			List<AbstractRecord> rows = (List<AbstractRecord>) unitOfWork.executeQuery(query, ids);
+			queries++;
+
+			for (AbstractRecord row : rows) {
+				Object entity = byId.get(objectBuilder.extractPrimaryKeyFromRow(row, unitOfWork));
+				if (entity == null) {
+					continue;
+				}
+				//backup clones of the deferred change detection are completed too, so the loaded values do not show
+				//as changes at commit
+				Object backup = unitOfWork.getCloneMapping().get(entity);
+				for (DatabaseMapping mapping : mappings) {
+					mapping.buildCloneFromRow(row, null, entity, null, sourceQuery, unitOfWork, unitOfWork);
+					if (backup != null && backup != entity) {
+						mapping.buildBackupClone(entity, backup, unitOfWork);
+					}
+				}
+				fetchGroupManager.unionEntityFetchGroupIntoObject(entity, fetched, unitOfWork, false);
+			}
+		}
+		return queries;
+	}
+
+	private static final class Group {
+
+		private final ClassDescriptor descriptor;
+		private final Set<String> missing;
+
+		private Group(ClassDescriptor descriptor, Set<String> missing) {
+			this.descriptor = descriptor;
+			this.missing = missing;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Group && ((Group) other).descriptor == descriptor
+					&& ((Group) other).missing.equals(missing);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(descriptor) * 31 + missing.hashCode();
+		}
+	}
+
+}
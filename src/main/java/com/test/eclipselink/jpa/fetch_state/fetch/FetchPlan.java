@@ -0,0 +1,124 @@
+package com.test.eclipselink.jpa.fetch_state.fetch;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.persistence.Query;
+
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.FetchGroup;
+
+/**
+ * The outcome of JoinFetchPlanner: a FetchGroup plus a fetch strategy for every association on its paths, applied
+ * to queries as hints.
+ *
+ * The worst case number of round trips for the whole graph is one for the root query plus one per batch fetched
+ * association ({@link #getMaxRoundTrips()}), independent of the number of roots returned.
+ *
+ * Plans are immutable and can be shared and applied to any number of queries over the plan's root class; the
+ * FetchGroup is copied for every query.
+ *
+ */
+public final class FetchPlan {
+
+	/**
+	 * EclipseLink only uses the first segment of a LEFT_FETCH or BATCH hint value as a placeholder for the query's
+	 * identification variable, so any alias will do.
+	 */
+	private static final String ALIAS = "o";
+
+	public enum Strategy {
+
+		/**
+		 * Joined into the query that loads its owner (LEFT_FETCH).
+		 */
+		JOIN_FETCH,
+
+		/**
+		 * Loaded for all owners at once when first accessed, by a query that lists the owner ids (BATCH IN).
+		 */
+		BATCH_IN,
+
+		/**
+		 * Loaded for all owners at once when first accessed, by a query that repeats the owner query as an EXISTS
+		 * subquery (BATCH EXISTS).
+		 */
+		BATCH_EXISTS;
+
+		static Strategy forBatchType(BatchFetchType batchType) {
+			return batchType == BatchFetchType.EXISTS ? BATCH_EXISTS : BATCH_IN;
+		}
+	}
+
+	private final Class<?> rootClass;
+	private final FetchGroup fetchGroup;
+	private final Map<String, Strategy> strategies;
+	private final BatchFetchType batchType;
+
+	FetchPlan(Class<?> rootClass, FetchGroup fetchGroup, Map<String, Strategy> strategies, BatchFetchType batchType) {
+		this.rootClass = rootClass;
+		this.fetchGroup = fetchGroup;
+		this.strategies = Collections.unmodifiableMap(new LinkedHashMap<>(strategies));
+		this.batchType = batchType;
+	}
+
+	/**
+	 * Sets the FetchGroup, LEFT_FETCH and BATCH hints of the plan on a query that selects the plan's root class.
+	 */
+	public <Q extends Query> Q applyTo(Q query) {
+		query.setHint(QueryHints.FETCH_GROUP, fetchGroup.clone());
+		boolean batched = false;
+		for (Map.Entry<String, Strategy> association : strategies.entrySet()) {
+			if (association.getValue() == Strategy.JOIN_FETCH) {
+				query.setHint(QueryHints.LEFT_FETCH, ALIAS + "." + association.getKey());
+			} else {
+				query.setHint(QueryHints.BATCH, ALIAS + "." + association.getKey());
+				batched = true;
+			}
+		}
+		if (batched) {
+			query.setHint(QueryHints.BATCH_TYPE, batchType.name());
+		}
+		return query;
+	}
+
+	public Class<?> getRootClass() {
+		return rootClass;
+	}
+
+	/**
+	 * A copy of the FetchGroup built from the planned paths.
+	 */
+	public FetchGroup getFetchGroup() {
+		return fetchGroup.clone();
+	}
+
+	/**
+	 * The strategy of every association on the planned paths, keyed by association path ("ownedAssoc",
+	 * "refCollectionAssoc.parent"), in the order the paths were given.
+	 */
+	public Map<String, Strategy> getStrategies() {
+		return strategies;
+	}
+
+	/**
+	 * One round trip for the root query (with the join fetched associations) and one per batch fetched association.
+	 */
+	public int getMaxRoundTrips() {
+		int roundTrips = 1;
+		for (Strategy strategy : strategies.values()) {
+			if (strategy != Strategy.JOIN_FETCH) {
+				roundTrips++;
+			}
+		}
+		return roundTrips;
+	}
+
+	@Override
+	public String toString() {
+		return "FetchPlan " + rootClass.getSimpleName() + " " + fetchGroup + " " + strategies;
+	}
+
+}
@@ -0,0 +1,115 @@
+package com.test.eclipselink.jpa.fetch_state.fetch;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.AggregateObjectMapping;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ForeignReferenceMapping;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.sessions.Session;
+
+import com.test.eclipselink.jpa.fetch_state.fetch.FetchPlan.Strategy;
+
+/**
+ * Turns a set of dotted FetchGroup paths (the ones TestFetchState passes to its custom FetchGroup, for instance) into
+ * a FetchPlan that loads the whole requested graph in a bounded number of round trips.
+ *
+ * A FetchGroup alone only decides which columns are selected: every association in it is still loaded lazily, with
+ * one SELECT per association and per entity. The planner picks a strategy for every association on the paths:
+ * 		-to-one associations reached from the root through to-one associations only are join fetched
+ * 			(LEFT_FETCH), so they come with the root query itself
+ * 		-to-many associations, and everything below them, are batch fetched (BATCH) with IN or EXISTS, so each of
+ * 			them costs one query for all the roots, however many there are
+ *
+ * Joining to-many associations into the root query would also avoid the batch queries, but it multiplies the rows
+ * of the root query by the size of every joined collection and does not work with paging, so it is never chosen.
+ *
+ * IN is the default batch type: it keeps the batch query independent of the root query and works with paged root
+ * queries. EXISTS repeats the root query as a subquery instead of listing the ids, which pays off for large,
+ * unpaged results with a cheap root query.
+ *
+ * The planner is thread-safe; the descriptors are only read.
+ *
+ */
+public class JoinFetchPlanner {
+
+	private final Session session;
+	private final BatchFetchType batchType;
+
+	public JoinFetchPlanner(EntityManagerFactory emf) {
+		this(emf, BatchFetchType.IN);
+	}
+
+	public JoinFetchPlanner(EntityManagerFactory emf, BatchFetchType batchType) {
+		this(JpaHelper.getServerSession(emf), batchType);
+	}
+
+	public JoinFetchPlanner(Session session, BatchFetchType batchType) {
+		if (batchType == BatchFetchType.JOIN) {
+			throw new IllegalArgumentException("to-many associations are batch fetched with IN or EXISTS");
+		}
+		this.session = session;
+		this.batchType = batchType;
+	}
+
+	public FetchPlan plan(Class<?> rootClass, String... paths) {
+		return plan(rootClass, Arrays.asList(paths));
+	}
+
+	/**
+	 * @param paths
+	 *            FetchGroup paths relative to rootClass, such as "data1" or "ownedAssoc.data1"; a path ending at an
+	 *            association fetches the association with its default FetchGroup
+	 * @throws IllegalArgumentException
+	 *             if a path does not match the mappings of rootClass
+	 */
+	public FetchPlan plan(Class<?> rootClass, Collection<String> paths) {
+		ClassDescriptor rootDescriptor = session.getDescriptor(rootClass);
+		if (rootDescriptor == null) {
+			throw new IllegalArgumentException(rootClass.getName() + " is not a persistent class");
+		}
+
+		FetchGroup fetchGroup = new FetchGroup();
+		Map<String, Strategy> strategies = new LinkedHashMap<>();
+		for (String path : paths) {
+			fetchGroup.addAttribute(path);
+
+			ClassDescriptor descriptor = rootDescriptor;
+			StringBuilder prefix = new StringBuilder();
+			boolean belowToMany = false;
+			String[] segments = path.split("\\.");
+			for (int i = 0; i < segments.length; i++) {
+				String segment = segments[i];
+				DatabaseMapping mapping = descriptor == null ? null
+						: descriptor.getObjectBuilder().getMappingForAttributeName(segment);
+				if (mapping == null) {
+					throw new IllegalArgumentException("'" + path + "' does not match the mappings of "
+							+ rootClass.getSimpleName() + ": there is no attribute '" + segment + "'");
+				}
+				prefix.append(prefix.length() == 0 ? "" : ".").append(segment);
+
+				if (mapping.isForeignReferenceMapping()) {
+					belowToMany |= mapping.isCollectionMapping();
+					Strategy strategy = belowToMany ? Strategy.forBatchType(batchType) : Strategy.JOIN_FETCH;
+					strategies.put(prefix.toString(), strategy);
+					descriptor = ((ForeignReferenceMapping) mapping).getReferenceDescriptor();
+				} else if (mapping.isAggregateObjectMapping()) {
+					descriptor = ((AggregateObjectMapping) mapping).getReferenceDescriptor();
+				} else if (i < segments.length - 1) {
+					throw new IllegalArgumentException("'" + path + "' does not match the mappings of "
+							+ rootClass.getSimpleName() + ": '" + segment + "' is not an association");
+				}
+			}
+		}
+		return new FetchPlan(rootClass, fetchGroup, strategies, batchType);
+	}
+
+}
@@ -0,0 +1,110 @@
+package com.test.eclipselink.jpa.fetch_state.fetch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.Query;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.FetchGroup;
+
+/**
+ * The base of the fetch plan builders generated by FetchStateProcessor for every entity, such as
+ * RootEntityPlan.Builder: the FetchGroup paths of a plan, checked by the compiler instead of typed as strings.
+ *
+ * RootEntityPlan.data1().ownedAssoc(OwnedAssocPlan.data1()) is the plan of the paths "data1" and "ownedAssoc.data1";
+ * RootEntityPlan.ownedAssoc() alone fetches ownedAssoc with its default FetchGroup.
+ *
+ * Plans are immutable: every builder method returns a new plan, so plans can be kept in constants, built once and
+ * applied to any number of queries. The FetchGroup is built on first use and copied for every query.
+ *
+ * @param <E>
+ *            the entity the paths start from
+ */
+public abstract class TypedFetchPlan<E> {
+
+	protected static final List<String> NO_PATHS = Collections.emptyList();
+
+	private final Class<E> entityClass;
+	private final List<String> paths;
+	private volatile FetchGroup fetchGroup;
+
+	protected TypedFetchPlan(Class<E> entityClass, List<String> paths) {
+		this.entityClass = entityClass;
+		this.paths = paths;
+	}
+
+	/**
+	 * The paths of this plan plus the given attribute.
+	 */
+	protected final List<String> with(String attribute) {
+		Set<String> paths = new LinkedHashSet<>(this.paths);
+		paths.add(attribute);
+		return Collections.unmodifiableList(new ArrayList<>(paths));
+	}
+
+	/**
+	 * The paths of this plan plus the paths of the plan of an association, prefixed with the association; the
+	 * association alone if that plan is empty.
+	 */
+	protected final List<String> with(String association, TypedFetchPlan<?> plan) {
+		if (plan.paths.isEmpty()) {
+			return with(association);
+		}
+		Set<String> paths = new LinkedHashSet<>(this.paths);
+		for (String path : plan.paths) {
+			paths.add(association + "." + path);
+		}
+		return Collections.unmodifiableList(new ArrayList<>(paths));
+	}
+
+	public Class<E> getEntityClass() {
+		return entityClass;
+	}
+
+	/**
+	 * The FetchGroup paths of the plan, relative to the entity, in the order they were added.
+	 */
+	public List<String> getPaths() {
+		return paths;
+	}
+
+	/**
+	 * A copy of the FetchGroup of the plan's paths.
+	 */
+	public FetchGroup toFetchGroup() {
+		FetchGroup fetchGroup = this.fetchGroup;
+		if (fetchGroup == null) {
+			fetchGroup = new FetchGroup();
+			for (String path : paths) {
+				fetchGroup.addAttribute(path);
+			}
+			this.fetchGroup = fetchGroup;
+		}
+		return fetchGroup.clone();
+	}
+
+	/**
+	 * Sets the FetchGroup of the plan on a query that selects the plan's entity.
+	 */
+	public <Q extends Query> Q applyTo(Q query) {
+		query.setHint(QueryHints.FETCH_GROUP, toFetchGroup());
+		return query;
+	}
+
+	/**
+	 * The plan's paths with a fetch strategy for every association on them (see JoinFetchPlanner).
+	 */
+	public FetchPlan plan(JoinFetchPlanner planner) {
+		return planner.plan(entityClass, paths);
+	}
+
+	@Override
+	public String toString() {
+		return entityClass.getSimpleName() + "Plan " + paths;
+	}
+
+}
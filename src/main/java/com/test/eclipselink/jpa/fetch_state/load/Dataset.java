@@ -0,0 +1,66 @@
+package com.test.eclipselink.jpa.fetch_state.load;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManagerFactory;
+
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * The RootEntity graphs a LoadTest runs against: roots 1..roots, populated by SampleGraphs with the same number of
+ * children in both collections, plus the ids handed out to the graphs inserted during the run.
+ *
+ * Reads and merges pick among the populated roots only, uniformly. Thread-safe.
+ *
+ */
+public final class Dataset {
+
+	private final int roots;
+	private final int children;
+	private final int insertBatchSize;
+	private final AtomicLong lastRootId;
+
+	Dataset(int roots, int children, int insertBatchSize) {
+		this.roots = roots;
+		this.children = children;
+		this.insertBatchSize = insertBatchSize;
+		this.lastRootId = new AtomicLong(roots);
+	}
+
+	/**
+	 * Persists the graphs, 500 roots per transaction.
+	 */
+	static Dataset populate(EntityManagerFactory emf, int roots, int children, int insertBatchSize) {
+		SampleGraphs.populate(emf, roots, children, 500);
+		return new Dataset(roots, children, insertBatchSize);
+	}
+
+	public int getRoots() {
+		return roots;
+	}
+
+	public int getChildren() {
+		return children;
+	}
+
+	public int getInsertBatchSize() {
+		return insertBatchSize;
+	}
+
+	/**
+	 * The number of roots inserted so far by INSERT operations, committed or not.
+	 */
+	public long getInsertedRoots() {
+		return lastRootId.get() - roots;
+	}
+
+	long randomRootId(Random random) {
+		return 1 + random.nextInt(roots);
+	}
+
+	long nextNewRootId() {
+		return lastRootId.incrementAndGet();
+	}
+
+}
@@ -0,0 +1,162 @@
+package com.test.eclipselink.jpa.fetch_state.load;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.test.eclipselink.jpa.fetch_state.support.LatencyHistogram;
+
+/**
+ * The outcome of a LoadTest: per operation and in total, the operations whose intended start fell in the measured
+ * window, their errors and two latency histograms:
+ * 		-response time, from the intended start of the operation (its slot in the target rate schedule) to its end,
+ * 			which includes the time it waited for the load thread to be free: this is the latency corrected for
+ * 			coordinated omission, what a client issuing requests at the target rate would see
+ * 		-service time, from the actual start of the operation to its end, which is all a load driver that waits for
+ * 			every operation before starting the next one can see
+ * Without a target rate the two are the same: there is no schedule to be late on.
+ *
+ */
+public final class LoadReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private final LoadTest.Options options;
+	private final Map<Operation, Result> results;
+	private final Result total;
+	private final long measuredNanos;
+	private final long missed;
+
+	LoadReport(LoadTest.Options options, Map<Operation, Result> results, long measuredNanos, long missed) {
+		this.options = options;
+		this.results = Collections.unmodifiableMap(new EnumMap<>(results));
+		this.total = new Result();
+		for (Result result : results.values()) {
+			total.add(result);
+		}
+		this.measuredNanos = measuredNanos;
+		this.missed = missed;
+	}
+
+	/**
+	 * The results of the operations of the mix that ran in the measured window.
+	 */
+	public Map<Operation, Result> getResults() {
+		return results;
+	}
+
+	public Result getTotal() {
+		return total;
+	}
+
+	/**
+	 * Operations per second over the measured window, errors included.
+	 */
+	public double getThroughput() {
+		return total.getCount() * 1e9 / measuredNanos;
+	}
+
+	/**
+	 * The operations that were due to start in the measured window but were not started by its end, because the
+	 * load threads were late on the target rate schedule; always 0 without a target rate. Anything but 0 means that
+	 * the target rate was not sustained, and the response times are a lower bound.
+	 */
+	public long getMissed() {
+		return missed;
+	}
+
+	public void print(PrintStream out) {
+		out.printf("%d threads, %s, %ds measured after %ds of warmup, %d roots with %d children per collection%n",
+				options.getThreads(),
+				options.getTargetRate() > 0 ? "target rate " + options.getTargetRate() + " ops/s" : "no target rate",
+				options.getDurationSeconds(), options.getWarmupSeconds(), options.getRoots(), options.getChildren());
+		out.printf("mix %s%n%n", options.getMix());
+		out.printf("%-12s %9s %7s %9s | %-45s | %-21s%n", "", "", "", "",
+				"response time ms (corrected)", "service time ms");
+		out.printf("%-12s %9s %7s %9s | %8s %8s %8s %8s %10s | %8s %8s %10s%n", "operation", "count", "errors",
+				"ops/s", "p50", "p90", "p99", "p99.9", "max", "p50", "p99", "max");
+		for (Map.Entry<Operation, Result> result : results.entrySet()) {
+			print(out, result.getKey().getKey(), result.getValue());
+		}
+		print(out, "total", total);
+		out.printf("%nthroughput %.1f ops/s", getThroughput());
+		if (options.getTargetRate() > 0) {
+			out.printf(" (target %d ops/s, %d operations missed)", options.getTargetRate(), missed);
+		}
+		out.println();
+		for (Map.Entry<Operation, Result> result : results.entrySet()) {
+			if (result.getValue().getFirstError() != null) {
+				out.printf("first %s error: %s%n", result.getKey().getKey(), result.getValue().getFirstError());
+			}
+		}
+	}
+
+	private void print(PrintStream out, String name, Result result) {
+		out.printf("%-12s %9d %7d %9.1f |", name, result.getCount(), result.getErrors(),
+				result.getCount() * 1e9 / measuredNanos);
+		for (double percentile : PERCENTILES) {
+			out.printf(" %8.2f", millis(result.getResponseTime().percentile(percentile)));
+		}
+		out.printf(" %10.2f | %8.2f %8.2f %10.2f%n", millis(result.getResponseTime().getMax()),
+				millis(result.getServiceTime().percentile(50)), millis(result.getServiceTime().percentile(99)),
+				millis(result.getServiceTime().getMax()));
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	/**
+	 * The measurements of one operation, or of all of them. Results are filled by a single load thread and merged
+	 * afterwards; they are not thread-safe.
+	 */
+	public static final class Result {
+
+		private final LatencyHistogram responseTime = new LatencyHistogram();
+		private final LatencyHistogram serviceTime = new LatencyHistogram();
+		private long errors;
+		private String firstError;
+
+		void record(long intendedStart, long actualStart, long end, RuntimeException error) {
+			responseTime.record(end - intendedStart);
+			serviceTime.record(end - actualStart);
+			if (error != null) {
+				errors++;
+				if (firstError == null) {
+					firstError = error.toString();
+				}
+			}
+		}
+
+		void add(Result other) {
+			responseTime.add(other.responseTime);
+			serviceTime.add(other.serviceTime);
+			errors += other.errors;
+			if (firstError == null) {
+				firstError = other.firstError;
+			}
+		}
+
+		public long getCount() {
+			return responseTime.getCount();
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		public String getFirstError() {
+			return firstError;
+		}
+
+		public LatencyHistogram getResponseTime() {
+			return responseTime;
+		}
+
+		public LatencyHistogram getServiceTime() {
+			return serviceTime;
+		}
+	}
+
+}
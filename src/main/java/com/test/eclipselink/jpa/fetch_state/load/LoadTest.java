@@ -0,0 +1,370 @@
+package com.test.eclipselink.jpa.fetch_state.load;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+
+/**
+ * Runs a WorkloadMix of Operations from a number of load threads against a freshly populated in-memory HSQLDB
+ * database, and reports throughput and latency percentiles.
+ *
+ * With a target rate, the load is open: every thread owns an equal share of the rate and has a fixed schedule of
+ * intended starts, one every threads/rate seconds (the threads' schedules are staggered). An operation that cannot
+ * start on time, because the previous one of its thread took too long, starts as soon as possible and its response
+ * time still counts from its intended start: the time spent waiting is part of the latency a client sending requests
+ * at that rate would see. This is the correction for coordinated omission; a closed loop that only measures from the
+ * actual start hides exactly the stalls that matter. Without a target rate, every thread starts its next operation as
+ * soon as the previous one ends, and only service time can be measured.
+ *
+ * Operations whose intended start falls in the warmup period run but are not recorded. The run ends at the end of
+ * the measured window; the operations still due by then that a late thread did not get to start are reported as
+ * missed.
+ *
+ * The factory uses the "test" persistence unit, quietly logged, with HSQLDB's MVCC transaction model (so that
+ * readers do not queue behind the merges and inserts) and connection pools at least as large as the thread count.
+ *
+ */
+public final class LoadTest {
+
+	private final Options options;
+
+	public LoadTest(Options options) {
+		this.options = options;
+	}
+
+	public LoadReport run() {
+		EntityManagerFactory emf = PersistenceUnits.create(properties(options));
+		try {
+			Dataset dataset = Dataset.populate(emf, options.roots, options.children, options.insertBatchSize);
+			return run(emf, dataset);
+		} finally {
+			emf.close();
+		}
+	}
+
+	/**
+	 * Runs the mix against an existing factory and dataset.
+	 */
+	public LoadReport run(EntityManagerFactory emf, Dataset dataset) {
+		long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+		long measuredStart = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+		long end = measuredStart + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+		LoadThread[] threads = new LoadThread[options.threads];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new LoadThread(emf, dataset, i, start, measuredStart, end);
+			threads[i].start();
+		}
+		Map<Operation, LoadReport.Result> results = new EnumMap<>(Operation.class);
+		for (Operation operation : options.mix.getWeights().keySet()) {
+			if (options.mix.getWeights().get(operation) > 0) {
+				results.put(operation, new LoadReport.Result());
+			}
+		}
+		long missed = 0;
+		for (LoadThread thread : threads) {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					thread.join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			for (Map.Entry<Operation, LoadReport.Result> result : thread.results.entrySet()) {
+				results.get(result.getKey()).add(result.getValue());
+			}
+			missed += thread.missed;
+		}
+		return new LoadReport(options, results, end - measuredStart, missed);
+	}
+
+	static Map<String, Object> properties(Options options) {
+		Map<String, Object> properties = PersistenceUnits.quietProperties(options.database);
+		properties.put(PersistenceUnitProperties.JDBC_URL, "jdbc:hsqldb:mem:" + options.database + ";hsqldb.tx=mvcc");
+		String poolSize = String.valueOf(Math.max(32, options.threads));
+		properties.put(PersistenceUnitProperties.CONNECTION_POOL + PersistenceUnitProperties.CONNECTION_POOL_MAX,
+				poolSize);
+		properties.put(PersistenceUnitProperties.CONNECTION_POOL_READ + PersistenceUnitProperties.CONNECTION_POOL_MAX,
+				poolSize);
+		return properties;
+	}
+
+	private final class LoadThread extends Thread {
+
+		private final EntityManagerFactory emf;
+		private final Dataset dataset;
+		private final long start;
+		private final long measuredStart;
+		private final long end;
+		private final long interval;
+		private final Random random;
+		private final Map<Operation, LoadReport.Result> results = new EnumMap<>(Operation.class);
+		private long missed;
+
+		LoadThread(EntityManagerFactory emf, Dataset dataset, int index, long start, long measuredStart, long end) {
+			super("load-" + index);
+			this.emf = emf;
+			this.dataset = dataset;
+			this.interval = options.targetRate > 0 ? (long) (options.threads * 1e9 / options.targetRate) : 0;
+			this.start = start + interval * index / options.threads;
+			this.measuredStart = measuredStart;
+			this.end = end;
+			this.random = new Random(options.seed + index);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			long intendedStart = start;
+			while (true) {
+				long now = System.nanoTime();
+				if (interval == 0) {
+					intendedStart = Math.max(now, start);
+				}
+				if (intendedStart >= end || now >= end) {
+					break;
+				}
+				waitUntil(intendedStart);
+				Operation operation = options.mix.next(random);
+				long actualStart = System.nanoTime();
+				RuntimeException error = null;
+				try {
+					operation.run(emf, dataset, random);
+				} catch (RuntimeException e) {
+					error = e;
+				}
+				long operationEnd = System.nanoTime();
+				if (intendedStart >= measuredStart) {
+					LoadReport.Result result = results.get(operation);
+					if (result == null) {
+						result = new LoadReport.Result();
+						results.put(operation, result);
+					}
+					result.record(intendedStart, actualStart, operationEnd, error);
+				}
+				intendedStart += interval;
+			}
+			if (interval > 0 && intendedStart < end) {
+				long firstMissed = intendedStart;
+				if (firstMissed < measuredStart) {
+					firstMissed += (measuredStart - firstMissed + interval - 1) / interval * interval;
+				}
+				missed = firstMissed < end ? (end - firstMissed + interval - 1) / interval : 0;
+			}
+		}
+
+		private void waitUntil(long deadline) {
+			for (long remaining = deadline - System.nanoTime(); remaining > 0; remaining = deadline - System.nanoTime()) {
+				LockSupport.parkNanos(remaining);
+			}
+		}
+	}
+
+	/**
+	 * The parameters of a LoadTest, which can be parsed from command line arguments of the form --name=value.
+	 */
+	public static final class Options {
+
+		private int threads = 8;
+		private int durationSeconds = 30;
+		private int warmupSeconds = 5;
+		private int targetRate;
+		private int roots = 10000;
+		private int children = 5;
+		private int insertBatchSize = 10;
+		private WorkloadMix mix = WorkloadMix.parse(WorkloadMix.DEFAULT);
+		private long seed = 42;
+		private String database = "load-test";
+
+		public static String usage() {
+			return "Options, all optional:\n"
+					+ "  --threads=N      load threads (default 8)\n"
+					+ "  --duration=S     measured seconds (default 30)\n"
+					+ "  --warmup=S       seconds run before measuring (default 5)\n"
+					+ "  --rate=N         target operations per second over all threads; 0 runs every thread\n"
+					+ "                   flat out, without coordinated omission correction (default 0)\n"
+					+ "  --roots=N        RootEntity graphs populated before the run (default 10000)\n"
+					+ "  --children=N     children per collection of every graph (default 5)\n"
+					+ "  --insert-batch=N graphs persisted per insert operation (default 10)\n"
+					+ "  --mix=MIX        operation weights (default " + WorkloadMix.DEFAULT + ")\n"
+					+ "  --seed=N         random seed of the load threads (default 42)\n";
+		}
+
+		/**
+		 * @throws IllegalArgumentException
+		 *             if an argument is unknown or its value invalid
+		 */
+		public static Options parse(String... args) {
+			Options options = new Options();
+			for (String arg : args) {
+				int equals = arg.indexOf('=');
+				if (!arg.startsWith("--") || equals < 0) {
+					throw new IllegalArgumentException("Expected --name=value, found '" + arg + "'");
+				}
+				String name = arg.substring(2, equals);
+				String value = arg.substring(equals + 1);
+				switch (name) {
+				case "threads":
+					options.threads(intValue(name, value));
+					break;
+				case "duration":
+					options.durationSeconds(intValue(name, value));
+					break;
+				case "warmup":
+					options.warmupSeconds(intValue(name, value));
+					break;
+				case "rate":
+					options.targetRate(intValue(name, value));
+					break;
+				case "roots":
+					options.roots(intValue(name, value));
+					break;
+				case "children":
+					options.children(intValue(name, value));
+					break;
+				case "insert-batch":
+					options.insertBatchSize(intValue(name, value));
+					break;
+				case "mix":
+					options.mix(WorkloadMix.parse(value));
+					break;
+				case "seed":
+					try {
+						options.seed(Long.parseLong(value));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Invalid --seed: " + value, e);
+					}
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option --" + name);
+				}
+			}
+			return options;
+		}
+
+		private static int intValue(String name, String value) {
+			try {
+				return Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid --" + name + ": " + value, e);
+			}
+		}
+
+		private static int check(String name, int value, int min) {
+			if (value < min) {
+				throw new IllegalArgumentException(name + " must be at least " + min + ": " + value);
+			}
+			return value;
+		}
+
+		public Options threads(int threads) {
+			this.threads = check("threads", threads, 1);
+			return this;
+		}
+
+		public Options durationSeconds(int durationSeconds) {
+			this.durationSeconds = check("duration", durationSeconds, 1);
+			return this;
+		}
+
+		public Options warmupSeconds(int warmupSeconds) {
+			this.warmupSeconds = check("warmup", warmupSeconds, 0);
+			return this;
+		}
+
+		/**
+		 * @param targetRate
+		 *            operations per second over all threads, or 0 for none
+		 */
+		public Options targetRate(int targetRate) {
+			this.targetRate = check("rate", targetRate, 0);
+			return this;
+		}
+
+		public Options roots(int roots) {
+			this.roots = check("roots", roots, 1);
+			return this;
+		}
+
+		public Options children(int children) {
+			this.children = check("children", children, 0);
+			return this;
+		}
+
+		public Options insertBatchSize(int insertBatchSize) {
+			this.insertBatchSize = check("insert-batch", insertBatchSize, 1);
+			return this;
+		}
+
+		public Options mix(WorkloadMix mix) {
+			this.mix = mix;
+			return this;
+		}
+
+		public Options seed(long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		/**
+		 * The name of the in-memory database, jdbc:hsqldb:mem:load-test by default.
+		 */
+		public Options database(String database) {
+			this.database = database;
+			return this;
+		}
+
+		public int getThreads() {
+			return threads;
+		}
+
+		public int getDurationSeconds() {
+			return durationSeconds;
+		}
+
+		public int getWarmupSeconds() {
+			return warmupSeconds;
+		}
+
+		public int getTargetRate() {
+			return targetRate;
+		}
+
+		public int getRoots() {
+			return roots;
+		}
+
+		public int getChildren() {
+			return children;
+		}
+
+		public int getInsertBatchSize() {
+			return insertBatchSize;
+		}
+
+		public WorkloadMix getMix() {
+			return mix;
+		}
+
+		public long getSeed() {
+			return seed;
+		}
+
+		public String getDatabase() {
+			return database;
+		}
+	}
+
+}
@@ -0,0 +1,175 @@
+package com.test.eclipselink.jpa.fetch_state.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.FetchGroup;
+
+import com.test.eclipselink.jpa.fetch_state.entities.KeyMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.ReferenceMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * The units of work a LoadTest mixes, each in its own EntityManager (and transaction, when it writes), on a random
+ * root of the dataset:
+ * 		-FIND: EntityManager.find of a RootEntity
+ * 		-FETCH_GROUP: a RootEntity read by id with the FetchGroup {data1, ownedAssoc.data1}
+ * 		-WALK: a RootEntity and everything reachable from it, loaded lazily the way a service walking the graph does
+ * 		-MERGE: a RootEntity read with the FetchGroup {data1}, detached, changed and merged back in a transaction of
+ * 			its own, which updates data1 only
+ * 		-INSERT: a batch of new graphs with the dataset's number of children, persisted in one transaction
+ *
+ */
+public enum Operation {
+
+	FIND("find") {
+		@Override
+		void run(EntityManagerFactory emf, Dataset dataset, Random random) {
+			EntityManager em = emf.createEntityManager();
+			try {
+				check(em.find(RootEntity.class, dataset.randomRootId(random)));
+			} finally {
+				em.close();
+			}
+		}
+	},
+
+	FETCH_GROUP("fetch-group") {
+		@Override
+		void run(EntityManagerFactory emf, Dataset dataset, Random random) {
+			EntityManager em = emf.createEntityManager();
+			try {
+				RootEntity root = readWithFetchGroup(em, dataset.randomRootId(random), "data1", "ownedAssoc.data1");
+				root.getData1();
+				root.getOwnedAssoc().getData1();
+			} finally {
+				em.close();
+			}
+		}
+	},
+
+	WALK("walk") {
+		@Override
+		void run(EntityManagerFactory emf, Dataset dataset, Random random) {
+			EntityManager em = emf.createEntityManager();
+			try {
+				RootEntity root = check(em.find(RootEntity.class, dataset.randomRootId(random)));
+				int length = root.getData1().length() + root.getOwnedAssoc().getData1().length()
+						+ root.getOwningAssoc().getData1().length();
+				for (KeyMappingCollectionAssoc child : root.getKeyCollectionAssoc()) {
+					length += child.getData1().length();
+				}
+				for (ReferenceMappingCollectionAssoc child : root.getRefCollectionAssoc()) {
+					length += child.getData1().length();
+				}
+				if (length == 0) {
+					throw new IllegalStateException("Empty graph " + root.getId());
+				}
+			} finally {
+				em.close();
+			}
+		}
+	},
+
+	MERGE("merge") {
+		@Override
+		void run(EntityManagerFactory emf, Dataset dataset, Random random) {
+			long id = dataset.randomRootId(random);
+			RootEntity detached;
+			EntityManager em = emf.createEntityManager();
+			try {
+				detached = readWithFetchGroup(em, id, "data1");
+			} finally {
+				em.close();
+			}
+			detached.setData1("Root:" + id + "L:Data1:" + random.nextInt(1000));
+
+			em = emf.createEntityManager();
+			try {
+				em.getTransaction().begin();
+				em.merge(detached);
+				em.getTransaction().commit();
+			} finally {
+				if (em.getTransaction().isActive()) {
+					em.getTransaction().rollback();
+				}
+				em.close();
+			}
+		}
+	},
+
+	INSERT("insert") {
+		@Override
+		void run(EntityManagerFactory emf, Dataset dataset, Random random) {
+			List<RootEntity> graphs = new ArrayList<>(dataset.getInsertBatchSize());
+			for (int i = 0; i < dataset.getInsertBatchSize(); i++) {
+				graphs.add(SampleGraphs.newGraph(dataset.nextNewRootId(), dataset.getChildren()));
+			}
+			EntityManager em = emf.createEntityManager();
+			try {
+				em.getTransaction().begin();
+				for (RootEntity root : graphs) {
+					SampleGraphs.persist(em, root);
+				}
+				em.getTransaction().commit();
+			} finally {
+				if (em.getTransaction().isActive()) {
+					em.getTransaction().rollback();
+				}
+				em.close();
+			}
+		}
+	};
+
+	private final String key;
+
+	private Operation(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * The name of the operation in a workload mix, such as "fetch-group".
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if no operation has that key
+	 */
+	public static Operation forKey(String key) {
+		for (Operation operation : values()) {
+			if (operation.key.equals(key)) {
+				return operation;
+			}
+		}
+		throw new IllegalArgumentException("Unknown operation '" + key + "', expected one of find, fetch-group, walk, "
+				+ "merge, insert");
+	}
+
+	abstract void run(EntityManagerFactory emf, Dataset dataset, Random random);
+
+	private static RootEntity readWithFetchGroup(EntityManager em, long id, String... attributes) {
+		FetchGroup fetchGroup = new FetchGroup();
+		for (String attribute : attributes) {
+			fetchGroup.addAttribute(attribute);
+		}
+		return check(em.createQuery("SELECT o FROM RootEntity o WHERE o.id = :id", RootEntity.class)
+				.setParameter("id", id).setHint(QueryHints.FETCH_GROUP, fetchGroup).getSingleResult());
+	}
+
+	private static RootEntity check(RootEntity root) {
+		if (root == null) {
+			throw new IllegalStateException("RootEntity not found");
+		}
+		return root;
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.test.eclipselink.jpa.fetch_state.load;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The relative weights of the operations of a LoadTest, such as "find:50,fetch-group:20,walk:10,merge:15,insert:5":
+ * every operation started by a load thread is drawn at random with these weights. Operations left out, or with a
+ * weight of 0, never run.
+ *
+ * Mixes are immutable.
+ *
+ */
+public final class WorkloadMix {
+
+	public static final String DEFAULT = "find:50,fetch-group:20,walk:10,merge:15,insert:5";
+
+	private final Map<Operation, Integer> weights;
+	private final Operation[] operations;
+	private final int[] cumulativeWeights;
+
+	private WorkloadMix(Map<Operation, Integer> weights) {
+		this.weights = Collections.unmodifiableMap(new EnumMap<>(weights));
+		int total = 0;
+		int size = 0;
+		for (int weight : weights.values()) {
+			total += weight;
+			size += weight > 0 ? 1 : 0;
+		}
+		if (total <= 0) {
+			throw new IllegalArgumentException("A workload mix needs at least one operation with a positive weight");
+		}
+		this.operations = new Operation[size];
+		this.cumulativeWeights = new int[size];
+		int i = 0;
+		int cumulative = 0;
+		for (Map.Entry<Operation, Integer> weight : this.weights.entrySet()) {
+			if (weight.getValue() > 0) {
+				cumulative += weight.getValue();
+				operations[i] = weight.getKey();
+				cumulativeWeights[i++] = cumulative;
+			}
+		}
+	}
+
+	/**
+	 * @param mix
+	 *            comma separated operation:weight pairs, with the keys of {@link Operation#getKey()}
+	 * @throws IllegalArgumentException
+	 *             if an operation is unknown or listed twice, or a weight is not a non-negative integer
+	 */
+	public static WorkloadMix parse(String mix) {
+		Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+		for (String entry : mix.split(",")) {
+			String[] keyAndWeight = entry.trim().split(":");
+			if (keyAndWeight.length != 2) {
+				throw new IllegalArgumentException("Expected operation:weight, found '" + entry + "' in " + mix);
+			}
+			Operation operation = Operation.forKey(keyAndWeight[0].trim());
+			int weight;
+			try {
+				weight = Integer.parseInt(keyAndWeight[1].trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid weight in '" + entry + "'", e);
+			}
+			if (weight < 0) {
+				throw new IllegalArgumentException("Negative weight in '" + entry + "'");
+			}
+			if (weights.put(operation, weight) != null) {
+				throw new IllegalArgumentException(operation.getKey() + " is listed twice in " + mix);
+			}
+		}
+		return new WorkloadMix(weights);
+	}
+
+	/**
+	 * A mix that only runs the given operation.
+	 */
+	public static WorkloadMix only(Operation operation) {
+		return new WorkloadMix(Collections.singletonMap(operation, 1));
+	}
+
+	public Map<Operation, Integer> getWeights() {
+		return weights;
+	}
+
+	Operation next(Random random) {
+		int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (draw < cumulativeWeights[i]) {
+				return operations[i];
+			}
+		}
+		throw new AssertionError();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder mix = new StringBuilder();
+		for (Map.Entry<Operation, Integer> weight : weights.entrySet()) {
+			mix.append(mix.length() == 0 ? "" : ",").append(weight.getKey().getKey()).append(':')
+					.append(weight.getValue());
+		}
+		return mix.toString();
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.test.eclipselink.jpa.fetch_state.loadstate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.FetchGroupManager;
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+
+/**
+ * Answers load state questions the way TestFetchState found to be reliable, that is, the way
+ * EntityManagerFactoryImpl.isLoaded(Object, String, AbstractSession) does: the FetchGroup of the entity first, then
+ * the indirection of the mapping for lazy associations.
+ *
+ * Unlike EntityManagerFactoryImpl, it does not look the descriptor and the mapping up again for every call. The
+ * session's descriptor lookup goes through a single "last descriptor accessed" field that every calling thread
+ * writes to, which turns into a contended cache line as soon as threads check different entity types. This class
+ * resolves descriptors and mappings once per entity class and keeps them in a ConcurrentHashMap of immutable
+ * entries, so a check is a lock-free map read followed by reads of the entity's own woven fields.
+ *
+ * Entities whose classes were not woven are answered by UnwovenLoadState, through cached field handles, rather than
+ * by the mapping's reflective accessor.
+ *
+ * It also refuses to guess: asking about a class that is not an entity or about an attribute the entity does not
+ * have is an IllegalArgumentException instead of a silent "false" (or a null).
+ *
+ * Instances are thread-safe and meant to be shared, one per EntityManagerFactory.
+ *
+ */
+public class LoadStateInspector {
+
+	private final AbstractSession session;
+
+	private final ConcurrentMap<Class<?>, EntityType> entityTypes = new ConcurrentHashMap<>();
+
+	public LoadStateInspector(EntityManagerFactory emf) {
+		this((AbstractSession) JpaHelper.getServerSession(emf));
+	}
+
+	public LoadStateInspector(AbstractSession session) {
+		this.session = session;
+	}
+
+	/**
+	 * Whether the given attribute of the entity is loaded; never triggers loading.
+	 *
+	 * @throws IllegalArgumentException if the entity is not an entity of this factory, or has no such attribute
+	 */
+	public boolean isLoaded(Object entity, String attributeName) {
+		return entityType(entity).attribute(attributeName).isLoaded(entity);
+	}
+
+	/**
+	 * Whether every attribute that is not LAZY by mapping is loaded; the whole-entity check of the JPA spec (and of
+	 * EntityManagerFactoryImpl.isLoaded(Object, AbstractSession)).
+	 *
+	 * @throws IllegalArgumentException if the entity is not an entity of this factory
+	 */
+	public boolean isLoaded(Object entity) {
+		for (Attribute attribute : entityType(entity).eagerAttributes) {
+			if (!attribute.isLoaded(entity)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Names of the mapped attributes of the entity's class, in mapping order.
+	 */
+	public List<String> attributeNames(Class<?> entityClass) {
+		return entityType(entityClass).attributeNames;
+	}
+
+	private EntityType entityType(Object entity) {
+		if (entity == null) {
+			throw new IllegalArgumentException("Cannot determine the load state of null");
+		}
+		return entityType(entity.getClass());
+	}
+
+	private EntityType entityType(Class<?> entityClass) {
+		EntityType entityType = entityTypes.get(entityClass);
+		if (entityType == null) {
+			ClassDescriptor descriptor = session.getDescriptor(entityClass);
+			if (descriptor == null) {
+				throw new IllegalArgumentException(entityClass.getName() + " is not a persistent class");
+			}
+			entityType = new EntityType(descriptor);
+			EntityType existing = entityTypes.putIfAbsent(entityClass, entityType);
+			if (existing != null) {
+				entityType = existing;
+			}
+		}
+		return entityType;
+	}
+
+	private static final class EntityType {
+
+		private final Class<?> javaClass;
+		private final Map<String, Attribute> attributes;
+		private final List<Attribute> eagerAttributes;
+		private final List<String> attributeNames;
+
+		private EntityType(ClassDescriptor descriptor) {
+			this.javaClass = descriptor.getJavaClass();
+			FetchGroupManager fetchGroupManager = descriptor.hasFetchGroupManager() ? descriptor.getFetchGroupManager()
+					: null;
+			UnwovenLoadState unwoven = UnwovenLoadState.isWoven(javaClass) ? null : UnwovenLoadState.of(javaClass);
+
+			Map<String, Attribute> attributes = new HashMap<>();
+			List<Attribute> eagerAttributes = new ArrayList<>();
+			List<String> attributeNames = new ArrayList<>();
+			for (DatabaseMapping mapping : descriptor.getMappings()) {
+				Attribute attribute = new Attribute(mapping, fetchGroupManager, unwoven);
+				attributes.put(mapping.getAttributeName(), attribute);
+				attributeNames.add(mapping.getAttributeName());
+				if (!mapping.isLazy()) {
+					eagerAttributes.add(attribute);
+				}
+			}
+			this.attributes = attributes;
+			this.eagerAttributes = eagerAttributes;
+			this.attributeNames = Collections.unmodifiableList(attributeNames);
+		}
+
+		private Attribute attribute(String attributeName) {
+			Attribute attribute = attributes.get(attributeName);
+			if (attribute == null) {
+				throw new IllegalArgumentException(
+						javaClass.getSimpleName() + " has no mapped attribute named '" + attributeName + "'");
+			}
+			return attribute;
+		}
+	}
+
+	private static final class Attribute {
+
+		private final String name;
+		private final DatabaseMapping mapping;
+		private final FetchGroupManager fetchGroupManager;
+		/**
+		 * The load state of the class if it is not woven and the attribute is one of its fields; null otherwise.
+		 */
+		private final UnwovenLoadState unwoven;
+		private final int unwovenIndex;
+
+		private Attribute(DatabaseMapping mapping, FetchGroupManager fetchGroupManager, UnwovenLoadState unwoven) {
+			this.name = mapping.getAttributeName();
+			this.mapping = mapping;
+			this.fetchGroupManager = fetchGroupManager;
+			boolean isField = unwoven != null && unwoven.hasAttribute(name);
+			this.unwoven = isField ? unwoven : null;
+			this.unwovenIndex = isField ? unwoven.indexOf(name) : -1;
+		}
+
+		private boolean isLoaded(Object entity) {
+			if (fetchGroupManager != null && !fetchGroupManager.isAttributeFetched(entity, name)) {
+				return false;
+			}
+			if (unwoven != null) {
+				return unwoven.isLoaded(entity, unwovenIndex);
+			}
+			return EntityManagerFactoryImpl.isLoaded(entity, name, mapping);
+		}
+	}
+
+}
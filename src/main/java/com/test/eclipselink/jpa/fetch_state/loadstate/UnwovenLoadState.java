@@ -0,0 +1,292 @@
+package com.test.eclipselink.jpa.fetch_state.loadstate;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import javax.persistence.Transient;
+
+import org.eclipse.persistence.indirection.IndirectContainer;
+import org.eclipse.persistence.indirection.IndirectList;
+import org.eclipse.persistence.indirection.IndirectMap;
+import org.eclipse.persistence.indirection.IndirectSet;
+import org.eclipse.persistence.indirection.ValueHolder;
+import org.eclipse.persistence.indirection.ValueHolderInterface;
+import org.eclipse.persistence.internal.weaving.PersistenceWeavedLazy;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+
+/**
+ * The load state of entities whose classes were not woven, as on a test classpath that skips the static weaving or
+ * for entities of a module loaded at runtime.
+ *
+ * Without weaving, EclipseLink has nowhere to put the state of a lazy attribute but in the attribute itself, so
+ * that is all there is to inspect:
+ * 		-a lazy collection holds an indirect container (IndirectList, IndirectSet, IndirectMap) until it is
+ * 			instantiated
+ * 		-a lazy to-one declared as a ValueHolderInterface holds the value holder
+ * 		-everything else, to-ones declared with their entity type and LAZY basics included, is loaded eagerly and
+ * 			is therefore always loaded
+ * plus the FetchGroup of entities that implement FetchGroupTracker by hand.
+ *
+ * EntityManagerFactoryImpl.isLoaded reads the attribute through the mapping's reflective accessor (Field.get) on
+ * every call. Here the accessors are resolved once per class:
+ * 		-attributes whose declared type cannot hold a container or a value holder are loaded without being read
+ * 		-the others are read through their getter, bound to a Function with LambdaMetafactory so that the JIT can
+ * 			inline it, provided the getter hands back the field's own object: it is tried once on a new instance
+ * 			holding an empty container, and a getter that wraps or copies it (Collections.unmodifiableList...) would
+ * 			hide the container
+ * 		-failing that, through a MethodHandle getter of the field
+ *
+ * No session is needed: the attributes are the persistent fields of the class (neither static, transient nor
+ * {@literal @}Transient), by name and in declaration order, superclasses first. Instances are immutable, shared
+ * through {@link #of(Class)} and thread-safe.
+ *
+ */
+public final class UnwovenLoadState {
+
+	private static final MethodType FIELD_GETTER = MethodType.methodType(Object.class, Object.class);
+
+	/**
+	 * The containers and value holders EclipseLink puts in lazy attributes: an attribute is only inspected if one of
+	 * them fits its declared type, and an empty instance of the first that does is what its getter is tried with.
+	 */
+	private static final Class<?>[] LAZY_VALUE_CLASSES = { IndirectList.class, IndirectSet.class, IndirectMap.class,
+			ValueHolder.class };
+
+	private static final ClassValue<UnwovenLoadState> STATES = new ClassValue<UnwovenLoadState>() {
+		@Override
+		protected UnwovenLoadState computeValue(Class<?> type) {
+			return new UnwovenLoadState(type);
+		}
+	};
+
+	private final Class<?> entityClass;
+	/**
+	 * Decided once: a failed instanceof against an interface scans the class's interfaces on every call.
+	 */
+	private final boolean tracksFetchGroups;
+	private final List<String> attributeNames;
+	private final Map<String, Integer> indexes;
+	/**
+	 * By attribute index; null for the attributes that are always loaded.
+	 */
+	private final Function<Object, Object>[] accessors;
+	private final boolean[] readThroughGetter;
+
+	@SuppressWarnings("unchecked")
+	private UnwovenLoadState(Class<?> entityClass) {
+		List<Class<?>> hierarchy = new ArrayList<>();
+		for (Class<?> type = entityClass; type != null && type != Object.class; type = type.getSuperclass()) {
+			hierarchy.add(0, type);
+		}
+		List<Field> fields = new ArrayList<>();
+		for (Class<?> type : hierarchy) {
+			for (Field field : type.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())
+						|| field.isAnnotationPresent(Transient.class) || field.getName().startsWith("_persistence_")) {
+					continue;
+				}
+				fields.add(field);
+			}
+		}
+		List<String> attributeNames = new ArrayList<>();
+		Map<String, Integer> indexes = new HashMap<>();
+		this.accessors = new Function[fields.size()];
+		this.readThroughGetter = new boolean[fields.size()];
+		for (int i = 0; i < fields.size(); i++) {
+			Field field = fields.get(i);
+			attributeNames.add(field.getName());
+			indexes.put(field.getName(), i);
+			Class<?> lazyValueClass = lazyValueClass(field.getType());
+			if (lazyValueClass != null) {
+				Function<Object, Object> getter = checkedGetter(entityClass, field, lazyValueClass);
+				readThroughGetter[i] = getter != null;
+				accessors[i] = getter != null ? getter : fieldGetter(field);
+			}
+		}
+		this.entityClass = entityClass;
+		this.tracksFetchGroups = FetchGroupTracker.class.isAssignableFrom(entityClass);
+		this.attributeNames = Collections.unmodifiableList(attributeNames);
+		this.indexes = indexes;
+	}
+
+	/**
+	 * The load state of the class, built on first use.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the class was woven for lazy loading, as its lazy attributes then are not in their fields
+	 */
+	public static UnwovenLoadState of(Class<?> entityClass) {
+		if (isWoven(entityClass)) {
+			throw new IllegalArgumentException(entityClass.getName() + " is woven; use LoadStateInspector or the "
+					+ "generated load states");
+		}
+		return STATES.get(entityClass);
+	}
+
+	/**
+	 * Whether EclipseLink wove the class for lazy loading, in which case lazy to-ones are tracked outside of their
+	 * fields.
+	 */
+	public static boolean isWoven(Class<?> entityClass) {
+		return PersistenceWeavedLazy.class.isAssignableFrom(entityClass);
+	}
+
+	/**
+	 * Whether the named attribute of the entity is loaded; never triggers loading.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the entity is null or of another class, or the class has no such attribute
+	 */
+	public boolean isLoaded(Object entity, String attributeName) {
+		return isLoaded(entity, indexOf(attributeName));
+	}
+
+	/**
+	 * Whether the attribute at the given index ({@link #indexOf(String)}) is loaded; never triggers loading.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the entity is null or of another class
+	 */
+	public boolean isLoaded(Object entity, int attribute) {
+		if (entity == null || entity.getClass() != entityClass) {
+			throw new IllegalArgumentException("Not a " + entityClass.getSimpleName() + ": " + entity);
+		}
+		if (tracksFetchGroups) {
+			FetchGroup fetchGroup = ((FetchGroupTracker) entity)._persistence_getFetchGroup();
+			if (fetchGroup != null && !fetchGroup.containsAttributeInternal(attributeNames.get(attribute))) {
+				return false;
+			}
+		}
+		Function<Object, Object> accessor = accessors[attribute];
+		if (accessor == null) {
+			return true;
+		}
+		Object value = accessor.apply(entity);
+		if (value instanceof IndirectContainer) {
+			return ((IndirectContainer) value).isInstantiated();
+		}
+		if (value instanceof ValueHolderInterface) {
+			return ((ValueHolderInterface) value).isInstantiated();
+		}
+		return true;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the class has no such attribute
+	 */
+	public int indexOf(String attributeName) {
+		Integer index = indexes.get(attributeName);
+		if (index == null) {
+			throw new IllegalArgumentException(
+					entityClass.getSimpleName() + " has no persistent field named '" + attributeName + "'");
+		}
+		return index;
+	}
+
+	public boolean hasAttribute(String attributeName) {
+		return indexes.containsKey(attributeName);
+	}
+
+	/**
+	 * The persistent fields of the class, by index.
+	 */
+	public List<String> getAttributeNames() {
+		return attributeNames;
+	}
+
+	/**
+	 * Whether the attribute is read through its getter rather than through a handle of its field; false for the
+	 * attributes that are not read at all.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the class has no such attribute
+	 */
+	public boolean isReadThroughGetter(String attributeName) {
+		return readThroughGetter[indexOf(attributeName)];
+	}
+
+	private static Class<?> lazyValueClass(Class<?> declaredType) {
+		for (Class<?> lazyValueClass : LAZY_VALUE_CLASSES) {
+			if (declaredType.isAssignableFrom(lazyValueClass)) {
+				return lazyValueClass;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The getter of the field as a Function, if it has a public one that returns the field's own object; null
+	 * otherwise.
+	 */
+	private static Function<Object, Object> checkedGetter(Class<?> entityClass, Field field, Class<?> lazyValueClass) {
+		String suffix = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+		Method method;
+		try {
+			method = entityClass.getMethod("get" + suffix);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+		if (method.getReturnType() != field.getType() || Modifier.isStatic(method.getModifiers())) {
+			return null;
+		}
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle getter = lookup.unreflect(method);
+			@SuppressWarnings("unchecked")
+			Function<Object, Object> function = (Function<Object, Object>) LambdaMetafactory
+					.metafactory(lookup, "apply", MethodType.methodType(Function.class), FIELD_GETTER, getter,
+							MethodType.methodType(field.getType(), entityClass))
+					.getTarget().invokeExact();
+
+			Constructor<?> constructor = entityClass.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			Object sample = constructor.newInstance();
+			Object lazyValue = lazyValueClass.getConstructor().newInstance();
+			field.setAccessible(true);
+			field.set(sample, lazyValue);
+			return function.apply(sample) == lazyValue ? function : null;
+		} catch (LinkageError e) {
+			// the class is not visible from here (another class loader)
+			return null;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable e) {
+			// not accessible from here, or a getter that fails on a new instance
+			return null;
+		}
+	}
+
+	private static Function<Object, Object> fieldGetter(Field field) {
+		MethodHandle getter;
+		try {
+			field.setAccessible(true);
+			getter = MethodHandles.lookup().unreflectGetter(field).asType(FIELD_GETTER);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		return entity -> {
+			try {
+				return getter.invokeExact(entity);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e);
+			}
+		};
+	}
+
+}
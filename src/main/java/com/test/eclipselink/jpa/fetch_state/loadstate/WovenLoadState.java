@@ -0,0 +1,150 @@
+package com.test.eclipselink.jpa.fetch_state.loadstate;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+import org.eclipse.persistence.indirection.IndirectContainer;
+import org.eclipse.persistence.indirection.ValueHolderInterface;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+
+/**
+ * The load state of the attributes of one entity class, by attribute index; what the load-state accessors generated
+ * by FetchStateProcessor (such as RootEntityLoadState) delegate to.
+ *
+ * It answers like LoadStateInspector, the FetchGroup of the entity first and then the indirection of lazy
+ * associations, but without any session, descriptor or mapping: the processor knows from the annotations which
+ * attributes are lazy associations, and the indirection of those is read straight from the entity's fields,
+ * through getters resolved once per class:
+ * 		-lazy to-one associations: the value holder field woven next to the attribute (_persistence_ownedAssoc_vh),
+ * 			or the attribute field itself when the class is not woven
+ * 		-lazy to-many associations: the attribute field, which holds the IndirectList
+ * Every other attribute is loaded unless the entity's FetchGroup leaves it out.
+ *
+ * The attribute indexes are the positions in the attribute names given at construction, which the generated
+ * accessors expose as constants. Instances are immutable and thread-safe.
+ *
+ * @param <E>
+ *            the entity class
+ */
+public final class WovenLoadState<E> {
+
+	private static final MethodType HOLDER_GETTER = MethodType.methodType(Object.class, Object.class);
+
+	private final Class<E> entityClass;
+	private final String[] attributeNames;
+	private final MethodHandle[] holders;
+	private final int[] eagerAttributes;
+
+	/**
+	 * @param attributeNames
+	 *            the persistent attributes of the class, by index
+	 * @param lazyToOne
+	 *            the indexes of the lazy to-one associations
+	 * @param lazyToMany
+	 *            the indexes of the lazy to-many associations
+	 * @param eagerAttributes
+	 *            the indexes of the attributes that are not LAZY by mapping, for {@link #isLoaded(Object)}
+	 * @throws IllegalArgumentException
+	 *             if a lazy association has no field in the class
+	 */
+	public WovenLoadState(Class<E> entityClass, String[] attributeNames, int[] lazyToOne, int[] lazyToMany,
+			int[] eagerAttributes) {
+		this.entityClass = entityClass;
+		this.attributeNames = attributeNames.clone();
+		this.holders = new MethodHandle[attributeNames.length];
+		for (int attribute : lazyToOne) {
+			Field valueHolder = findField("_persistence_" + attributeNames[attribute] + "_vh");
+			holders[attribute] = getter(valueHolder != null ? valueHolder : attributeField(attributeNames[attribute]));
+		}
+		for (int attribute : lazyToMany) {
+			holders[attribute] = getter(attributeField(attributeNames[attribute]));
+		}
+		this.eagerAttributes = eagerAttributes.clone();
+	}
+
+	/**
+	 * Whether the attribute at the given index is loaded; never triggers loading.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the entity is null
+	 */
+	public boolean isLoaded(E entity, int attribute) {
+		if (entity == null) {
+			throw new IllegalArgumentException("Cannot determine the load state of null");
+		}
+		if (entity instanceof FetchGroupTracker) {
+			FetchGroup fetchGroup = ((FetchGroupTracker) entity)._persistence_getFetchGroup();
+			if (fetchGroup != null && !fetchGroup.containsAttributeInternal(attributeNames[attribute])) {
+				return false;
+			}
+		}
+		MethodHandle holder = holders[attribute];
+		return holder == null || isInstantiated(holder, entity);
+	}
+
+	/**
+	 * Whether every attribute that is not LAZY by mapping is loaded, as LoadStateInspector.isLoaded(Object).
+	 */
+	public boolean isLoaded(E entity) {
+		for (int attribute : eagerAttributes) {
+			if (!isLoaded(entity, attribute)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String getAttributeName(int attribute) {
+		return attributeNames[attribute];
+	}
+
+	private static boolean isInstantiated(MethodHandle holder, Object entity) {
+		Object value;
+		try {
+			value = holder.invokeExact(entity);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+		if (value instanceof ValueHolderInterface) {
+			return ((ValueHolderInterface) value).isInstantiated();
+		}
+		if (value instanceof IndirectContainer) {
+			return ((IndirectContainer) value).isInstantiated();
+		}
+		return true;
+	}
+
+	private Field attributeField(String attributeName) {
+		Field field = findField(attributeName);
+		if (field == null) {
+			throw new IllegalArgumentException(entityClass.getName() + " has no field for '" + attributeName + "'");
+		}
+		return field;
+	}
+
+	private Field findField(String name) {
+		for (Class<?> type = entityClass; type != null; type = type.getSuperclass()) {
+			try {
+				return type.getDeclaredField(name);
+			} catch (NoSuchFieldException e) {
+				// declared further up, if anywhere
+			}
+		}
+		return null;
+	}
+
+	private static MethodHandle getter(Field field) {
+		try {
+			field.setAccessible(true);
+			return MethodHandles.lookup().unreflectGetter(field).asType(HOLDER_GETTER);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,411 @@
+package com.test.eclipselink.jpa.fetch_state.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates, for every @Entity of the compilation, next to the entity:
+ * 		-[Entity]Plan: typed FetchGroup paths, one builder method per persistent attribute, with an overload taking
+ * 			the plan of the target entity for associations, so that RootEntityPlan.data1().ownedAssoc(
+ * 			OwnedAssocPlan.data1()) is the plan of "data1" and "ownedAssoc.data1" (see TypedFetchPlan)
+ * 		-[Entity]LoadState: an index constant per persistent attribute and static isLoaded checks per attribute,
+ * 			backed by a WovenLoadState that reads the woven fields of the lazy associations directly
+ * A misspelled attribute is then a compilation error rather than an empty FetchGroup or an IllegalArgumentException
+ * at run time, and the attribute paths and field getters are resolved once per class rather than for every check.
+ *
+ * The processor reads the JPA annotations of the fields (this project's entities use field access; entities with
+ * property access are reported and skipped) and of the fields of their @MappedSuperclass and @Entity superclasses:
+ * every non-static, non-transient field not marked @Transient is an attribute. @OneToOne and @ManyToOne attributes
+ * are to-one associations, lazy with FetchType.LAZY; @OneToMany, @ManyToMany and @ElementCollection attributes are
+ * to-many, lazy unless FetchType.EAGER; @Basic(fetch = LAZY) attributes are lazy basics.
+ *
+ * The annotations are read as mirrors, so the processor does not need the JPA classes itself. It is compiled ahead
+ * of the rest of the sources and named explicitly in the compiler configuration of the pom.
+ *
+ */
+@SupportedAnnotationTypes("javax.persistence.Entity")
+public class FetchStateProcessor extends AbstractProcessor {
+
+	private static final String JPA = "javax.persistence.";
+	private static final String TYPED_FETCH_PLAN = "com.test.eclipselink.jpa.fetch_state.fetch.TypedFetchPlan";
+	private static final String WOVEN_LOAD_STATE = "com.test.eclipselink.jpa.fetch_state.loadstate.WovenLoadState";
+
+	/**
+	 * No-argument methods a builder inherits, which an attribute's builder method would clash with.
+	 */
+	private static final Set<String> RESERVED = new HashSet<>(Arrays.asList("getClass", "hashCode", "toString",
+			"clone", "finalize", "notify", "notifyAll", "wait", "getEntityClass", "getPaths", "toFetchGroup"));
+
+	private enum Kind {
+		BASIC, LAZY_BASIC, TO_ONE, LAZY_TO_ONE, TO_MANY, LAZY_TO_MANY
+	}
+
+	private static final class Attribute {
+
+		private final String name;
+		private final Kind kind;
+		/**
+		 * The entity an association refers to, if it is one of the compilation or already has a plan.
+		 */
+		private final TypeElement target;
+
+		private Attribute(String name, Kind kind, TypeElement target) {
+			this.name = name;
+			this.kind = kind;
+			this.target = target;
+		}
+
+		private boolean isEager() {
+			return kind == Kind.BASIC || kind == Kind.TO_ONE || kind == Kind.TO_MANY;
+		}
+	}
+
+	private final Set<String> generated = new HashSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		TypeElement entityAnnotation = processingEnv.getElementUtils().getTypeElement(JPA + "Entity");
+		if (entityAnnotation == null) {
+			return false;
+		}
+		Set<TypeElement> entities = new HashSet<>(
+				ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(entityAnnotation)));
+		for (TypeElement entity : entities) {
+			if (generated.add(entity.getQualifiedName().toString())) {
+				List<Attribute> attributes = attributes(entity, entities);
+				if (attributes != null) {
+					writePlan(entity, attributes);
+					writeLoadState(entity, attributes);
+				}
+			}
+		}
+		return false;
+	}
+
+	private List<Attribute> attributes(TypeElement entity, Set<TypeElement> entities) {
+		List<TypeElement> hierarchy = new ArrayList<>();
+		for (TypeElement type = entity; type != null; type = superclass(type)) {
+			if (type == entity || annotation(type, "MappedSuperclass") != null || annotation(type, "Entity") != null) {
+				hierarchy.add(type);
+			}
+		}
+		Collections.reverse(hierarchy);
+
+		Map<String, Attribute> attributes = new LinkedHashMap<>();
+		Set<String> constants = new HashSet<>();
+		boolean valid = true;
+		for (TypeElement type : hierarchy) {
+			for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+				if (annotation(method, "Id") != null || annotation(method, "EmbeddedId") != null) {
+					error(method, entity.getSimpleName() + " uses property access, which FetchStateProcessor does not"
+							+ " support; no plan or load state is generated for it");
+					return null;
+				}
+			}
+			for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+				if (field.getModifiers().contains(Modifier.STATIC) || field.getModifiers().contains(Modifier.TRANSIENT)
+						|| annotation(field, "Transient") != null) {
+					continue;
+				}
+				String name = field.getSimpleName().toString();
+				if (RESERVED.contains(name)) {
+					error(field, "Attribute '" + name + "' clashes with a method of the generated plan builders");
+					valid = false;
+				}
+				if (!constants.add(constant(name))) {
+					error(field, "Attribute '" + name + "' has the same load state constant as another attribute, "
+							+ constant(name));
+					valid = false;
+				}
+				attributes.put(name, attribute(field, entities));
+			}
+		}
+		return valid ? new ArrayList<>(attributes.values()) : null;
+	}
+
+	private Attribute attribute(VariableElement field, Set<TypeElement> entities) {
+		String name = field.getSimpleName().toString();
+		AnnotationMirror toOne = annotation(field, "OneToOne");
+		if (toOne == null) {
+			toOne = annotation(field, "ManyToOne");
+		}
+		if (toOne != null) {
+			return new Attribute(name, isFetch(toOne, "LAZY") ? Kind.LAZY_TO_ONE : Kind.TO_ONE,
+					target(toOne, field.asType(), entities));
+		}
+		AnnotationMirror toMany = annotation(field, "OneToMany");
+		if (toMany == null) {
+			toMany = annotation(field, "ManyToMany");
+		}
+		if (toMany != null) {
+			return new Attribute(name, isFetch(toMany, "EAGER") ? Kind.TO_MANY : Kind.LAZY_TO_MANY,
+					target(toMany, elementType(field.asType()), entities));
+		}
+		AnnotationMirror elementCollection = annotation(field, "ElementCollection");
+		if (elementCollection != null) {
+			return new Attribute(name, isFetch(elementCollection, "EAGER") ? Kind.TO_MANY : Kind.LAZY_TO_MANY, null);
+		}
+		AnnotationMirror basic = annotation(field, "Basic");
+		return new Attribute(name, basic != null && isFetch(basic, "LAZY") ? Kind.LAZY_BASIC : Kind.BASIC, null);
+	}
+
+	/**
+	 * The entity an association refers to, from its targetEntity or from the declared type, provided there is (or
+	 * will be) a plan for it.
+	 */
+	private TypeElement target(AnnotationMirror association, TypeMirror declaredType, Set<TypeElement> entities) {
+		AnnotationValue targetEntity = value(association, "targetEntity");
+		TypeMirror type = targetEntity != null ? (TypeMirror) targetEntity.getValue() : declaredType;
+		if (type == null || type.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		TypeElement target = (TypeElement) ((DeclaredType) type).asElement();
+		if (entities.contains(target) || generated.contains(target.getQualifiedName().toString())
+				|| processingEnv.getElementUtils().getTypeElement(target.getQualifiedName() + "Plan") != null) {
+			return target;
+		}
+		return null;
+	}
+
+	/**
+	 * The element type of a collection, or the value type of a map: the last type argument.
+	 */
+	private static TypeMirror elementType(TypeMirror type) {
+		if (type.getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+		return arguments.isEmpty() ? null : arguments.get(arguments.size() - 1);
+	}
+
+	private void writePlan(TypeElement entity, List<Attribute> attributes) {
+		String entityName = entity.getSimpleName().toString();
+		String planName = entityName + "Plan";
+		try (PrintWriter out = open(entity, planName)) {
+			out.println("/**");
+			out.println(" * Typed FetchGroup paths of " + entityName + "; generated by FetchStateProcessor.");
+			out.println(" */");
+			out.println("public final class " + planName + " {");
+			out.println();
+			out.println("\tprivate " + planName + "() {");
+			out.println("\t}");
+			for (Attribute attribute : attributes) {
+				out.println();
+				out.println("\tpublic static Builder " + attribute.name + "() {");
+				out.println("\t\treturn Builder.EMPTY." + attribute.name + "();");
+				out.println("\t}");
+				if (attribute.target != null) {
+					out.println();
+					out.println("\tpublic static Builder " + attribute.name + "(" + planBuilder(entity, attribute.target)
+							+ " plan) {");
+					out.println("\t\treturn Builder.EMPTY." + attribute.name + "(plan);");
+					out.println("\t}");
+				}
+			}
+			out.println();
+			out.println("\tpublic static final class Builder extends " + TYPED_FETCH_PLAN + "<" + entityName + "> {");
+			out.println();
+			out.println("\t\tprivate static final Builder EMPTY = new Builder(NO_PATHS);");
+			out.println();
+			out.println("\t\tprivate Builder(java.util.List<String> paths) {");
+			out.println("\t\t\tsuper(" + entityName + ".class, paths);");
+			out.println("\t\t}");
+			for (Attribute attribute : attributes) {
+				out.println();
+				out.println("\t\tpublic Builder " + attribute.name + "() {");
+				out.println("\t\t\treturn new Builder(with(\"" + attribute.name + "\"));");
+				out.println("\t\t}");
+				if (attribute.target != null) {
+					out.println();
+					out.println("\t\tpublic Builder " + attribute.name + "(" + planBuilder(entity, attribute.target)
+							+ " plan) {");
+					out.println("\t\t\treturn new Builder(with(\"" + attribute.name + "\", plan));");
+					out.println("\t\t}");
+				}
+			}
+			out.println("\t}");
+			out.println();
+			out.println("}");
+		}
+	}
+
+	private void writeLoadState(TypeElement entity, List<Attribute> attributes) {
+		String entityName = entity.getSimpleName().toString();
+		String loadStateName = entityName + "LoadState";
+		try (PrintWriter out = open(entity, loadStateName)) {
+			out.println("/**");
+			out.println(" * Load state checks of " + entityName + " by attribute; generated by FetchStateProcessor.");
+			out.println(" */");
+			out.println("public final class " + loadStateName + " {");
+			out.println();
+			for (int i = 0; i < attributes.size(); i++) {
+				out.println("\tpublic static final int " + constant(attributes.get(i).name) + " = " + i + ";");
+			}
+			out.println();
+			out.println("\tprivate static final " + WOVEN_LOAD_STATE + "<" + entityName + "> STATE = new "
+					+ WOVEN_LOAD_STATE + "<>(");
+			out.println("\t\t\t" + entityName + ".class,");
+			StringBuilder names = new StringBuilder();
+			for (Attribute attribute : attributes) {
+				names.append(names.length() == 0 ? "" : ", ").append('"').append(attribute.name).append('"');
+			}
+			out.println("\t\t\tnew String[] { " + names + " },");
+			out.println("\t\t\tnew int[] { " + constants(attributes, Kind.LAZY_TO_ONE) + " },");
+			out.println("\t\t\tnew int[] { " + constants(attributes, Kind.LAZY_TO_MANY) + " },");
+			out.println("\t\t\tnew int[] { " + constants(attributes, null) + " });");
+			out.println();
+			out.println("\tprivate " + loadStateName + "() {");
+			out.println("\t}");
+			out.println();
+			out.println("\t/**");
+			out.println("\t * Whether every attribute that is not LAZY by mapping is loaded.");
+			out.println("\t */");
+			out.println("\tpublic static boolean isLoaded(" + entityName + " entity) {");
+			out.println("\t\treturn STATE.isLoaded(entity);");
+			out.println("\t}");
+			out.println();
+			out.println("\t/**");
+			out.println("\t * Whether the attribute with the given index constant is loaded.");
+			out.println("\t */");
+			out.println("\tpublic static boolean isLoaded(" + entityName + " entity, int attribute) {");
+			out.println("\t\treturn STATE.isLoaded(entity, attribute);");
+			out.println("\t}");
+			for (Attribute attribute : attributes) {
+				out.println();
+				out.println("\tpublic static boolean is" + Character.toUpperCase(attribute.name.charAt(0))
+						+ attribute.name.substring(1) + "Loaded(" + entityName + " entity) {");
+				out.println("\t\treturn STATE.isLoaded(entity, " + constant(attribute.name) + ");");
+				out.println("\t}");
+			}
+			out.println();
+			out.println("\tpublic static String attributeName(int attribute) {");
+			out.println("\t\treturn STATE.getAttributeName(attribute);");
+			out.println("\t}");
+			out.println();
+			out.println("}");
+		}
+	}
+
+	/**
+	 * The index constants of the attributes of the given kind, or of the eager attributes if kind is null.
+	 */
+	private static String constants(List<Attribute> attributes, Kind kind) {
+		StringBuilder constants = new StringBuilder();
+		for (Attribute attribute : attributes) {
+			if (kind == null ? attribute.isEager() : attribute.kind == kind) {
+				constants.append(constants.length() == 0 ? "" : ", ").append(constant(attribute.name));
+			}
+		}
+		return constants.toString();
+	}
+
+	/**
+	 * ownedAssoc -> OWNED_ASSOC
+	 */
+	private static String constant(String attributeName) {
+		StringBuilder constant = new StringBuilder();
+		for (int i = 0; i < attributeName.length(); i++) {
+			char c = attributeName.charAt(i);
+			if (Character.isUpperCase(c) && i > 0 && attributeName.charAt(i - 1) != '_') {
+				constant.append('_');
+			}
+			constant.append(Character.toUpperCase(c));
+		}
+		return constant.toString();
+	}
+
+	private String planBuilder(TypeElement entity, TypeElement target) {
+		String targetPlan = target.getSimpleName() + "Plan.Builder";
+		return packageOf(target).equals(packageOf(entity)) ? targetPlan : packageOf(target) + "." + targetPlan;
+	}
+
+	private PrintWriter open(TypeElement entity, String simpleName) {
+		String packageName = packageOf(entity);
+		String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+		try {
+			PrintWriter out = new PrintWriter(
+					processingEnv.getFiler().createSourceFile(qualifiedName, entity).openWriter());
+			if (!packageName.isEmpty()) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			return out;
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot write " + qualifiedName, e);
+		}
+	}
+
+	private String packageOf(TypeElement type) {
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+		return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+	}
+
+	private static TypeElement superclass(TypeElement type) {
+		TypeMirror superclass = type.getSuperclass();
+		return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement()
+				: null;
+	}
+
+	private static AnnotationMirror annotation(Element element, String simpleName) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			Element type = annotation.getAnnotationType().asElement();
+			if (type.getKind() == ElementKind.ANNOTATION_TYPE
+					&& ((TypeElement) type).getQualifiedName().contentEquals(JPA + simpleName)) {
+				return annotation;
+			}
+		}
+		return null;
+	}
+
+	private static AnnotationValue value(AnnotationMirror annotation, String member) {
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues()
+				.entrySet()) {
+			if (value.getKey().getSimpleName().contentEquals(member)) {
+				return value.getValue();
+			}
+		}
+		return null;
+	}
+
+	private static boolean isFetch(AnnotationMirror annotation, String fetchType) {
+		AnnotationValue fetch = value(annotation, "fetch");
+		return fetch != null && ((VariableElement) fetch.getValue()).getSimpleName().contentEquals(fetchType);
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+}
@@ -0,0 +1,154 @@
+package com.test.eclipselink.jpa.fetch_state.query;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+
+/**
+ * The JPQL queries of an EntityManagerFactory, compiled once at startup instead of on every call.
+ *
+ * EntityManager.createQuery(jpql) looks the JPQL up in EclipseLink's parse cache (parsing it again whenever it has
+ * been evicted), builds a new query around a copy of the parsed one and applies every hint again, FetchGroup
+ * included. {@link #register(PreparedQuery...)} does all of that once per query and adds the result to the
+ * factory as a named query (EntityManagerFactory.addNamedQuery); from then on:
+ * 		-EntityManager.createNamedQuery only wraps the shared, already prepared query (an "instance")
+ * 		-{@link #in(EntityManager)} keeps one instance per query and EntityManager, which is reused on every call
+ * 			with only its parameters rebound (a "reuse")
+ * The counters of the registry tell how often each happened, next to the number of JPQL parses it did itself.
+ *
+ * The registry is thread-safe; what {@link #in(EntityManager)} returns belongs to its EntityManager and, like it,
+ * must not be shared between threads.
+ *
+ */
+public class PreparedQueries {
+
+	private final EntityManagerFactory emf;
+	private final Map<String, PreparedQuery<?>> queries = new ConcurrentHashMap<>();
+
+	private final AtomicLong parses = new AtomicLong();
+	private final AtomicLong instances = new AtomicLong();
+	private final AtomicLong reuses = new AtomicLong();
+
+	public PreparedQueries(EntityManagerFactory emf) {
+		this.emf = emf;
+	}
+
+	/**
+	 * Parses the queries, applies their hints and adds them to the factory as named queries. Registering a query
+	 * twice does nothing; registering another query under a name already taken is an error.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the JPQL or a hint of a query is invalid, or its name is taken
+	 */
+	public synchronized PreparedQueries register(PreparedQuery<?>... queries) {
+		for (PreparedQuery<?> query : queries) {
+			PreparedQuery<?> registered = this.queries.get(query.getName());
+			if (registered == query) {
+				continue;
+			}
+			if (registered != null) {
+				throw new IllegalArgumentException("Cannot register " + query + ": " + registered
+						+ " is already registered under that name");
+			}
+			EntityManager em = emf.createEntityManager();
+			try {
+				TypedQuery<?> compiled = em.createQuery(query.getJpql(), query.getResultClass());
+				for (Map.Entry<String, Object> hint : query.getHints().entrySet()) {
+					compiled.setHint(hint.getKey(), hint.getValue());
+				}
+				emf.addNamedQuery(query.getName(), compiled);
+				parses.incrementAndGet();
+			} finally {
+				em.close();
+			}
+			this.queries.put(query.getName(), query);
+		}
+		return this;
+	}
+
+	public boolean isRegistered(PreparedQuery<?> query) {
+		return queries.get(query.getName()) == query;
+	}
+
+	/**
+	 * The registered queries of the EntityManager, to be kept for as long as it is used.
+	 */
+	public Bound in(EntityManager em) {
+		return new Bound(em);
+	}
+
+	/**
+	 * The number of JPQL strings parsed by the registry: one per registered query.
+	 */
+	public long getParses() {
+		return parses.get();
+	}
+
+	/**
+	 * The number of query instances created for an EntityManager from an already compiled query.
+	 */
+	public long getInstances() {
+		return instances.get();
+	}
+
+	/**
+	 * The number of times an EntityManager got back its own instance of a query, to rebind.
+	 */
+	public long getReuses() {
+		return reuses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "PreparedQueries [queries=" + queries.size() + ", parses=" + getParses() + ", instances="
+				+ getInstances() + ", reuses=" + getReuses() + "]";
+	}
+
+	/**
+	 * The registered queries, as seen by one EntityManager: every query is instantiated on first use and handed out
+	 * again on the following ones. Parameters, first result and max results set on an instance stay set until
+	 * changed; hints should not be set on an instance, as EclipseLink copies the shared query to apply them.
+	 */
+	public final class Bound {
+
+		private final EntityManager em;
+		private final Map<String, TypedQuery<?>> instances = new HashMap<>();
+
+		private Bound(EntityManager em) {
+			this.em = em;
+		}
+
+		/**
+		 * The instance of the query for this EntityManager, with the parameters of its previous use.
+		 *
+		 * @throws IllegalArgumentException
+		 *             if the query is not registered
+		 */
+		@SuppressWarnings("unchecked")
+		public <T> TypedQuery<T> get(PreparedQuery<T> query) {
+			TypedQuery<T> instance = (TypedQuery<T>) instances.get(query.getName());
+			if (instance != null) {
+				reuses.incrementAndGet();
+				return instance;
+			}
+			if (!isRegistered(query)) {
+				throw new IllegalArgumentException(query + " is not registered");
+			}
+			instance = em.createNamedQuery(query.getName(), query.getResultClass());
+			PreparedQueries.this.instances.incrementAndGet();
+			instances.put(query.getName(), instance);
+			return instance;
+		}
+
+		public EntityManager getEntityManager() {
+			return em;
+		}
+
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.test.eclipselink.jpa.fetch_state.query;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.persistence.config.QueryHints;
+
+import com.test.eclipselink.jpa.fetch_state.fetch.TypedFetchPlan;
+
+/**
+ * The definition of a query registered with PreparedQueries: its name, JPQL, result class and hints, FetchGroup
+ * included. Definitions are immutable and meant to be kept in constants:
+ *
+ * 		static final PreparedQuery<RootEntity> ROOT_DATA1_BY_ID = PreparedQuery
+ * 				.of("RootEntity.data1ById", RootEntity.class, "SELECT o FROM RootEntity o WHERE o.id = :id")
+ * 				.withPlan(RootEntityPlan.data1());
+ *
+ * The definition is also the key to look the query up with, once registered.
+ *
+ * @param <T>
+ *            the result class
+ */
+public final class PreparedQuery<T> {
+
+	private final String name;
+	private final Class<T> resultClass;
+	private final String jpql;
+	private final Map<String, Object> hints;
+
+	private PreparedQuery(String name, Class<T> resultClass, String jpql, Map<String, Object> hints) {
+		this.name = name;
+		this.resultClass = resultClass;
+		this.jpql = jpql;
+		this.hints = hints;
+	}
+
+	/**
+	 * @param name
+	 *            the name of the query in the persistence unit, as for a @NamedQuery
+	 */
+	public static <T> PreparedQuery<T> of(String name, Class<T> resultClass, String jpql) {
+		if (name == null || resultClass == null || jpql == null) {
+			throw new IllegalArgumentException("name, resultClass and jpql are mandatory");
+		}
+		return new PreparedQuery<>(name, resultClass, jpql, Collections.<String, Object> emptyMap());
+	}
+
+	/**
+	 * The same query with one more hint (or another value for the hint).
+	 */
+	public PreparedQuery<T> withHint(String hint, Object value) {
+		Map<String, Object> hints = new LinkedHashMap<>(this.hints);
+		hints.put(hint, value);
+		return new PreparedQuery<>(name, resultClass, jpql, Collections.unmodifiableMap(hints));
+	}
+
+	/**
+	 * The same query with the FetchGroup of the plan.
+	 */
+	public PreparedQuery<T> withPlan(TypedFetchPlan<?> plan) {
+		return withHint(QueryHints.FETCH_GROUP, plan.toFetchGroup());
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Class<T> getResultClass() {
+		return resultClass;
+	}
+
+	public String getJpql() {
+		return jpql;
+	}
+
+	/**
+	 * The hints of the query, in the order they were added.
+	 */
+	public Map<String, Object> getHints() {
+		return hints;
+	}
+
+	@Override
+	public String toString() {
+		return name + " [" + jpql + "]" + (hints.isEmpty() ? "" : " " + hints.keySet());
+	}
+
+}
@@ -0,0 +1,409 @@
+package com.test.eclipselink.jpa.fetch_state.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.sessions.server.Server;
+
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+
+/**
+ * Non-blocking facade over the RootEntity queries: every call returns a CompletableFuture right away and runs on a
+ * dedicated, bounded executor, so database latency is paid by the repository threads and not by the caller.
+ *
+ * Each task gets its own EntityManager, which is closed when the task ends; results are therefore detached. Lazy
+ * associations of a detached RootEntity can still be read afterwards, but attributes left out of a FetchGroup
+ * should be treated as unavailable.
+ *
+ * The executor never has more threads than the EntityManagerFactory has connections (see
+ * {@link #forConnectionPool(EntityManagerFactory)}), and its queue is bounded: when it is full, calls fail fast
+ * with a RejectedExecutionException instead of piling up.
+ *
+ * Cancelling a returned future removes the task from the queue, or interrupts it if it is already running. With a
+ * timeout configured, a future that has not completed in time fails with a TimeoutException and is cancelled the
+ * same way; the timeout is also passed on to JDBC as a statement timeout.
+ *
+ */
+public class RootEntityAsyncRepository implements AutoCloseable {
+
+	private static final int QUEUED_TASKS_PER_THREAD = 16;
+
+	private final EntityManagerFactory emf;
+	private final int saveBatchSize;
+	private final long timeoutMillis;
+
+	private final ThreadPoolExecutor executor;
+	private final ScheduledExecutorService timer;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+	private final AtomicLong timedOut = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+	private final AtomicInteger runningTasks = new AtomicInteger();
+	private final AtomicInteger peakRunningTasks = new AtomicInteger();
+
+	/**
+	 * A repository with as many threads as the default connection pool of the factory has connections, a queue of
+	 * {@value #QUEUED_TASKS_PER_THREAD} tasks per thread, batches of 100 for saveAll and no timeout.
+	 */
+	public static RootEntityAsyncRepository forConnectionPool(EntityManagerFactory emf) {
+		return new RootEntityAsyncRepository(emf, connectionPoolSize(emf),
+				connectionPoolSize(emf) * QUEUED_TASKS_PER_THREAD, 100, 0);
+	}
+
+	/**
+	 * @param threads
+	 *            number of executor threads; capped by the size of the factory's connection pools
+	 * @param queueCapacity
+	 *            number of tasks that may wait for a thread before calls are rejected
+	 * @param saveBatchSize
+	 *            number of entities merged per transaction by saveAll
+	 * @param timeoutMillis
+	 *            time after which a call fails with a TimeoutException; 0 for none
+	 */
+	public RootEntityAsyncRepository(EntityManagerFactory emf, int threads, int queueCapacity, int saveBatchSize,
+			long timeoutMillis) {
+		if (threads < 1 || queueCapacity < 1 || saveBatchSize < 1 || timeoutMillis < 0) {
+			throw new IllegalArgumentException("threads, queueCapacity and saveBatchSize must be positive, "
+					+ "timeoutMillis must not be negative");
+		}
+		this.emf = emf;
+		this.saveBatchSize = saveBatchSize;
+		this.timeoutMillis = timeoutMillis;
+
+		int poolThreads = Math.min(threads, connectionPoolSize(emf));
+		this.executor = new ThreadPoolExecutor(poolThreads, poolThreads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory("root-entity-repository"));
+		this.timer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("root-entity-repository-timer"));
+	}
+
+	/**
+	 * The number of connections available to the factory: the smaller of its default (write) and read connection
+	 * pools.
+	 */
+	public static int connectionPoolSize(EntityManagerFactory emf) {
+		Server server = JpaHelper.getServerSession(emf);
+		int size = server.getDefaultConnectionPool().getMaxNumberOfConnections();
+		if (server.getReadConnectionPool() != null) {
+			size = Math.min(size, server.getReadConnectionPool().getMaxNumberOfConnections());
+		}
+		return size;
+	}
+
+	public CompletableFuture<RootEntity> findById(final Long id) {
+		return submit(new Work<RootEntity>() {
+			@Override
+			public RootEntity run(EntityManager em) {
+				return applyTimeout(byIdQuery(em, id)).getResultList().stream().findFirst().orElse(null);
+			}
+		});
+	}
+
+	/**
+	 * Finds the RootEntity with only the given attributes fetched; attributes are FetchGroup paths, so
+	 * "ownedAssoc.data1" is allowed.
+	 */
+	public CompletableFuture<RootEntity> findWithFetchGroup(final Long id, final String... attributes) {
+		return submit(new Work<RootEntity>() {
+			@Override
+			public RootEntity run(EntityManager em) {
+				FetchGroup fetchGroup = new FetchGroup();
+				for (String attribute : attributes) {
+					fetchGroup.addAttribute(attribute);
+				}
+				TypedQuery<RootEntity> query = byIdQuery(em, id);
+				query.setHint(QueryHints.FETCH_GROUP, fetchGroup);
+				return applyTimeout(query).getResultList().stream().findFirst().orElse(null);
+			}
+		});
+	}
+
+	/**
+	 * A page of RootEntities ordered by id.
+	 */
+	public CompletableFuture<List<RootEntity>> findPage(final int firstResult, final int maxResults) {
+		return submit(new Work<List<RootEntity>>() {
+			@Override
+			public List<RootEntity> run(EntityManager em) {
+				TypedQuery<RootEntity> query = em.createQuery("SELECT o FROM RootEntity o ORDER BY o.id",
+						RootEntity.class);
+				query.setFirstResult(firstResult);
+				query.setMaxResults(maxResults);
+				return applyTimeout(query).getResultList();
+			}
+		});
+	}
+
+	/**
+	 * Merges the given entities in transactions of saveBatchSize entities each and completes with the merged
+	 * (detached) instances.
+	 *
+	 * Every batch commits on its own: when the call fails, is cancelled or times out, the batches committed before
+	 * that point stay committed.
+	 */
+	public CompletableFuture<List<RootEntity>> saveAll(Collection<RootEntity> roots) {
+		final List<RootEntity> toSave = new ArrayList<>(roots);
+		return submit(new Work<List<RootEntity>>() {
+			@Override
+			public List<RootEntity> run(EntityManager em) {
+				List<RootEntity> saved = new ArrayList<>(toSave.size());
+				for (int from = 0; from < toSave.size(); from += saveBatchSize) {
+					if (Thread.currentThread().isInterrupted()) {
+						throw new CancellationException("saveAll was cancelled after " + saved.size() + " entities");
+					}
+					em.getTransaction().begin();
+					try {
+						for (RootEntity root : toSave.subList(from, Math.min(from + saveBatchSize, toSave.size()))) {
+							saved.add(em.merge(root));
+						}
+						em.getTransaction().commit();
+					} finally {
+						if (em.getTransaction().isActive()) {
+							em.getTransaction().rollback();
+						}
+					}
+					em.clear();
+				}
+				return saved;
+			}
+		});
+	}
+
+	public Metrics getMetrics() {
+		return new Metrics(this);
+	}
+
+	/**
+	 * Stops accepting calls and lets the queued ones finish.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+		timer.shutdown();
+	}
+
+	private TypedQuery<RootEntity> byIdQuery(EntityManager em, Long id) {
+		return em.createQuery("SELECT o FROM RootEntity o WHERE o.id = :id", RootEntity.class).setParameter("id", id);
+	}
+
+	private <Q extends Query> Q applyTimeout(Q query) {
+		if (timeoutMillis > 0) {
+			//in seconds, and 0 would mean no timeout
+			query.setHint(QueryHints.JDBC_TIMEOUT, (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis)));
+		}
+		return query;
+	}
+
+	private <T> CompletableFuture<T> submit(final Work<T> work) {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		final long enqueued = System.nanoTime();
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				recordWait(System.nanoTime() - enqueued);
+				if (result.isDone()) {
+					return;
+				}
+				recordRunning(runningTasks.incrementAndGet());
+				try {
+					EntityManager em = emf.createEntityManager();
+					try {
+						result.complete(work.run(em));
+					} catch (Throwable e) {
+						result.completeExceptionally(e);
+					} finally {
+						em.close();
+					}
+				} finally {
+					runningTasks.decrementAndGet();
+				}
+			}
+		};
+
+		final Future<?> queued;
+		try {
+			queued = executor.submit(task);
+			submitted.incrementAndGet();
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			result.completeExceptionally(e);
+			return result;
+		}
+
+		final ScheduledFuture<?> timeout = timeoutMillis == 0 ? null : timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (result.completeExceptionally(
+						new TimeoutException("RootEntity repository call timed out after " + timeoutMillis + " ms"))) {
+					timedOut.incrementAndGet();
+				}
+			}
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+
+		result.whenComplete((value, failure) -> {
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+			if (result.isCancelled() || failure instanceof TimeoutException) {
+				if (result.isCancelled()) {
+					cancelled.incrementAndGet();
+				}
+				if (queued.cancel(true)) {
+					executor.purge();
+				}
+			}
+		});
+		return result;
+	}
+
+	private void recordWait(long waitNanos) {
+		started.incrementAndGet();
+		totalWaitNanos.addAndGet(waitNanos);
+		long max;
+		while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+			//retry
+		}
+	}
+
+	private void recordRunning(int running) {
+		int peak;
+		while (running > (peak = peakRunningTasks.get()) && !peakRunningTasks.compareAndSet(peak, running)) {
+			//retry
+		}
+	}
+
+	private interface Work<T> {
+
+		T run(EntityManager em);
+	}
+
+	/**
+	 * A snapshot of the executor's queue and of the time calls spent waiting in it.
+	 */
+	public static final class Metrics {
+
+		private final int queueDepth;
+		private final int activeTasks;
+		private final int peakActiveTasks;
+		private final long submitted;
+		private final long rejected;
+		private final long cancelled;
+		private final long timedOut;
+		private final double averageWaitMillis;
+		private final double maxWaitMillis;
+
+		private Metrics(RootEntityAsyncRepository repository) {
+			this.queueDepth = repository.executor.getQueue().size();
+			this.activeTasks = repository.runningTasks.get();
+			this.peakActiveTasks = repository.peakRunningTasks.get();
+			this.submitted = repository.submitted.get();
+			this.rejected = repository.rejected.get();
+			this.cancelled = repository.cancelled.get();
+			this.timedOut = repository.timedOut.get();
+			long started = repository.started.get();
+			this.averageWaitMillis = started == 0 ? 0 : repository.totalWaitNanos.get() / 1e6 / started;
+			this.maxWaitMillis = repository.maxWaitNanos.get() / 1e6;
+		}
+
+		/**
+		 * Calls waiting for a thread.
+		 */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * Calls currently running (and holding a connection).
+		 */
+		public int getActiveTasks() {
+			return activeTasks;
+		}
+
+		/**
+		 * The most calls that have run at the same time so far.
+		 */
+		public int getPeakActiveTasks() {
+			return peakActiveTasks;
+		}
+
+		public long getSubmitted() {
+			return submitted;
+		}
+
+		public long getRejected() {
+			return rejected;
+		}
+
+		public long getCancelled() {
+			return cancelled;
+		}
+
+		public long getTimedOut() {
+			return timedOut;
+		}
+
+		/**
+		 * Average time between a call and the start of its task, over the tasks started so far.
+		 */
+		public double getAverageWaitMillis() {
+			return averageWaitMillis;
+		}
+
+		public double getMaxWaitMillis() {
+			return maxWaitMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"queueDepth=%d, activeTasks=%d, peakActiveTasks=%d, submitted=%d, rejected=%d, cancelled=%d, "
+							+ "timedOut=%d, averageWaitMillis=%.3f, maxWaitMillis=%.3f",
+					queueDepth, activeTasks, peakActiveTasks, submitted, rejected, cancelled, timedOut, averageWaitMillis,
+					maxWaitMillis);
+		}
+	}
+
+	private static final class NamedThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		private NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
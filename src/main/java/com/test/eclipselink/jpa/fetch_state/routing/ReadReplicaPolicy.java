@@ -0,0 +1,97 @@
+package com.test.eclipselink.jpa.fetch_state.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.persistence.descriptors.partitioning.PartitioningPolicy;
+import org.eclipse.persistence.internal.databaseaccess.Accessor;
+import org.eclipse.persistence.internal.sessions.AbstractRecord;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.queries.ObjectLevelReadQuery;
+import org.eclipse.persistence.sessions.server.ServerSession;
+
+/**
+ * Sends replica reads to a connection pool of their own, a read replica of the database, and everything else to the
+ * usual pools of the primary. A replica read is an object read query that is either read-only
+ * ("eclipselink.read-only") or restricted by a FetchGroup ("eclipselink.fetch-group" and friends): the reads that
+ * can live with a slightly stale answer.
+ *
+ * Installed as the partitioning policy of the server session (see ReadReplicaRouting), it is asked for the
+ * connection of every query, and picks one for those EclipseLink would send to the read connection pool:
+ * 		-every query outside a database transaction
+ * 		-read-only queries inside one (EclipseLink never runs those on the transaction's connection)
+ * Once a transaction has written (its unit of work has flushed, and holds a write connection), the transaction is
+ * pinned to the primary: its replica reads are left to EclipseLink, which runs them on the transaction's connection,
+ * or on the read connection pool of the primary for read-only queries. The former read the transaction's own writes;
+ * the latter see the primary as of its last commit, exactly as without a replica. Writes never reach the replica.
+ *
+ * Replica reads see the replica as of its last replication; reading, changing and merging a partially fetched
+ * entity works as usual, but a version check against stale data is only caught at commit, on the primary.
+ *
+ */
+public class ReadReplicaPolicy extends PartitioningPolicy {
+
+	private final String replicaPool;
+	private final AtomicLong replicaReads = new AtomicLong();
+	private final AtomicLong pinnedReads = new AtomicLong();
+
+	/**
+	 * @param replicaPool
+	 *            the name of the connection pool of the replica ("eclipselink.connection-pool.[name].url")
+	 */
+	public ReadReplicaPolicy(String replicaPool) {
+		this.replicaPool = replicaPool;
+		setName("read-replica");
+	}
+
+	@Override
+	public List<Accessor> getConnectionsForQuery(AbstractSession session, DatabaseQuery query,
+			AbstractRecord arguments) {
+		if (!isReplicaRead(query)) {
+			return null;
+		}
+		if (session.isInTransaction() || query.getSession() != null && query.getSession().isInTransaction()) {
+			pinnedReads.incrementAndGet();
+			return null;
+		}
+		if (!session.isServerSession()) {
+			return null;
+		}
+		List<Accessor> accessors = new ArrayList<>(1);
+		accessors.add(acquireAccessor(replicaPool, (ServerSession) session, query, false));
+		replicaReads.incrementAndGet();
+		return accessors;
+	}
+
+	/**
+	 * Whether the query may read from the replica when no transaction is pinned to the primary.
+	 */
+	public static boolean isReplicaRead(DatabaseQuery query) {
+		if (!query.isObjectLevelReadQuery()) {
+			return false;
+		}
+		ObjectLevelReadQuery readQuery = (ObjectLevelReadQuery) query;
+		return readQuery.isReadOnly() || readQuery.getFetchGroup() != null || readQuery.getFetchGroupName() != null;
+	}
+
+	public String getReplicaPool() {
+		return replicaPool;
+	}
+
+	/**
+	 * The queries sent to the replica so far.
+	 */
+	public long getReplicaReads() {
+		return replicaReads.get();
+	}
+
+	/**
+	 * The replica reads sent to the primary so far because their transaction had written.
+	 */
+	public long getPinnedReads() {
+		return pinnedReads.get();
+	}
+
+}
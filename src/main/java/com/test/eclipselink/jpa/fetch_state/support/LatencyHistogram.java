@@ -0,0 +1,100 @@
+package com.test.eclipselink.jpa.fetch_state.support;
+
+/**
+ * Latencies in nanoseconds, counted in log-linear buckets: every power of two range is split into 64 equal buckets,
+ * so a percentile is never off by more than 1/64 (about 1.6%) of its value, whatever the spread of the values, in a
+ * fixed 25 KB.
+ *
+ * Values below 64 ns are counted exactly; values of 2^54 ns (about 208 days) and more are counted in the largest
+ * bucket. The exact maximum is kept apart.
+ *
+ * Histograms are not thread-safe: threads record into histograms of their own, merged (with {@link #add}) once they
+ * are done, as the load threads of LoadTest do, or into a shared one they synchronize on, as the receiving threads of
+ * ChannelTransportManager do.
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int RANGES = 48;
+	private static final int BUCKETS = (RANGES + 1) * SUB_BUCKETS;
+
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long max;
+	private double sum;
+
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts[index(value)]++;
+		count++;
+		max = Math.max(max, value);
+		sum += value;
+	}
+
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		max = Math.max(max, other.max);
+		sum += other.sum;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0 : sum / count;
+	}
+
+	/**
+	 * The smallest recorded value such that the given percentage of the values are lower or equal (nearest rank),
+	 * up to the bucket resolution: the upper bound of its bucket, but never more than the maximum. 0 when empty.
+	 */
+	public long percentile(double percentile) {
+		if (percentile <= 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be in ]0, 100]: " + percentile);
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(max, highestValue(i));
+			}
+		}
+		return max;
+	}
+
+	private static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int range = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+		if (range > RANGES) {
+			return BUCKETS - 1;
+		}
+		int subBucket = (int) (value >>> (range - 1)) - SUB_BUCKETS;
+		return range * SUB_BUCKETS + subBucket;
+	}
+
+	private static long highestValue(int index) {
+		int range = index / SUB_BUCKETS;
+		int subBucket = index % SUB_BUCKETS;
+		if (range == 0) {
+			return subBucket;
+		}
+		return ((long) (SUB_BUCKETS + subBucket + 1) << (range - 1)) - 1;
+	}
+
+}
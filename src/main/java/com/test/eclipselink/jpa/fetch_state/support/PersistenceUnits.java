@@ -0,0 +1,63 @@
+package com.test.eclipselink.jpa.fetch_state.support;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.logging.SessionLog;
+
+/**
+ * Creates EntityManagerFactories for the "test" persistence unit against their own in-memory HSQLDB database.
+ *
+ * The persistence.xml configuration points every factory at jdbc:hsqldb:mem:test and logs at FINEST, which is
+ * exactly what the documented tests want, but which gets in the way as soon as several factories (or a few
+ * thousand entities) are involved. The methods here keep everything from persistence.xml except for the database
+ * URL, the session name and, optionally, the log level.
+ *
+ */
+public final class PersistenceUnits {
+
+	public static final String PERSISTENCE_UNIT_NAME = "test";
+
+	private PersistenceUnits() {
+	}
+
+	/**
+	 * Properties that point the "test" persistence unit at jdbc:hsqldb:mem:[database].
+	 *
+	 * The session name is derived from the database name as well so that EclipseLink does not hand back an
+	 * already deployed session for a different database.
+	 */
+	public static Map<String, Object> properties(String database) {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put(PersistenceUnitProperties.JDBC_URL, "jdbc:hsqldb:mem:" + database);
+		properties.put(PersistenceUnitProperties.SESSION_NAME, PERSISTENCE_UNIT_NAME + "-" + database);
+		return properties;
+	}
+
+	/**
+	 * Same as {@link #properties(String)}, with logging restricted to warnings; meant for benchmarks and drivers that
+	 * would otherwise spend most of their time writing FINEST logs.
+	 */
+	public static Map<String, Object> quietProperties(String database) {
+		Map<String, Object> properties = properties(database);
+		properties.put(PersistenceUnitProperties.LOGGING_LEVEL, SessionLog.WARNING_LABEL);
+		return properties;
+	}
+
+	public static EntityManagerFactory create(Map<String, ?> properties) {
+		return Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME, properties);
+	}
+
+	public static EntityManagerFactory create(String database) {
+		return create(properties(database));
+	}
+
+	public static EntityManagerFactory createQuiet(String database) {
+		return create(quietProperties(database));
+	}
+
+}
@@ -0,0 +1,92 @@
+package com.test.eclipselink.jpa.fetch_state.support;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import com.test.eclipselink.jpa.fetch_state.entities.KeyMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.OwnedAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.OwningAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.ReferenceMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+
+/**
+ * Builds and persists RootEntity graphs shaped like the one in TestFetchState, only more of them.
+ *
+ * Every root gets its own OwnedAssoc and OwningAssoc (sharing the root's id) and the same number of children in
+ * both collections. Child ids are allocated in contiguous blocks per root, see {@link #childId(long, int, int)}.
+ *
+ */
+public final class SampleGraphs {
+
+	private SampleGraphs() {
+	}
+
+	/**
+	 * Id of the index-th (0 based) child of a root, in either of the two collections.
+	 */
+	public static long childId(long rootId, int childrenPerCollection, int index) {
+		return (rootId - 1) * childrenPerCollection + index + 1;
+	}
+
+	/**
+	 * A new, unmanaged graph; OwnedAssoc and OwningAssoc are not cascaded, so they must be persisted along with the
+	 * root (see {@link #persist(EntityManager, RootEntity)}).
+	 */
+	public static RootEntity newGraph(long id, int childrenPerCollection) {
+		RootEntity root = new RootEntity();
+		root.setId(id);
+		root.setData1("Root:" + id + "L:Data1");
+		root.setData2("Root:" + id + "L:Data2");
+
+		root.setOwnedAssoc(new OwnedAssoc(id, "OwnedAssoc:" + id + "L:Data1", "OwnedAssoc:" + id + "L:Data2"));
+
+		OwningAssoc owningAssoc = new OwningAssoc(id, "OwningAssoc:" + id + "L:Data1", "OwningAssoc:" + id + "L:Data2");
+		owningAssoc.setOwnedParent(root);
+		root.setOwningAssoc(owningAssoc);
+
+		for (int i = 0; i < childrenPerCollection; i++) {
+			long childId = childId(id, childrenPerCollection, i);
+			root.addKeyCollectionAssoc(new KeyMappingCollectionAssoc(childId, "KeyCollAssoc:" + childId + "L:Data1",
+					"KeyCollAssoc:" + childId + "L:Data2"));
+			root.addRefCollectionAssoc(new ReferenceMappingCollectionAssoc(childId,
+					"RefCollAssoc:" + childId + "L:Data1", "RefCollAssoc:" + childId + "L:Data2"));
+		}
+		return root;
+	}
+
+	public static void persist(EntityManager em, RootEntity root) {
+		em.persist(root.getOwnedAssoc());
+		em.persist(root);
+		em.persist(root.getOwningAssoc());
+	}
+
+	/**
+	 * Persists roots with ids 1..roots, committing (and clearing the persistence context) every batchSize roots.
+	 */
+	public static void populate(EntityManagerFactory emf, int roots, int childrenPerCollection, int batchSize) {
+		populate(emf, 1, roots, childrenPerCollection, batchSize);
+	}
+
+	public static void populate(EntityManagerFactory emf, long firstId, int roots, int childrenPerCollection,
+			int batchSize) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			for (int i = 0; i < roots; i++) {
+				persist(em, newGraph(firstId + i, childrenPerCollection));
+				if ((i + 1) % batchSize == 0) {
+					em.getTransaction().commit();
+					em.clear();
+					em.getTransaction().begin();
+				}
+			}
+			em.getTransaction().commit();
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.customizers.AssociationFetchStrategies;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture.Recording;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * Fetch strategies chosen per association through the "fetch-state.fetch-strategy.*" properties (see
+ * AssociationFetchStrategies): ownedAssoc is join fetched, keyCollectionAssoc batch fetched with IN,
+ * refCollectionAssoc batch fetched with EXISTS, and owningAssoc keeps the lazy loading of its annotation. Reading 10
+ * roots and walking all of their associations is expected to take one SELECT for the roots and their ownedAssoc, one
+ * for each batch fetched collection and one per root for owningAssoc.
+ *
+ */
+public class TestAssociationFetchStrategies {
+
+	private static final int ROOTS = 10;
+
+	private static EntityManagerFactory emf;
+	private static StatementCapture capture;
+
+	@BeforeClass
+	public static void initializeEnv() {
+		Map<String, Object> properties = PersistenceUnits.quietProperties("association-fetch-strategies");
+		properties.put(AssociationFetchStrategies.property(RootEntity.class, "ownedAssoc"), "JOIN_FETCH");
+		properties.put(AssociationFetchStrategies.property(RootEntity.class, "keyCollectionAssoc"), "BATCH_IN");
+		properties.put(AssociationFetchStrategies.PROPERTY_PREFIX + RootEntity.class.getName() + ".refCollectionAssoc",
+				AssociationFetchStrategies.Strategy.BATCH_EXISTS);
+		emf = PersistenceUnits.create(properties);
+		SampleGraphs.populate(emf, ROOTS, 2, 10);
+		capture = StatementCapture.install(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static List<RootEntity> readRoots(EntityManager em) {
+		return em.createQuery("SELECT o FROM RootEntity o ORDER BY o.id", RootEntity.class).getResultList();
+	}
+
+	@Test
+	public void STRATEGIES_are_chosen_per_association() {
+		EntityManager em = emf.createEntityManager();
+		try (Recording recording = capture.start()) {
+			List<RootEntity> roots = readRoots(em);
+			assertEquals(ROOTS, roots.size());
+			StatementBudget.named("read the roots").exactly(SELECT, 1).verify(recording);
+
+			for (RootEntity root : roots) {
+				assertEquals("OwnedAssoc:" + root.getId() + "L:Data1", root.getOwnedAssoc().getData1());
+				assertEquals(2, root.getKeyCollectionAssoc().size());
+				assertEquals(2, root.getRefCollectionAssoc().size());
+				assertEquals(root, root.getOwningAssoc().getOwnedParent());
+			}
+			StatementBudget.named("walk all associations of the roots").exactly(SELECT, "ROOT_ENTITY", 1)
+					.exactly(SELECT, "KEY_COLLECTION_ASSOC", 1).exactly(SELECT, "REF_COLLECTION_ASSOC", 1)
+					.exactly(SELECT, "OWNING_ASSOC", ROOTS).exactly(SELECT, 3 + ROOTS).verify(recording);
+		} finally {
+			em.close();
+		}
+	}
+
+	@Test
+	public void IN_batches_take_their_size_from_the_query() {
+		EntityManager em = emf.createEntityManager();
+		try (Recording recording = capture.start()) {
+			List<RootEntity> roots = em.createQuery("SELECT o FROM RootEntity o ORDER BY o.id", RootEntity.class)
+					.setHint(QueryHints.BATCH_TYPE, "IN").setHint(QueryHints.BATCH_SIZE, 4).getResultList();
+			for (RootEntity root : roots) {
+				assertEquals(2, root.getKeyCollectionAssoc().size());
+			}
+			StatementBudget.named("walk keyCollectionAssoc in batches of 4")
+					.exactly(SELECT, "KEY_COLLECTION_ASSOC", (ROOTS + 3) / 4).exactly(SELECT, 1 + (ROOTS + 3) / 4)
+					.verify(recording);
+		} finally {
+			em.close();
+		}
+	}
+
+	@Test
+	public void UNKNOWN_associations_fail_the_deployment() {
+		Map<String, Object> properties = PersistenceUnits.quietProperties("association-fetch-strategies-misconfigured");
+		properties.put(AssociationFetchStrategies.property(RootEntity.class, "data1"), "BATCH_IN");
+		EntityManagerFactory misconfigured = PersistenceUnits.create(properties);
+		try {
+			misconfigured.createEntityManager();
+			fail("data1 is not an association");
+		} catch (PersistenceException expected) {
+			assertTrue(expected.toString(), expected.toString().contains("data1"));
+		} finally {
+			misconfigured.close();
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.context.BoundedPersistenceContext;
+import com.test.eclipselink.jpa.fetch_state.entities.KeyMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntityLoadState;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * BoundedPersistenceContext is expected to keep a long-lived EntityManager under its limits by detaching whole, clean
+ * groups of entities, least recently used first, without touching the load state of what it keeps, and to keep
+ * its size flat over many units of work. The soak test runs fetch-state.soak.units units of work (default 1500) and
+ * checks the gauges of the context, which do not depend on the garbage collector; set it higher
+ * (-Dfetch-state.soak.units=...) for a longer run, or see BoundedPersistenceContextSoakBenchmark for the used heap
+ * over runs of hours against an unbounded EntityManager.
+ *
+ */
+public class TestBoundedPersistenceContext {
+
+	private static final int ROOTS = 600;
+	private static final int CHILDREN = 2;
+
+	private static EntityManagerFactory emf;
+	private static LoadStateInspector inspector;
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.createQuiet("bounded-persistence-context");
+		SampleGraphs.populate(emf, ROOTS, CHILDREN, 100);
+		inspector = new LoadStateInspector(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	@Test
+	public void LEAST_RECENTLY_USED_GROUPS_are_detached_together() {
+		try (BoundedPersistenceContext context = new BoundedPersistenceContext(emf, 50, 0)) {
+			EntityManager em = context.getEntityManager();
+			RootEntity first = em.find(RootEntity.class, 1L);
+			KeyMappingCollectionAssoc firstChild = first.getKeyCollectionAssoc().get(0);
+			for (long id = 2; id <= 40; id++) {
+				em.find(RootEntity.class, id).getKeyCollectionAssoc().size();
+			}
+			BoundedPersistenceContext.Gauges gauges = context.getGauges();
+			assertTrue(gauges.toString(), gauges.getTrims() > 0);
+			assertTrue(gauges.toString(), gauges.getManagedEntities() <= 50);
+			assertTrue(gauges.toString(), gauges.getEstimatedBytes() > 0);
+
+			assertFalse("Least recently used", em.contains(first));
+			assertFalse("Detached along with its root", em.contains(firstChild));
+			RootEntity last = em.find(RootEntity.class, 40L);
+			assertTrue(em.contains(last));
+			for (KeyMappingCollectionAssoc child : last.getKeyCollectionAssoc()) {
+				assertTrue("Kept along with its root", em.contains(child));
+			}
+
+			PersistenceUnitUtil util = emf.getPersistenceUnitUtil();
+			for (String attribute : new String[] { "ownedAssoc", "owningAssoc", "keyCollectionAssoc",
+					"refCollectionAssoc" }) {
+				assertEquals(attribute, util.isLoaded(last, attribute), inspector.isLoaded(last, attribute));
+			}
+			assertTrue(RootEntityLoadState.isKeyCollectionAssocLoaded(last));
+			assertFalse(RootEntityLoadState.isRefCollectionAssocLoaded(last));
+
+			RootEntity again = em.find(RootEntity.class, 1L);
+			assertTrue("Read again", again != first && em.contains(again));
+			assertFalse(RootEntityLoadState.isKeyCollectionAssocLoaded(again));
+		}
+	}
+
+	@Test
+	public void DIRTY_ENTITIES_stay_managed_until_committed() {
+		try (BoundedPersistenceContext context = new BoundedPersistenceContext(emf, 20, 0)) {
+			EntityManager em = context.getEntityManager();
+			em.getTransaction().begin();
+			RootEntity modified = em.find(RootEntity.class, 101L);
+			modified.setData1("Modified:101");
+			RootEntity created = SampleGraphs.newGraph(10001L, CHILDREN);
+			SampleGraphs.persist(em, created);
+			RootEntity flushed = em.find(RootEntity.class, 102L);
+			flushed.setData2("Flushed:102");
+			em.flush();
+			for (long id = 110; id < 150; id++) {
+				em.find(RootEntity.class, id);
+			}
+			BoundedPersistenceContext.Gauges gauges = context.getGauges();
+			assertTrue(gauges.toString(), gauges.getRetainedDirtyEntities() >= 3);
+			assertTrue(gauges.toString(), gauges.getManagedEntities() <= 20);
+			assertTrue(em.contains(modified));
+			assertTrue(em.contains(created));
+			assertTrue(em.contains(created.getKeyCollectionAssoc().get(0)));
+			assertTrue(em.contains(flushed));
+			assertTrue(gauges.toString(), gauges.getDetachedEntities() > 0);
+			em.getTransaction().commit();
+
+			for (long id = 150; id < 190; id++) {
+				em.find(RootEntity.class, id);
+			}
+			assertFalse("Clean once committed", em.contains(modified));
+		}
+
+		EntityManager em = emf.createEntityManager();
+		try {
+			assertEquals("Modified:101", em.find(RootEntity.class, 101L).getData1());
+			assertEquals("Flushed:102", em.find(RootEntity.class, 102L).getData2());
+			assertEquals(CHILDREN, em.find(RootEntity.class, 10001L).getKeyCollectionAssoc().size());
+		} finally {
+			em.close();
+		}
+	}
+
+	@Test
+	public void SOAK_keeps_the_context_flat() {
+		int units = Integer.getInteger("fetch-state.soak.units", 1500);
+		int maxEntities = 300;
+		try (BoundedPersistenceContext context = new BoundedPersistenceContext(emf, maxEntities, 0)) {
+			EntityManager em = context.getEntityManager();
+			BoundedPersistenceContext.Gauges atQuarter = null;
+			for (int unit = 0; unit < units; unit++) {
+				long firstId = 1 + (unit * 5L) % ROOTS;
+				em.getTransaction().begin();
+				List<RootEntity> roots = em
+						.createQuery("SELECT o FROM RootEntity o WHERE o.id >= :first AND o.id < :last", RootEntity.class)
+						.setParameter("first", firstId).setParameter("last", firstId + 5).getResultList();
+				for (RootEntity root : roots) {
+					root.getKeyCollectionAssoc().size();
+					root.getOwnedAssoc().getData2();
+				}
+				roots.get(0).setData2("Unit:" + unit);
+				em.getTransaction().commit();
+				assertTrue("Bounded after every unit of work", context.getGauges().getManagedEntities() <= maxEntities);
+				if (unit == units / 4) {
+					atQuarter = context.getGauges();
+				}
+			}
+			BoundedPersistenceContext.Gauges gauges = context.getGauges();
+			assertTrue("At most one unit of work above the limit: " + gauges,
+					gauges.getPeakManagedEntities() <= maxEntities + 5 * (3 + CHILDREN));
+			assertTrue(gauges.toString(), gauges.getDetachedEntities() > 0);
+			assertTrue("No growth after the first quarter: " + atQuarter + " then " + gauges,
+					gauges.getPeakManagedEntities() == atQuarter.getPeakManagedEntities()
+							&& gauges.getPeakEstimatedBytes() <= atQuarter.getPeakEstimatedBytes() * 1.05
+							&& gauges.getEstimatedBytes() <= atQuarter.getPeakEstimatedBytes() * 1.05);
+		}
+	}
+
+}
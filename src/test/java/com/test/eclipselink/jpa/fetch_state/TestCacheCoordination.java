@@ -0,0 +1,160 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.coordination.ChannelTransportManager;
+import com.test.eclipselink.jpa.fetch_state.coordination.InMemoryChannel;
+import com.test.eclipselink.jpa.fetch_state.customizers.CacheCoordination;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * Three EntityManagerFactories on the same database, with shared caches: nodes A and B coordinated over an
+ * InMemoryChannel, and node C outside of the channel. After a commit on A, B is expected to read the new state once
+ * the command was delivered, while C keeps serving the state it cached before, which is what B would do without
+ * coordination.
+ *
+ */
+public class TestCacheCoordination {
+
+	private static final String DATABASE = "cache-coordination";
+	private static final String CHANNEL = "test-cache-coordination";
+	private static final int BATCH_DELAY_MILLIS = 50;
+
+	private static EntityManagerFactory nodeA;
+	private static EntityManagerFactory nodeB;
+	private static EntityManagerFactory nodeC;
+
+	@BeforeClass
+	public static void initializeEnv() {
+		nodeA = PersistenceUnits.create(properties("a", true));
+		nodeB = PersistenceUnits.create(properties("b", true));
+		nodeC = PersistenceUnits.create(properties("c", false));
+		SampleGraphs.populate(nodeA, 2, 2, 10);
+	}
+
+	private static Map<String, Object> properties(String node, boolean coordinated) {
+		Map<String, Object> properties = PersistenceUnits.quietProperties(DATABASE);
+		properties.put(PersistenceUnitProperties.SESSION_NAME, PersistenceUnits.PERSISTENCE_UNIT_NAME + "-" + DATABASE
+				+ "-" + node);
+		properties.put(PersistenceUnitProperties.CACHE_SHARED_DEFAULT, "true");
+		if (coordinated) {
+			properties.put(CacheCoordination.PROPERTY, CHANNEL);
+			properties.put(CacheCoordination.BATCH_DELAY_PROPERTY, String.valueOf(BATCH_DELAY_MILLIS));
+		}
+		return properties;
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		nodeC.close();
+		nodeB.close();
+		nodeA.close();
+		assertEquals(0, InMemoryChannel.members(CHANNEL));
+	}
+
+	private static ChannelTransportManager transport(EntityManagerFactory emf) {
+		return CacheCoordination.transport(JpaHelper.getServerSession(emf));
+	}
+
+	private static String readData1(EntityManagerFactory emf, long id) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			return em.find(RootEntity.class, id).getData1();
+		} finally {
+			em.close();
+		}
+	}
+
+	private static void setData1(EntityManagerFactory emf, long id, String data1) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			em.find(RootEntity.class, id).setData1(data1);
+			em.getTransaction().commit();
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+		}
+	}
+
+	private static void awaitReceived(EntityManagerFactory emf, long commands) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (transport(emf).getMetrics().getReceivedCommands() < commands && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertTrue("Commands not received in time: " + transport(emf).getMetrics(),
+				transport(emf).getMetrics().getReceivedCommands() >= commands);
+	}
+
+	@Test
+	public void MEMBERS_are_the_factories_of_the_channel() {
+		assertNotNull(transport(nodeA));
+		assertNotNull(transport(nodeB));
+		assertNull(transport(nodeC));
+		assertEquals(2, InMemoryChannel.members(CHANNEL));
+	}
+
+	@Test
+	public void COMMITS_invalidate_the_other_members() throws InterruptedException {
+		String before = readData1(nodeA, 1L);
+		assertEquals(before, readData1(nodeB, 1L));
+		assertEquals(before, readData1(nodeC, 1L));
+
+		long received = transport(nodeB).getMetrics().getReceivedCommands();
+		setData1(nodeA, 1L, "Root:1L:Coordinated");
+		awaitReceived(nodeB, received + 1);
+
+		assertEquals("Root:1L:Coordinated", readData1(nodeB, 1L));
+		assertEquals("Without coordination, the shared cache is stale", before, readData1(nodeC, 1L));
+
+		received = transport(nodeA).getMetrics().getReceivedCommands();
+		setData1(nodeB, 1L, "Root:1L:Data1");
+		awaitReceived(nodeA, received + 1);
+		assertEquals("Root:1L:Data1", readData1(nodeA, 1L));
+	}
+
+	@Test
+	public void COMMANDS_are_sent_in_batches() throws InterruptedException {
+		int commits = 20;
+		ChannelTransportManager.Metrics senderBefore = transport(nodeA).getMetrics();
+		ChannelTransportManager.Metrics receiverBefore = transport(nodeB).getMetrics();
+		for (int i = 0; i < commits; i++) {
+			setData1(nodeA, 2L, "Root:2L:Commit" + i);
+		}
+		awaitReceived(nodeB, receiverBefore.getReceivedCommands() + commits);
+		assertEquals("Root:2L:Commit" + (commits - 1), readData1(nodeB, 2L));
+
+		ChannelTransportManager.Metrics sender = transport(nodeA).getMetrics();
+		ChannelTransportManager.Metrics receiver = transport(nodeB).getMetrics();
+		assertEquals(commits, sender.getSentCommands() - senderBefore.getSentCommands());
+		assertEquals(0, sender.getPendingCommands());
+		assertEquals(0, sender.getFailedBatches());
+		assertEquals(0, receiver.getFailedCommands());
+		long batches = receiver.getReceivedBatches() - receiverBefore.getReceivedBatches();
+		assertTrue("Expected fewer batches than commands: " + receiver, batches < commits);
+		assertEquals(batches, sender.getSentBatches() - senderBefore.getSentBatches());
+		assertTrue(receiver.getMeanLagMillis() > 0);
+		assertTrue(receiver.getMaxLagMillis() >= receiver.getMeanLagMillis());
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.changetracking.AttributeChangeTrackingPolicy;
+import org.eclipse.persistence.descriptors.changetracking.ChangeTracker;
+import org.eclipse.persistence.descriptors.changetracking.DeferredChangeDetectionPolicy;
+import org.eclipse.persistence.descriptors.changetracking.ObjectChangePolicy;
+import org.eclipse.persistence.descriptors.changetracking.ObjectChangeTrackingPolicy;
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.customizers.ChangeTrackingPolicies;
+import com.test.eclipselink.jpa.fetch_state.entities.OwnedAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.OwningAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * Change tracking policies chosen per entity through the "fetch-state.change-tracking.*" properties
+ * (see ChangeTrackingPolicies).
+ *
+ * RootEntity is configured by entity name with OBJECT change tracking and OwningAssoc by class name with ATTRIBUTE
+ * change tracking; the other entities, which have no property of their own, fall back to the configured default of
+ * DEFERRED.
+ *
+ */
+public class TestChangeTrackingPolicies {
+
+	private static EntityManagerFactory emf;
+
+	@BeforeClass
+	public static void initializeEnv() {
+		Map<String, Object> properties = PersistenceUnits.properties("change-tracking-policies");
+		properties.put(ChangeTrackingPolicies.DEFAULT_PROPERTY, "DEFERRED");
+		properties.put(ChangeTrackingPolicies.property(RootEntity.class), "OBJECT");
+		properties.put(ChangeTrackingPolicies.PROPERTY_PREFIX + OwningAssoc.class.getName(), "ATTRIBUTE");
+		emf = PersistenceUnits.create(properties);
+
+		SampleGraphs.populate(emf, 1, 2, 10);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static ObjectChangePolicy changePolicyOf(Class<?> entityClass) {
+		return ((EntityManagerFactoryImpl) emf).getServerSession().getDescriptor(entityClass).getObjectChangePolicy();
+	}
+
+	@Test
+	public void POLICIES_are_chosen_per_entity() {
+		assertTrue("RootEntity was configured by entity name", changePolicyOf(RootEntity.class)
+				.getClass() == ObjectChangeTrackingPolicy.class);
+		assertTrue("OwningAssoc was configured by class name", changePolicyOf(OwningAssoc.class)
+				.getClass() == AttributeChangeTrackingPolicy.class);
+		assertTrue("OwnedAssoc falls back to the default", changePolicyOf(OwnedAssoc.class)
+				.getClass() == DeferredChangeDetectionPolicy.class);
+	}
+
+	@Test
+	public void DEFERRED_entities_have_no_listener_but_still_get_their_changes_written() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity root = em.find(RootEntity.class, 1L);
+		OwnedAssoc ownedAssoc = root.getOwnedAssoc();
+
+		assertTrue("OBJECT change tracking is still driven by the woven listener",
+				((ChangeTracker) root)._persistence_getPropertyChangeListener() != null);
+		assertTrue("DEFERRED change tracking leaves the woven listener unset",
+				((ChangeTracker) ownedAssoc)._persistence_getPropertyChangeListener() == null);
+
+		em.getTransaction().begin();
+		root.setData2("Root:1L:Data2:changed");
+		ownedAssoc.setData2("OwnedAssoc:1L:Data2:changed");
+		em.getTransaction().commit();
+		em.close();
+
+		em = emf.createEntityManager();
+		root = em.find(RootEntity.class, 1L);
+		assertTrue("RootEntity change should have been written", "Root:1L:Data2:changed".equals(root.getData2()));
+		assertTrue("OwnedAssoc change should have been written",
+				"OwnedAssoc:1L:Data2:changed".equals(root.getOwnedAssoc().getData2()));
+		em.close();
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.collection.ExtraLazyCollections;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.sql.SqlStatement;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudgetRule;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * size, isEmpty and contains are expected to cost one query each on collections that are not loaded, and to leave
+ * them not loaded; none on loaded collections; and the sizes of 30 roots one GROUP BY query.
+ *
+ */
+public class TestExtraLazyCollections {
+
+	private static final int ROOTS = 30;
+	private static final int CHILDREN = 4;
+
+	private static EntityManagerFactory emf;
+	private static ExtraLazyCollections collections;
+	private static LoadStateInspector inspector;
+	private static PersistenceUnitUtil persistenceUnitUtil;
+
+	@Rule
+	public final StatementBudgetRule sqlBudget = new StatementBudgetRule(() -> emf);
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.create("extra-lazy-collections");
+		SampleGraphs.populate(emf, ROOTS, CHILDREN, 10);
+		SampleGraphs.populate(emf, ROOTS + 1, 1, 0, 10);
+		collections = new ExtraLazyCollections(emf);
+		inspector = new LoadStateInspector(emf);
+		persistenceUnitUtil = emf.getPersistenceUnitUtil();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static void assertNotLoaded(RootEntity root, String attributeName) {
+		assertTrue(attributeName + " should not be loaded", !inspector.isLoaded(root, attributeName)
+				&& !persistenceUnitUtil.isLoaded(root, attributeName));
+	}
+
+	@Test
+	public void COLLECTIONS_NOT_LOADED_are_queried() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity root = em.find(RootEntity.class, 2L);
+		RootEntity childless = em.find(RootEntity.class, ROOTS + 1L);
+
+		for (String attributeName : new String[] { "refCollectionAssoc", "keyCollectionAssoc" }) {
+			String table = attributeName.startsWith("ref") ? "REF_COLLECTION_ASSOC" : "KEY_COLLECTION_ASSOC";
+			sqlBudget.within(StatementBudget.named("size, isEmpty and contains of " + attributeName)
+					.exactly(SELECT, table, 6), () -> {
+						assertTrue(collections.size(em, root, attributeName) == CHILDREN);
+						assertTrue(collections.size(em, childless, attributeName) == 0);
+						assertTrue(!collections.isEmpty(em, root, attributeName));
+						assertTrue(collections.isEmpty(em, childless, attributeName));
+						assertTrue(collections.contains(em, root, attributeName, SampleGraphs.childId(2, CHILDREN, 3)));
+						assertTrue(!collections.contains(em, root, attributeName, SampleGraphs.childId(3, CHILDREN, 0)));
+						return null;
+					});
+			assertNotLoaded(root, attributeName);
+			assertNotLoaded(childless, attributeName);
+		}
+
+		List<SqlStatement> statements = sqlBudget.getRecording().getStatements();
+		String sql = statements.get(statements.size() - 6).getSql();
+		assertTrue("size should be a COUNT on the join column: " + sql,
+				sql.contains("COUNT(ID)") && sql.contains("PARENT_ID = ?"));
+		em.close();
+	}
+
+	@Test
+	public void LOADED_COLLECTIONS_are_answered_in_memory() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity root = em.find(RootEntity.class, 3L);
+		root.getRefCollectionAssoc().size();
+		root.getKeyCollectionAssoc().size();
+
+		sqlBudget.within(StatementBudget.named("size, isEmpty and contains of loaded collections"), () -> {
+			for (String attributeName : new String[] { "refCollectionAssoc", "keyCollectionAssoc" }) {
+				assertTrue(collections.size(em, root, attributeName) == CHILDREN);
+				assertTrue(!collections.isEmpty(em, root, attributeName));
+				assertTrue(collections.contains(em, root, attributeName, SampleGraphs.childId(3, CHILDREN, 0)));
+				assertTrue(!collections.contains(em, root, attributeName, SampleGraphs.childId(2, CHILDREN, 0)));
+			}
+			return null;
+		});
+		em.close();
+	}
+
+	@Test
+	public void SIZES_of_many_roots_take_one_GROUP_BY() {
+		EntityManager em = emf.createEntityManager();
+		List<RootEntity> roots = em.createQuery("SELECT o FROM RootEntity o ORDER BY o.id", RootEntity.class)
+				.getResultList();
+		roots.get(4).getRefCollectionAssoc().size();
+
+		Map<RootEntity, Integer> sizes = sqlBudget.within(StatementBudget.named("sizes of " + roots.size() + " roots")
+				.exactly(SELECT, "REF_COLLECTION_ASSOC", 1),
+				() -> collections.sizes(em, roots, "refCollectionAssoc"));
+		List<SqlStatement> statements = sqlBudget.getRecording().getStatements();
+		String sql = statements.get(statements.size() - 1).getSql();
+		assertTrue("The sizes should be counted in one GROUP BY: " + sql, sql.contains("GROUP BY PARENT_ID"));
+
+		assertTrue(sizes.size() == ROOTS + 1);
+		for (RootEntity root : roots) {
+			assertTrue(sizes.get(root) == (root.getId() <= ROOTS ? CHILDREN : 0));
+			if (root != roots.get(4)) {
+				assertNotLoaded(root, "refCollectionAssoc");
+			}
+		}
+
+		assertTrue("Batches of 7 should take 5 queries",
+				sqlBudget.within(StatementBudget.named("sizes by batches of 7").exactly(SELECT, "REF_COLLECTION_ASSOC", 5),
+						() -> new ExtraLazyCollections(emf, 7).sizes(em, roots, "refCollectionAssoc")).equals(sizes));
+		em.close();
+	}
+
+}
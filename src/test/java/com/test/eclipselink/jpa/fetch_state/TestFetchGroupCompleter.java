@@ -0,0 +1,160 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.UPDATE;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.eclipse.persistence.queries.FetchGroupTracker;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.fetch.FetchGroupCompleter;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.sql.SqlStatement;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudgetRule;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * Completing a list of partially fetched RootEntities is expected to cost one SELECT per group of entities missing the
+ * same attributes (and per batch), to select only the missing columns, and to leave what was already fetched alone.
+ *
+ */
+public class TestFetchGroupCompleter {
+
+	private static final int ROOTS = 10;
+
+	private static EntityManagerFactory emf;
+	private static LoadStateInspector inspector;
+
+	@Rule
+	public final StatementBudgetRule sqlBudget = new StatementBudgetRule(() -> emf);
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.create("fetch-group-completer");
+		SampleGraphs.populate(emf, ROOTS, 2, 10);
+		inspector = new LoadStateInspector(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static List<RootEntity> findWithFetchGroup(EntityManager em, long fromId, long toId, String... attributes) {
+		FetchGroup fg = new FetchGroup();
+		for (String attribute : attributes) {
+			fg.addAttribute(attribute);
+		}
+		return em.createQuery("SELECT o FROM RootEntity o WHERE o.id BETWEEN :from AND :to", RootEntity.class)
+				.setParameter("from", fromId).setParameter("to", toId).setHint(QueryHints.FETCH_GROUP, fg)
+				.getResultList();
+	}
+
+	@Test
+	public void MISSING_ATTRIBUTES_are_loaded_in_one_query() {
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		try {
+			assertCompletionLeavesChangesAlone(em);
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+		}
+	}
+
+	private void assertCompletionLeavesChangesAlone(EntityManager em) {
+		final List<RootEntity> roots = findWithFetchGroup(em, 1, ROOTS, "data1");
+		roots.get(0).setData1("changed before completion");
+
+		int queries = sqlBudget.within(StatementBudget.named("complete data2 of " + ROOTS + " roots")
+				.exactly(SELECT, "ROOT_ENTITY", 1), () -> new FetchGroupCompleter(emf).complete(em, roots, "data2"));
+		assertTrue(queries == 1);
+		List<SqlStatement> statements = sqlBudget.getRecording().getStatements();
+		String completion = statements.get(statements.size() - 1).getSql();
+		assertTrue("Only the id and the missing column should be selected: " + completion,
+				completion.contains("DATA2") && !completion.contains("DATA1"));
+
+		sqlBudget.within(StatementBudget.named("read data1 and data2 of completed roots"), () -> {
+			for (RootEntity root : roots) {
+				assertTrue(inspector.isLoaded(root, "data2"));
+				assertTrue(root.getData2().equals("Root:" + root.getId() + "L:Data2"));
+				assertTrue(root.getData1() != null);
+			}
+			return null;
+		});
+		assertTrue("An attribute changed before completion should keep its value",
+				roots.get(0).getData1().equals("changed before completion"));
+
+		sqlBudget.within(StatementBudget.named("commit the one change").exactly(UPDATE, "ROOT_ENTITY", 1), () -> {
+			em.getTransaction().commit();
+			return null;
+		});
+	}
+
+	@Test
+	public void ENTITIES_are_grouped_by_missing_attributes() {
+		EntityManager em = emf.createEntityManager();
+		List<RootEntity> roots = findWithFetchGroup(em, 1, 3, "data1");
+		roots.addAll(findWithFetchGroup(em, 4, 6, "data2", "ownedAssoc"));
+		roots.addAll(findWithFetchGroup(em, 7, 8, "data1"));
+		roots.add(em.find(RootEntity.class, 9L));
+
+		int queries = new FetchGroupCompleter(emf).complete(em, roots);
+		assertTrue("Two groups ({data1} and {data2, ownedAssoc}) should take two queries, not " + queries,
+				queries == 2);
+		for (RootEntity root : roots) {
+			assertTrue("Every root should be completely loaded after completion", inspector.isLoaded(root));
+			for (String attName : new String[] { "data1", "data2" }) {
+				assertTrue(attName + " should have been fetched", inspector.isLoaded(root, attName));
+			}
+			for (String attName : new String[] { "ownedAssoc", "owningAssoc", "keyCollectionAssoc",
+					"refCollectionAssoc" }) {
+				assertTrue(attName + " should be in the FetchGroup",
+						((FetchGroupTracker) root)._persistence_isAttributeFetched(attName));
+				assertTrue(attName + " should still be a value holder", !inspector.isLoaded(root, attName));
+			}
+		}
+		em.close();
+	}
+
+	@Test
+	public void LARGE_GROUPS_are_split_into_batches() {
+		EntityManager em = emf.createEntityManager();
+		List<RootEntity> roots = findWithFetchGroup(em, 1, 7, "data1");
+		assertTrue(new FetchGroupCompleter(emf, 3).complete(em, roots, "data2") == 3);
+		assertTrue("Completing again should take no queries",
+				new FetchGroupCompleter(emf, 3).complete(em, roots, "data2") == 0);
+		em.close();
+	}
+
+	@Test
+	public void UNMANAGED_ENTITIES_are_rejected() {
+		EntityManager em = emf.createEntityManager();
+		List<RootEntity> roots = findWithFetchGroup(em, 1, 2, "data1");
+		em.clear();
+		try {
+			new FetchGroupCompleter(emf).complete(em, roots);
+			fail("Detached entities cannot be completed through a query");
+		} catch (IllegalArgumentException expected) {
+		}
+		em.close();
+	}
+
+}
@@ -1,7 +1,11 @@
 package com.test.eclipselink.jpa.fetch_state;
 
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
 import static org.junit.Assert.assertTrue;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
@@ -16,6 +20,7 @@ import org.eclipse.persistence.queries.FetchGroup;
 import org.eclipse.persistence.queries.FetchGroupTracker;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
 
 import com.test.eclipselink.jpa.fetch_state.entities.KeyMappingCollectionAssoc;
@@ -23,6 +28,10 @@ import com.test.eclipselink.jpa.fetch_state.entities.OwnedAssoc;
 import com.test.eclipselink.jpa.fetch_state.entities.OwningAssoc;
 import com.test.eclipselink.jpa.fetch_state.entities.ReferenceMappingCollectionAssoc;
 import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.query.PreparedQueries;
+import com.test.eclipselink.jpa.fetch_state.query.PreparedQuery;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudgetRule;
 
 /**
  * 
@@ -57,8 +66,33 @@ import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
 
 public class TestFetchState {
 
+	private static final PreparedQuery<RootEntity> ROOT_ENTITY_BY_ID = PreparedQuery.of("TestFetchState.rootEntityById",
+			RootEntity.class, "SELECT o FROM RootEntity o WHERE o.id = :id");
+
+	private static final PreparedQuery<OwnedAssoc> OWNED_ASSOC_BY_ID = PreparedQuery.of("TestFetchState.ownedAssocById",
+			OwnedAssoc.class, "SELECT o FROM OwnedAssoc o WHERE o.id = :id");
+
 	private static EntityManagerFactory emf;
 
+	/**
+	 * The queries of findRootEntityById and findOwnedAssocById, parsed once rather than on every call; they carry no
+	 * hints, so the entities they return are exactly those of the equivalent createQuery calls.
+	 */
+	private static PreparedQueries queries;
+
+	/**
+	 * The queries of every EntityManager of the scenario, kept so that the finds after the first one reuse its query
+	 * instances; JUnit builds a new map for every scenario.
+	 */
+	private final Map<EntityManager, PreparedQueries.Bound> boundQueries = new IdentityHashMap<>();
+
+	/**
+	 * Each scenario also declares what it costs in SQL statements: a change that adds a lazy load (or loses a join)
+	 * fails the scenario even when the load states stay the same.
+	 */
+	@Rule
+	public final StatementBudgetRule sqlBudget = new StatementBudgetRule(() -> emf);
+
 	@BeforeClass
 	public static void initializeEnv() {
 
@@ -72,6 +106,7 @@ public class TestFetchState {
 		OwningAssoc owningAssoc = new OwningAssoc(1L, "OwningAssoc:1L:Data1", "OwningAssoc:1L:Data2");
 
 		emf = Persistence.createEntityManagerFactory("test");
+		queries = new PreparedQueries(emf).register(ROOT_ENTITY_BY_ID, OWNED_ASSOC_BY_ID);
 		EntityManager em = createEM();
 		em.getTransaction().begin();
 		rootEntity = em.merge(rootEntity);
@@ -127,6 +162,7 @@ public class TestFetchState {
 
 	@Test
 	public void ENTITY_WITH_ONLY_LAZY_ASSOCS_has_no_default_FetchGroup() {
+		sqlBudget.expect(StatementBudget.named("find RootEntity").exactly(SELECT, "ROOT_ENTITY", 1));
 		EntityManager em = createEM();
 		RootEntity rootEnt = findRootEntityById(1L, em);
 
@@ -137,12 +173,12 @@ public class TestFetchState {
 	}
 
 	private RootEntity findRootEntityById(Long id, EntityManager em) {
-		return em.createQuery("SELECT o FROM RootEntity o WHERE o.id = :id", RootEntity.class).setParameter("id", 1L)
-				.getSingleResult();
+		return boundQueries.computeIfAbsent(em, queries::in).get(ROOT_ENTITY_BY_ID).setParameter("id", id).getSingleResult();
 	}
 
 	@Test
 	public void ENTITY_WITH_LAZY_BASIC_has_default_FetchGroup() {
+		sqlBudget.expect(StatementBudget.named("find OwnedAssoc").exactly(SELECT, "OWNED_ASSOCIATION", 1));
 		EntityManager em = createEM();
 		OwnedAssoc assocEnt = findOwnedAssocById(1L, em);
 
@@ -155,13 +191,15 @@ public class TestFetchState {
 	}
 
 	private OwnedAssoc findOwnedAssocById(Long id, EntityManager em) {
-		return em.createQuery("SELECT o FROM OwnedAssoc o WHERE o.id = :id", OwnedAssoc.class).setParameter("id", 1L)
-				.getSingleResult();
+		return boundQueries.computeIfAbsent(em, queries::in).get(OWNED_ASSOC_BY_ID).setParameter("id", id).getSingleResult();
 	}
 
 	@Test
 	//The difference here is that the OwnedAssoc entity was taken from the root, though it still gets queried for separately.
 	public void ENTITY_WITH_LAZY_BASIC_from_root_has_default_FetchGroup_ROOT_DOES_NOT() {
+		sqlBudget.expect(StatementBudget.named("find RootEntity, then its OwnedAssoc")
+				.exactly(SELECT, "ROOT_ENTITY", 1)
+				.exactly(SELECT, "OWNED_ASSOCIATION", 1));
 
 		EntityManager em = createEM();
 		RootEntity rootEnt = findRootEntityById(1L, em);
@@ -196,6 +234,7 @@ public class TestFetchState {
 
 	@Test
 	public void ENTITY_WITH_LAZY_BASIC_behavior() {
+		sqlBudget.expect(StatementBudget.named("find OwnedAssoc, check with PersistenceUtil").exactly(SELECT, "OWNED_ASSOCIATION", 1));
 		EntityManager em = createEM();
 		OwnedAssoc ownedAssoc = findOwnedAssocById(1L, em);
 
@@ -283,6 +322,7 @@ public class TestFetchState {
 
 	@Test
 	public void ENTITY_WITH_ONLY_LAZY_ASSOCS_behavior() {
+		sqlBudget.expect(StatementBudget.named("find RootEntity, check with PersistenceUtil").exactly(SELECT, "ROOT_ENTITY", 1));
 		EntityManager em = createEM();
 		RootEntity rootEnt = findRootEntityById(1L, em);
 
@@ -327,6 +367,7 @@ public class TestFetchState {
 
 	@Test
 	public void CUSTOM_FetchGroup_WITH_ONLY_BASIC_ATT() {
+		sqlBudget.expect(StatementBudget.named("find RootEntity with FetchGroup {data1}").exactly(SELECT, "ROOT_ENTITY", 1));
 		EntityManager em = createEM();
 		TypedQuery<RootEntity> query = em.createQuery("SELECT o FROM RootEntity o WHERE o.id = :id", RootEntity.class);
 		query.setParameter("id", 1L);
@@ -405,6 +446,7 @@ public class TestFetchState {
 
 	@Test
 	public void CUSTOM_FetchGroup_WITH_BASIC_AND_ASSOC() {
+		sqlBudget.expect(StatementBudget.named("find RootEntity with FetchGroup {data1, ownedAssoc}").exactly(SELECT, "ROOT_ENTITY", 1));
 		EntityManager em = createEM();
 		TypedQuery<RootEntity> query = em.createQuery("SELECT o FROM RootEntity o WHERE o.id = :id", RootEntity.class);
 		query.setParameter("id", 1L);
@@ -436,6 +478,7 @@ public class TestFetchState {
 
 	@Test
 	public void CUSTOM_FetchGroup_ALIGNED_WITH_DEFAULT() {
+		sqlBudget.expect(StatementBudget.named("find RootEntity with FetchGroup {data1, data2}").exactly(SELECT, "ROOT_ENTITY", 1));
 		EntityManager em = createEM();
 		TypedQuery<RootEntity> query = em.createQuery("SELECT o FROM RootEntity o WHERE o.id = :id", RootEntity.class);
 		query.setParameter("id", 1L);
@@ -501,6 +544,7 @@ public class TestFetchState {
 
 	@Test
 	public void FETCH_GROUP_TRACKER_always_returns_true_when_no_FetchGroup() {
+		sqlBudget.expect(StatementBudget.named("find RootEntity, check with FetchGroupTracker").exactly(SELECT, "ROOT_ENTITY", 1));
 		EntityManager em = createEM();
 		RootEntity ent = findRootEntityById(1L, em);
 
@@ -594,6 +638,7 @@ public class TestFetchState {
 
 	@Test
 	public void CHECKING_ENTITY_WITH_NO_DEFAULT_FETCHGROUP_works_properly() {
+		sqlBudget.expect(StatementBudget.named("find RootEntity, check with EntityManagerFactoryImpl").exactly(SELECT, "ROOT_ENTITY", 1));
 		EntityManager em = createEM();
 		RootEntity ent = findRootEntityById(1L, em);
 
@@ -632,6 +677,7 @@ public class TestFetchState {
 
 	@Test
 	public void CHECKING_ENTITY_DEFAULT_FETCHGROUP_works_properly() {
+		sqlBudget.expect(StatementBudget.named("find OwnedAssoc, check with EntityManagerFactoryImpl").exactly(SELECT, "OWNED_ASSOCIATION", 1));
 		EntityManager em = createEM();
 		OwnedAssoc ownedAssoc = findOwnedAssocById(1L, em);
 
@@ -642,6 +688,12 @@ public class TestFetchState {
 
 	@Test
 	public void CHECKING_ENTITY_CUSTOM_FETCHGROUP_works_properly() {
+		sqlBudget.expect(StatementBudget.named("find RootEntity with a custom FetchGroup, walk every association")
+				.exactly(SELECT, "ROOT_ENTITY", 1)
+				.exactly(SELECT, "OWNED_ASSOCIATION", 1)
+				.exactly(SELECT, "OWNING_ASSOC", 1)
+				.exactly(SELECT, "KEY_COLLECTION_ASSOC", 1)
+				.exactly(SELECT, "REF_COLLECTION_ASSOC", 1));
 		EntityManager em = createEM();
 		TypedQuery<RootEntity> query = em.createQuery("SELECT o FROM RootEntity o WHERE o.id = :id", RootEntity.class);
 		query.setParameter("id", 1L);
@@ -649,7 +701,11 @@ public class TestFetchState {
 		//Let's make this quite a big one
 		applyFetchGroupToQuery(query, "data1", "ownedAssoc.data1", "owningAssoc.data2", "keyCollectionAssoc.data1",
 				"refCollectionAssoc.data2");
-		RootEntity ent = query.getSingleResult();
+		//the FetchGroup only shapes the columns: finding the root is a single SELECT, while each association
+		//walked below costs one more
+		RootEntity ent = sqlBudget.within(
+				StatementBudget.named("find RootEntity with a custom FetchGroup").exactly(SELECT, 1),
+				() -> query.getSingleResult());
 
 		//ROOT ENTITY
 		assertAttLoaded_EMF(ent, "data1");
@@ -700,6 +756,7 @@ public class TestFetchState {
 
 	@Test
 	public void NEW_ENTITIES_are_completely_loaded() {
+		sqlBudget.expect(StatementBudget.named("check a new RootEntity"));
 		RootEntity ent = new RootEntity();
 		FetchGroupTracker fgtEnt = (FetchGroupTracker) ent;
 		assertTrue("New entities have no FetchGroup", fgtEnt._persistence_getFetchGroup() == null);
@@ -0,0 +1,178 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.INSERT;
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.UPDATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.logging.AbstractSessionLog;
+import org.eclipse.persistence.sessions.Project;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.test.eclipselink.jpa.fetch_state.bootstrap.FingerprintedProjectCache;
+import com.test.eclipselink.jpa.fetch_state.customizers.JoinColumnInserts;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture.Recording;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * The project cache of FingerprintedProjectCache: written by the first factory, deployed as it is by the next ones
+ * (which still run the session customizers, the login and DDL generation), and discarded when the mapped classes
+ * change or the file cannot be read. Every factory has a database of its own, created with a password, which is not
+ * expected in the file.
+ *
+ */
+public class TestFingerprintedProjectCache {
+
+	private static final String PASSWORD = "project-cache-password";
+	private static final long LONG_AGO = 1_000_000_000_000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static EntityManagerFactory deploy(File cache, String database, Map<String, Object> extra) {
+		Map<String, Object> properties = PersistenceUnits.quietProperties("project-cache-" + database);
+		properties.putAll(FingerprintedProjectCache.properties(cache));
+		properties.put(PersistenceUnitProperties.JDBC_PASSWORD, PASSWORD);
+		properties.putAll(extra);
+		EntityManagerFactory emf = PersistenceUnits.create(properties);
+		emf.createEntityManager().close();
+		return emf;
+	}
+
+	private static EntityManagerFactory deploy(File cache, String database) {
+		return deploy(cache, database, Collections.<String, Object> emptyMap());
+	}
+
+	private static Project readProject(File cache) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(cache.toPath()))) {
+			in.readInt();
+			in.readObject();
+			in.readLong();
+			return (Project) in.readObject();
+		}
+	}
+
+	@Test
+	public void FIRST_START_writes_the_project_which_later_starts_deploy() throws Exception {
+		File cache = new File(folder.getRoot(), "test.project");
+		deploy(cache, "write").close();
+		assertTrue(cache.isFile());
+		assertNull("No password in the file", readProject(cache).getDatasourceLogin().getPassword());
+		assertEquals(5, readProject(cache).getOrderedDescriptors().size());
+		assertTrue(cache.setLastModified(LONG_AGO));
+
+		Map<String, Object> extra = new HashMap<>();
+		extra.put(JoinColumnInserts.property(RootEntity.class, "keyCollectionAssoc"), "true");
+		EntityManagerFactory emf = deploy(cache, "read", extra);
+		try {
+			assertEquals("Read, not written again", LONG_AGO, cache.lastModified());
+			SampleGraphs.populate(emf, 3, 2, 10);
+			StatementCapture capture = StatementCapture.install(emf);
+			EntityManager em = emf.createEntityManager();
+			try (Recording recording = capture.start()) {
+				em.getTransaction().begin();
+				SampleGraphs.persist(em, SampleGraphs.newGraph(4L, 2));
+				em.getTransaction().commit();
+				StatementBudget.named("the session customizers still run").exactly(INSERT, 5).exactly(UPDATE, 0)
+						.verify(recording);
+				em.clear();
+				recording.clear();
+
+				RootEntity root = em.find(RootEntity.class, 2L);
+				assertFalse(emf.getPersistenceUnitUtil().isLoaded(root, "ownedAssoc"));
+				assertEquals("OwnedAssoc:2L:Data2", root.getOwnedAssoc().getData2());
+				assertEquals(2, root.getKeyCollectionAssoc().size());
+				StatementBudget.named("lazy loading of the cached descriptors").exactly(SELECT, "ROOT_ENTITY", 1)
+						.exactly(SELECT, "OWNED_ASSOCIATION", 1).exactly(SELECT, "KEY_COLLECTION_ASSOC", 1)
+						.verify(recording);
+			} finally {
+				em.close();
+			}
+		} finally {
+			emf.close();
+		}
+	}
+
+	@Test
+	public void CHANGED_CLASSES_discard_the_file() throws Exception {
+		File cache = new File(folder.getRoot(), "test.project");
+		deploy(cache, "changed").close();
+		assertTrue(cache.isFile());
+
+		final String rootEntityClass = RootEntity.class.getName().replace('.', '/') + ".class";
+		ClassLoader changed = new ClassLoader(getClass().getClassLoader()) {
+
+			@Override
+			public InputStream getResourceAsStream(String name) {
+				InputStream in = super.getResourceAsStream(name);
+				if (!name.equals(rootEntityClass) || in == null) {
+					return in;
+				}
+				try (InputStream original = in) {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					byte[] buffer = new byte[8192];
+					for (int read = original.read(buffer); read >= 0; read = original.read(buffer)) {
+						bytes.write(buffer, 0, read);
+					}
+					bytes.write(0);
+					return new ByteArrayInputStream(bytes.toByteArray());
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		Map<String, Object> properties = FingerprintedProjectCache.properties(cache);
+		FingerprintedProjectCache projectCache = new FingerprintedProjectCache();
+		assertNull(projectCache.retrieveProject(properties, changed, AbstractSessionLog.getLog()));
+		assertFalse(cache.exists());
+
+		deploy(cache, "changed-again").close();
+		assertTrue("Written again", cache.isFile());
+		assertTrue(new FingerprintedProjectCache().retrieveProject(properties, getClass().getClassLoader(),
+				AbstractSessionLog.getLog()) != null);
+	}
+
+	@Test
+	public void UNREADABLE_FILES_are_replaced() throws Exception {
+		File cache = new File(folder.getRoot(), "test.project");
+		Files.write(cache.toPath(), "not a project".getBytes(StandardCharsets.UTF_8));
+		long length = cache.length();
+
+		EntityManagerFactory emf = deploy(cache, "unreadable");
+		try {
+			SampleGraphs.populate(emf, 1, 2, 10);
+		} finally {
+			emf.close();
+		}
+		assertNotEquals(length, cache.length());
+		assertEquals(5, readProject(cache).getOrderedDescriptors().size());
+	}
+
+}
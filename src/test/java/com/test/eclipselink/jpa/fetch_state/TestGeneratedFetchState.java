@@ -0,0 +1,133 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.entities.KeyMappingCollectionAssocPlan;
+import com.test.eclipselink.jpa.fetch_state.entities.OwnedAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.OwnedAssocLoadState;
+import com.test.eclipselink.jpa.fetch_state.entities.OwnedAssocPlan;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntityLoadState;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntityPlan;
+import com.test.eclipselink.jpa.fetch_state.fetch.FetchPlan;
+import com.test.eclipselink.jpa.fetch_state.fetch.JoinFetchPlanner;
+import com.test.eclipselink.jpa.fetch_state.fetch.TypedFetchPlan;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudgetRule;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * The plans and load-state accessors generated by FetchStateProcessor are expected to produce the FetchGroups their
+ * string equivalents produce, and to answer load state questions exactly like LoadStateInspector, without any SQL.
+ *
+ */
+public class TestGeneratedFetchState {
+
+	private static final TypedFetchPlan<RootEntity> DATA1_AND_OWNED_DATA1 = RootEntityPlan.data1()
+			.ownedAssoc(OwnedAssocPlan.data1());
+
+	private static EntityManagerFactory emf;
+	private static LoadStateInspector inspector;
+
+	@Rule
+	public final StatementBudgetRule sqlBudget = new StatementBudgetRule(() -> emf);
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.create("generated-fetch-state");
+		SampleGraphs.populate(emf, 2, 3, 10);
+		inspector = new LoadStateInspector(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static RootEntity find(EntityManager em, TypedFetchPlan<RootEntity> plan) {
+		return plan.applyTo(em.createQuery("SELECT o FROM RootEntity o WHERE o.id = 1", RootEntity.class))
+				.getSingleResult();
+	}
+
+	private void assertAgreesWithInspector(RootEntity entity) {
+		sqlBudget.within(StatementBudget.named("load state checks"), () -> {
+			List<String> attributeNames = inspector.attributeNames(RootEntity.class);
+			for (int attribute = 0; attribute < attributeNames.size(); attribute++) {
+				String attributeName = RootEntityLoadState.attributeName(attribute);
+				assertTrue(attributeName, attributeNames.contains(attributeName));
+				assertEquals(attributeName, inspector.isLoaded(entity, attributeName),
+						RootEntityLoadState.isLoaded(entity, attribute));
+			}
+			assertEquals(inspector.isLoaded(entity), RootEntityLoadState.isLoaded(entity));
+			return null;
+		});
+	}
+
+	@Test
+	public void PLANS_match_their_string_paths() {
+		assertEquals(Arrays.asList("data1", "ownedAssoc.data1"), DATA1_AND_OWNED_DATA1.getPaths());
+		assertEquals(Arrays.asList("ownedAssoc"), RootEntityPlan.ownedAssoc().getPaths());
+		assertEquals(Arrays.asList("data1", "keyCollectionAssoc.data1", "keyCollectionAssoc.data2"),
+				RootEntityPlan.data1().keyCollectionAssoc(KeyMappingCollectionAssocPlan.data1().data2()).data1()
+						.getPaths());
+		assertEquals(RootEntity.class, DATA1_AND_OWNED_DATA1.getEntityClass());
+
+		FetchPlan planned = DATA1_AND_OWNED_DATA1.plan(new JoinFetchPlanner(emf));
+		assertEquals(new JoinFetchPlanner(emf).plan(RootEntity.class, "data1", "ownedAssoc.data1").getStrategies(),
+				planned.getStrategies());
+		assertEquals(planned.getFetchGroup(), DATA1_AND_OWNED_DATA1.toFetchGroup());
+	}
+
+	@Test
+	public void LOAD_STATES_agree_with_the_inspector_without_SQL() {
+		EntityManager em = emf.createEntityManager();
+		try {
+			RootEntity partial = sqlBudget.within(StatementBudget.named("one partial read").exactly(SELECT, 1),
+					() -> find(em, DATA1_AND_OWNED_DATA1));
+			assertTrue(RootEntityLoadState.isData1Loaded(partial));
+			assertFalse(RootEntityLoadState.isData2Loaded(partial));
+			assertFalse(RootEntityLoadState.isOwnedAssocLoaded(partial));
+			assertFalse(RootEntityLoadState.isKeyCollectionAssocLoaded(partial));
+			assertAgreesWithInspector(partial);
+
+			OwnedAssoc owned = partial.getOwnedAssoc();
+			assertTrue(RootEntityLoadState.isOwnedAssocLoaded(partial));
+			assertTrue(OwnedAssocLoadState.isData1Loaded(owned));
+			assertFalse(OwnedAssocLoadState.isData2Loaded(owned));
+			assertEquals(inspector.isLoaded(owned, "data2"),
+					OwnedAssocLoadState.isLoaded(owned, OwnedAssocLoadState.DATA2));
+			assertAgreesWithInspector(partial);
+
+			partial.getKeyCollectionAssoc().size();
+			assertTrue(RootEntityLoadState.isKeyCollectionAssocLoaded(partial));
+			assertAgreesWithInspector(partial);
+
+			RootEntity full = em.find(RootEntity.class, 2L);
+			assertTrue(RootEntityLoadState.isLoaded(full));
+			assertFalse(RootEntityLoadState.isRefCollectionAssocLoaded(full));
+			assertAgreesWithInspector(full);
+
+			assertAgreesWithInspector(SampleGraphs.newGraph(3L, 1));
+		} finally {
+			em.close();
+		}
+	}
+
+}
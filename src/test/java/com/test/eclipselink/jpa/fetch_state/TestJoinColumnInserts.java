@@ -0,0 +1,154 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.INSERT;
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.UPDATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.customizers.JoinColumnInserts;
+import com.test.eclipselink.jpa.fetch_state.entities.KeyMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture.Recording;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * The join column of keyCollectionAssoc written in the INSERT of its new children (see JoinColumnInserts), where
+ * EclipseLink otherwise sets it with an UPDATE per child at the end of the commit (see TestStatementBudget). Existing
+ * children added to a root still take their UPDATE.
+ *
+ */
+public class TestJoinColumnInserts {
+
+	private static EntityManagerFactory emf;
+	private static StatementCapture capture;
+
+	@BeforeClass
+	public static void initializeEnv() {
+		Map<String, Object> properties = PersistenceUnits.quietProperties("join-column-inserts");
+		properties.put(JoinColumnInserts.property(RootEntity.class, "keyCollectionAssoc"), "true");
+		emf = PersistenceUnits.create(properties);
+		SampleGraphs.populate(emf, 1, 2, 10);
+		capture = StatementCapture.install(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static Object parentIdOf(long childId) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			return em.createNativeQuery("SELECT PARENT_ID FROM KEY_COLLECTION_ASSOC WHERE ID = ?")
+					.setParameter(1, childId).getSingleResult();
+		} finally {
+			em.close();
+		}
+	}
+
+	private static int childrenOf(long rootId) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			return em.find(RootEntity.class, rootId).getKeyCollectionAssoc().size();
+		} finally {
+			em.close();
+		}
+	}
+
+	@Test
+	public void NEW_GRAPHS_are_inserted_without_updates() {
+		EntityManager em = emf.createEntityManager();
+		try (Recording recording = capture.start()) {
+			em.getTransaction().begin();
+			SampleGraphs.persist(em, SampleGraphs.newGraph(2L, 3));
+			em.getTransaction().commit();
+
+			StatementBudget.named("persist a graph with 3 children per collection")
+					.exactly(INSERT, "ROOT_ENTITY", 1).exactly(INSERT, "KEY_COLLECTION_ASSOC", 1).atMost(INSERT, 5)
+					.exactly(UPDATE, 0).verify(recording);
+		} finally {
+			em.close();
+		}
+		for (int i = 0; i < 3; i++) {
+			assertEquals(2, ((Number) parentIdOf(SampleGraphs.childId(2L, 3, i))).longValue());
+		}
+		assertEquals(3, childrenOf(2L));
+	}
+
+	@Test
+	public void NEW_CHILDREN_of_existing_roots_are_inserted_without_updates() {
+		EntityManager em = emf.createEntityManager();
+		try (Recording recording = capture.start()) {
+			em.getTransaction().begin();
+			RootEntity root = em.find(RootEntity.class, 1L);
+			root.addKeyCollectionAssoc(new KeyMappingCollectionAssoc(1001L, "KeyCollAssoc:1001L:Data1",
+					"KeyCollAssoc:1001L:Data2"));
+			em.getTransaction().commit();
+
+			StatementBudget.named("add a new child to a root").exactly(SELECT, "ROOT_ENTITY", 1)
+					.exactly(INSERT, "KEY_COLLECTION_ASSOC", 1).exactly(UPDATE, 0).verify(recording);
+		} finally {
+			em.close();
+		}
+		assertEquals(1, ((Number) parentIdOf(1001L)).longValue());
+		assertEquals(3, childrenOf(1L));
+	}
+
+	@Test
+	public void EXISTING_CHILDREN_added_to_a_root_are_updated() {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			em.persist(new KeyMappingCollectionAssoc(2001L, "KeyCollAssoc:2001L:Data1", "KeyCollAssoc:2001L:Data2"));
+			RootEntity root = SampleGraphs.newGraph(3L, 0);
+			SampleGraphs.persist(em, root);
+			em.getTransaction().commit();
+			assertEquals(null, parentIdOf(2001L));
+
+			try (Recording recording = capture.start()) {
+				em.getTransaction().begin();
+				root.addKeyCollectionAssoc(em.find(KeyMappingCollectionAssoc.class, 2001L));
+				em.getTransaction().commit();
+
+				StatementBudget.named("add an existing child to a root").exactly(INSERT, 0)
+						.exactly(UPDATE, "KEY_COLLECTION_ASSOC", 1).verify(recording);
+			}
+		} finally {
+			em.close();
+		}
+		assertEquals(3, ((Number) parentIdOf(2001L)).longValue());
+		assertEquals(1, childrenOf(3L));
+	}
+
+	@Test
+	public void MAPPED_BY_collections_fail_the_deployment() {
+		Map<String, Object> properties = PersistenceUnits.quietProperties("join-column-inserts-misconfigured");
+		properties.put(JoinColumnInserts.property(RootEntity.class, "refCollectionAssoc"), "true");
+		EntityManagerFactory misconfigured = PersistenceUnits.create(properties);
+		try {
+			misconfigured.createEntityManager();
+			fail("refCollectionAssoc has no join column of its own");
+		} catch (PersistenceException expected) {
+			assertTrue(expected.toString(), expected.toString().contains("refCollectionAssoc"));
+		} finally {
+			misconfigured.close();
+		}
+	}
+
+}
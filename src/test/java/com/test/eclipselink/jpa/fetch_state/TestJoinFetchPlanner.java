@@ -0,0 +1,159 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.entities.KeyMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.ReferenceMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.fetch.FetchPlan;
+import com.test.eclipselink.jpa.fetch_state.fetch.FetchPlan.Strategy;
+import com.test.eclipselink.jpa.fetch_state.fetch.JoinFetchPlanner;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture.Recording;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * The custom FetchGroup of TestFetchState ({data1, ownedAssoc.data1, owningAssoc.data2, keyCollectionAssoc.data1,
+ * refCollectionAssoc.data2}) on its own costs 1 + 4 SELECTs per root once every association is walked. Planned by
+ * JoinFetchPlanner, the same graph is expected to cost 3 SELECTs however many roots there are: the root query with
+ * both to-one associations joined, and one batch query per collection - with the same load states as before.
+ *
+ */
+public class TestJoinFetchPlanner {
+
+	private static final String[] CUSTOM_FETCHGROUP = { "data1", "ownedAssoc.data1", "owningAssoc.data2",
+			"keyCollectionAssoc.data1", "refCollectionAssoc.data2" };
+
+	private static final int ROOTS = 5;
+
+	private static EntityManagerFactory emf;
+	private static StatementCapture statements;
+	private static LoadStateInspector inspector;
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.create("join-fetch-planner");
+		SampleGraphs.populate(emf, ROOTS, 2, 10);
+		statements = StatementCapture.install(emf);
+		inspector = new LoadStateInspector(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static List<RootEntity> findAll(EntityManager em, FetchPlan plan) {
+		TypedQuery<RootEntity> query = em.createQuery("SELECT o FROM RootEntity o ORDER BY o.id", RootEntity.class);
+		return plan.applyTo(query).getResultList();
+	}
+
+	/**
+	 * Walks every path of the custom FetchGroup and checks that what was asked for is loaded, and what was not is not.
+	 */
+	private static void walkCustomFetchGroup(List<RootEntity> roots) {
+		for (RootEntity root : roots) {
+			assertTrue(inspector.isLoaded(root, "data1") && !inspector.isLoaded(root, "data2"));
+			assertTrue(root.getOwnedAssoc().getData1() != null);
+			assertTrue(!inspector.isLoaded(root.getOwnedAssoc(), "data2"));
+			assertTrue(root.getOwningAssoc().getData2() != null);
+			assertTrue(!inspector.isLoaded(root.getOwningAssoc(), "data1"));
+			for (KeyMappingCollectionAssoc child : root.getKeyCollectionAssoc()) {
+				assertTrue(child.getData1() != null && !inspector.isLoaded(child, "data2"));
+			}
+			for (ReferenceMappingCollectionAssoc child : root.getRefCollectionAssoc()) {
+				assertTrue(child.getData2() != null && !inspector.isLoaded(child, "data1"));
+			}
+		}
+	}
+
+	@Test
+	public void STRATEGIES_join_to_one_and_batch_to_many() {
+		FetchPlan plan = new JoinFetchPlanner(emf).plan(RootEntity.class, "data1", "ownedAssoc.data1",
+				"refCollectionAssoc.parent.data2", "keyCollectionAssoc");
+
+		assertTrue(plan.toString(), plan.getStrategies().get("ownedAssoc") == Strategy.JOIN_FETCH);
+		assertTrue(plan.toString(), plan.getStrategies().get("refCollectionAssoc") == Strategy.BATCH_IN);
+		assertTrue("A to-one below a to-many is batched with it: " + plan,
+				plan.getStrategies().get("refCollectionAssoc.parent") == Strategy.BATCH_IN);
+		assertTrue(plan.toString(), plan.getStrategies().get("keyCollectionAssoc") == Strategy.BATCH_IN);
+		assertTrue("Basics get no strategy: " + plan, !plan.getStrategies().containsKey("data1"));
+		assertTrue(plan.getMaxRoundTrips() == 4);
+	}
+
+	@Test
+	public void UNPLANNED_FETCHGROUP_costs_one_SELECT_per_association_and_root() {
+		FetchPlan plan = new JoinFetchPlanner(emf).plan(RootEntity.class, CUSTOM_FETCHGROUP);
+		EntityManager em = emf.createEntityManager();
+		try (Recording recording = statements.start()) {
+			TypedQuery<RootEntity> query = em.createQuery("SELECT o FROM RootEntity o ORDER BY o.id",
+					RootEntity.class);
+			query.setHint(QueryHints.FETCH_GROUP, plan.getFetchGroup());
+			walkCustomFetchGroup(query.getResultList());
+			StatementBudget.named("walk the custom FetchGroup without a plan").exactly(SELECT, 1 + 4 * ROOTS)
+					.verify(recording);
+		}
+		em.close();
+	}
+
+	@Test
+	public void PLANNED_FETCHGROUP_BATCH_IN_loads_in_bounded_round_trips() {
+		assertPlannedRoundTrips(new JoinFetchPlanner(emf, BatchFetchType.IN));
+	}
+
+	@Test
+	public void PLANNED_FETCHGROUP_BATCH_EXISTS_loads_in_bounded_round_trips() {
+		assertPlannedRoundTrips(new JoinFetchPlanner(emf, BatchFetchType.EXISTS));
+	}
+
+	private void assertPlannedRoundTrips(JoinFetchPlanner planner) {
+		FetchPlan plan = planner.plan(RootEntity.class, CUSTOM_FETCHGROUP);
+		assertTrue(plan.getMaxRoundTrips() == 3);
+
+		EntityManager em = emf.createEntityManager();
+		try (Recording recording = statements.start()) {
+			List<RootEntity> roots = findAll(em, plan);
+			StatementBudget.named("find with " + plan).exactly(SELECT, "ROOT_ENTITY", 1).verify(recording);
+			walkCustomFetchGroup(roots);
+			assertTrue(roots.size() == ROOTS);
+			StatementBudget.named("walk " + plan).exactly(SELECT, plan.getMaxRoundTrips())
+					.exactly(SELECT, "KEY_COLLECTION_ASSOC", 1).exactly(SELECT, "REF_COLLECTION_ASSOC", 1)
+					.verify(recording);
+		}
+		em.close();
+	}
+
+	@Test
+	public void UNKNOWN_PATHS_are_rejected() {
+		JoinFetchPlanner planner = new JoinFetchPlanner(emf);
+		try {
+			planner.plan(RootEntity.class, "ownedAssoc.some_nonexistent_attribute");
+			fail("A path that does not match the mappings should be rejected");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			planner.plan(RootEntity.class, "data1.length");
+			fail("A path cannot go through a basic attribute");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+}
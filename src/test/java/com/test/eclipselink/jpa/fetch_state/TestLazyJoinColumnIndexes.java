@@ -0,0 +1,70 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.customizers.LazyJoinColumnIndexes;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+
+/**
+ *
+ * DDL generation is expected to create an index on each of the four join columns the lazy associations of RootEntity
+ * are looked up through, to report them, and to create none when the property is off.
+ *
+ */
+public class TestLazyJoinColumnIndexes {
+
+	private static final Set<String> EXPECTED = new HashSet<>(Arrays.asList("IX_KEY_COLLECTION_ASSOC_PARENT_ID",
+			"IX_REF_COLLECTION_ASSOC_PARENT_ID", "IX_OWNING_ASSOC_OWNED_PARENT", "IX_ROOT_ENTITY_OWNED_FK"));
+
+	@Test
+	public void LAZY_JOIN_COLUMNS_are_indexed_and_reported() {
+		EntityManagerFactory emf = PersistenceUnits.createQuiet("lazy-join-column-indexes");
+		try {
+			Set<String> inDatabase = indexesInDatabase(emf);
+			List<String> reported = LazyJoinColumnIndexes.createdIndexes(JpaHelper.getServerSession(emf));
+			assertTrue("Every lazy join column should have its index: " + inDatabase, inDatabase.equals(EXPECTED));
+			assertTrue("Each created index should be reported once: " + reported,
+					reported.size() == EXPECTED.size() && new HashSet<>(reported).equals(EXPECTED));
+		} finally {
+			emf.close();
+		}
+	}
+
+	@Test
+	public void NO_INDEXES_are_created_when_disabled() {
+		Map<String, Object> properties = PersistenceUnits.quietProperties("no-lazy-join-column-indexes");
+		properties.put(LazyJoinColumnIndexes.PROPERTY, "false");
+		EntityManagerFactory emf = PersistenceUnits.create(properties);
+		try {
+			assertTrue(indexesInDatabase(emf).isEmpty());
+			assertTrue(LazyJoinColumnIndexes.createdIndexes(JpaHelper.getServerSession(emf)).isEmpty());
+		} finally {
+			emf.close();
+		}
+	}
+
+	private static Set<String> indexesInDatabase(EntityManagerFactory emf) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			@SuppressWarnings("unchecked")
+			List<String> names = em.createNativeQuery("SELECT DISTINCT INDEX_NAME FROM INFORMATION_SCHEMA.SYSTEM_INDEXINFO"
+					+ " WHERE INDEX_NAME LIKE 'IX_%'").getResultList();
+			return new HashSet<>(names);
+		} finally {
+			em.close();
+		}
+	}
+
+}
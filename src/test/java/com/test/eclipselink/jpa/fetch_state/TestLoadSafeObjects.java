@@ -0,0 +1,150 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.entities.OwningAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.OwningAssocLoadState;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntityLoadState;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntityPlan;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudgetRule;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * The toString, equals and hashCode of the entities (see LoadSafeObjects) are expected to print exactly what is loaded
+ * and to compare ids, without a single SQL statement and without changing any load state, whether the entities are
+ * managed, detached or new.
+ *
+ */
+public class TestLoadSafeObjects {
+
+	private static final StatementBudget NO_SQL = StatementBudget.named("toString, equals and hashCode");
+
+	private static EntityManagerFactory emf;
+
+	@Rule
+	public final StatementBudgetRule sqlBudget = new StatementBudgetRule(() -> emf);
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.create("load-safe-objects");
+		SampleGraphs.populate(emf, 2, 2, 10);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	@Test
+	public void UNLOADED_ASSOCIATIONS_print_as_not_loaded() {
+		EntityManager em = emf.createEntityManager();
+		try {
+			RootEntity root = sqlBudget.within(StatementBudget.named("find").exactly(SELECT, 1),
+					() -> em.find(RootEntity.class, 1L));
+			String printed = sqlBudget.within(NO_SQL, root::toString);
+			assertEquals("RootEntity[id=1, data1=Root:1L:Data1, data2=Root:1L:Data2, ownedAssoc=<not loaded id=1>, "
+					+ "owningAssoc=<not loaded id=?>, keyCollectionAssoc=<not loaded id=?>, "
+					+ "refCollectionAssoc=<not loaded id=?>]", printed);
+			assertFalse(RootEntityLoadState.isOwnedAssocLoaded(root));
+			assertFalse(RootEntityLoadState.isOwningAssocLoaded(root));
+			assertFalse(RootEntityLoadState.isKeyCollectionAssocLoaded(root));
+
+			RootEntity partial = sqlBudget.within(StatementBudget.named("partial read").exactly(SELECT, 1),
+					() -> RootEntityPlan.data1().applyTo(em.createQuery(
+							"SELECT o FROM RootEntity o WHERE o.id = 2", RootEntity.class)).getSingleResult());
+			assertTrue(sqlBudget.within(NO_SQL, partial::toString).startsWith("RootEntity[id=2, data1=Root:2L:Data1, "
+					+ "data2=<not loaded>, ownedAssoc=<not loaded>"));
+			assertFalse(RootEntityLoadState.isData2Loaded(partial));
+		} finally {
+			em.close();
+		}
+	}
+
+	@Test
+	public void LOADED_ASSOCIATIONS_print_as_references() {
+		EntityManager em = emf.createEntityManager();
+		try {
+			OwningAssoc owning = sqlBudget.within(
+					StatementBudget.named("load the graph").atMost(SELECT, 6),
+					() -> {
+						RootEntity root = em.find(RootEntity.class, 1L);
+						root.getOwnedAssoc().getData2();
+						root.getKeyCollectionAssoc().size();
+						return root.getOwningAssoc();
+					});
+			RootEntity root = em.find(RootEntity.class, 1L);
+
+			assertEquals("OwningAssoc[id=1, data1=OwningAssoc:1L:Data1, data2=OwningAssoc:1L:Data2, "
+					+ "ownedParent=<not loaded id=1>]", sqlBudget.within(NO_SQL, owning::toString));
+			assertFalse(OwningAssocLoadState.isOwnedParentLoaded(owning));
+			String printed = sqlBudget.within(NO_SQL, root::toString);
+			assertTrue(printed, printed.contains("ownedAssoc=OwnedAssoc[id=1], owningAssoc=OwningAssoc[id=1], "
+					+ "keyCollectionAssoc=[KeyMappingCollectionAssoc[id=1], KeyMappingCollectionAssoc[id=2]], "
+					+ "refCollectionAssoc=<not loaded id=?>]"));
+
+			em.close();
+			assertEquals("Detached, with the EntityManager closed", printed, sqlBudget.within(NO_SQL, root::toString));
+			assertFalse(RootEntityLoadState.isRefCollectionAssocLoaded(root));
+		} finally {
+			if (em.isOpen()) {
+				em.close();
+			}
+		}
+	}
+
+	@Test
+	public void EQUALITY_is_by_class_and_id() {
+		EntityManager em = emf.createEntityManager();
+		EntityManager other = emf.createEntityManager();
+		try {
+			RootEntity root = em.find(RootEntity.class, 1L);
+			RootEntity sameRow = other.find(RootEntity.class, 1L);
+			RootEntity otherRow = other.find(RootEntity.class, 2L);
+			RootEntity unsaved = SampleGraphs.newGraph(1L, 1);
+			RootEntity withoutId = new RootEntity();
+
+			sqlBudget.within(NO_SQL, () -> {
+				assertEquals(root, sameRow);
+				assertEquals(root.hashCode(), sameRow.hashCode());
+				assertEquals(root, unsaved);
+				assertNotEquals(root, otherRow);
+				assertNotEquals(root, unsaved.getOwnedAssoc());
+				assertNotEquals(withoutId, new RootEntity());
+				assertEquals(withoutId, withoutId);
+
+				Set<Object> entities = new HashSet<>();
+				entities.add(root);
+				entities.add(sameRow);
+				entities.add(otherRow);
+				entities.add(unsaved.getOwnedAssoc());
+				assertEquals(3, entities.size());
+				assertTrue(entities.contains(unsaved));
+				return null;
+			});
+			assertFalse(RootEntityLoadState.isOwningAssocLoaded(root));
+		} finally {
+			em.close();
+			other.close();
+		}
+	}
+
+}
@@ -0,0 +1,188 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.queries.FetchGroup;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.entities.KeyMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * LoadStateInspector is expected to agree with EntityManagerFactoryImpl.isLoaded(Object, String, AbstractSession), which
+ * TestFetchState found to be the reliable way of checking load state, for every attribute of every entity in both the
+ * default and custom FetchGroup scenarios - also when the same entities are checked from many threads at once.
+ *
+ */
+public class TestLoadStateInspector {
+
+	private static EntityManagerFactory emf;
+	private static LoadStateInspector inspector;
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.create("load-state-inspector");
+		SampleGraphs.populate(emf, 1, 2, 10);
+		inspector = new LoadStateInspector(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static RootEntity findWithFetchGroup(EntityManager em, String... attributes) {
+		TypedQuery<RootEntity> query = em.createQuery("SELECT o FROM RootEntity o WHERE o.id = :id", RootEntity.class);
+		query.setParameter("id", 1L);
+		FetchGroup fg = new FetchGroup();
+		for (String attribute : attributes) {
+			fg.addAttribute(attribute);
+		}
+		query.setHint(QueryHints.FETCH_GROUP, fg);
+		return query.getSingleResult();
+	}
+
+	private static void assertAgreesWithEMF(Object entity) {
+		AbstractSession session = ((EntityManagerFactoryImpl) emf).getServerSession();
+		for (String attName : inspector.attributeNames(entity.getClass())) {
+			assertTrue("Attribute/Association " + attName + " of [" + entity.getClass().getSimpleName()
+					+ "] should agree with EntityManagerFactoryImpl",
+					EntityManagerFactoryImpl.isLoaded(entity, attName, session) == inspector.isLoaded(entity, attName));
+		}
+	}
+
+	@Test
+	public void DEFAULT_FETCHGROUP_agrees_with_EMF() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity ent = em.find(RootEntity.class, 1L);
+
+		assertAgreesWithEMF(ent);
+		assertTrue(inspector.isLoaded(ent, "data1"));
+		assertTrue(!inspector.isLoaded(ent, "ownedAssoc"));
+		assertTrue("Only LAZY associations are unloaded, so the entity as a whole is loaded", inspector.isLoaded(ent));
+
+		//OwnedAssoc has a LAZY basic, which does not count for the whole entity check
+		assertAgreesWithEMF(ent.getOwnedAssoc());
+		assertTrue(!inspector.isLoaded(ent.getOwnedAssoc(), "data1"));
+		assertTrue(inspector.isLoaded(ent.getOwnedAssoc()));
+		em.close();
+	}
+
+	@Test
+	public void CUSTOM_FETCHGROUP_agrees_with_EMF() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity ent = findWithFetchGroup(em, "data1", "ownedAssoc.data1", "owningAssoc.data2",
+				"keyCollectionAssoc.data1", "refCollectionAssoc.data2");
+
+		assertAgreesWithEMF(ent);
+		assertTrue(inspector.isLoaded(ent, "data1"));
+		assertTrue(!inspector.isLoaded(ent, "data2"));
+		assertTrue("data2 is EAGER by mapping but was not fetched", !inspector.isLoaded(ent));
+
+		assertAgreesWithEMF(ent.getOwnedAssoc());
+		assertAgreesWithEMF(ent.getOwningAssoc());
+		for (KeyMappingCollectionAssoc oneAssoc : ent.getKeyCollectionAssoc()) {
+			assertAgreesWithEMF(oneAssoc);
+			assertTrue(!inspector.isLoaded(oneAssoc, "data2"));
+		}
+		assertTrue("keyCollectionAssoc was just initialized", inspector.isLoaded(ent, "keyCollectionAssoc"));
+		em.close();
+	}
+
+	@Test
+	public void NEW_ENTITIES_are_completely_loaded() {
+		RootEntity ent = new RootEntity();
+		for (String attName : inspector.attributeNames(RootEntity.class)) {
+			assertTrue(attName + " of a new entity should be loaded", inspector.isLoaded(ent, attName));
+		}
+		assertTrue(inspector.isLoaded(ent));
+	}
+
+	@Test
+	public void UNKNOWN_ATTRIBUTES_and_CLASSES_are_rejected() {
+		try {
+			inspector.isLoaded(new RootEntity(), "some_nonexistent_attribute");
+			fail("A nonexistent attribute should not be silently reported as (not) loaded");
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			inspector.isLoaded("not an entity", "data1");
+			fail("A non-persistent class should be rejected");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	@Test
+	public void CONCURRENT_CHECKS_agree_with_single_threaded_answers() throws Exception {
+		EntityManager em = emf.createEntityManager();
+		EntityManager other = emf.createEntityManager();
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			final List<Object> entities = new ArrayList<>();
+			RootEntity partial = findWithFetchGroup(em, "data1", "keyCollectionAssoc.data1");
+			entities.add(partial);
+			entities.addAll(partial.getKeyCollectionAssoc());
+			RootEntity full = other.find(RootEntity.class, 1L);
+			entities.add(full);
+			entities.add(full.getOwnedAssoc());
+			entities.add(new RootEntity());
+
+			final List<Boolean> expected = new ArrayList<>();
+			final List<String> attributes = new ArrayList<>();
+			final List<Object> owners = new ArrayList<>();
+			for (Object entity : entities) {
+				for (String attName : inspector.attributeNames(entity.getClass())) {
+					owners.add(entity);
+					attributes.add(attName);
+					expected.add(inspector.isLoaded(entity, attName));
+				}
+			}
+
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int t = 0; t < 16; t++) {
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						int mismatches = 0;
+						for (int i = 0; i < 20000; i++) {
+							int index = i % owners.size();
+							if (inspector.isLoaded(owners.get(index), attributes.get(index)) != expected.get(index)) {
+								mismatches++;
+							}
+						}
+						return mismatches;
+					}
+				}));
+			}
+			for (Future<Integer> result : results) {
+				assertTrue("Concurrent checks should give the single-threaded answers", result.get() == 0);
+			}
+		} finally {
+			executor.shutdownNow();
+			em.close();
+			other.close();
+		}
+	}
+
+}
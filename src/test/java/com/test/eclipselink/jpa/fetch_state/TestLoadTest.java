@@ -0,0 +1,117 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.load.LoadReport;
+import com.test.eclipselink.jpa.fetch_state.load.LoadTest;
+import com.test.eclipselink.jpa.fetch_state.load.Operation;
+import com.test.eclipselink.jpa.fetch_state.load.WorkloadMix;
+import com.test.eclipselink.jpa.fetch_state.support.LatencyHistogram;
+
+/**
+ *
+ * The load test driver is expected to report percentiles within the histogram resolution, to reject malformed
+ * workload mixes and options, and to run every operation of a mix without errors, open and closed loop.
+ *
+ */
+public class TestLoadTest {
+
+	private static void assertWithin(long expected, long actual, double tolerance) {
+		assertTrue(actual + " is not within " + tolerance + " of " + expected,
+				Math.abs(actual - expected) <= expected * tolerance);
+	}
+
+	private static void assertRejected(String mix) {
+		try {
+			WorkloadMix.parse(mix);
+			fail(mix + " was accepted");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	@Test
+	public void PERCENTILES_are_within_the_bucket_resolution() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 1_000_000; value++) {
+			histogram.record(value * 1000);
+		}
+		assertEquals(1_000_000, histogram.getCount());
+		assertWithin(500_000_000L, histogram.percentile(50), 1.0 / 64);
+		assertWithin(990_000_000L, histogram.percentile(99), 1.0 / 64);
+		assertWithin(999_900_000L, histogram.percentile(99.99), 1.0 / 64);
+		assertEquals(1_000_000_000L, histogram.getMax());
+		assertEquals(1_000_000_000L, histogram.percentile(100));
+		assertWithin(500_000_500L, (long) histogram.getMean(), 1e-9);
+
+		LatencyHistogram small = new LatencyHistogram();
+		for (long value = 0; value < 64; value++) {
+			small.record(value);
+		}
+		assertEquals(31, small.percentile(50));
+		assertEquals(63, small.percentile(100));
+
+		LatencyHistogram merged = new LatencyHistogram();
+		merged.add(histogram);
+		merged.add(small);
+		assertEquals(1_000_064, merged.getCount());
+		assertEquals(1_000_000_000L, merged.getMax());
+	}
+
+	@Test
+	public void MIXES_are_parsed_and_checked() {
+		WorkloadMix mix = WorkloadMix.parse(" find:5, walk:0 ,insert:1");
+		assertEquals(3, mix.getWeights().size());
+		assertEquals(Integer.valueOf(5), mix.getWeights().get(Operation.FIND));
+		assertEquals("find:5,walk:0,insert:1", mix.toString());
+		assertEquals(WorkloadMix.DEFAULT, WorkloadMix.parse(WorkloadMix.DEFAULT).toString());
+
+		assertRejected("find");
+		assertRejected("find:5,unknown:1");
+		assertRejected("find:5,find:1");
+		assertRejected("find:-1,walk:2");
+		assertRejected("find:x");
+		assertRejected("find:0,walk:0");
+
+		LoadTest.Options options = LoadTest.Options.parse("--threads=3", "--rate=100", "--mix=merge:1");
+		assertEquals(3, options.getThreads());
+		assertEquals(100, options.getTargetRate());
+		assertEquals("merge:1", options.getMix().toString());
+		for (String invalid : new String[] { "--threads=0", "--unknown=1", "threads=2", "--rate=fast" }) {
+			try {
+				LoadTest.Options.parse(invalid);
+				fail(invalid + " was accepted");
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void EVERY_OPERATION_runs_without_errors() {
+		LoadReport open = new LoadTest(new LoadTest.Options().database("load-test-open").threads(2)
+				.durationSeconds(2).warmupSeconds(0).targetRate(50).roots(40).children(2).insertBatchSize(2)
+				.mix(WorkloadMix.parse("find:1,fetch-group:1,walk:1,merge:1,insert:1"))).run();
+		assertEquals(EnumSet.allOf(Operation.class), open.getResults().keySet());
+		for (Map.Entry<Operation, LoadReport.Result> result : open.getResults().entrySet()) {
+			assertEquals(result.getKey() + " failed: " + result.getValue().getFirstError(), 0,
+					result.getValue().getErrors());
+		}
+		assertEquals("operations due in 2s at 50 ops/s", 100, open.getTotal().getCount() + open.getMissed());
+		assertTrue(open.getTotal().getResponseTime().getMax() >= open.getTotal().getServiceTime().getMax());
+
+		LoadReport closed = new LoadTest(new LoadTest.Options().database("load-test-closed").threads(2)
+				.durationSeconds(1).warmupSeconds(0).roots(40).children(2).mix(WorkloadMix.only(Operation.WALK)))
+						.run();
+		assertEquals(EnumSet.of(Operation.WALK), closed.getResults().keySet());
+		assertEquals("walk failed: " + closed.getTotal().getFirstError(), 0, closed.getTotal().getErrors());
+		assertTrue(closed.getTotal().getCount() > 0);
+		assertEquals(0, closed.getMissed());
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.collection.PagedCollectionView;
+import com.test.eclipselink.jpa.fetch_state.entities.KeyMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.ReferenceMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.sql.SqlStatement;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudgetRule;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * Paged views of the collections of a RootEntity with 25 children each are expected to read the children a page at a
+ * time, in id order and by keyset, without initializing the mapped Lists.
+ *
+ */
+public class TestPagedCollectionView {
+
+	private static final int CHILDREN = 25;
+
+	private static EntityManagerFactory emf;
+	private static LoadStateInspector inspector;
+
+	@Rule
+	public final StatementBudgetRule sqlBudget = new StatementBudgetRule(() -> emf);
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.create("paged-collection-view");
+		SampleGraphs.populate(emf, 3, CHILDREN, 10);
+		inspector = new LoadStateInspector(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static List<Long> ids(Iterable<?> children) {
+		List<Long> ids = new ArrayList<>();
+		for (Object child : children) {
+			ids.add(child instanceof KeyMappingCollectionAssoc ? ((KeyMappingCollectionAssoc) child).getId()
+					: ((ReferenceMappingCollectionAssoc) child).getId());
+		}
+		return ids;
+	}
+
+	private static List<Long> childIds(long rootId, int from, int to) {
+		List<Long> ids = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			ids.add(SampleGraphs.childId(rootId, CHILDREN, i));
+		}
+		return ids;
+	}
+
+	@Test
+	public void PAGES_are_read_in_id_order_without_initializing_the_list() {
+		sqlBudget.expect(StatementBudget.named("find root 2, stream both collections by pages of 10")
+				.exactly(SELECT, "ROOT_ENTITY", 1).exactly(SELECT, "REF_COLLECTION_ASSOC", 3)
+				.exactly(SELECT, "KEY_COLLECTION_ASSOC", 3));
+		EntityManager em = emf.createEntityManager();
+		RootEntity root = em.find(RootEntity.class, 2L);
+
+		PagedCollectionView<ReferenceMappingCollectionAssoc> refView = new PagedCollectionView<>(em, root,
+				"refCollectionAssoc", ReferenceMappingCollectionAssoc.class, 10);
+		List<Integer> pageSizes = new ArrayList<>();
+		List<Long> ids = new ArrayList<>();
+		for (Iterator<List<ReferenceMappingCollectionAssoc>> pages = refView.pages(); pages.hasNext();) {
+			List<ReferenceMappingCollectionAssoc> page = pages.next();
+			pageSizes.add(page.size());
+			ids.addAll(ids(page));
+		}
+		assertTrue("Pages of 10, 10 and 5 expected: " + pageSizes, pageSizes.toString().equals("[10, 10, 5]"));
+		assertTrue(ids.equals(childIds(2, 0, CHILDREN)));
+
+		PagedCollectionView<KeyMappingCollectionAssoc> keyView = new PagedCollectionView<>(em, root,
+				"keyCollectionAssoc", KeyMappingCollectionAssoc.class, 10);
+		assertTrue(ids(keyView).equals(childIds(2, 0, CHILDREN)));
+
+		assertTrue("The mapped Lists should be left alone", !inspector.isLoaded(root, "refCollectionAssoc")
+				&& !inspector.isLoaded(root, "keyCollectionAssoc"));
+		em.close();
+	}
+
+	@Test
+	public void NEXT_PAGES_are_read_by_keyset() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity root = em.find(RootEntity.class, 3L);
+		PagedCollectionView<ReferenceMappingCollectionAssoc> view = new PagedCollectionView<>(em, root,
+				"refCollectionAssoc", ReferenceMappingCollectionAssoc.class, 10);
+
+		List<ReferenceMappingCollectionAssoc> first = view.firstPage();
+		List<ReferenceMappingCollectionAssoc> second = view.pageAfter(first.get(first.size() - 1).getId());
+		assertTrue(ids(second).equals(childIds(3, 10, 20)));
+		List<SqlStatement> statements = sqlBudget.getRecording().getStatements();
+		String sql = statements.get(statements.size() - 1).getSql();
+		assertTrue("The next page should start after the last id, not at an offset: " + sql,
+				sql.contains("PARENT_ID = ?") && sql.contains("ID > ?"));
+		em.close();
+	}
+
+	@Test
+	public void SLICES_are_windows_in_id_order() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity root = em.find(RootEntity.class, 1L);
+		PagedCollectionView<KeyMappingCollectionAssoc> view = new PagedCollectionView<>(em, root,
+				"keyCollectionAssoc", KeyMappingCollectionAssoc.class, 10);
+
+		assertTrue(ids(view.slice(12, 5)).equals(childIds(1, 12, 17)));
+		assertTrue(ids(view.slice(20, 10)).equals(childIds(1, 20, CHILDREN)));
+		assertTrue(view.slice(CHILDREN, 10).isEmpty());
+		assertTrue(!inspector.isLoaded(root, "keyCollectionAssoc"));
+		em.close();
+	}
+
+	@Test
+	public void DETACHING_views_detach_the_pages_left_behind() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity root = em.find(RootEntity.class, 1L);
+		PagedCollectionView<ReferenceMappingCollectionAssoc> view = new PagedCollectionView<>(em, root,
+				"refCollectionAssoc", ReferenceMappingCollectionAssoc.class, 10).detaching();
+
+		List<ReferenceMappingCollectionAssoc> seen = new ArrayList<>();
+		for (ReferenceMappingCollectionAssoc child : view) {
+			seen.add(child);
+		}
+		assertTrue(seen.size() == CHILDREN);
+		assertTrue("The first pages should have been detached", !em.contains(seen.get(0)) && !em.contains(seen.get(19)));
+		assertTrue("The last page is still in use", em.contains(seen.get(20)));
+		em.close();
+	}
+
+	@Test
+	public void OTHER_ATTRIBUTES_are_rejected() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity root = em.find(RootEntity.class, 1L);
+		for (String attribute : new String[] { "data1", "ownedAssoc", "owningAssoc" }) {
+			try {
+				new PagedCollectionView<>(em, root, attribute, Object.class, 10);
+				fail(attribute + " is not a one-to-many association");
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+		try {
+			new PagedCollectionView<>(em, root, "refCollectionAssoc", KeyMappingCollectionAssoc.class, 10);
+			fail("refCollectionAssoc does not hold KeyMappingCollectionAssoc");
+		} catch (IllegalArgumentException expected) {
+		}
+		em.close();
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.entities.OwnedAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.OwnedAssocLoadState;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntityLoadState;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntityPlan;
+import com.test.eclipselink.jpa.fetch_state.query.PreparedQueries;
+import com.test.eclipselink.jpa.fetch_state.query.PreparedQuery;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudgetRule;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * Queries registered with PreparedQueries are expected to behave like their createQuery equivalents, FetchGroup hints
+ * included, while being parsed once per factory and instantiated once per EntityManager.
+ *
+ */
+public class TestPreparedQueries {
+
+	private static final PreparedQuery<RootEntity> ROOT_DATA1_BY_ID = PreparedQuery
+			.of("TestPreparedQueries.rootData1ById", RootEntity.class, "SELECT o FROM RootEntity o WHERE o.id = :id")
+			.withPlan(RootEntityPlan.data1());
+
+	private static final PreparedQuery<OwnedAssoc> OWNED_ASSOCS_FROM = PreparedQuery.of(
+			"TestPreparedQueries.ownedAssocsFrom", OwnedAssoc.class,
+			"SELECT o FROM OwnedAssoc o WHERE o.id >= :id ORDER BY o.id");
+
+	private static EntityManagerFactory emf;
+	private static PreparedQueries queries;
+
+	@Rule
+	public final StatementBudgetRule sqlBudget = new StatementBudgetRule(() -> emf);
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.create("prepared-queries");
+		SampleGraphs.populate(emf, 3, 1, 10);
+		queries = new PreparedQueries(emf).register(ROOT_DATA1_BY_ID, OWNED_ASSOCS_FROM);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	@Test
+	public void INSTANCES_are_reused_per_EntityManager_with_rebound_parameters() {
+		sqlBudget.expect(StatementBudget.named("one SELECT per execution").exactly(SELECT, "ROOT_ENTITY", 3)
+				.exactly(SELECT, "OWNED_ASSOCIATION", 1).exactly(SELECT, 4));
+		long parses = queries.getParses();
+		long instances = queries.getInstances();
+		long reuses = queries.getReuses();
+
+		EntityManager em = emf.createEntityManager();
+		try {
+			PreparedQueries.Bound bound = queries.in(em);
+			TypedQuery<RootEntity> first = bound.get(ROOT_DATA1_BY_ID);
+			RootEntity root1 = first.setParameter("id", 1L).getSingleResult();
+			TypedQuery<RootEntity> second = bound.get(ROOT_DATA1_BY_ID);
+			RootEntity root2 = second.setParameter("id", 2L).getSingleResult();
+			assertSame(first, second);
+			assertEquals(Long.valueOf(1L), root1.getId());
+			assertEquals(Long.valueOf(2L), root2.getId());
+
+			assertTrue("The registered FetchGroup applies", RootEntityLoadState.isData1Loaded(root2));
+			assertFalse(RootEntityLoadState.isData2Loaded(root2));
+
+			List<OwnedAssoc> owned = bound.get(OWNED_ASSOCS_FROM).setParameter("id", 2L).getResultList();
+			assertEquals(2, owned.size());
+			assertFalse("The default FetchGroup applies", OwnedAssocLoadState.isData1Loaded(owned.get(0)));
+
+			EntityManager other = emf.createEntityManager();
+			try {
+				TypedQuery<RootEntity> otherInstance = queries.in(other).get(ROOT_DATA1_BY_ID);
+				assertNotSame(first, otherInstance);
+				assertEquals("Root:3L:Data1", otherInstance.setParameter("id", 3L).getSingleResult().getData1());
+			} finally {
+				other.close();
+			}
+		} finally {
+			em.close();
+		}
+
+		assertEquals("Nothing is parsed after registration", parses, queries.getParses());
+		assertEquals(instances + 3, queries.getInstances());
+		assertEquals(reuses + 1, queries.getReuses());
+	}
+
+	@Test
+	public void UNREGISTERED_and_CONFLICTING_queries_are_rejected() {
+		queries.register(ROOT_DATA1_BY_ID);
+		assertEquals(2, queries.getParses());
+
+		EntityManager em = emf.createEntityManager();
+		try {
+			queries.in(em).get(PreparedQuery.of("TestPreparedQueries.unregistered", RootEntity.class,
+					"SELECT o FROM RootEntity o"));
+			fail("The query is not registered");
+		} catch (IllegalArgumentException expected) {
+			assertTrue(expected.getMessage(), expected.getMessage().contains("not registered"));
+		} finally {
+			em.close();
+		}
+
+		try {
+			queries.register(PreparedQuery.of(ROOT_DATA1_BY_ID.getName(), RootEntity.class,
+					"SELECT o FROM RootEntity o WHERE o.data1 = :data1"));
+			fail("The name is taken");
+		} catch (IllegalArgumentException expected) {
+			assertTrue(expected.getMessage(), expected.getMessage().contains("already registered"));
+		}
+	}
+
+}
@@ -0,0 +1,215 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.DELETE;
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.INSERT;
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.UPDATE;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TransactionRequiredException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.collection.PrivateOwnedBulkDelete;
+import com.test.eclipselink.jpa.fetch_state.entities.KeyMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.ReferenceMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.sql.SqlStatement;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudgetRule;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * The children of RootEntities with 5 children in each private-owned collection are expected to be deleted with one
+ * DELETE per batch of owners, without being read, and to leave the persistence context in line with the database:
+ * managed children detached, collections empty and nothing left for the commit to delete, while children added to
+ * the emptied collections are still written by the commit.
+ *
+ */
+public class TestPrivateOwnedBulkDelete {
+
+	private static final int CHILDREN = 5;
+
+	private static EntityManagerFactory emf;
+	private static LoadStateInspector inspector;
+
+	@Rule
+	public final StatementBudgetRule sqlBudget = new StatementBudgetRule(() -> emf);
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.create("private-owned-bulk-delete");
+		SampleGraphs.populate(emf, 10, CHILDREN, 10);
+		inspector = new LoadStateInspector(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private static long count(String table, long rootId) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			return ((Number) em.createNativeQuery("SELECT COUNT(*) FROM " + table + " WHERE PARENT_ID = ?")
+					.setParameter(1, rootId).getSingleResult()).longValue();
+		} finally {
+			em.close();
+		}
+	}
+
+	@Test
+	public void CLEAR_takes_one_DELETE_per_batch_of_owners() {
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		List<RootEntity> roots = em.createQuery("SELECT o FROM RootEntity o WHERE o.id <= 3 ORDER BY o.id",
+				RootEntity.class).getResultList();
+		ReferenceMappingCollectionAssoc loaded = roots.get(0).getRefCollectionAssoc().get(0);
+		ReferenceMappingCollectionAssoc found = em.find(ReferenceMappingCollectionAssoc.class,
+				SampleGraphs.childId(2, CHILDREN, 1));
+		KeyMappingCollectionAssoc key = em.find(KeyMappingCollectionAssoc.class, SampleGraphs.childId(3, CHILDREN, 4));
+		ReferenceMappingCollectionAssoc other = em.find(ReferenceMappingCollectionAssoc.class,
+				SampleGraphs.childId(4, CHILDREN, 0));
+
+		PrivateOwnedBulkDelete bulkDelete = new PrivateOwnedBulkDelete(emf, 2);
+		int deleted = sqlBudget.within(StatementBudget.named("clear both collections of 3 roots by batches of 2")
+				.exactly(DELETE, "REF_COLLECTION_ASSOC", 2).exactly(DELETE, "KEY_COLLECTION_ASSOC", 2)
+				.exactly(SELECT, "REF_COLLECTION_ASSOC", 0).exactly(SELECT, "KEY_COLLECTION_ASSOC", 0)
+				.exactly(SELECT, "ROOT_ENTITY", 0), () -> bulkDelete.clear(em, roots, "refCollectionAssoc")
+						+ bulkDelete.clear(em, roots, "keyCollectionAssoc"));
+		assertTrue("30 children expected, not " + deleted, deleted == 6 * CHILDREN);
+		List<SqlStatement> statements = sqlBudget.getRecording().getStatements();
+		String sql = statements.get(statements.size() - 1).getSql();
+		assertTrue("The children should be deleted by owner: " + sql, sql.contains("PARENT_ID IN"));
+
+		assertTrue("Children of the owners should be detached", !em.contains(loaded) && !em.contains(found)
+				&& !em.contains(key));
+		assertTrue("Other children should stay managed", em.contains(other));
+		assertTrue(em.find(ReferenceMappingCollectionAssoc.class, SampleGraphs.childId(2, CHILDREN, 1)) == null);
+		for (RootEntity root : roots) {
+			assertTrue("The collections should be loaded and empty", inspector.isLoaded(root, "refCollectionAssoc")
+					&& inspector.isLoaded(root, "keyCollectionAssoc") && root.getRefCollectionAssoc().isEmpty()
+					&& root.getKeyCollectionAssoc().isEmpty());
+		}
+
+		sqlBudget.within(StatementBudget.named("commit").exactly(DELETE, 0).exactly(UPDATE, 0), () -> {
+			em.getTransaction().commit();
+			return null;
+		});
+		em.close();
+
+		for (long rootId = 1; rootId <= 4; rootId++) {
+			long expected = rootId <= 3 ? 0 : CHILDREN;
+			assertTrue(count("REF_COLLECTION_ASSOC", rootId) == expected);
+			assertTrue(count("KEY_COLLECTION_ASSOC", rootId) == expected);
+		}
+	}
+
+	@Test
+	public void REMOVE_deletes_children_then_owners() {
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		List<RootEntity> roots = Arrays.asList(em.find(RootEntity.class, 6L), em.find(RootEntity.class, 7L));
+		roots.get(1).getKeyCollectionAssoc().size();
+		for (RootEntity root : roots) {
+			em.remove(root.getOwningAssoc());
+		}
+
+		//after a DeleteAllQuery, EclipseLink checks in the database that every removed owner still exists
+		sqlBudget.within(StatementBudget.named("remove 2 roots").exactly(DELETE, "REF_COLLECTION_ASSOC", 1)
+				.exactly(DELETE, "KEY_COLLECTION_ASSOC", 1).exactly(DELETE, "ROOT_ENTITY", 1)
+				.exactly(DELETE, "OWNING_ASSOC", 1).exactly(SELECT, "ROOT_ENTITY", 2), () -> {
+					assertTrue(new PrivateOwnedBulkDelete(emf).remove(em, roots) == 4 * CHILDREN);
+					em.getTransaction().commit();
+					return null;
+				});
+		em.close();
+
+		EntityManager check = emf.createEntityManager();
+		assertTrue(check.find(RootEntity.class, 6L) == null && check.find(RootEntity.class, 7L) == null);
+		check.close();
+		assertTrue(count("REF_COLLECTION_ASSOC", 7) == 0 && count("KEY_COLLECTION_ASSOC", 7) == 0);
+		assertTrue(count("REF_COLLECTION_ASSOC", 8) == CHILDREN);
+	}
+
+	@Test
+	public void PENDING_CHILDREN_are_deleted_too() {
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		RootEntity root = em.find(RootEntity.class, 9L);
+		ReferenceMappingCollectionAssoc added = new ReferenceMappingCollectionAssoc(1000L, "added", "added");
+		root.addRefCollectionAssoc(added);
+		em.persist(added);
+
+		assertTrue(new PrivateOwnedBulkDelete(emf).clear(em, Arrays.asList(root), "refCollectionAssoc") == CHILDREN + 1);
+		assertTrue(!em.contains(added) && root.getRefCollectionAssoc().isEmpty());
+		em.getTransaction().commit();
+		em.close();
+		assertTrue(count("REF_COLLECTION_ASSOC", 9) == 0);
+	}
+
+	@Test
+	public void CHILDREN_ADDED_after_a_clear_are_inserted() {
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		RootEntity root = em.find(RootEntity.class, 5L);
+		root.getKeyCollectionAssoc().size();
+		PrivateOwnedBulkDelete bulkDelete = new PrivateOwnedBulkDelete(emf);
+		bulkDelete.clear(em, Arrays.asList(root), "keyCollectionAssoc");
+		bulkDelete.clear(em, Arrays.asList(root), "refCollectionAssoc");
+		root.addKeyCollectionAssoc(new KeyMappingCollectionAssoc(2000L, "added", "added"));
+		root.addRefCollectionAssoc(new ReferenceMappingCollectionAssoc(2001L, "added", "added"));
+
+		sqlBudget.within(StatementBudget.named("commit the added children").exactly(INSERT, "KEY_COLLECTION_ASSOC", 1)
+				.exactly(INSERT, "REF_COLLECTION_ASSOC", 1).exactly(UPDATE, "KEY_COLLECTION_ASSOC", 1)
+				.exactly(DELETE, 0), () -> {
+					em.getTransaction().commit();
+					return null;
+				});
+		em.close();
+		assertTrue(count("KEY_COLLECTION_ASSOC", 5) == 1 && count("REF_COLLECTION_ASSOC", 5) == 1);
+
+		EntityManager check = emf.createEntityManager();
+		RootEntity reloaded = check.find(RootEntity.class, 5L);
+		assertTrue(reloaded.getKeyCollectionAssoc().size() == 1 && reloaded.getRefCollectionAssoc().size() == 1);
+		assertTrue(reloaded.getKeyCollectionAssoc().get(0).getId() == 2000L
+				&& reloaded.getRefCollectionAssoc().get(0).getId() == 2001L);
+		check.close();
+	}
+
+	@Test
+	public void MISUSES_are_rejected() {
+		EntityManager em = emf.createEntityManager();
+		RootEntity root = em.find(RootEntity.class, 10L);
+		PrivateOwnedBulkDelete bulkDelete = new PrivateOwnedBulkDelete(emf);
+		try {
+			bulkDelete.clear(em, Arrays.asList(root), "refCollectionAssoc");
+			fail("A transaction is required");
+		} catch (TransactionRequiredException expected) {
+		}
+		em.getTransaction().begin();
+		for (String attribute : new String[] { "data1", "ownedAssoc" }) {
+			try {
+				bulkDelete.clear(em, Arrays.asList(root), attribute);
+				fail(attribute + " is not a private-owned one-to-many association");
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+		em.getTransaction().rollback();
+		em.close();
+		assertTrue(count("REF_COLLECTION_ASSOC", 10) == CHILDREN);
+	}
+
+}
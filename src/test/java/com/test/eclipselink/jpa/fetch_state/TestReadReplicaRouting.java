@@ -0,0 +1,175 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.customizers.ReadReplicaRouting;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntityPlan;
+import com.test.eclipselink.jpa.fetch_state.routing.ReadReplicaPolicy;
+import com.test.eclipselink.jpa.fetch_state.routing.ReplicationStub;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * With ReadReplicaRouting configured, read-only and FetchGroup restricted reads are expected to see the replica, as of
+ * its last sync by the ReplicationStub, and every other read the primary; once a transaction wrote, all its reads
+ * are expected to go to the primary, where it reads its own writes (read-only queries excepted, which EclipseLink
+ * runs outside the transaction).
+ *
+ */
+public class TestReadReplicaRouting {
+
+	private static final String PRIMARY_URL = "jdbc:hsqldb:mem:routing-primary";
+	private static final String REPLICA_URL = "jdbc:hsqldb:mem:routing-replica";
+
+	private static EntityManagerFactory emf;
+	private static ReplicationStub replication;
+	private static ReadReplicaPolicy policy;
+
+	@BeforeClass
+	public static void initializeEnv() {
+		Map<String, Object> properties = PersistenceUnits.quietProperties("routing-primary");
+		properties.put(PersistenceUnitProperties.JDBC_URL, PRIMARY_URL + ";hsqldb.tx=mvcc");
+		properties.put(PersistenceUnitProperties.CONNECTION_POOL + "replica." + PersistenceUnitProperties.CONNECTION_POOL_URL,
+				REPLICA_URL);
+		properties.put(ReadReplicaRouting.PROPERTY, "replica");
+		emf = PersistenceUnits.create(properties);
+		SampleGraphs.populate(emf, 2, 2, 10);
+		policy = ReadReplicaRouting.policy(JpaHelper.getServerSession(emf));
+		replication = new ReplicationStub(PRIMARY_URL, REPLICA_URL, "sa", "");
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		replication.close();
+		emf.close();
+	}
+
+	@Before
+	public void resetData() {
+		setData1(1L, "Root:1L:Data1");
+		replication.sync();
+	}
+
+	private static void setData1(long id, String data1) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			em.find(RootEntity.class, id).setData1(data1);
+			em.getTransaction().commit();
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+		}
+	}
+
+	private static TypedQuery<RootEntity> byId(EntityManager em, long id) {
+		return em.createQuery("SELECT o FROM RootEntity o WHERE o.id = :id", RootEntity.class).setParameter("id", id);
+	}
+
+	private static String partialData1(EntityManager em, long id) {
+		return RootEntityPlan.data1().applyTo(byId(em, id)).getSingleResult().getData1();
+	}
+
+	@Test
+	public void REPLICA_READS_see_the_last_sync() {
+		assertNotNull(policy);
+		setData1(1L, "changed");
+
+		long replicaReads = policy.getReplicaReads();
+		EntityManager em = emf.createEntityManager();
+		try {
+			assertEquals("Root:1L:Data1", partialData1(em, 1L));
+			assertEquals("Root:1L:Data1",
+					byId(em, 1L).setHint(QueryHints.READ_ONLY, true).getSingleResult().getData1());
+			assertEquals(replicaReads + 2, policy.getReplicaReads());
+		} finally {
+			em.close();
+		}
+
+		em = emf.createEntityManager();
+		try {
+			assertEquals("find and plain queries read the primary", "changed", em.find(RootEntity.class, 1L).getData1());
+			em.clear();
+			assertEquals("changed", byId(em, 1L).getSingleResult().getData1());
+			assertEquals(replicaReads + 2, policy.getReplicaReads());
+		} finally {
+			em.close();
+		}
+
+		replication.sync();
+		em = emf.createEntityManager();
+		try {
+			assertEquals("changed", partialData1(em, 1L));
+		} finally {
+			em.close();
+		}
+	}
+
+	@Test
+	public void WRITING_TRANSACTION_is_pinned_to_the_primary() {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			RootEntity root = em.find(RootEntity.class, 2L);
+			setData1(1L, "committed elsewhere");
+			assertEquals("Until it writes, the transaction reads the replica", "Root:1L:Data1", partialData1(em, 1L));
+
+			long pinnedReads = policy.getPinnedReads();
+			root.setData1("written");
+			em.flush();
+			em.clear();
+			assertEquals("written", partialData1(em, 2L));
+			assertEquals("committed elsewhere", partialData1(em, 1L));
+			assertEquals("Read-only queries always use a read connection of the primary, outside the transaction",
+					"Root:2L:Data1", byId(em, 2L).setHint(QueryHints.READ_ONLY, true).getSingleResult().getData1());
+			assertEquals(pinnedReads + 3, policy.getPinnedReads());
+			em.getTransaction().rollback();
+
+			em.clear();
+			assertEquals("After the transaction, reads go back to the replica", "Root:1L:Data1", partialData1(em, 1L));
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+		}
+	}
+
+	@Test
+	public void UNKNOWN_POOLS_are_rejected() {
+		Map<String, Object> properties = PersistenceUnits.quietProperties("routing-unknown-pool");
+		properties.put(ReadReplicaRouting.PROPERTY, "replica");
+		EntityManagerFactory misconfigured = PersistenceUnits.create(properties);
+		try {
+			misconfigured.createEntityManager();
+			fail("No replica pool was configured");
+		} catch (PersistenceException expected) {
+			assertTrue(expected.toString(), expected.toString().contains("replica"));
+		} finally {
+			misconfigured.close();
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.repository.RootEntityAsyncRepository;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * RootEntityAsyncRepository is expected to return the same entities (and load states) as the blocking queries, to
+ * stay within its bounds (threads and queue), and to give up on calls that are cancelled or take too long.
+ *
+ */
+public class TestRootEntityAsyncRepository {
+
+	private static EntityManagerFactory emf;
+	private static LoadStateInspector inspector;
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.create("async-repository");
+		SampleGraphs.populate(emf, 20, 2, 10);
+		inspector = new LoadStateInspector(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	@Test
+	public void FIND_calls_complete_with_detached_entities() throws Exception {
+		try (RootEntityAsyncRepository repository = RootEntityAsyncRepository.forConnectionPool(emf)) {
+			RootEntity byId = repository.findById(1L).get(10, TimeUnit.SECONDS);
+			assertTrue("Root 1 should be found", byId != null && byId.getId() == 1L);
+			assertTrue(repository.findById(-1L).get(10, TimeUnit.SECONDS) == null);
+
+			RootEntity partial = repository.findWithFetchGroup(2L, "data1").get(10, TimeUnit.SECONDS);
+			assertTrue(inspector.isLoaded(partial, "data1"));
+			assertTrue("data2 was left out of the FetchGroup", !inspector.isLoaded(partial, "data2"));
+
+			List<RootEntity> page = repository.findPage(5, 5).get(10, TimeUnit.SECONDS);
+			assertTrue("Page should hold 5 roots", page.size() == 5);
+			for (int i = 0; i < page.size(); i++) {
+				assertTrue("Page should be ordered by id", page.get(i).getId() == 6L + i);
+			}
+		}
+	}
+
+	@Test
+	public void SAVE_ALL_commits_every_batch() throws Exception {
+		List<RootEntity> roots = new ArrayList<>();
+		for (long id = 1001; id <= 1025; id++) {
+			RootEntity root = new RootEntity();
+			root.setId(id);
+			root.setData1("Saved:" + id);
+			roots.add(root);
+		}
+		try (RootEntityAsyncRepository repository = new RootEntityAsyncRepository(emf, 2, 10, 10, 0)) {
+			assertTrue(repository.saveAll(roots).get(10, TimeUnit.SECONDS).size() == 25);
+		}
+		EntityManager em = emf.createEntityManager();
+		Long saved = em.createQuery("SELECT COUNT(o) FROM RootEntity o WHERE o.id > 1000", Long.class)
+				.getSingleResult();
+		assertTrue("All 25 roots should have been saved", saved == 25L);
+		em.close();
+	}
+
+	@Test
+	public void THREADS_never_exceed_the_connection_pool() throws Exception {
+		int poolSize = RootEntityAsyncRepository.connectionPoolSize(emf);
+		try (RootEntityAsyncRepository repository = new RootEntityAsyncRepository(emf, poolSize * 4, 1000, 10, 0)) {
+			//every find waits for the table lock, so the calls pile up while they are in flight
+			EntityManager locking = lockRootEntities();
+			List<CompletableFuture<RootEntity>> results = new ArrayList<>();
+			try {
+				for (int i = 0; i < poolSize * 20; i++) {
+					results.add(repository.findById(1L + i % 20));
+				}
+				long deadline = System.currentTimeMillis() + 10000;
+				while (repository.getMetrics().getPeakActiveTasks() < poolSize
+						&& System.currentTimeMillis() < deadline) {
+					Thread.sleep(10);
+				}
+				RootEntityAsyncRepository.Metrics inFlight = repository.getMetrics();
+				assertTrue("As many calls as connections should run: " + inFlight,
+						inFlight.getActiveTasks() == poolSize && inFlight.getPeakActiveTasks() == poolSize);
+				assertTrue("The other calls should wait in the queue: " + inFlight,
+						inFlight.getQueueDepth() == poolSize * 19);
+			} finally {
+				locking.getTransaction().rollback();
+				locking.close();
+			}
+			CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+			RootEntityAsyncRepository.Metrics metrics = repository.getMetrics();
+			assertTrue("Every call should have been submitted: " + metrics, metrics.getSubmitted() == poolSize * 20);
+			assertTrue("No more calls than connections ever ran at once: " + metrics,
+					metrics.getPeakActiveTasks() == poolSize);
+		}
+	}
+
+	@Test
+	public void FULL_QUEUE_rejects_calls() throws Exception {
+		try (RootEntityAsyncRepository repository = new RootEntityAsyncRepository(emf, 1, 1, 10, 0)) {
+			EntityManager locking = blockOneThread(repository);
+			CompletableFuture<RootEntity> queued = repository.findById(1L);
+			CompletableFuture<RootEntity> rejected = repository.findById(1L);
+			assertTrue("The third call should not fit", rejected.isCompletedExceptionally());
+			try {
+				rejected.get();
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof RejectedExecutionException);
+			}
+			assertTrue(repository.getMetrics().getQueueDepth() == 1);
+			locking.getTransaction().rollback();
+			locking.close();
+			assertTrue(queued.get(10, TimeUnit.SECONDS) != null);
+			assertTrue(repository.getMetrics().getRejected() == 1);
+		}
+	}
+
+	@Test
+	public void CANCELLED_and_TIMED_OUT_calls_are_dropped() throws Exception {
+		try (RootEntityAsyncRepository repository = new RootEntityAsyncRepository(emf, 1, 10, 10, 200)) {
+			EntityManager locking = blockOneThread(repository);
+			CompletableFuture<RootEntity> cancelled = repository.findById(1L);
+			CompletableFuture<RootEntity> timedOut = repository.findById(2L);
+			cancelled.cancel(true);
+			try {
+				timedOut.get(10, TimeUnit.SECONDS);
+				fail("The call waits behind the blocked thread for longer than the timeout");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof TimeoutException);
+			}
+			assertTrue("Neither call should still be queued", repository.getMetrics().getQueueDepth() == 0);
+			locking.getTransaction().rollback();
+			locking.close();
+			assertTrue(repository.getMetrics().getCancelled() == 1);
+			assertTrue(repository.getMetrics().getTimedOut() >= 1);
+		}
+	}
+
+	private static EntityManager lockRootEntities() {
+		EntityManager locking = emf.createEntityManager();
+		locking.getTransaction().begin();
+		locking.createQuery("UPDATE RootEntity o SET o.data2 = o.data2 WHERE o.id = 3").executeUpdate();
+		return locking;
+	}
+
+	/**
+	 * Keeps the single repository thread busy until the returned EntityManager rolls back: HSQLDB locks a whole table
+	 * for the writing transaction, so the find waits for the lock.
+	 */
+	private static EntityManager blockOneThread(RootEntityAsyncRepository repository) throws InterruptedException {
+		EntityManager locking = lockRootEntities();
+		repository.findById(3L);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (repository.getMetrics().getActiveTasks() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(repository.getMetrics().getActiveTasks() == 1);
+		return locking;
+	}
+
+}
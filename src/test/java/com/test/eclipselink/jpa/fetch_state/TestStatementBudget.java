@@ -0,0 +1,109 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.INSERT;
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.SELECT;
+import static com.test.eclipselink.jpa.fetch_state.sql.StatementKind.UPDATE;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.sql.SqlStatement;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture.Recording;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ *
+ * StatementCapture is expected to see one statement per round trip, batched writes included, on a factory that logs
+ * nothing but warnings; StatementBudget is expected to fail with the statements that went over budget marked.
+ *
+ */
+public class TestStatementBudget {
+
+	private static EntityManagerFactory emf;
+	private static StatementCapture capture;
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = PersistenceUnits.createQuiet("statement-budget");
+		SampleGraphs.populate(emf, 1, 2, 10);
+		capture = StatementCapture.install(emf);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	@Test
+	public void BATCHED_WRITES_count_as_one_statement_per_batch() {
+		EntityManager em = emf.createEntityManager();
+		try (Recording recording = capture.start()) {
+			em.getTransaction().begin();
+			SampleGraphs.persist(em, SampleGraphs.newGraph(2L, 3));
+			em.getTransaction().commit();
+
+			StatementBudget.named("persist a graph with 3 children per collection")
+					.exactly(INSERT, "ROOT_ENTITY", 1).exactly(INSERT, "KEY_COLLECTION_ASSOC", 1)
+					.exactly(INSERT, "REF_COLLECTION_ASSOC", 1).atMost(INSERT, 5)
+					.exactly(UPDATE, "KEY_COLLECTION_ASSOC", 1).verify(recording);
+			for (SqlStatement statement : recording.getStatements()) {
+				if (statement.getTable().equals("KEY_COLLECTION_ASSOC")) {
+					assertTrue("Every child should be in the batch: " + statement, statement.getRows() == 3);
+				}
+			}
+		}
+		em.close();
+	}
+
+	@Test
+	public void EXCEEDED_BUDGET_lists_the_statements_over_budget() {
+		EntityManager em = emf.createEntityManager();
+		try (Recording recording = capture.start()) {
+			RootEntity root = em.find(RootEntity.class, 1L);
+			root.getOwnedAssoc().getData2();
+			try {
+				StatementBudget.named("find RootEntity").exactly(SELECT, 1).verify(recording);
+				fail("The lazy load of ownedAssoc is over budget");
+			} catch (AssertionError e) {
+				String report = e.getMessage();
+				assertTrue(report, report.contains("find RootEntity"));
+				assertTrue(report, report.matches("(?s).*SELECT\\s+exactly 1\\s+2\\s+<<.*"));
+				assertTrue(report, report.matches("(?s).*\\n  \\+   2 SELECT OWNED_ASSOCIATION.*"));
+				assertTrue(report, !report.contains("+   1"));
+			}
+		}
+		em.close();
+	}
+
+	@Test
+	public void UNMENTIONED_KINDS_and_TABLES_are_not_allowed() {
+		EntityManager em = emf.createEntityManager();
+		try (Recording recording = capture.start()) {
+			em.find(RootEntity.class, 1L).getKeyCollectionAssoc().size();
+			StatementBudget.named("find RootEntity, walk keyCollectionAssoc").exactly(SELECT, "ROOT_ENTITY", 1)
+					.exactly(SELECT, "KEY_COLLECTION_ASSOC", 1).verify(recording);
+			try {
+				StatementBudget.named("find RootEntity").exactly(SELECT, "ROOT_ENTITY", 1).verify(recording);
+				fail("SELECTs on other tables should not fit a budget that only mentions ROOT_ENTITY");
+			} catch (AssertionError expected) {
+			}
+			try {
+				StatementBudget.named("no SELECTs").exactly(INSERT, 0).verify(recording);
+				fail("SELECT is not mentioned, so none is allowed");
+			} catch (AssertionError expected) {
+			}
+		}
+		em.close();
+	}
+
+}
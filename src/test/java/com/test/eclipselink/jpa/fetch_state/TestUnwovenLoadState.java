@@ -0,0 +1,131 @@
+package com.test.eclipselink.jpa.fetch_state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceUnitUtil;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.loadstate.UnwovenLoadState;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudget;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementBudgetRule;
+import com.test.eclipselink.jpa.fetch_state.unwoven.UnwovenChild;
+import com.test.eclipselink.jpa.fetch_state.unwoven.UnwovenRoot;
+
+/**
+ *
+ * On entities that were never woven (the "unwoven" persistence unit of the test sources), UnwovenLoadState and
+ * LoadStateInspector are expected to agree with EclipseLink's own PersistenceUnitUtil.isLoaded, before and after
+ * loading, without loading anything themselves.
+ *
+ */
+public class TestUnwovenLoadState {
+
+	private static final String[] ATTRIBUTES = { "id", "data1", "favourite", "children", "childSet" };
+
+	private static EntityManagerFactory emf;
+	private static LoadStateInspector inspector;
+
+	@Rule
+	public final StatementBudgetRule sqlBudget = new StatementBudgetRule(() -> emf);
+
+	@BeforeClass
+	public static void initializeEnv() {
+		emf = Persistence.createEntityManagerFactory("unwoven");
+		inspector = new LoadStateInspector(emf);
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		UnwovenRoot root = new UnwovenRoot(1L, "Root:1L:Data1");
+		em.persist(root);
+		UnwovenChild favourite = new UnwovenChild(1L, "Child:1L:Data1", root);
+		em.persist(favourite);
+		em.persist(new UnwovenChild(2L, "Child:2L:Data1", root));
+		root.setFavourite(favourite);
+		em.getTransaction().commit();
+		em.close();
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		emf.close();
+	}
+
+	private void assertLoadStates(UnwovenRoot root, boolean children) {
+		UnwovenLoadState state = UnwovenLoadState.of(UnwovenRoot.class);
+		PersistenceUnitUtil util = emf.getPersistenceUnitUtil();
+		sqlBudget.within(StatementBudget.named("load state checks"), () -> {
+			for (String attribute : ATTRIBUTES) {
+				assertEquals(attribute, util.isLoaded(root, attribute), state.isLoaded(root, attribute));
+				assertEquals(attribute, util.isLoaded(root, attribute), inspector.isLoaded(root, attribute));
+			}
+			assertTrue("A LAZY to-one is eager without weaving", state.isLoaded(root, "favourite"));
+			assertEquals(children, state.isLoaded(root, "children"));
+			assertFalse(state.isLoaded(root, "childSet"));
+			return null;
+		});
+	}
+
+	@Test
+	public void LAZY_ATTRIBUTES_are_read_from_their_fields() {
+		assertFalse(UnwovenLoadState.isWoven(UnwovenRoot.class));
+		UnwovenLoadState state = UnwovenLoadState.of(UnwovenRoot.class);
+		assertEquals(Arrays.asList(ATTRIBUTES), state.getAttributeNames());
+		assertTrue(state.isReadThroughGetter("children"));
+		assertFalse("The getter wraps the set", state.isReadThroughGetter("childSet"));
+		assertFalse("Never read", state.isReadThroughGetter("favourite"));
+
+		EntityManager em = emf.createEntityManager();
+		try {
+			UnwovenRoot root = em.find(UnwovenRoot.class, 1L);
+			assertLoadStates(root, false);
+
+			assertEquals(2, root.getChildren().size());
+			assertLoadStates(root, true);
+
+			em.close();
+			assertLoadStates(root, true);
+		} finally {
+			if (em.isOpen()) {
+				em.close();
+			}
+		}
+	}
+
+	@Test
+	public void WOVEN_CLASSES_and_UNKNOWN_ATTRIBUTES_are_rejected() {
+		assertTrue(UnwovenLoadState.isWoven(RootEntity.class));
+		try {
+			UnwovenLoadState.of(RootEntity.class);
+			fail("RootEntity is woven");
+		} catch (IllegalArgumentException expected) {
+			assertTrue(expected.getMessage(), expected.getMessage().contains("woven"));
+		}
+		try {
+			UnwovenLoadState.of(UnwovenRoot.class).isLoaded(new UnwovenRoot(), "data2");
+			fail("UnwovenRoot has no data2");
+		} catch (IllegalArgumentException expected) {
+			assertTrue(expected.getMessage(), expected.getMessage().contains("data2"));
+		}
+		try {
+			UnwovenLoadState.of(UnwovenRoot.class).isLoaded(new UnwovenChild(), "id");
+			fail("Not an UnwovenRoot");
+		} catch (IllegalArgumentException expected) {
+			assertTrue(expected.getMessage(), expected.getMessage().contains("UnwovenRoot"));
+		}
+	}
+
+}
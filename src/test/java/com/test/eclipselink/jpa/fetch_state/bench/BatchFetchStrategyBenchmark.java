@@ -0,0 +1,258 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.config.QueryHints;
+
+import com.test.eclipselink.jpa.fetch_state.customizers.AssociationFetchStrategies;
+import com.test.eclipselink.jpa.fetch_state.customizers.AssociationFetchStrategies.Strategy;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture.Recording;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementKind;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * Compares the fetch strategies of AssociationFetchStrategies on each of the four association mapping styles of
+ * RootEntity:
+ * 		-ownedAssoc: owning one-to-one (foreign key in ROOT_ENTITY)
+ * 		-owningAssoc: mappedBy one-to-one (foreign key in OWNING_ASSOC)
+ * 		-keyCollectionAssoc: unidirectional one-to-many over a join column
+ * 		-refCollectionAssoc: mappedBy one-to-many
+ *
+ * For every association and strategy (LAZY, JOIN_FETCH, BATCH_JOIN, BATCH_EXISTS, and BATCH_IN with each of the
+ * given batch sizes, passed as the eclipselink.batch.size hint), a factory configured with only that strategy reads
+ * all roots with one JPQL query in a new EntityManager and accesses the association of every root ("walk"). It also
+ * reads the roots without touching the association ("roots only"), which is what the strategy costs the queries that
+ * do not need the association once it is the mapping default. Printed per run:
+ * 		-SELECTs and the rows and column values they returned (counted by RowCountingDataSource), for the walk, and
+ * 			the column values of the roots only read
+ * 		-median times of the walk and of the roots only reads over the measured rounds, which follow as many warmup
+ * 			rounds (the times include the counting of RowCountingDataSource, a few percent at most)
+ *
+ * The recommended strategy of an association is the one with the fastest walk among those whose roots only read
+ * transfers at most 25% more column values than with LAZY, so that a default which pays off when the association is
+ * used does not tax every other query. Values rather than times decide which strategies qualify: the roots only reads
+ * take a few milliseconds, well within the noise, and only join fetching changes them. The recommendation is printed
+ * as the properties to set (see AssociationFetchStrategies).
+ *
+ * Arguments: [roots, default 1000] [children per collection, default 5] [rounds, default 10] [IN batch sizes...,
+ * default 50 250 1000]
+ *
+ */
+public class BatchFetchStrategyBenchmark {
+
+	private static final String DATABASE = "batch-fetch-strategy";
+	private static final double ROOTS_ONLY_TOLERANCE = 1.25;
+
+	private enum Association {
+
+		OWNED_ONE_TO_ONE("ownedAssoc", root -> root.getOwnedAssoc().getData2()),
+
+		MAPPED_BY_ONE_TO_ONE("owningAssoc", root -> root.getOwningAssoc().getData2()),
+
+		JOIN_COLUMN_ONE_TO_MANY("keyCollectionAssoc", root -> root.getKeyCollectionAssoc().size()),
+
+		MAPPED_BY_ONE_TO_MANY("refCollectionAssoc", root -> root.getRefCollectionAssoc().size());
+
+		private final String attribute;
+		private final Consumer<RootEntity> walk;
+
+		Association(String attribute, Consumer<RootEntity> walk) {
+			this.attribute = attribute;
+			this.walk = walk;
+		}
+	}
+
+	private static final class Variant {
+
+		private final Strategy strategy;
+		private final int batchSize;
+
+		Variant(Strategy strategy, int batchSize) {
+			this.strategy = strategy;
+			this.batchSize = batchSize;
+		}
+
+		@Override
+		public String toString() {
+			return batchSize > 0 ? strategy + " " + batchSize : strategy.toString();
+		}
+	}
+
+	private static final class Result {
+
+		private final Variant variant;
+		private final int selects;
+		private final long rows;
+		private final long values;
+		private final long walkNanos;
+		private final long rootsOnlyValues;
+		private final long rootsOnlyNanos;
+
+		Result(Variant variant, int selects, long rows, long values, long walkNanos, long rootsOnlyValues,
+				long rootsOnlyNanos) {
+			this.variant = variant;
+			this.selects = selects;
+			this.rows = rows;
+			this.values = values;
+			this.walkNanos = walkNanos;
+			this.rootsOnlyValues = rootsOnlyValues;
+			this.rootsOnlyNanos = rootsOnlyNanos;
+		}
+	}
+
+	public static void main(String[] args) {
+		int roots = BenchmarkSupport.intArg(args, 0, 1000);
+		int children = BenchmarkSupport.intArg(args, 1, 5);
+		int rounds = BenchmarkSupport.intArg(args, 2, 10);
+		List<Integer> batchSizes = new ArrayList<>();
+		for (int i = 3; i < args.length; i++) {
+			batchSizes.add(Integer.valueOf(args[i]));
+		}
+		if (batchSizes.isEmpty()) {
+			batchSizes.add(50);
+			batchSizes.add(250);
+			batchSizes.add(1000);
+		}
+
+		RowCountingDataSource dataSource = new RowCountingDataSource("jdbc:hsqldb:mem:" + DATABASE, "sa", "");
+		EntityManagerFactory populator = PersistenceUnits.create(properties(dataSource, "populate", true));
+		try {
+			SampleGraphs.populate(populator, roots, children, 500);
+			System.out.printf("%d roots with %d children per collection, %d rounds (medians)%n", roots, children,
+					rounds);
+
+			List<String> recommendations = new ArrayList<>();
+			for (Association association : Association.values()) {
+				System.out.printf("%n%s (%s)%n", association, association.attribute);
+				System.out.printf("%-14s | %8s %8s %9s %9s | %18s %15s%n", "strategy", "SELECTs", "rows", "values",
+						"walk ms", "roots only values", "roots only ms");
+				List<Result> results = new ArrayList<>();
+				for (Strategy strategy : Strategy.values()) {
+					Map<String, Object> properties = properties(dataSource, association + "-" + strategy, false);
+					properties.put(AssociationFetchStrategies.property(RootEntity.class, association.attribute),
+							strategy);
+					EntityManagerFactory emf = PersistenceUnits.create(properties);
+					try {
+						emf.createEntityManager().close();
+						StatementCapture capture = StatementCapture.install(emf);
+						if (strategy == Strategy.BATCH_IN) {
+							for (int batchSize : batchSizes) {
+								results.add(run(emf, capture, dataSource, association, new Variant(strategy, batchSize),
+										rounds));
+							}
+						} else {
+							results.add(run(emf, capture, dataSource, association, new Variant(strategy, 0), rounds));
+						}
+					} finally {
+						emf.close();
+					}
+				}
+				recommendations.add(recommend(association, results));
+			}
+
+			System.out.printf("%nRecommended defaults (fastest walk among the strategies whose roots only reads "
+					+ "transfer at most %.0f%% more values than LAZY):%n", (ROOTS_ONLY_TOLERANCE - 1) * 100);
+			for (String recommendation : recommendations) {
+				System.out.println(recommendation);
+			}
+		} finally {
+			populator.close();
+		}
+	}
+
+	/**
+	 * Every factory has a session of its own on the one database; only the first creates the tables.
+	 */
+	private static Map<String, Object> properties(RowCountingDataSource dataSource, String name, boolean ddl) {
+		Map<String, Object> properties = PersistenceUnits.quietProperties(DATABASE);
+		properties.put(PersistenceUnitProperties.SESSION_NAME, PersistenceUnits.PERSISTENCE_UNIT_NAME + "-" + DATABASE
+				+ "-" + name);
+		properties.put(PersistenceUnitProperties.NON_JTA_DATASOURCE, dataSource);
+		if (!ddl) {
+			properties.put(PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.NONE);
+		}
+		return properties;
+	}
+
+	private static Result run(EntityManagerFactory emf, StatementCapture capture, RowCountingDataSource dataSource,
+			Association association, Variant variant, int rounds) {
+		Recording recording = capture.start();
+		dataSource.reset();
+		read(emf, association, variant, true);
+		recording.close();
+		int selects = recording.count(StatementKind.SELECT);
+		long rows = dataSource.getRows();
+		long values = dataSource.getValues();
+		dataSource.reset();
+		read(emf, association, variant, false);
+		long rootsOnlyValues = dataSource.getValues();
+
+		long[] walk = new long[rounds];
+		long[] rootsOnly = new long[rounds];
+		for (int round = 0; round < rounds; round++) {
+			read(emf, association, variant, true);
+			read(emf, association, variant, false);
+		}
+		for (int round = 0; round < rounds; round++) {
+			walk[round] = read(emf, association, variant, true);
+			rootsOnly[round] = read(emf, association, variant, false);
+		}
+		Result result = new Result(variant, selects, rows, values, BenchmarkSupport.median(walk), rootsOnlyValues,
+				BenchmarkSupport.median(rootsOnly));
+		System.out.printf("%-14s | %8d %8d %9d %9.2f | %18d %15.2f%n", variant, selects, rows, values,
+				result.walkNanos / 1e6, rootsOnlyValues, result.rootsOnlyNanos / 1e6);
+		return result;
+	}
+
+	private static long read(EntityManagerFactory emf, Association association, Variant variant, boolean walk) {
+		long start = System.nanoTime();
+		EntityManager em = emf.createEntityManager();
+		try {
+			TypedQuery<RootEntity> query = em.createQuery("SELECT o FROM RootEntity o", RootEntity.class);
+			if (variant.batchSize > 0) {
+				query.setHint(QueryHints.BATCH_TYPE, "IN").setHint(QueryHints.BATCH_SIZE, variant.batchSize);
+			}
+			List<RootEntity> roots = query.getResultList();
+			if (walk) {
+				for (RootEntity root : roots) {
+					association.walk.accept(root);
+				}
+			}
+		} finally {
+			em.close();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static String recommend(Association association, List<Result> results) {
+		long lazyRootsOnly = Long.MAX_VALUE;
+		for (Result result : results) {
+			if (result.variant.strategy == Strategy.LAZY) {
+				lazyRootsOnly = result.rootsOnlyValues;
+			}
+		}
+		Result best = null;
+		for (Result result : results) {
+			if (result.rootsOnlyValues <= lazyRootsOnly * ROOTS_ONLY_TOLERANCE
+					&& (best == null || result.walkNanos < best.walkNanos)) {
+				best = result;
+			}
+		}
+		String property = AssociationFetchStrategies.property(RootEntity.class, association.attribute) + "="
+				+ best.variant.strategy;
+		return best.variant.batchSize > 0 ? String.format("%-70s (queries: %s=IN, %s=%d)", property,
+				QueryHints.BATCH_TYPE, QueryHints.BATCH_SIZE, best.variant.batchSize) : property;
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Small helpers shared by the benchmark harnesses in this package.
+ *
+ * The harnesses are plain main classes rather than tests; they are compiled with the test sources and can be
+ * run with, for example:
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ * 		-Dexec.mainClass=com.test.eclipselink.jpa.fetch_state.bench.RetainedHeapBenchmark
+ *
+ */
+final class BenchmarkSupport {
+
+	private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private BenchmarkSupport() {
+	}
+
+	/**
+	 * Used heap after repeatedly requesting a full collection until the figure stops shrinking; good enough to
+	 * compare retained sizes of a few megabytes, not to measure single objects.
+	 */
+	static long usedHeapAfterGc() {
+		long previous = Long.MAX_VALUE;
+		long used = MEMORY.getHeapMemoryUsage().getUsed();
+		for (int i = 0; i < 10 && used < previous; i++) {
+			previous = used;
+			System.gc();
+			sleep(50);
+			used = MEMORY.getHeapMemoryUsage().getUsed();
+		}
+		return Math.min(used, previous);
+	}
+
+	/**
+	 * Bytes allocated so far by the current thread, or -1 when the VM does not support allocation accounting.
+	 */
+	static long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	static long median(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	/**
+	 * Nearest-rank percentile, 0 < percentile <= 100.
+	 */
+	static long percentile(long[] values, double percentile) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+	}
+
+	static int intArg(String[] args, int index, int defaultValue) {
+		return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+	}
+
+	static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import com.test.eclipselink.jpa.fetch_state.context.BoundedPersistenceContext;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * Soak run of a batch worker that keeps one EntityManager (a BoundedPersistenceContext) open for hours.
+ *
+ * Every unit of work is one transaction that reads the next 5 RootEntities, loads their keyCollectionAssoc and
+ * ownedAssoc, modifies one of them and commits; the worker wraps around to the first root at the end. At every
+ * report the used heap after full collections is printed next to the gauges of the context, so a bounded run should
+ * show flat figures after its first trims, and an unbounded one (max entities 0) figures that grow until the whole
+ * dataset is managed.
+ *
+ * Arguments: [seconds, default 3600] [max entities, default 2000; 0 for unbounded] [roots, default 20000]
+ * [seconds between reports, default 60]
+ *
+ */
+public class BoundedPersistenceContextSoakBenchmark {
+
+	private static final int ROOTS_PER_UNIT = 5;
+
+	public static void main(String[] args) {
+		int seconds = BenchmarkSupport.intArg(args, 0, 3600);
+		int maxEntities = BenchmarkSupport.intArg(args, 1, 2000);
+		int roots = BenchmarkSupport.intArg(args, 2, 20000);
+		int reportSeconds = BenchmarkSupport.intArg(args, 3, 60);
+
+		EntityManagerFactory emf = PersistenceUnits.createQuiet("bounded-persistence-context-soak");
+		try {
+			SampleGraphs.populate(emf, roots, 2, 500);
+			System.out.printf("%d roots, max entities %s, %d s%n%n", roots,
+					maxEntities == 0 ? "unbounded" : String.valueOf(maxEntities), seconds);
+			System.out.printf("%8s | %10s | %8s | %12s | %12s | %6s | %10s%n", "seconds", "units", "managed",
+					"estimated", "used heap", "trims", "detached");
+
+			long start = System.nanoTime();
+			long end = start + TimeUnit.SECONDS.toNanos(seconds);
+			long nextReport = start;
+			long units = 0;
+			try (BoundedPersistenceContext context = new BoundedPersistenceContext(emf, maxEntities, 0)) {
+				EntityManager em = context.getEntityManager();
+				for (long now = start; now < end; now = System.nanoTime()) {
+					if (now >= nextReport) {
+						report(context, units, now - start);
+						nextReport = now + TimeUnit.SECONDS.toNanos(reportSeconds);
+					}
+					runUnit(em, 1 + (units * ROOTS_PER_UNIT) % roots, units);
+					units++;
+				}
+				report(context, units, System.nanoTime() - start);
+			}
+		} finally {
+			emf.close();
+		}
+	}
+
+	private static void runUnit(EntityManager em, long firstId, long unit) {
+		em.getTransaction().begin();
+		try {
+			List<RootEntity> roots = em
+					.createQuery("SELECT o FROM RootEntity o WHERE o.id >= :first AND o.id < :last", RootEntity.class)
+					.setParameter("first", firstId).setParameter("last", firstId + ROOTS_PER_UNIT).getResultList();
+			for (RootEntity root : roots) {
+				root.getKeyCollectionAssoc().size();
+				root.getOwnedAssoc().getData2();
+			}
+			if (!roots.isEmpty()) {
+				roots.get(0).setData2("Unit:" + unit);
+			}
+			em.getTransaction().commit();
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+		}
+	}
+
+	private static void report(BoundedPersistenceContext context, long units, long elapsedNanos) {
+		BoundedPersistenceContext.Gauges gauges = context.getGauges();
+		System.out.printf("%8d | %10d | %8d | %,12d | %,12d | %6d | %10d%n", TimeUnit.NANOSECONDS.toSeconds(elapsedNanos),
+				units, gauges.getManagedEntities(), gauges.getEstimatedBytes(), BenchmarkSupport.usedHeapAfterGc(),
+				gauges.getTrims(), gauges.getDetachedEntities());
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.jpa.JpaHelper;
+
+import com.test.eclipselink.jpa.fetch_state.coordination.ChannelTransportManager;
+import com.test.eclipselink.jpa.fetch_state.customizers.CacheCoordination;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * Cost and effect of cache coordination (see CacheCoordination) between EntityManagerFactories on one database, all
+ * with shared caches.
+ *
+ * Each run starts the nodes, lets all of them cache every RootEntity, then commits one update of a RootEntity after
+ * the other on the first node, cycling through the roots. Once the other nodes received every command (or right
+ * away, without coordination), each of them reads all roots again and counts the stale ones. Runs without
+ * coordination, then with the given batch delay, then without batching (a delay of 0), and print:
+ * 		-commit throughput on the first node, and how long the other nodes took after the last commit to catch up
+ * 		-batches sent, and commands per batch
+ * 		-lag from a commit to its invalidation on the other nodes (mean, p99 and max over all of them)
+ * 		-stale reads on the other nodes after the run
+ *
+ * Arguments: [nodes, default 3] [commits, default 5000] [batch delay ms, default 5] [roots, default 1000]
+ *
+ */
+public class CacheCoordinationBenchmark {
+
+	private static final String CHANNEL = "cache-coordination-benchmark";
+
+	public static void main(String[] args) throws InterruptedException {
+		int nodes = BenchmarkSupport.intArg(args, 0, 3);
+		int commits = BenchmarkSupport.intArg(args, 1, 5000);
+		int batchDelay = BenchmarkSupport.intArg(args, 2, 5);
+		int roots = BenchmarkSupport.intArg(args, 3, 1000);
+
+		System.out.printf("%d nodes, %d commits on %d roots%n%n", nodes, commits, roots);
+		System.out.printf("%-14s | %10s | %11s | %8s | %10s | %9s | %9s | %9s | %6s%n", "coordination", "commits/s",
+				"catch-up ms", "batches", "cmds/batch", "lag mean", "lag p99", "lag max", "stale");
+		run("none", nodes, commits, roots, -1);
+		run("delay " + batchDelay + " ms", nodes, commits, roots, batchDelay);
+		if (batchDelay != 0) {
+			run("delay 0 ms", nodes, commits, roots, 0);
+		}
+	}
+
+	private static void run(String label, int nodeCount, int commits, int roots, int batchDelay)
+			throws InterruptedException {
+		String database = "cache-coordination-benchmark-" + (batchDelay < 0 ? "none" : batchDelay);
+		List<EntityManagerFactory> nodes = new ArrayList<>();
+		try {
+			for (int i = 0; i < nodeCount; i++) {
+				Map<String, Object> properties = PersistenceUnits.quietProperties(database);
+				properties.put(PersistenceUnitProperties.SESSION_NAME,
+						PersistenceUnits.PERSISTENCE_UNIT_NAME + "-" + database + "-" + i);
+				properties.put(PersistenceUnitProperties.CACHE_SHARED_DEFAULT, "true");
+				if (batchDelay >= 0) {
+					properties.put(CacheCoordination.PROPERTY, CHANNEL + "-" + batchDelay);
+					properties.put(CacheCoordination.BATCH_DELAY_PROPERTY, String.valueOf(batchDelay));
+				}
+				nodes.add(PersistenceUnits.create(properties));
+			}
+			EntityManagerFactory writer = nodes.get(0);
+			SampleGraphs.populate(writer, roots, 2, 500);
+			for (EntityManagerFactory node : nodes) {
+				readAll(node, roots, null);
+			}
+			long[] receivedBefore = new long[nodeCount];
+			for (int i = 1; i < nodeCount; i++) {
+				receivedBefore[i] = batchDelay < 0 ? 0 : metrics(nodes.get(i)).getReceivedCommands();
+			}
+			long sentBatchesBefore = batchDelay < 0 ? 0 : metrics(writer).getSentBatches();
+
+			long start = System.nanoTime();
+			for (int i = 0; i < commits; i++) {
+				update(writer, 1 + i % roots, "Commit:" + i);
+			}
+			long committed = System.nanoTime();
+			if (batchDelay >= 0) {
+				for (int i = 1; i < nodeCount; i++) {
+					awaitReceived(nodes.get(i), receivedBefore[i] + commits);
+				}
+			}
+			long caughtUp = System.nanoTime();
+
+			String[] expected = new String[roots + 1];
+			for (int i = 0; i < commits; i++) {
+				expected[1 + i % roots] = "Commit:" + i;
+			}
+			int stale = 0;
+			double lagMean = 0;
+			double lagP99 = 0;
+			double lagMax = 0;
+			for (int i = 1; i < nodeCount; i++) {
+				stale += readAll(nodes.get(i), roots, expected);
+				if (batchDelay >= 0) {
+					ChannelTransportManager.Metrics metrics = metrics(nodes.get(i));
+					lagMean += metrics.getMeanLagMillis() / (nodeCount - 1);
+					lagP99 = Math.max(lagP99, metrics.getP99LagMillis());
+					lagMax = Math.max(lagMax, metrics.getMaxLagMillis());
+				}
+			}
+			long batches = batchDelay < 0 ? 0 : metrics(writer).getSentBatches() - sentBatchesBefore;
+			System.out.printf("%-14s | %10.0f | %11.1f | %8d | %10.1f | %9.3f | %9.3f | %9.3f | %6d%n", label,
+					commits / ((committed - start) / 1e9), (caughtUp - committed) / 1e6, batches,
+					batches == 0 ? 0.0 : (double) commits / batches, lagMean, lagP99, lagMax, stale);
+		} finally {
+			for (EntityManagerFactory node : nodes) {
+				node.close();
+			}
+		}
+	}
+
+	private static ChannelTransportManager.Metrics metrics(EntityManagerFactory emf) {
+		return CacheCoordination.transport(JpaHelper.getServerSession(emf)).getMetrics();
+	}
+
+	private static void update(EntityManagerFactory emf, long id, String data1) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			em.find(RootEntity.class, id).setData1(data1);
+			em.getTransaction().commit();
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+		}
+	}
+
+	/**
+	 * Reads every root by id, through the shared cache; returns how many differ from the expected data1 (null entries
+	 * are not checked).
+	 */
+	private static int readAll(EntityManagerFactory emf, int roots, String[] expected) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			int stale = 0;
+			for (long id = 1; id <= roots; id++) {
+				String data1 = em.find(RootEntity.class, id).getData1();
+				if (expected != null && expected[(int) id] != null && !expected[(int) id].equals(data1)) {
+					stale++;
+				}
+			}
+			return stale;
+		} finally {
+			em.close();
+		}
+	}
+
+	private static void awaitReceived(EntityManagerFactory emf, long commands) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+		while (metrics(emf).getReceivedCommands() < commands && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.FetchGroup;
+
+import com.test.eclipselink.jpa.fetch_state.customizers.ChangeTrackingPolicies;
+import com.test.eclipselink.jpa.fetch_state.customizers.ChangeTrackingPolicies.Policy;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * Compares the change tracking policies of ChangeTrackingPolicies on the two access patterns that matter here:
+ * 		-reading partial RootEntity graphs (FetchGroup {data1}) inside a transaction that changes nothing, where the
+ * 			cost of a policy is in registering the objects and in the commit that finds nothing to write
+ * 		-bulk updates of data1/data2 on fully loaded roots, where the cost is in the setters and in computing and
+ * 			writing the changes at commit
+ * along with the raw cost of a woven setter on a managed entity (compared with the same setter on a new, unmanaged
+ * entity).
+ *
+ * Each policy is applied to every entity (through "fetch-state.change-tracking.default") of its own database, and every
+ * figure is the median of the measured rounds. Allocation is measured with the thread allocation counters of the
+ * running VM.
+ *
+ * Arguments: [roots, default 2000] [setter calls per root, default 100] [rounds, default 5]
+ *
+ */
+public class ChangeTrackingBenchmark {
+
+	public static void main(String[] args) {
+		int roots = BenchmarkSupport.intArg(args, 0, 2000);
+		int setterCalls = BenchmarkSupport.intArg(args, 1, 100);
+		int rounds = BenchmarkSupport.intArg(args, 2, 5);
+
+		System.out.printf("%d roots, %d setter calls per root, %d rounds (medians)%n%n", roots, setterCalls, rounds);
+		System.out.printf("%-10s | %-34s | %-46s | %-24s%n", "", "partial read, no changes", "bulk update of data1/data2",
+				"setter");
+		System.out.printf("%-10s | %10s %10s %12s | %10s %10s %10s %12s | %8s %6s %8s%n", "policy", "read ms",
+				"commit ms", "alloc B/root", "read ms", "set ms", "commit ms", "alloc B/root", "ns/call", "B/call",
+				"unmanaged");
+
+		for (Policy policy : Policy.values()) {
+			Map<String, Object> properties = PersistenceUnits.quietProperties("change-tracking-" + policy);
+			properties.put(ChangeTrackingPolicies.DEFAULT_PROPERTY, policy.name());
+			EntityManagerFactory emf = PersistenceUnits.create(properties);
+			try {
+				SampleGraphs.populate(emf, roots, 2, 500);
+				Result warmup = new Result(1);
+				run(emf, roots, setterCalls, warmup, 0);
+
+				Result result = new Result(rounds);
+				for (int round = 0; round < rounds; round++) {
+					run(emf, roots, setterCalls, result, round);
+				}
+				result.print(policy, roots, (long) roots * setterCalls);
+			} finally {
+				emf.close();
+			}
+		}
+	}
+
+	private static void run(EntityManagerFactory emf, int roots, int setterCalls, Result result, int round) {
+		partialRead(emf, roots, result, round);
+		bulkUpdate(emf, roots, result, round);
+		setters(emf, roots, setterCalls, result, round);
+	}
+
+	private static void partialRead(EntityManagerFactory emf, int roots, Result result, int round) {
+		EntityManager em = emf.createEntityManager();
+		long allocated = BenchmarkSupport.allocatedBytes();
+		em.getTransaction().begin();
+
+		long start = System.nanoTime();
+		FetchGroup fetchGroup = new FetchGroup();
+		fetchGroup.addAttribute("data1");
+		List<RootEntity> loaded = rootsQuery(em, roots).setHint(QueryHints.FETCH_GROUP, fetchGroup).getResultList();
+		long read = System.nanoTime();
+		em.getTransaction().commit();
+		long committed = System.nanoTime();
+
+		result.partialReadNanos[round] = read - start;
+		result.partialCommitNanos[round] = committed - read;
+		result.partialAllocated[round] = BenchmarkSupport.allocatedBytes() - allocated;
+		check(loaded, roots);
+		em.close();
+	}
+
+	private static void bulkUpdate(EntityManagerFactory emf, int roots, Result result, int round) {
+		EntityManager em = emf.createEntityManager();
+		long allocated = BenchmarkSupport.allocatedBytes();
+		em.getTransaction().begin();
+
+		long start = System.nanoTime();
+		List<RootEntity> loaded = rootsQuery(em, roots).getResultList();
+		long read = System.nanoTime();
+		for (RootEntity root : loaded) {
+			root.setData1("Root:" + root.getId() + "L:Data1:" + round);
+			root.setData2("Root:" + root.getId() + "L:Data2:" + round);
+		}
+		long set = System.nanoTime();
+		em.getTransaction().commit();
+		long committed = System.nanoTime();
+
+		result.updateReadNanos[round] = read - start;
+		result.updateSetNanos[round] = set - read;
+		result.updateCommitNanos[round] = committed - set;
+		result.updateAllocated[round] = BenchmarkSupport.allocatedBytes() - allocated;
+		check(loaded, roots);
+		em.close();
+	}
+
+	private static void setters(EntityManagerFactory emf, int roots, int setterCalls, Result result, int round) {
+		EntityManager em = emf.createEntityManager();
+		List<RootEntity> loaded = rootsQuery(em, roots).getResultList();
+		String[] values = { "a", "b" };
+
+		long allocated = BenchmarkSupport.allocatedBytes();
+		long start = System.nanoTime();
+		for (RootEntity root : loaded) {
+			for (int i = 0; i < setterCalls; i++) {
+				root.setData1(values[i & 1]);
+			}
+		}
+		result.setterNanos[round] = System.nanoTime() - start;
+		result.setterAllocated[round] = BenchmarkSupport.allocatedBytes() - allocated;
+		em.close();
+
+		RootEntity unmanaged = new RootEntity();
+		start = System.nanoTime();
+		for (int i = 0; i < roots * setterCalls; i++) {
+			unmanaged.setData1(values[i & 1]);
+		}
+		result.unmanagedSetterNanos[round] = System.nanoTime() - start;
+	}
+
+	private static TypedQuery<RootEntity> rootsQuery(EntityManager em, int roots) {
+		return em.createQuery("SELECT o FROM RootEntity o WHERE o.id BETWEEN 1 AND :max", RootEntity.class)
+				.setParameter("max", (long) roots);
+	}
+
+	private static void check(List<RootEntity> loaded, int roots) {
+		if (loaded.size() != roots) {
+			throw new IllegalStateException("Expected " + roots + " roots, found " + loaded.size());
+		}
+	}
+
+	private static final class Result {
+
+		private final long[] partialReadNanos;
+		private final long[] partialCommitNanos;
+		private final long[] partialAllocated;
+		private final long[] updateReadNanos;
+		private final long[] updateSetNanos;
+		private final long[] updateCommitNanos;
+		private final long[] updateAllocated;
+		private final long[] setterNanos;
+		private final long[] setterAllocated;
+		private final long[] unmanagedSetterNanos;
+
+		private Result(int rounds) {
+			partialReadNanos = new long[rounds];
+			partialCommitNanos = new long[rounds];
+			partialAllocated = new long[rounds];
+			updateReadNanos = new long[rounds];
+			updateSetNanos = new long[rounds];
+			updateCommitNanos = new long[rounds];
+			updateAllocated = new long[rounds];
+			setterNanos = new long[rounds];
+			setterAllocated = new long[rounds];
+			unmanagedSetterNanos = new long[rounds];
+		}
+
+		private void print(Policy policy, int roots, long setterCalls) {
+			System.out.printf("%-10s | %10.2f %10.2f %12d | %10.2f %10.2f %10.2f %12d | %8.1f %6d %8.1f%n", policy,
+					millis(partialReadNanos), millis(partialCommitNanos), BenchmarkSupport.median(partialAllocated) / roots,
+					millis(updateReadNanos), millis(updateSetNanos), millis(updateCommitNanos),
+					BenchmarkSupport.median(updateAllocated) / roots,
+					(double) BenchmarkSupport.median(setterNanos) / setterCalls,
+					BenchmarkSupport.median(setterAllocated) / setterCalls,
+					(double) BenchmarkSupport.median(unmanagedSetterNanos) / setterCalls);
+		}
+
+		private static double millis(long[] nanos) {
+			return BenchmarkSupport.median(nanos) / 1e6;
+		}
+	}
+
+}
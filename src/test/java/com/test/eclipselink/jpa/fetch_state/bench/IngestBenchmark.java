@@ -0,0 +1,105 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.BatchWriting;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+import com.test.eclipselink.jpa.fetch_state.customizers.JoinColumnInserts;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.sql.SqlStatement;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture.Recording;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementKind;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * Compares the two ways keyCollectionAssoc gets its join column written when new RootEntity graphs are persisted:
+ * 		-default: the children are inserted without PARENT_ID, which an UPDATE per child sets at the end of the commit
+ * 		-insert join column: PARENT_ID is written by the INSERT of the children (see JoinColumnInserts)
+ * each with the JDBC batch writing of persistence.xml and without batch writing, where every UPDATE is a round trip.
+ *
+ * Every run has a database of its own and ingests fresh roots (the graphs of SampleGraphs, along with their OwnedAssoc
+ * and OwningAssoc), committing every [roots per transaction] roots. Printed per run:
+ * 		-statements (a JDBC batch counting as one) and rows of the INSERTs and UPDATEs of one ingest round
+ * 		-median time of an ingest round and the roots ingested per second, over the measured rounds, which follow a
+ * 			warmup round
+ *
+ * Arguments: [roots per round, default 2000] [children per collection, default 10] [roots per transaction, default
+ * 100] [rounds, default 5]
+ *
+ */
+public class IngestBenchmark {
+
+	private enum Mode {
+		DEFAULT, INSERT_JOIN_COLUMN
+	}
+
+	public static void main(String[] args) {
+		int roots = BenchmarkSupport.intArg(args, 0, 2000);
+		int children = BenchmarkSupport.intArg(args, 1, 10);
+		int transactionSize = BenchmarkSupport.intArg(args, 2, 100);
+		int rounds = BenchmarkSupport.intArg(args, 3, 5);
+
+		System.out.printf("%d roots per round with %d children per collection, %d roots per transaction, %d rounds "
+				+ "(medians)%n%n", roots, children, transactionSize, rounds);
+		System.out.printf("%-20s %-14s | %10s %10s %10s %10s | %10s %10s%n", "mode", "batch writing", "INSERTs",
+				"rows", "UPDATEs", "rows", "round ms", "roots/s");
+
+		for (boolean batchWriting : new boolean[] { true, false }) {
+			for (Mode mode : Mode.values()) {
+				run(mode, batchWriting, roots, children, transactionSize, rounds);
+			}
+		}
+	}
+
+	private static void run(Mode mode, boolean batchWriting, int roots, int children, int transactionSize,
+			int rounds) {
+		Map<String, Object> properties = PersistenceUnits.quietProperties("ingest-" + mode + "-" + batchWriting);
+		if (mode == Mode.INSERT_JOIN_COLUMN) {
+			properties.put(JoinColumnInserts.property(RootEntity.class, "keyCollectionAssoc"), "true");
+		}
+		if (!batchWriting) {
+			properties.put(PersistenceUnitProperties.BATCH_WRITING, BatchWriting.None);
+		}
+		EntityManagerFactory emf = PersistenceUnits.create(properties);
+		try {
+			StatementCapture capture = StatementCapture.install(emf);
+			long firstId = 1;
+			int[] inserts = new int[2];
+			int[] updates = new int[2];
+			try (Recording recording = capture.start()) {
+				SampleGraphs.populate(emf, firstId, roots, children, transactionSize);
+				count(recording, StatementKind.INSERT, inserts);
+				count(recording, StatementKind.UPDATE, updates);
+			}
+			firstId += roots;
+
+			long[] times = new long[rounds];
+			for (int round = 0; round < rounds; round++) {
+				long start = System.nanoTime();
+				SampleGraphs.populate(emf, firstId, roots, children, transactionSize);
+				times[round] = System.nanoTime() - start;
+				firstId += roots;
+			}
+			long median = BenchmarkSupport.median(times);
+			System.out.printf("%-20s %-14s | %10d %10d %10d %10d | %10.1f %10.0f%n", mode, batchWriting ? "on" : "off",
+					inserts[0], inserts[1], updates[0], updates[1], median / 1e6, roots / (median / 1e9));
+		} finally {
+			emf.close();
+		}
+	}
+
+	private static void count(Recording recording, StatementKind kind, int[] statementsAndRows) {
+		for (SqlStatement statement : recording.getStatements()) {
+			if (statement.getKind() == kind) {
+				statementsAndRows[0]++;
+				statementsAndRows[1] += statement.getRows();
+			}
+		}
+	}
+
+}
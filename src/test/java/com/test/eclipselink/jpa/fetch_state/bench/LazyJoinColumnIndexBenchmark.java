@@ -0,0 +1,219 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Random;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaHelper;
+
+import com.test.eclipselink.jpa.fetch_state.customizers.LazyJoinColumnIndexes;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * Lazy-load latency through the join columns of RootEntity, with and without LazyJoinColumnIndexes, on a database of
+ * a million rows and more.
+ *
+ * HSQLDB backs every foreign key constraint with an index of its own, which would hide the difference; so does MySQL,
+ * but PostgreSQL, Oracle and SQL Server do not. The variants are:
+ * 		-NO_INDEX: no index, the foreign key constraints dropped; what a database that does not index them does
+ * 		-FK_CONSTRAINT: no index declared, the constraints kept (and HSQLDB's indexes with them), as a reference
+ * 		-LAZY_JOIN_COLUMN_INDEXES: the indexes of LazyJoinColumnIndexes, the foreign key constraints dropped
+ *
+ * Each variant gets its own database, filled through JDBC batches (children carry no data, to keep the in-memory
+ * database within a 1 GB heap). Measured for randomly chosen roots, each found in a new EntityManager:
+ * 		-keyCollectionAssoc and refCollectionAssoc: the lazy collection load (SELECT ... WHERE PARENT_ID = ?)
+ * 		-owningAssoc: the mappedBy one-to-one lookup (SELECT ... WHERE OWNED_PARENT = ?)
+ * 		-by ownedAssoc: the root of an OwnedAssoc, walking ownedAssoc the other way (SELECT ... WHERE OWNED_FK = ?)
+ * and reported as median and 95th percentile in milliseconds, after the indexes reported at startup.
+ *
+ * Arguments: [roots, default 100000] [children per collection, default 5] [lookups, default 50]
+ *
+ */
+public class LazyJoinColumnIndexBenchmark {
+
+	enum Variant {
+		NO_INDEX(false, true), FK_CONSTRAINT(false, false), LAZY_JOIN_COLUMN_INDEXES(true, true);
+
+		private final boolean indexes;
+		private final boolean dropConstraints;
+
+		Variant(boolean indexes, boolean dropConstraints) {
+			this.indexes = indexes;
+			this.dropConstraints = dropConstraints;
+		}
+	}
+
+	private static final String[] CONSTRAINTS = { "REF_COLLECTION_ASSOC", "FK_REF_COLLECTION_ASSOC_PARENT_ID",
+			"KEY_COLLECTION_ASSOC", "FK_KEY_COLLECTION_ASSOC_PARENT_ID", "OWNING_ASSOC", "FK_OWNING_ASSOC_OWNED_PARENT",
+			"ROOT_ENTITY", "FK_ROOT_ENTITY_OWNED_FK" };
+
+	private static final String[] LOOKUPS = { "keyCollectionAssoc", "refCollectionAssoc", "owningAssoc",
+			"by ownedAssoc" };
+
+	private static final int WARMUP = 5;
+
+	public static void main(String[] args) throws SQLException {
+		int roots = BenchmarkSupport.intArg(args, 0, 100000);
+		int children = BenchmarkSupport.intArg(args, 1, 5);
+		int lookups = BenchmarkSupport.intArg(args, 2, 50);
+
+		long rows = (long) roots * (3 + 2 * children);
+		System.out.printf("%d roots, %d children per collection (%d rows), %d lookups (ms: median / p95)%n%n", roots,
+				children, rows, lookups);
+		StringBuilder header = new StringBuilder(String.format("%-26s", "variant"));
+		for (String lookup : LOOKUPS) {
+			header.append(String.format(" | %-21s", lookup));
+		}
+		System.out.println(header);
+
+		for (Variant variant : Variant.values()) {
+			Map<String, Object> properties = PersistenceUnits
+					.quietProperties("lazy-join-column-index-" + variant.name().toLowerCase());
+			properties.put(LazyJoinColumnIndexes.PROPERTY, Boolean.toString(variant.indexes));
+			EntityManagerFactory emf = PersistenceUnits.create(properties);
+			try {
+				populate(emf, variant, roots, children);
+				long[][] nanos = new long[LOOKUPS.length][lookups];
+				Random random = new Random(42);
+				for (int i = 0; i < WARMUP; i++) {
+					lookUp(emf, 1 + random.nextInt(roots), children, new long[LOOKUPS.length][1], 0);
+				}
+				for (int i = 0; i < lookups; i++) {
+					lookUp(emf, 1 + random.nextInt(roots), children, nanos, i);
+				}
+
+				StringBuilder line = new StringBuilder(String.format("%-26s", variant));
+				for (long[] lookup : nanos) {
+					line.append(String.format(" | %9.3f / %9.3f", BenchmarkSupport.median(lookup) / 1e6,
+							BenchmarkSupport.percentile(lookup, 95) / 1e6));
+				}
+				System.out.println(line);
+				System.out.println("    indexes created: "
+						+ LazyJoinColumnIndexes.createdIndexes(JpaHelper.getServerSession(emf)));
+				dropDatabase(emf);
+			} finally {
+				emf.close();
+			}
+		}
+	}
+
+	private static void lookUp(EntityManagerFactory emf, long rootId, int children, long[][] nanos, int sample) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			RootEntity root = em.find(RootEntity.class, rootId);
+
+			long start = System.nanoTime();
+			int keyChildren = root.getKeyCollectionAssoc().size();
+			long keyLoaded = System.nanoTime();
+			int refChildren = root.getRefCollectionAssoc().size();
+			long refLoaded = System.nanoTime();
+			Long owningId = root.getOwningAssoc().getId();
+			long owningLoaded = System.nanoTime();
+			RootEntity byOwned = em.createQuery("SELECT o FROM RootEntity o WHERE o.ownedAssoc.id = :id",
+					RootEntity.class).setParameter("id", rootId).getSingleResult();
+			long byOwnedLoaded = System.nanoTime();
+
+			if (keyChildren != children || refChildren != children || !owningId.equals(rootId) || byOwned != root) {
+				throw new IllegalStateException("Unexpected graph for root " + rootId);
+			}
+			nanos[0][sample] = keyLoaded - start;
+			nanos[1][sample] = refLoaded - keyLoaded;
+			nanos[2][sample] = owningLoaded - refLoaded;
+			nanos[3][sample] = byOwnedLoaded - owningLoaded;
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * Rows shaped like those of SampleGraphs (same ids), written with JDBC batches: a million rows through
+	 * EntityManager.persist would take longer than the whole benchmark.
+	 */
+	private static void populate(EntityManagerFactory emf, Variant variant, int roots, int children)
+			throws SQLException {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			Connection connection = em.unwrap(Connection.class);
+			if (variant.dropConstraints) {
+				try (Statement statement = connection.createStatement()) {
+					for (int i = 0; i < CONSTRAINTS.length; i += 2) {
+						statement.execute("ALTER TABLE " + CONSTRAINTS[i] + " DROP CONSTRAINT " + CONSTRAINTS[i + 1]);
+					}
+				}
+			}
+			try (PreparedStatement owned = connection
+					.prepareStatement("INSERT INTO OWNED_ASSOCIATION (ID, DATA1, DATA2) VALUES (?, ?, ?)");
+					PreparedStatement root = connection
+							.prepareStatement("INSERT INTO ROOT_ENTITY (ID, DATA1, DATA2, OWNED_FK) VALUES (?, ?, ?, ?)");
+					PreparedStatement owning = connection.prepareStatement(
+							"INSERT INTO OWNING_ASSOC (ID, DATA1, DATA2, OWNED_PARENT) VALUES (?, ?, ?, ?)");
+					PreparedStatement key = connection
+							.prepareStatement("INSERT INTO KEY_COLLECTION_ASSOC (ID, PARENT_ID) VALUES (?, ?)");
+					PreparedStatement ref = connection
+							.prepareStatement("INSERT INTO REF_COLLECTION_ASSOC (ID, PARENT_ID) VALUES (?, ?)")) {
+				for (long id = 1; id <= roots; id++) {
+					owned.setLong(1, id);
+					owned.setString(2, "OwnedAssoc:" + id + "L:Data1");
+					owned.setString(3, "OwnedAssoc:" + id + "L:Data2");
+					owned.addBatch();
+					root.setLong(1, id);
+					root.setString(2, "Root:" + id + "L:Data1");
+					root.setString(3, "Root:" + id + "L:Data2");
+					root.setLong(4, id);
+					root.addBatch();
+					owning.setLong(1, id);
+					owning.setString(2, "OwningAssoc:" + id + "L:Data1");
+					owning.setString(3, "OwningAssoc:" + id + "L:Data2");
+					owning.setLong(4, id);
+					owning.addBatch();
+					for (int i = 0; i < children; i++) {
+						long childId = SampleGraphs.childId(id, children, i);
+						key.setLong(1, childId);
+						key.setLong(2, id);
+						key.addBatch();
+						ref.setLong(1, childId);
+						ref.setLong(2, id);
+						ref.addBatch();
+					}
+					if (id % 1000 == 0 || id == roots) {
+						owned.executeBatch();
+						root.executeBatch();
+						owning.executeBatch();
+						key.executeBatch();
+						ref.executeBatch();
+					}
+				}
+			}
+			em.getTransaction().commit();
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+		}
+	}
+
+	/**
+	 * In-memory HSQLDB databases outlive the factory; this one would keep its million rows for the rest of the run.
+	 */
+	private static void dropDatabase(EntityManagerFactory emf) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			em.createNativeQuery("DROP SCHEMA PUBLIC CASCADE").executeUpdate();
+			em.getTransaction().commit();
+		} finally {
+			em.close();
+		}
+	}
+
+}
@@ -0,0 +1,319 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceUtil;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.eclipse.persistence.queries.FetchGroup;
+
+import com.test.eclipselink.jpa.fetch_state.entities.KeyMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.OwnedAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.OwningAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.ReferenceMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * Stress and scalability harness for load state checks against one shared EntityManagerFactory.
+ *
+ * A mix of entities in different states (default and custom FetchGroups, initialized and uninitialized associations,
+ * LAZY basics, new entities; all five entity types) is prepared up front and every (entity, attribute) pair is
+ * answered once, single-threaded, by each checking path:
+ * 		-EntityManagerFactoryImpl.isLoaded(Object, String)
+ * 		-PersistenceUtil.isLoaded(Object, String)
+ * 		-LoadStateInspector.isLoaded(Object, String)
+ *
+ * Then, for 1, 2, 4... up to the maximum number of threads, all threads check the same pairs in a loop for a fixed
+ * duration. Reported per step:
+ * 		-throughput and speedup relative to a single thread
+ * 		-answers that differ from the single-threaded ones (and exceptions), which must be zero
+ * 		-lock contention: how often and how long the workers were BLOCKED on a monitor (thread contention monitoring)
+ * 			and the monitors and frames seen most often in periodic thread dumps of BLOCKED workers
+ *
+ * The checks do not take locks of their own; contention on shared state that is not a monitor (the session's "last
+ * descriptor accessed" field, for instance) shows up as poor scaling instead. For a deeper look run the harness with
+ * -XX:StartFlightRecording (through MAVEN_OPTS when started with exec:java) and inspect the Java Monitor Blocked and
+ * Thread Park events.
+ *
+ * Arguments: [max threads, default 256] [seconds per step, default 2] [roots, default 200]
+ *
+ */
+public class LoadStateStressBenchmark {
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	enum Path {
+
+		EMF_IMPL {
+			@Override
+			boolean isLoaded(Context context, Object entity, String attributeName) {
+				return context.emf.isLoaded(entity, attributeName);
+			}
+		},
+
+		PERSISTENCE_UTIL {
+			@Override
+			boolean isLoaded(Context context, Object entity, String attributeName) {
+				return context.persistenceUtil.isLoaded(entity, attributeName);
+			}
+		},
+
+		INSPECTOR {
+			@Override
+			boolean isLoaded(Context context, Object entity, String attributeName) {
+				return context.inspector.isLoaded(entity, attributeName);
+			}
+		};
+
+		abstract boolean isLoaded(Context context, Object entity, String attributeName);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int maxThreads = BenchmarkSupport.intArg(args, 0, 256);
+		int seconds = BenchmarkSupport.intArg(args, 1, 2);
+		int roots = BenchmarkSupport.intArg(args, 2, 200);
+
+		EntityManagerFactory emf = PersistenceUnits.createQuiet("load-state-stress");
+		List<EntityManager> openEntityManagers = new ArrayList<>();
+		try {
+			SampleGraphs.populate(emf, roots, 2, 500);
+			Context context = new Context((EntityManagerFactoryImpl) emf);
+			List<Object> entities = prepareEntities(emf, roots, openEntityManagers);
+			List<Case> cases = new ArrayList<>();
+			for (Object entity : entities) {
+				for (String attributeName : context.inspector.attributeNames(entity.getClass())) {
+					cases.add(new Case(entity, attributeName, context));
+				}
+			}
+			System.out.printf("%d entities, %d (entity, attribute) pairs, %d s per step%n", entities.size(),
+					cases.size(), seconds);
+
+			if (THREADS.isThreadContentionMonitoringSupported()) {
+				THREADS.setThreadContentionMonitoringEnabled(true);
+			}
+			for (Path path : Path.values()) {
+				System.out.printf("%n== %s%n", path);
+				System.out.printf("%8s %14s %8s %10s %10s %12s  %s%n", "threads", "checks/s", "speedup", "incorrect",
+						"blocked", "blocked ms", "most blocked on");
+				//warm up, so that the single-threaded step is not measuring the JIT compiler
+				run(path, context, cases, 1, 1);
+				double singleThreaded = 0;
+				for (int threads = 1; threads <= maxThreads; threads *= 2) {
+					Step step = run(path, context, cases, threads, seconds);
+					if (threads == 1) {
+						singleThreaded = step.throughput();
+					}
+					System.out.printf("%8d %,14.0f %8.2f %10d %10d %12d  %s%n", threads, step.throughput(),
+							step.throughput() / singleThreaded, step.incorrect.get(), step.blockedCount.get(),
+							step.blockedMillis.get(), step.topBlockedSite());
+				}
+			}
+		} finally {
+			for (EntityManager em : openEntityManagers) {
+				em.close();
+			}
+			emf.close();
+		}
+	}
+
+	/**
+	 * Entities of all five types in a variety of load states; the EntityManagers stay open (and untouched) while the
+	 * checks run, as they would in request threads.
+	 */
+	private static List<Object> prepareEntities(EntityManagerFactory emf, int roots, List<EntityManager> open) {
+		List<Object> entities = new ArrayList<>();
+		for (long id = 1; id <= Math.min(roots, 20); id++) {
+			EntityManager em = emf.createEntityManager();
+			open.add(em);
+			RootEntity root;
+			switch ((int) (id % 4)) {
+			case 0:
+				root = em.find(RootEntity.class, id);
+				break;
+			case 1:
+				root = findWithFetchGroup(em, id, "data1", "keyCollectionAssoc.data1", "refCollectionAssoc.data2");
+				for (KeyMappingCollectionAssoc child : root.getKeyCollectionAssoc()) {
+					entities.add(child);
+				}
+				for (ReferenceMappingCollectionAssoc child : root.getRefCollectionAssoc()) {
+					entities.add(child);
+				}
+				break;
+			case 2:
+				root = em.find(RootEntity.class, id);
+				OwnedAssoc ownedAssoc = root.getOwnedAssoc();
+				entities.add(ownedAssoc);
+				break;
+			default:
+				root = findWithFetchGroup(em, id, "data2", "owningAssoc.data1");
+				OwningAssoc owningAssoc = root.getOwningAssoc();
+				entities.add(owningAssoc);
+				break;
+			}
+			entities.add(root);
+		}
+		entities.add(new RootEntity());
+		entities.add(new OwnedAssoc());
+		return entities;
+	}
+
+	private static RootEntity findWithFetchGroup(EntityManager em, long id, String... attributes) {
+		FetchGroup fetchGroup = new FetchGroup();
+		for (String attribute : attributes) {
+			fetchGroup.addAttribute(attribute);
+		}
+		return em.createQuery("SELECT o FROM RootEntity o WHERE o.id = :id", RootEntity.class).setParameter("id", id)
+				.setHint(QueryHints.FETCH_GROUP, fetchGroup).getSingleResult();
+	}
+
+	private static Step run(final Path path, final Context context, final List<Case> cases, int threads,
+			int seconds) throws InterruptedException {
+		final Step step = new Step(seconds);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final long[] workerIds = new long[threads];
+		List<Thread> workers = new ArrayList<>();
+
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * 7919;
+			Thread worker = new Thread("load-state-" + t) {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						long checks = 0;
+						int size = cases.size();
+						int index = offset % size;
+						while (!step.stopped) {
+							Case oneCase = cases.get(index);
+							try {
+								if (path.isLoaded(context, oneCase.entity, oneCase.attributeName) != oneCase
+										.expected(path)) {
+									step.incorrect.incrementAndGet();
+								}
+							} catch (RuntimeException e) {
+								step.incorrect.incrementAndGet();
+							}
+							checks++;
+							index = index + 1 == size ? 0 : index + 1;
+						}
+						step.checks.addAndGet(checks);
+						ThreadInfo info = THREADS.getThreadInfo(Thread.currentThread().getId());
+						if (info != null) {
+							step.blockedCount.addAndGet(info.getBlockedCount());
+							step.blockedMillis.addAndGet(Math.max(0, info.getBlockedTime()));
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			};
+			worker.setDaemon(true);
+			workers.add(worker);
+			worker.start();
+			workerIds[t] = worker.getId();
+		}
+
+		start.countDown();
+		long end = System.nanoTime() + seconds * 1000000000L;
+		while (System.nanoTime() < end) {
+			step.sample(THREADS.getThreadInfo(workerIds, 3));
+			BenchmarkSupport.sleep(10);
+		}
+		step.stopped = true;
+		done.await();
+		return step;
+	}
+
+	private static final class Context {
+
+		private final EntityManagerFactoryImpl emf;
+		private final PersistenceUtil persistenceUtil = Persistence.getPersistenceUtil();
+		private final LoadStateInspector inspector;
+
+		private Context(EntityManagerFactoryImpl emf) {
+			this.emf = emf;
+			this.inspector = new LoadStateInspector(emf);
+		}
+	}
+
+	private static final class Case {
+
+		private final Object entity;
+		private final String attributeName;
+		private final boolean[] expected = new boolean[Path.values().length];
+
+		private Case(Object entity, String attributeName, Context context) {
+			this.entity = entity;
+			this.attributeName = attributeName;
+			for (Path path : Path.values()) {
+				expected[path.ordinal()] = path.isLoaded(context, entity, attributeName);
+			}
+		}
+
+		private boolean expected(Path path) {
+			return expected[path.ordinal()];
+		}
+	}
+
+	private static final class Step {
+
+		private final int seconds;
+		private volatile boolean stopped;
+		private final AtomicLong checks = new AtomicLong();
+		private final AtomicLong incorrect = new AtomicLong();
+		private final AtomicLong blockedCount = new AtomicLong();
+		private final AtomicLong blockedMillis = new AtomicLong();
+		private final Map<String, Integer> blockedSites = new HashMap<>();
+
+		private Step(int seconds) {
+			this.seconds = seconds;
+		}
+
+		private double throughput() {
+			return checks.get() / (double) seconds;
+		}
+
+		private void sample(ThreadInfo[] infos) {
+			for (ThreadInfo info : infos) {
+				if (info == null || info.getThreadState() != Thread.State.BLOCKED) {
+					continue;
+				}
+				StackTraceElement[] stack = info.getStackTrace();
+				String site = info.getLockName() + (stack.length > 0 ? " at " + stack[0] : "");
+				Integer count = blockedSites.get(site);
+				blockedSites.put(site, count == null ? 1 : count + 1);
+			}
+		}
+
+		private String topBlockedSite() {
+			String top = "-";
+			int topCount = 0;
+			for (Map.Entry<String, Integer> site : blockedSites.entrySet()) {
+				if (site.getValue() > topCount) {
+					top = site.getKey() + " (" + site.getValue() + " samples)";
+					topCount = site.getValue();
+				}
+			}
+			return top;
+		}
+	}
+
+}
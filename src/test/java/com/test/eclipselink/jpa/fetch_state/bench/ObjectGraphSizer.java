@@ -0,0 +1,301 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.indirection.IndirectCollection;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * Heap walker that estimates how many bytes an entity graph keeps reachable, broken down by the entity field that
+ * reaches each object.
+ *
+ * Sizes follow the HotSpot object layout (header, reference size and 8 byte alignment are read from the running
+ * VM where possible), without accounting for field packing gaps, so they are estimates rather than exact figures.
+ *
+ * The walk stops at objects that belong to the EntityManagerFactory rather than to the entity (sessions,
+ * descriptors, mappings, queries, classes) and never instantiates indirection: IndirectCollections are walked
+ * through their own fields, never through their Collection methods.
+ *
+ * On Java 9 and later the fields of JDK classes cannot be read reflectively without --add-opens; Strings,
+ * collections and maps are then sized through their public API, and any other JDK object is counted shallowly.
+ *
+ */
+public class ObjectGraphSizer {
+
+	private static final Class<?>[] BOUNDARY_TYPES = { Class.class, ClassLoader.class, Thread.class, Session.class,
+			EntityManager.class, EntityManagerFactory.class, ClassDescriptor.class, DatabaseMapping.class,
+			DatabaseQuery.class };
+
+	private final boolean compressedOops;
+	private final int objectHeader;
+	private final int arrayHeader;
+	private final int referenceSize;
+	private final boolean compactStrings;
+
+	private final Map<Class<?>, ClassLayout> layouts = new HashMap<>();
+	private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+	private final Map<String, Long> bytesByField = new LinkedHashMap<>();
+
+	public ObjectGraphSizer() {
+		boolean is64Bit = !"32".equals(System.getProperty("sun.arch.data.model"));
+		this.compressedOops = is64Bit && vmFlag("UseCompressedOops", Runtime.getRuntime().maxMemory() < (32L << 30));
+		this.objectHeader = is64Bit ? (vmFlag("UseCompressedClassPointers", compressedOops) ? 12 : 16) : 8;
+		this.arrayHeader = align(objectHeader + 4);
+		this.referenceSize = compressedOops || !is64Bit ? 4 : 8;
+		this.compactStrings = !System.getProperty("java.specification.version").startsWith("1.");
+	}
+
+	/**
+	 * Walks each root and attributes the objects it keeps reachable to "[root's simple class name].[field]". An object
+	 * reachable from more than one field of the same root (the entity's own value holders and listener both point
+	 * at the same records, for instance) is attributed to "[class].&lt;shared&gt;" instead. Objects already counted
+	 * for a previous root (shared FetchGroups, interned strings) are not counted again, so the totals are amortized
+	 * over all roots walked by this instance.
+	 */
+	public void walk(Iterable<?> roots) {
+		for (Object root : roots) {
+			walk(root);
+		}
+	}
+
+	public void walk(Object root) {
+		if (root == null || !visited.add(root)) {
+			return;
+		}
+		ClassLayout layout = layout(root.getClass());
+		String prefix = root.getClass().getSimpleName() + ".";
+		add(prefix + "<shallow>", layout.shallowSize);
+
+		Map<Object, String> owners = new IdentityHashMap<>();
+		Map<Object, Long> sizes = new IdentityHashMap<>();
+		for (Field field : layout.referenceFields) {
+			Object value = read(field, root);
+			if (value != null) {
+				add(prefix + field.getName(), 0);
+				collect(value, prefix + field.getName(), owners, sizes);
+			}
+		}
+		for (Map.Entry<Object, String> owner : owners.entrySet()) {
+			add(owner.getValue(), sizes.get(owner.getKey()));
+			visited.add(owner.getKey());
+		}
+	}
+
+	/**
+	 * Bytes attributed so far, per "[class].[field]"; "[class].&lt;shallow&gt;" holds the entity objects themselves.
+	 */
+	public Map<String, Long> bytesByField() {
+		return bytesByField;
+	}
+
+	public long totalBytes() {
+		long total = 0;
+		for (long bytes : bytesByField.values()) {
+			total += bytes;
+		}
+		return total;
+	}
+
+	private void collect(Object start, String owner, Map<Object, String> owners, Map<Object, Long> sizes) {
+		String shared = owner.substring(0, owner.indexOf('.') + 1) + "<shared>";
+		Set<Object> reached = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		Deque<Object> pending = new ArrayDeque<>();
+		pending.push(start);
+		while (!pending.isEmpty()) {
+			Object current = pending.pop();
+			if (isBoundary(current) || visited.contains(current) || !reached.add(current)) {
+				continue;
+			}
+			String previousOwner = owners.get(current);
+			owners.put(current, previousOwner == null ? owner : shared);
+			//references have to be followed again for every field reaching the object, the size is the same each time
+			sizes.put(current, visit(current, pending));
+		}
+	}
+
+	private long visit(Object object, Deque<Object> pending) {
+		Class<?> type = object.getClass();
+		if (type.isArray()) {
+			return visitArray(object, pending);
+		}
+		if (object instanceof String) {
+			int length = ((String) object).length();
+			return layout(String.class).shallowSize + align(arrayHeader + (compactStrings ? length : length * 2));
+		}
+		ClassLayout layout = layout(type);
+		for (Field field : layout.referenceFields) {
+			Object value = read(field, object);
+			if (value != null) {
+				pending.push(value);
+			}
+		}
+		long bytes = layout.shallowSize;
+		if (layout.opaque) {
+			bytes += visitOpaque(object, pending);
+		}
+		return bytes;
+	}
+
+	private long visitArray(Object array, Deque<Object> pending) {
+		Class<?> componentType = array.getClass().getComponentType();
+		int length = Array.getLength(array);
+		if (componentType.isPrimitive()) {
+			return align(arrayHeader + (long) length * primitiveSize(componentType));
+		}
+		for (int i = 0; i < length; i++) {
+			Object element = Array.get(array, i);
+			if (element != null) {
+				pending.push(element);
+			}
+		}
+		return align(arrayHeader + (long) length * referenceSize);
+	}
+
+	/**
+	 * Estimates the internals of a JDK container whose fields could not be read; the backing storage is assumed to
+	 * be an array sized to the element count plus, for maps, one node per entry.
+	 */
+	private long visitOpaque(Object object, Deque<Object> pending) {
+		if (object instanceof IndirectCollection) {
+			//the delegate (or the value holder, when not instantiated) is a field of the indirect collection itself
+			return 0;
+		}
+		if (object instanceof Collection) {
+			Collection<?> collection = (Collection<?>) object;
+			for (Object element : collection) {
+				if (element != null) {
+					pending.push(element);
+				}
+			}
+			return align(arrayHeader + (long) collection.size() * referenceSize);
+		}
+		if (object instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) object;
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				if (entry.getKey() != null) {
+					pending.push(entry.getKey());
+				}
+				if (entry.getValue() != null) {
+					pending.push(entry.getValue());
+				}
+			}
+			long node = align(objectHeader + 4 + 3L * referenceSize);
+			return align(arrayHeader + (long) map.size() * referenceSize) + map.size() * node;
+		}
+		return 0;
+	}
+
+	private boolean isBoundary(Object object) {
+		for (Class<?> boundary : BOUNDARY_TYPES) {
+			if (boundary.isInstance(object)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void add(String key, long bytes) {
+		Long current = bytesByField.get(key);
+		bytesByField.put(key, current == null ? bytes : current + bytes);
+	}
+
+	private static Object read(Field field, Object target) {
+		try {
+			return field.get(target);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private ClassLayout layout(Class<?> type) {
+		ClassLayout layout = layouts.get(type);
+		if (layout == null) {
+			layout = new ClassLayout(type);
+			layouts.put(type, layout);
+		}
+		return layout;
+	}
+
+	private long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	private int align(int size) {
+		return (size + 7) & ~7;
+	}
+
+	private int primitiveSize(Class<?> type) {
+		if (type == long.class || type == double.class) {
+			return 8;
+		}
+		if (type == int.class || type == float.class) {
+			return 4;
+		}
+		if (type == short.class || type == char.class) {
+			return 2;
+		}
+		return 1;
+	}
+
+	private static boolean vmFlag(String name, boolean fallback) {
+		try {
+			com.sun.management.HotSpotDiagnosticMXBean diagnostics = ManagementFactory
+					.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+			return Boolean.parseBoolean(diagnostics.getVMOption(name).getValue());
+		} catch (RuntimeException | LinkageError e) {
+			return fallback;
+		}
+	}
+
+	private final class ClassLayout {
+
+		private final long shallowSize;
+		private final List<Field> referenceFields = new ArrayList<>();
+		private boolean opaque;
+
+		private ClassLayout(Class<?> type) {
+			long size = objectHeader;
+			for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+				for (Field field : current.getDeclaredFields()) {
+					if (Modifier.isStatic(field.getModifiers())) {
+						continue;
+					}
+					if (field.getType().isPrimitive()) {
+						size += primitiveSize(field.getType());
+						continue;
+					}
+					size += referenceSize;
+					try {
+						field.setAccessible(true);
+						referenceFields.add(field);
+					} catch (RuntimeException e) {
+						//InaccessibleObjectException on Java 9+ for JDK internals
+						opaque = true;
+					}
+				}
+			}
+			this.shallowSize = align(size);
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.FetchGroup;
+
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntityPlan;
+import com.test.eclipselink.jpa.fetch_state.query.PreparedQueries;
+import com.test.eclipselink.jpa.fetch_state.query.PreparedQuery;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * Measures the per-call overhead of getting a RootEntity by id with the FetchGroup {data1}, the query of
+ * findRootEntityById in TestFetchState plus a hint, through:
+ * 		-CREATE_QUERY: EntityManager.createQuery, setHint with the FetchGroup and setParameter on every call
+ * 		-NAMED: EntityManager.createNamedQuery of the query registered with PreparedQueries, and setParameter
+ * 		-PREPARED: the instance of PreparedQueries.in(em), created once per EntityManager, and setParameter
+ * first without running the query ("build", the overhead alone), then running it ("call").
+ *
+ * Every EntityManager serves a fixed number of calls and is cleared after each one, so each call reads its root from
+ * the database. Figures are medians of the measured rounds; allocation is measured with the thread allocation
+ * counters of the running VM.
+ *
+ * Arguments: [calls, default 20000] [calls per EntityManager, default 100] [rounds, default 5]
+ *
+ */
+public class PreparedQueryBenchmark {
+
+	private static final String JPQL = "SELECT o FROM RootEntity o WHERE o.id = :id";
+
+	private static final PreparedQuery<RootEntity> ROOT_DATA1_BY_ID = PreparedQuery
+			.of("PreparedQueryBenchmark.rootData1ById", RootEntity.class, JPQL).withPlan(RootEntityPlan.data1());
+
+	private static final int ROOTS = 100;
+
+	private enum Variant {
+		CREATE_QUERY, NAMED, PREPARED
+	}
+
+	public static void main(String[] args) {
+		int calls = BenchmarkSupport.intArg(args, 0, 20000);
+		int callsPerEm = BenchmarkSupport.intArg(args, 1, 100);
+		int rounds = BenchmarkSupport.intArg(args, 2, 5);
+
+		EntityManagerFactory emf = PersistenceUnits.createQuiet("prepared-query-benchmark");
+		try {
+			SampleGraphs.populate(emf, ROOTS, 0, 100);
+			PreparedQueries queries = new PreparedQueries(emf).register(ROOT_DATA1_BY_ID);
+			FetchGroup data1 = RootEntityPlan.data1().toFetchGroup();
+
+			System.out.printf("%d calls, %d per EntityManager, %d rounds (medians)%n%n", calls, callsPerEm, rounds);
+			System.out.printf("%-12s | %10s %10s | %10s %10s%n", "variant", "build ns", "build B", "call ns", "call B");
+			for (Variant variant : Variant.values()) {
+				for (boolean execute : new boolean[] { false, true }) {
+					run(emf, queries, data1, variant, execute, calls, callsPerEm, new long[1], new long[1], 0);
+				}
+				long[][] figures = new long[4][rounds];
+				for (int round = 0; round < rounds; round++) {
+					run(emf, queries, data1, variant, false, calls, callsPerEm, figures[0], figures[1], round);
+					run(emf, queries, data1, variant, true, calls, callsPerEm, figures[2], figures[3], round);
+				}
+				System.out.printf("%-12s | %10d %10d | %10d %10d%n", variant, BenchmarkSupport.median(figures[0]),
+						BenchmarkSupport.median(figures[1]), BenchmarkSupport.median(figures[2]),
+						BenchmarkSupport.median(figures[3]));
+			}
+			System.out.printf("%n%s%n", queries);
+		} finally {
+			emf.close();
+		}
+	}
+
+	private static void run(EntityManagerFactory emf, PreparedQueries queries, FetchGroup data1, Variant variant,
+			boolean execute, int calls, int callsPerEm, long[] nanosPerCall, long[] bytesPerCall, int round) {
+		long elapsed = 0;
+		long allocated = 0;
+		for (int done = 0; done < calls; done += callsPerEm) {
+			EntityManager em = emf.createEntityManager();
+			try {
+				PreparedQueries.Bound bound = queries.in(em);
+				long allocatedBefore = BenchmarkSupport.allocatedBytes();
+				long start = System.nanoTime();
+				for (int call = done; call < Math.min(calls, done + callsPerEm); call++) {
+					Long id = Long.valueOf(call % ROOTS + 1);
+					TypedQuery<RootEntity> query;
+					switch (variant) {
+					case CREATE_QUERY:
+						query = em.createQuery(JPQL, RootEntity.class).setHint(QueryHints.FETCH_GROUP, data1);
+						break;
+					case NAMED:
+						query = em.createNamedQuery(ROOT_DATA1_BY_ID.getName(), RootEntity.class);
+						break;
+					default:
+						query = bound.get(ROOT_DATA1_BY_ID);
+					}
+					query.setParameter("id", id);
+					if (execute) {
+						if (!id.equals(query.getSingleResult().getId())) {
+							throw new IllegalStateException("Wrong root for " + id);
+						}
+						em.clear();
+					}
+				}
+				elapsed += System.nanoTime() - start;
+				allocated += BenchmarkSupport.allocatedBytes() - allocatedBefore;
+			} finally {
+				em.close();
+			}
+		}
+		nanosPerCall[round] = elapsed / calls;
+		bytesPerCall[round] = allocated / calls;
+	}
+
+}
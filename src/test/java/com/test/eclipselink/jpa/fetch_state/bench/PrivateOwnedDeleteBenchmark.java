@@ -0,0 +1,130 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import com.test.eclipselink.jpa.fetch_state.collection.PrivateOwnedBulkDelete;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture.Recording;
+import com.test.eclipselink.jpa.fetch_state.sql.StatementKind;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * Compares two ways of removing RootEntities with a large fan-out (1000 children in each of the two @PrivateOwned
+ * collections by default), in one transaction:
+ * 		-CASCADE: EntityManager.remove on every root. EclipseLink deletes the children of a collection that is not
+ * 			loaded with one DELETE ... WHERE PARENT_ID = ? per root and collection, and those of a loaded collection one
+ * 			by one (in JDBC batches)
+ * 		-BULK: PrivateOwnedBulkDelete.remove, which deletes the children with one DELETE ... WHERE PARENT_ID IN (...) per
+ * 			collection and batch of roots, whether the collections are loaded or not, then removes the roots
+ * each with the collections left alone and with both collections loaded beforehand (_LOADED), as after walking the
+ * graphs.
+ *
+ * Every round removes freshly populated roots. The statement counts are those of the warmup round, recorded with a
+ * StatementCapture (round trips: a JDBC batch counts as one); the times are the medians of the measured rounds, which
+ * are not recorded. Reading the roots and loading their collections is not timed.
+ *
+ * Arguments: [roots, default 20] [children per collection, default 1000] [rounds, default 3]
+ *
+ */
+public class PrivateOwnedDeleteBenchmark {
+
+	private enum Variant {
+		CASCADE, CASCADE_LOADED, BULK, BULK_LOADED
+	}
+
+	public static void main(String[] args) {
+		int roots = BenchmarkSupport.intArg(args, 0, 20);
+		int children = BenchmarkSupport.intArg(args, 1, 1000);
+		int rounds = BenchmarkSupport.intArg(args, 2, 3);
+
+		System.out.printf("%d roots with %d children per collection, %d rounds (medians)%n%n", roots, children, rounds);
+		System.out.printf("%-14s | %10s %10s %10s | %8s %8s%n", "variant", "remove ms", "commit ms", "total ms",
+				"SELECTs", "DELETEs");
+
+		for (Variant variant : Variant.values()) {
+			EntityManagerFactory emf = PersistenceUnits.createQuiet("private-owned-delete-" + variant);
+			try {
+				StatementCapture capture = StatementCapture.install(emf);
+				long firstId = 1;
+				long[] removeNanos = new long[rounds];
+				long[] commitNanos = new long[rounds];
+				Recording recording = capture.start();
+				run(emf, variant, firstId, roots, children, new long[1], new long[1], 0);
+				recording.close();
+				for (int round = 0; round < rounds; round++) {
+					firstId += roots;
+					run(emf, variant, firstId, roots, children, removeNanos, commitNanos, round);
+				}
+
+				long remove = BenchmarkSupport.median(removeNanos);
+				long commit = BenchmarkSupport.median(commitNanos);
+				System.out.printf("%-14s | %10.1f %10.1f %10.1f | %8d %8d%n", variant, remove / 1e6, commit / 1e6,
+						(remove + commit) / 1e6, recording.count(StatementKind.SELECT),
+						recording.count(StatementKind.DELETE));
+			} finally {
+				emf.close();
+			}
+		}
+	}
+
+	private static void run(EntityManagerFactory emf, Variant variant, long firstId, int roots, int children,
+			long[] removeNanos, long[] commitNanos, int round) {
+		SampleGraphs.populate(emf, firstId, roots, children, 5);
+
+		EntityManager em = emf.createEntityManager();
+		em.getTransaction().begin();
+		List<RootEntity> loaded = new ArrayList<>();
+		for (long id = firstId; id < firstId + roots; id++) {
+			RootEntity root = em.find(RootEntity.class, id);
+			em.remove(root.getOwningAssoc());
+			if (variant == Variant.CASCADE_LOADED || variant == Variant.BULK_LOADED) {
+				root.getRefCollectionAssoc().size();
+				root.getKeyCollectionAssoc().size();
+			}
+			loaded.add(root);
+		}
+		em.flush();
+
+		long start = System.nanoTime();
+		if (variant == Variant.CASCADE || variant == Variant.CASCADE_LOADED) {
+			for (RootEntity root : loaded) {
+				em.remove(root);
+			}
+		} else {
+			int deleted = new PrivateOwnedBulkDelete(emf).remove(em, loaded);
+			if (deleted != 2 * roots * children) {
+				throw new IllegalStateException("Expected " + 2 * roots * children + " children, deleted " + deleted);
+			}
+		}
+		long removed = System.nanoTime();
+		em.getTransaction().commit();
+		long committed = System.nanoTime();
+		em.close();
+
+		removeNanos[round] = removed - start;
+		commitNanos[round] = committed - removed;
+		check(emf, firstId, roots);
+	}
+
+	private static void check(EntityManagerFactory emf, long firstId, int roots) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			long left = ((Number) em.createNativeQuery("SELECT COUNT(*) FROM REF_COLLECTION_ASSOC WHERE PARENT_ID BETWEEN ? AND ?")
+					.setParameter(1, firstId).setParameter(2, firstId + roots - 1).getSingleResult()).longValue()
+					+ ((Number) em.createNativeQuery("SELECT COUNT(*) FROM KEY_COLLECTION_ASSOC WHERE PARENT_ID BETWEEN ? AND ?")
+							.setParameter(1, firstId).setParameter(2, firstId + roots - 1).getSingleResult()).longValue();
+			if (left != 0) {
+				throw new IllegalStateException(left + " children left behind");
+			}
+		} finally {
+			em.close();
+		}
+	}
+
+}
@@ -0,0 +1,179 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.FetchGroup;
+
+import com.test.eclipselink.jpa.fetch_state.entities.OwnedAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.ReferenceMappingCollectionAssoc;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+
+/**
+ * Measures what woven RootEntity graphs cost in memory under different fetch plans.
+ *
+ * For every plan, N roots are loaded into a fresh EntityManager and two figures are reported:
+ * 		-retained heap, measured as the difference in used heap (after full collections) before and after loading,
+ * 			while the EntityManager and the loaded roots are still referenced; this is the whole persistence context
+ * 			(identity maps, change sets, value holders...) and is the figure to size EntityManager lifetimes with
+ * 		-a heap walk of the loaded roots (see ObjectGraphSizer) broken down by RootEntity field, which shows where
+ * 			the bytes go: the woven _persistence_* fields, the value holders, FetchGroups, change listeners and the
+ * 			associated entities themselves
+ *
+ * The DETACHED plan loads the full graph and closes the EntityManager before measuring, so its retained heap is
+ * what detached graphs cost once the persistence context is gone.
+ *
+ * Arguments: [roots, default 2000] [children per collection, default 4] [rounds, default 3]
+ *
+ */
+public class RetainedHeapBenchmark {
+
+	enum FetchPlan {
+
+		DEFAULT {
+			@Override
+			List<RootEntity> load(EntityManager em, int roots) {
+				return rootsQuery(em, roots).getResultList();
+			}
+		},
+
+		CUSTOM_FETCH_GROUP {
+			@Override
+			List<RootEntity> load(EntityManager em, int roots) {
+				FetchGroup fetchGroup = new FetchGroup();
+				fetchGroup.addAttribute("data1");
+				return rootsQuery(em, roots).setHint(QueryHints.FETCH_GROUP, fetchGroup).getResultList();
+			}
+		},
+
+		FULL_GRAPH {
+			@Override
+			List<RootEntity> load(EntityManager em, int roots) {
+				TypedQuery<RootEntity> query = rootsQuery(em, roots);
+				for (String association : Arrays.asList("ownedAssoc", "owningAssoc", "keyCollectionAssoc",
+						"refCollectionAssoc")) {
+					query.setHint(QueryHints.BATCH, "o." + association);
+				}
+				List<RootEntity> result = query.getResultList();
+				for (RootEntity root : result) {
+					OwnedAssoc ownedAssoc = root.getOwnedAssoc();
+					//data1 is a LAZY basic
+					ownedAssoc.getData1();
+					root.getOwningAssoc().getOwnedParent();
+					root.getKeyCollectionAssoc().size();
+					for (ReferenceMappingCollectionAssoc child : root.getRefCollectionAssoc()) {
+						child.getParent();
+					}
+				}
+				return result;
+			}
+
+			@Override
+			int entitiesPerRoot(int childrenPerCollection) {
+				return 3 + 2 * childrenPerCollection;
+			}
+		},
+
+		DETACHED {
+			@Override
+			List<RootEntity> load(EntityManager em, int roots) {
+				List<RootEntity> result = FULL_GRAPH.load(em, roots);
+				em.close();
+				return result;
+			}
+
+			@Override
+			int entitiesPerRoot(int childrenPerCollection) {
+				return FULL_GRAPH.entitiesPerRoot(childrenPerCollection);
+			}
+		};
+
+		abstract List<RootEntity> load(EntityManager em, int roots);
+
+		int entitiesPerRoot(int childrenPerCollection) {
+			return 1;
+		}
+
+		private static TypedQuery<RootEntity> rootsQuery(EntityManager em, int roots) {
+			return em
+					.createQuery("SELECT o FROM RootEntity o WHERE o.id BETWEEN 1 AND :max ORDER BY o.id",
+							RootEntity.class)
+					.setParameter("max", (long) roots);
+		}
+	}
+
+	public static void main(String[] args) {
+		int roots = BenchmarkSupport.intArg(args, 0, 2000);
+		int children = BenchmarkSupport.intArg(args, 1, 4);
+		int rounds = BenchmarkSupport.intArg(args, 2, 3);
+
+		EntityManagerFactory emf = PersistenceUnits.createQuiet("retained-heap");
+		try {
+			SampleGraphs.populate(emf, roots, children, 500);
+			System.out.printf("%d roots, %d children per collection, %d rounds (median reported)%n%n", roots, children,
+					rounds);
+
+			for (FetchPlan plan : FetchPlan.values()) {
+				//warm up class loading, descriptor initialization and the query cache
+				measure(emf, plan, Math.min(roots, 100));
+
+				long[] retained = new long[rounds];
+				Measurement last = null;
+				for (int i = 0; i < rounds; i++) {
+					last = measure(emf, plan, roots);
+					retained[i] = last.retainedBytes;
+				}
+				report(plan, roots, plan.entitiesPerRoot(children), BenchmarkSupport.median(retained), last.sizer);
+			}
+		} finally {
+			emf.close();
+		}
+	}
+
+	private static Measurement measure(EntityManagerFactory emf, FetchPlan plan, int roots) {
+		long before = BenchmarkSupport.usedHeapAfterGc();
+		EntityManager em = emf.createEntityManager();
+		List<RootEntity> loaded = plan.load(em, roots);
+		long after = BenchmarkSupport.usedHeapAfterGc();
+
+		ObjectGraphSizer sizer = new ObjectGraphSizer();
+		sizer.walk(loaded);
+		if (em.isOpen()) {
+			em.close();
+		}
+		return new Measurement(after - before, sizer);
+	}
+
+	private static void report(FetchPlan plan, int roots, int entitiesPerRoot, long retained, ObjectGraphSizer sizer) {
+		System.out.printf("== %s%n", plan);
+		System.out.printf("  retained heap (persistence context): %,d bytes%n", retained);
+		System.out.printf("  retained heap per root graph:        %,d bytes%n", retained / roots);
+		System.out.printf("  retained heap per entity:            %,d bytes (%d entities per root)%n",
+				retained / ((long) roots * entitiesPerRoot), entitiesPerRoot);
+		System.out.printf("  reachable from roots (heap walk):    %,d bytes per root%n", sizer.totalBytes() / roots);
+		for (Map.Entry<String, Long> entry : sizer.bytesByField().entrySet()) {
+			System.out.printf("    %-45s %,10d bytes per root%n", entry.getKey(), entry.getValue() / roots);
+		}
+		System.out.println();
+	}
+
+	private static final class Measurement {
+
+		private final long retainedBytes;
+		private final ObjectGraphSizer sizer;
+
+		private Measurement(long retainedBytes, ObjectGraphSizer sizer) {
+			this.retainedBytes = retainedBytes;
+			this.sizer = sizer;
+		}
+	}
+
+}
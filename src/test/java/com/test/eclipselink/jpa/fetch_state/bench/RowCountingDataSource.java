@@ -0,0 +1,142 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * A DriverManager based DataSource that counts the rows, and the column values, read through the result sets of its
+ * connections: what a query transferred from the database, which StatementCapture cannot tell. Handed to a factory as
+ * its javax.persistence.nonJtaDataSource.
+ *
+ */
+class RowCountingDataSource implements DataSource {
+
+	private final String url;
+	private final String user;
+	private final String password;
+
+	private final AtomicLong rows = new AtomicLong();
+	private final AtomicLong values = new AtomicLong();
+
+	RowCountingDataSource(String url, String user, String password) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+	}
+
+	long getRows() {
+		return rows.get();
+	}
+
+	long getValues() {
+		return values.get();
+	}
+
+	void reset() {
+		rows.set(0);
+		values.set(0);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return getConnection(user, password);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return wrap(Connection.class, DriverManager.getConnection(url, username, password));
+	}
+
+	/**
+	 * Wraps connections, statements and result sets, whatever interface they are returned as.
+	 */
+	private <T> T wrap(Class<T> type, T target) {
+		int[] columns = { -1 };
+		InvocationHandler handler = (proxy, method, args) -> {
+			Object result;
+			try {
+				result = method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+			if (target instanceof ResultSet && "next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+				if (columns[0] < 0) {
+					columns[0] = ((ResultSet) target).getMetaData().getColumnCount();
+				}
+				rows.incrementAndGet();
+				values.addAndGet(columns[0]);
+			}
+			return wrapResult(method, result);
+		};
+		return type.cast(Proxy.newProxyInstance(RowCountingDataSource.class.getClassLoader(), new Class<?>[] { type },
+				handler));
+	}
+
+	private Object wrapResult(Method method, Object result) {
+		Class<?> type = method.getReturnType();
+		if (result == null || !type.isInterface()) {
+			return result;
+		}
+		if (ResultSet.class.isAssignableFrom(type) || Statement.class.isAssignableFrom(type)) {
+			return wrapAs(type, result);
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T wrapAs(Class<T> type, Object result) {
+		return wrap(type, (T) result);
+	}
+
+	@Override
+	public PrintWriter getLogWriter() {
+		return DriverManager.getLogWriter();
+	}
+
+	@Override
+	public void setLogWriter(PrintWriter out) {
+		DriverManager.setLogWriter(out);
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) {
+		DriverManager.setLoginTimeout(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() {
+		return DriverManager.getLoginTimeout();
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException("Not a wrapper of " + iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) {
+		return iface.isInstance(this);
+	}
+
+}
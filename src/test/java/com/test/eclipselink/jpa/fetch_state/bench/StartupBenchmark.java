@@ -0,0 +1,219 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+import com.test.eclipselink.jpa.fetch_state.bootstrap.FingerprintedProjectCache;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+
+/**
+ * Measures the start of the "test" persistence unit, from Persistence.createEntityManagerFactory to the first
+ * EntityManager, in a new JVM per start (the class loading of a first start is most of what a short-lived process
+ * pays), with:
+ * 		-persistence.xml as it is: FINEST logging, tables created
+ * 		-logging restricted to warnings, tables created
+ * 		-the same with the project cache of FingerprintedProjectCache, on the start that writes it and on the starts
+ * 			that read it
+ * 		-no DDL generation, without and with the project cache (a database whose tables already exist)
+ *
+ * Every start is split, through the login events of the session, into:
+ * 		-metadata: up to the login; the processing of the annotations (or the reading of the cached project), the
+ * 			customizers, and the class loading that goes with them
+ * 		-login: connecting and initializing the descriptors
+ * 		-DDL: the rest, mostly the generation of the tables
+ * Printed are the medians over the runs of each, of the whole start, and of the JVM (from its launch to its exit),
+ * along with the size of the cache file. The JVM options given after the number of runs are passed to the measured
+ * JVMs, to compare with the options of the containers (-XX:TieredStopAtLevel=1, a class data sharing archive...).
+ *
+ * Arguments: [runs per configuration, default 5] [JVM options...]
+ *
+ */
+public class StartupBenchmark {
+
+	private static final String RESULT_PREFIX = "startup:";
+
+	/**
+	 * Records when the login of the session starts and ends; registered through eclipselink.session-event-listener in
+	 * the measured JVM.
+	 */
+	public static class LoginEvents extends SessionEventAdapter {
+
+		static volatile long preLogin;
+		static volatile long postLogin;
+
+		@Override
+		public void preLogin(SessionEvent event) {
+			preLogin = System.nanoTime();
+		}
+
+		@Override
+		public void postLogin(SessionEvent event) {
+			postLogin = System.nanoTime();
+		}
+	}
+
+	private enum Configuration {
+
+		PERSISTENCE_XML(false, true, false, false),
+
+		QUIET(true, true, false, false),
+
+		QUIET_CACHE_WRITE(true, true, true, false),
+
+		QUIET_CACHE_READ(true, true, true, true),
+
+		QUIET_NO_DDL(true, false, false, false),
+
+		QUIET_NO_DDL_CACHE_READ(true, false, true, true);
+
+		private final boolean quiet;
+		private final boolean ddl;
+		private final boolean cache;
+		private final boolean cached;
+
+		Configuration(boolean quiet, boolean ddl, boolean cache, boolean cached) {
+			this.quiet = quiet;
+			this.ddl = ddl;
+			this.cache = cache;
+			this.cached = cached;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("--start")) {
+			start(Configuration.valueOf(args[1]), args.length > 2 ? new File(args[2]) : null);
+			return;
+		}
+		int runs = BenchmarkSupport.intArg(args, 0, 5);
+		List<String> jvmOptions = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			jvmOptions.add(args[i]);
+		}
+		File cache = File.createTempFile("startup-benchmark", ".project");
+		try {
+			System.out.printf("%d runs per configuration, one JVM per run%s (medians)%n%n", runs,
+					jvmOptions.isEmpty() ? "" : " with " + String.join(" ", jvmOptions));
+			System.out.printf("%-24s | %11s %8s %8s %10s | %8s | %10s%n", "configuration", "metadata ms", "login ms",
+					"DDL ms", "start ms", "JVM ms", "cache KB");
+			for (Configuration configuration : Configuration.values()) {
+				long[][] phases = new long[5][runs];
+				for (int run = 0; run < runs; run++) {
+					if (configuration.cache && !configuration.cached) {
+						Files.deleteIfExists(cache.toPath());
+					} else if (configuration.cached && !cache.isFile()) {
+						launch(Configuration.QUIET_CACHE_WRITE, cache, jvmOptions);
+					}
+					long[] measured = launch(configuration, configuration.cache ? cache : null, jvmOptions);
+					for (int phase = 0; phase < phases.length; phase++) {
+						phases[phase][run] = measured[phase];
+					}
+				}
+				System.out.printf("%-24s | %11.1f %8.1f %8.1f %10.1f | %8.1f | %10s%n", configuration,
+						BenchmarkSupport.median(phases[0]) / 1e6, BenchmarkSupport.median(phases[1]) / 1e6,
+						BenchmarkSupport.median(phases[2]) / 1e6, BenchmarkSupport.median(phases[3]) / 1e6,
+						BenchmarkSupport.median(phases[4]) / 1e6,
+						configuration.cache && cache.isFile() ? String.format("%.1f", cache.length() / 1024.0) : "-");
+			}
+		} finally {
+			Files.deleteIfExists(cache.toPath());
+		}
+	}
+
+	/**
+	 * Runs one start in a new JVM: metadata, login, DDL, start and JVM nanos.
+	 */
+	private static long[] launch(Configuration configuration, File cache, List<String> jvmOptions)
+			throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		command.addAll(jvmOptions);
+		command.add("-cp");
+		command.add(classPath());
+		command.add(StartupBenchmark.class.getName());
+		command.add("--start");
+		command.add(configuration.name());
+		if (cache != null) {
+			command.add(cache.getPath());
+		}
+		long launched = System.nanoTime();
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		String result = null;
+		List<String> output = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (line.startsWith(RESULT_PREFIX)) {
+					result = line.substring(RESULT_PREFIX.length()).trim();
+				} else if (output.size() < 50) {
+					output.add(line);
+				}
+			}
+		}
+		int exit = process.waitFor();
+		long jvm = System.nanoTime() - launched;
+		if (exit != 0 || result == null) {
+			throw new IllegalStateException(configuration + " failed (exit " + exit + "):\n" + String.join("\n", output));
+		}
+		String[] values = result.split(" ");
+		return new long[] { Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]),
+				Long.parseLong(values[3]), jvm };
+	}
+
+	/**
+	 * The class path of this class, which exec:java gives through a class loader rather than java.class.path.
+	 */
+	private static String classPath() {
+		ClassLoader loader = StartupBenchmark.class.getClassLoader();
+		if (loader instanceof URLClassLoader) {
+			StringBuilder classPath = new StringBuilder();
+			for (URL url : ((URLClassLoader) loader).getURLs()) {
+				if (classPath.length() > 0) {
+					classPath.append(File.pathSeparatorChar);
+				}
+				try {
+					classPath.append(new File(url.toURI()).getPath());
+				} catch (Exception e) {
+					classPath.append(url.getPath());
+				}
+			}
+			return classPath.toString();
+		}
+		return System.getProperty("java.class.path");
+	}
+
+	private static void start(Configuration configuration, File cache) {
+		long start = System.nanoTime();
+		Map<String, Object> properties = configuration.quiet ? PersistenceUnits.quietProperties("startup")
+				: PersistenceUnits.properties("startup");
+		properties.put(PersistenceUnitProperties.SESSION_EVENT_LISTENER_CLASS, LoginEvents.class.getName());
+		if (!configuration.ddl) {
+			properties.put(PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.NONE);
+		}
+		if (cache != null) {
+			properties.putAll(FingerprintedProjectCache.properties(cache));
+		}
+		EntityManagerFactory emf = PersistenceUnits.create(properties);
+		emf.createEntityManager().close();
+		long end = System.nanoTime();
+		emf.close();
+		System.out.println(RESULT_PREFIX + " " + (LoginEvents.preLogin - start) + " "
+				+ (LoginEvents.postLogin - LoginEvents.preLogin) + " " + (end - LoginEvents.postLogin) + " "
+				+ (end - start));
+	}
+
+}
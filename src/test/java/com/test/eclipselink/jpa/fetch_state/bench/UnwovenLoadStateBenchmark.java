@@ -0,0 +1,156 @@
+package com.test.eclipselink.jpa.fetch_state.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceUnitUtil;
+
+import org.eclipse.persistence.internal.jpa.EntityManagerFactoryImpl;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntity;
+import com.test.eclipselink.jpa.fetch_state.entities.RootEntityLoadState;
+import com.test.eclipselink.jpa.fetch_state.loadstate.LoadStateInspector;
+import com.test.eclipselink.jpa.fetch_state.loadstate.UnwovenLoadState;
+import com.test.eclipselink.jpa.fetch_state.support.PersistenceUnits;
+import com.test.eclipselink.jpa.fetch_state.support.SampleGraphs;
+import com.test.eclipselink.jpa.fetch_state.unwoven.UnwovenChild;
+import com.test.eclipselink.jpa.fetch_state.unwoven.UnwovenRoot;
+
+/**
+ * Compares the cost of one "is this collection loaded?" check on woven entities (RootEntity.keyCollectionAssoc) and
+ * on entities that were never woven (UnwovenRoot.children, of the "unwoven" persistence unit of the test sources):
+ * 		-WOVEN_GENERATED: RootEntityLoadState, the accessors generated over WovenLoadState
+ * 		-WOVEN_INSPECTOR: LoadStateInspector on the woven entity
+ * 		-UNWOVEN_STATE: UnwovenLoadState by attribute index, through its cached field handles
+ * 		-UNWOVEN_INSPECTOR: LoadStateInspector on the unwoven entity, which delegates to UnwovenLoadState
+ * 		-UNWOVEN_REFLECTION: EntityManagerFactoryImpl.isLoaded with the mapping looked up beforehand, which reads the
+ * 			attribute through the mapping's reflective accessor; what LoadStateInspector did before
+ * 		-UNWOVEN_UNIT_UTIL: PersistenceUnitUtil.isLoaded, the standard JPA API
+ * Half of the entities have their collection loaded. Figures are the medians of the measured rounds, in nanoseconds
+ * per check, single-threaded; see LoadStateStressBenchmark for contention.
+ *
+ * Arguments: [entities, default 1000] [checks per round, default 10000000] [rounds, default 5]
+ *
+ */
+public class UnwovenLoadStateBenchmark {
+
+	private enum Path {
+		WOVEN_GENERATED, WOVEN_INSPECTOR, UNWOVEN_STATE, UNWOVEN_INSPECTOR, UNWOVEN_REFLECTION, UNWOVEN_UNIT_UTIL
+	}
+
+	public static void main(String[] args) {
+		int entities = BenchmarkSupport.intArg(args, 0, 1000);
+		int checks = BenchmarkSupport.intArg(args, 1, 10000000);
+		int rounds = BenchmarkSupport.intArg(args, 2, 5);
+
+		EntityManagerFactory woven = PersistenceUnits.createQuiet("unwoven-load-state-benchmark");
+		EntityManagerFactory unwoven = Persistence.createEntityManagerFactory("unwoven");
+		EntityManager wovenEm = woven.createEntityManager();
+		EntityManager unwovenEm = unwoven.createEntityManager();
+		try {
+			SampleGraphs.populate(woven, entities, 1, 500);
+			populateUnwoven(unwoven, entities);
+			Object[] wovenRoots = load(wovenEm, RootEntity.class, entities);
+			Object[] unwovenRoots = load(unwovenEm, UnwovenRoot.class, entities);
+			for (int i = 0; i < entities; i += 2) {
+				((RootEntity) wovenRoots[i]).getKeyCollectionAssoc().size();
+				((UnwovenRoot) unwovenRoots[i]).getChildren().size();
+			}
+
+			System.out.printf("%d entities, %d checks per round, %d rounds (medians)%n%n", entities, checks, rounds);
+			System.out.printf("%-20s | %8s | %s%n", "path", "ns/check", "loaded");
+			long[] reference = null;
+			for (Path path : Path.values()) {
+				Check check = check(path, woven, unwoven);
+				Object[] roots = path.name().startsWith("WOVEN") ? wovenRoots : unwovenRoots;
+				run(check, roots, checks);
+				long[] nanos = new long[rounds];
+				long loaded = 0;
+				for (int round = 0; round < rounds; round++) {
+					long start = System.nanoTime();
+					loaded = run(check, roots, checks);
+					nanos[round] = System.nanoTime() - start;
+				}
+				long median = BenchmarkSupport.median(nanos);
+				if (reference == null) {
+					reference = new long[] { median };
+				}
+				System.out.printf("%-20s | %8.2f | %d (%.1fx %s)%n", path, (double) median / checks, loaded,
+						(double) median / reference[0], Path.WOVEN_GENERATED);
+			}
+		} finally {
+			wovenEm.close();
+			unwovenEm.close();
+			woven.close();
+			unwoven.close();
+		}
+	}
+
+	private interface Check {
+		boolean isLoaded(Object entity);
+	}
+
+	private static Check check(Path path, EntityManagerFactory woven, EntityManagerFactory unwoven) {
+		switch (path) {
+		case WOVEN_GENERATED:
+			return entity -> RootEntityLoadState.isLoaded((RootEntity) entity, RootEntityLoadState.KEY_COLLECTION_ASSOC);
+		case WOVEN_INSPECTOR:
+			LoadStateInspector wovenInspector = new LoadStateInspector(woven);
+			return entity -> wovenInspector.isLoaded(entity, "keyCollectionAssoc");
+		case UNWOVEN_STATE:
+			UnwovenLoadState state = UnwovenLoadState.of(UnwovenRoot.class);
+			int children = state.indexOf("children");
+			return entity -> state.isLoaded(entity, children);
+		case UNWOVEN_INSPECTOR:
+			LoadStateInspector unwovenInspector = new LoadStateInspector(unwoven);
+			return entity -> unwovenInspector.isLoaded(entity, "children");
+		case UNWOVEN_REFLECTION:
+			DatabaseMapping mapping = ((AbstractSession) JpaHelper.getServerSession(unwoven))
+					.getDescriptor(UnwovenRoot.class).getMappingForAttributeName("children");
+			return entity -> EntityManagerFactoryImpl.isLoaded(entity, "children", mapping);
+		default:
+			PersistenceUnitUtil util = unwoven.getPersistenceUnitUtil();
+			return entity -> util.isLoaded(entity, "children");
+		}
+	}
+
+	private static long run(Check check, Object[] roots, int checks) {
+		long loaded = 0;
+		for (int i = 0; i < checks; i++) {
+			if (check.isLoaded(roots[i % roots.length])) {
+				loaded++;
+			}
+		}
+		return loaded;
+	}
+
+	private static void populateUnwoven(EntityManagerFactory emf, int roots) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			for (long id = 1; id <= roots; id++) {
+				UnwovenRoot root = new UnwovenRoot(id, "Root:" + id + "L:Data1");
+				em.persist(root);
+				em.persist(new UnwovenChild(id, "Child:" + id + "L:Data1", root));
+			}
+			em.getTransaction().commit();
+		} finally {
+			em.close();
+		}
+	}
+
+	private static Object[] load(EntityManager em, Class<?> entityClass, int entities) {
+		List<Object> loaded = new ArrayList<>();
+		for (long id = 1; id <= entities; id++) {
+			loaded.add(em.find(entityClass, id));
+		}
+		return loaded.toArray();
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.test.eclipselink.jpa.fetch_state.routing;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a local HSQLDB database in sync with another one, as a stand-in for real replication in the tests of
+ * ReadReplicaPolicy: every {@link #sync()} copies the schema of the primary's PUBLIC schema the first time, and all
+ * the rows of its tables every time, in a single replica transaction, so replica readers see either the previous or
+ * the new copy.
+ *
+ * The lag is whatever the caller makes it: sync() by hand for deterministic tests, or {@link #start(long)} for a
+ * background copy every so many milliseconds. The rows of the primary are read table by table under READ COMMITTED,
+ * so a copy taken while the primary commits may mix transactions; good enough for a stub, unlike a real replica.
+ *
+ * Referential integrity is switched off on the replica, which only ever receives copies of consistent data.
+ *
+ */
+public final class ReplicationStub implements AutoCloseable {
+
+	private final String primaryUrl;
+	private final String replicaUrl;
+	private final String user;
+	private final String password;
+	private final AtomicLong syncs = new AtomicLong();
+	private boolean schemaCopied;
+	private ScheduledExecutorService scheduler;
+
+	public ReplicationStub(String primaryUrl, String replicaUrl, String user, String password) {
+		this.primaryUrl = primaryUrl;
+		this.replicaUrl = replicaUrl;
+		this.user = user;
+		this.password = password;
+	}
+
+	/**
+	 * Copies the primary to the replica.
+	 *
+	 * @return the number of rows copied
+	 */
+	public synchronized long sync() {
+		try (Connection primary = DriverManager.getConnection(primaryUrl, user, password);
+				Connection replica = DriverManager.getConnection(replicaUrl, user, password)) {
+			if (!schemaCopied) {
+				copySchema(primary, replica);
+				schemaCopied = true;
+			}
+			replica.setAutoCommit(false);
+			long rows = 0;
+			try {
+				for (String table : tables(primary)) {
+					rows += copyRows(primary, replica, table);
+				}
+				replica.commit();
+			} catch (SQLException | RuntimeException e) {
+				replica.rollback();
+				throw e;
+			}
+			syncs.incrementAndGet();
+			return rows;
+		} catch (SQLException e) {
+			throw new IllegalStateException("Cannot replicate " + primaryUrl + " to " + replicaUrl, e);
+		}
+	}
+
+	/**
+	 * Syncs in the background every intervalMillis, until closed.
+	 */
+	public synchronized void start(long intervalMillis) {
+		if (scheduler != null) {
+			throw new IllegalStateException("Already started");
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "replication-stub");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::sync, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * The number of completed syncs.
+	 */
+	public long getSyncs() {
+		return syncs.get();
+	}
+
+	@Override
+	public void close() {
+		ScheduledExecutorService scheduler;
+		synchronized (this) {
+			scheduler = this.scheduler;
+			this.scheduler = null;
+		}
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			try {
+				scheduler.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Replays the table, index and constraint definitions of the primary's SCRIPT on the replica.
+	 */
+	private static void copySchema(Connection primary, Connection replica) throws SQLException {
+		List<String> definitions = new ArrayList<>();
+		try (Statement statement = primary.createStatement(); ResultSet script = statement.executeQuery("SCRIPT")) {
+			while (script.next()) {
+				String line = script.getString(1);
+				if (line.startsWith("CREATE MEMORY TABLE PUBLIC.") || line.startsWith("CREATE CACHED TABLE PUBLIC.")
+						|| line.startsWith("CREATE INDEX ") || line.startsWith("CREATE UNIQUE INDEX ")
+						|| line.startsWith("ALTER TABLE PUBLIC.") || line.startsWith("CREATE SEQUENCE PUBLIC.")) {
+					definitions.add(line);
+				}
+			}
+		}
+		try (Statement statement = replica.createStatement()) {
+			statement.execute("SET DATABASE REFERENTIAL INTEGRITY FALSE");
+			for (String definition : definitions) {
+				statement.execute(definition);
+			}
+		}
+	}
+
+	private static List<String> tables(Connection primary) throws SQLException {
+		List<String> tables = new ArrayList<>();
+		try (Statement statement = primary.createStatement();
+				ResultSet resultSet = statement.executeQuery("SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES"
+						+ " WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_TYPE = 'BASE TABLE' ORDER BY TABLE_NAME")) {
+			while (resultSet.next()) {
+				tables.add(resultSet.getString(1));
+			}
+		}
+		return tables;
+	}
+
+	private static long copyRows(Connection primary, Connection replica, String table) throws SQLException {
+		try (Statement delete = replica.createStatement()) {
+			delete.executeUpdate("DELETE FROM PUBLIC.\"" + table + "\"");
+		}
+		long rows = 0;
+		try (Statement select = primary.createStatement();
+				ResultSet resultSet = select.executeQuery("SELECT * FROM PUBLIC.\"" + table + "\"")) {
+			int columns = resultSet.getMetaData().getColumnCount();
+			StringBuilder insert = new StringBuilder("INSERT INTO PUBLIC.\"").append(table).append("\" VALUES (");
+			for (int i = 0; i < columns; i++) {
+				insert.append(i == 0 ? "?" : ", ?");
+			}
+			try (PreparedStatement statement = replica.prepareStatement(insert.append(')').toString())) {
+				while (resultSet.next()) {
+					for (int i = 1; i <= columns; i++) {
+						statement.setObject(i, resultSet.getObject(i));
+					}
+					statement.addBatch();
+					if (++rows % 500 == 0) {
+						statement.executeBatch();
+					}
+				}
+				statement.executeBatch();
+			}
+		}
+		return rows;
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.test.eclipselink.jpa.fetch_state.sql;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One round trip to the database as seen by StatementCapture: the SQL as EclipseLink logged it (with its bind
+ * parameters, when parameter logging is on), its kind, the table it reads from or writes to, and the number of
+ * parameter rows it was executed with - more than one for batched writes.
+ */
+public final class SqlStatement {
+
+	private static final Pattern TABLE = Pattern
+			.compile("(?is)^\\s*(?:SELECT\\s.*?\\sFROM|INSERT\\s+INTO|UPDATE|DELETE\\s+FROM)\\s+([\\w.\"]+)");
+
+	private final StatementKind kind;
+	private final String table;
+	private final String sql;
+	private final int rows;
+
+	SqlStatement(String sql, int rows) {
+		this.kind = StatementKind.of(sql);
+		this.table = tableOf(sql);
+		this.sql = sql;
+		this.rows = rows;
+	}
+
+	private static String tableOf(String sql) {
+		Matcher matcher = TABLE.matcher(sql);
+		return matcher.find() ? matcher.group(1).replace("\"", "").toUpperCase(Locale.ROOT) : "";
+	}
+
+	public StatementKind getKind() {
+		return kind;
+	}
+
+	/**
+	 * The first table after FROM, INTO or UPDATE, upper case; empty for OTHER statements.
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	@Override
+	public String toString() {
+		String oneLine = sql.replaceAll("\\s*\\n\\s*", " ");
+		return rows > 1 ? oneLine + " (batch of " + rows + ")" : oneLine;
+	}
+
+}
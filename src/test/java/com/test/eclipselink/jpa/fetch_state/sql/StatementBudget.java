@@ -0,0 +1,230 @@
+package com.test.eclipselink.jpa.fetch_state.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture.Recording;
+
+/**
+ * The SQL statements a scenario is allowed to cost, per kind and optionally per table, such as "find RootEntity with
+ * a custom FetchGroup = exactly 1 SELECT":
+ *
+ * <pre>
+ * StatementBudget.named("find RootEntity with a custom FetchGroup").exactly(StatementKind.SELECT, 1)
+ * </pre>
+ *
+ * A kind that is not mentioned at all is not allowed: the budget above fails on any INSERT, UPDATE or DELETE. A kind
+ * that is only limited per table is limited to the sum of its table limits, so statements on other tables fail it.
+ * OTHER statements (sequences, DDL) are not budgeted.
+ *
+ * When a budget is not met, {@link #verify(List)} throws an AssertionError listing the budget next to what was
+ * executed, with every statement that went over a limit marked with a "+".
+ *
+ * Budgets are immutable; every method that adds a limit returns a new budget.
+ *
+ */
+public final class StatementBudget {
+
+	private final String scenario;
+	private final List<Limit> limits;
+
+	private StatementBudget(String scenario, List<Limit> limits) {
+		this.scenario = scenario;
+		this.limits = Collections.unmodifiableList(limits);
+	}
+
+	/**
+	 * An empty budget, which allows no SELECT, INSERT, UPDATE or DELETE at all.
+	 */
+	public static StatementBudget named(String scenario) {
+		return new StatementBudget(scenario, new ArrayList<Limit>());
+	}
+
+	public StatementBudget exactly(StatementKind kind, int count) {
+		return with(new Limit(kind, null, count, count));
+	}
+
+	public StatementBudget exactly(StatementKind kind, String table, int count) {
+		return with(new Limit(kind, table, count, count));
+	}
+
+	public StatementBudget atMost(StatementKind kind, int count) {
+		return with(new Limit(kind, null, 0, count));
+	}
+
+	public StatementBudget atMost(StatementKind kind, String table, int count) {
+		return with(new Limit(kind, table, 0, count));
+	}
+
+	private StatementBudget with(Limit limit) {
+		if (limit.kind == StatementKind.OTHER) {
+			throw new IllegalArgumentException("OTHER statements are not budgeted");
+		}
+		List<Limit> limits = new ArrayList<>();
+		for (Limit existing : this.limits) {
+			if (existing.kind != limit.kind || !equal(existing.table, limit.table)) {
+				limits.add(existing);
+			}
+		}
+		limits.add(limit);
+		return new StatementBudget(scenario, limits);
+	}
+
+	public String getScenario() {
+		return scenario;
+	}
+
+	public void verify(Recording recording) {
+		verify(recording.getStatements());
+	}
+
+	/**
+	 * @throws AssertionError
+	 *             describing the budget, the statements executed and the ones over budget, if the budget is not met
+	 */
+	public void verify(List<SqlStatement> statements) {
+		List<Limit> effective = effectiveLimits();
+		Map<Limit, Integer> counts = new HashMap<>();
+		List<Boolean> overBudget = new ArrayList<>();
+		for (SqlStatement statement : statements) {
+			boolean over = false;
+			for (Limit limit : effective) {
+				if (limit.matches(statement)) {
+					Integer count = counts.get(limit);
+					count = count == null ? 1 : count + 1;
+					counts.put(limit, count);
+					over |= count > limit.max;
+				}
+			}
+			overBudget.add(over);
+		}
+
+		boolean met = true;
+		for (Limit limit : effective) {
+			met &= limit.allows(count(counts, limit));
+		}
+		if (!met) {
+			throw new AssertionError(report(effective, counts, statements, overBudget));
+		}
+	}
+
+	/**
+	 * The declared limits plus the implicit ones: a kind limited per table only is limited to the sum of its table
+	 * limits, and a kind not mentioned at all is limited to none.
+	 */
+	private List<Limit> effectiveLimits() {
+		List<Limit> effective = new ArrayList<>();
+		for (StatementKind kind : StatementKind.values()) {
+			if (kind == StatementKind.OTHER) {
+				continue;
+			}
+			Limit kindLimit = null;
+			int min = 0;
+			int max = 0;
+			List<Limit> tableLimits = new ArrayList<>();
+			for (Limit limit : limits) {
+				if (limit.kind != kind) {
+					continue;
+				}
+				if (limit.table == null) {
+					kindLimit = limit;
+				} else {
+					tableLimits.add(limit);
+					min += limit.min;
+					max += limit.max;
+				}
+			}
+			effective.add(kindLimit != null ? kindLimit : new Limit(kind, null, min, max));
+			effective.addAll(tableLimits);
+		}
+		return effective;
+	}
+
+	private String report(List<Limit> effective, Map<Limit, Integer> counts, List<SqlStatement> statements,
+			List<Boolean> overBudget) {
+		StringBuilder report = new StringBuilder();
+		report.append("Statement budget of '").append(scenario).append("' not met\n");
+		report.append(String.format("  %-36s %-14s %s%n", "budget", "", "actual"));
+		for (Limit limit : effective) {
+			int count = count(counts, limit);
+			if (limit.max == 0 && count == 0) {
+				continue;
+			}
+			report.append(String.format("  %-36s %-14s %-6d %s%n", limit.label(), limit.describe(), count,
+					limit.allows(count) ? "" : "<<"));
+		}
+		report.append("  executed:\n");
+		if (statements.isEmpty()) {
+			report.append("    (nothing)\n");
+		}
+		for (int i = 0; i < statements.size(); i++) {
+			SqlStatement statement = statements.get(i);
+			report.append(String.format("  %s %3d %-30s %s%n", overBudget.get(i) ? "+" : " ", i + 1,
+					statement.getKind() + " " + statement.getTable(), statement));
+		}
+		return report.toString();
+	}
+
+	private static int count(Map<Limit, Integer> counts, Limit limit) {
+		Integer count = counts.get(limit);
+		return count == null ? 0 : count;
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder description = new StringBuilder(scenario).append(":");
+		for (Limit limit : limits) {
+			description.append(" ").append(limit.label()).append(" ").append(limit.describe()).append(";");
+		}
+		return description.toString();
+	}
+
+	private static final class Limit {
+
+		private final StatementKind kind;
+		private final String table;
+		private final int min;
+		private final int max;
+
+		private Limit(StatementKind kind, String table, int min, int max) {
+			if (min < 0 || max < min) {
+				throw new IllegalArgumentException("Invalid statement count for " + kind + ": " + min + ".." + max);
+			}
+			this.kind = kind;
+			this.table = table == null ? null : table.toUpperCase(Locale.ROOT);
+			this.min = min;
+			this.max = max;
+		}
+
+		private boolean matches(SqlStatement statement) {
+			return statement.getKind() == kind && (table == null || table.equals(statement.getTable()));
+		}
+
+		private boolean allows(int count) {
+			return min <= count && count <= max;
+		}
+
+		private String label() {
+			return table == null ? kind.name() : kind + " " + table;
+		}
+
+		private String describe() {
+			if (max == 0) {
+				return "none";
+			}
+			if (min == max) {
+				return "exactly " + max;
+			}
+			return min == 0 ? "at most " + max : min + " to " + max;
+		}
+	}
+
+}
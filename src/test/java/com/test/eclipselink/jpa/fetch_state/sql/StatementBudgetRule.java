@@ -0,0 +1,83 @@
+package com.test.eclipselink.jpa.fetch_state.sql;
+
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import com.test.eclipselink.jpa.fetch_state.sql.StatementCapture.Recording;
+
+/**
+ * Declares SQL statement budgets in JUnit tests.
+ *
+ * The rule records every statement of every test method, on the factory handed over by the supplier (which is only
+ * asked once the @BeforeClass methods have run). A test can then:
+ * 		-declare the budget of the whole test method with {@link #expect(StatementBudget)}, checked after the test
+ * 			passed
+ * 		-check the budget of a single block with {@link #within(StatementBudget, Supplier)}, right away
+ *
+ * A budget that is not met fails the test with the AssertionError of StatementBudget, which lists the statements
+ * executed and marks the ones over budget.
+ *
+ */
+public class StatementBudgetRule implements TestRule {
+
+	private final Supplier<EntityManagerFactory> emf;
+
+	private StatementCapture capture;
+	private Recording recording;
+	private StatementBudget expected;
+
+	public StatementBudgetRule(Supplier<EntityManagerFactory> emf) {
+		this.emf = emf;
+	}
+
+	/**
+	 * The budget of the whole test method, from its first statement on.
+	 */
+	public void expect(StatementBudget budget) {
+		this.expected = budget;
+	}
+
+	/**
+	 * Runs the block and checks its statements against the budget.
+	 */
+	public <T> T within(StatementBudget budget, Supplier<T> block) {
+		try (Recording blockRecording = capture.start()) {
+			T result = block.get();
+			budget.verify(blockRecording);
+			return result;
+		}
+	}
+
+	/**
+	 * The statements of the test method so far.
+	 */
+	public Recording getRecording() {
+		return recording;
+	}
+
+	@Override
+	public Statement apply(final Statement base, Description description) {
+		return new Statement() {
+			@Override
+			public void evaluate() throws Throwable {
+				capture = StatementCapture.install(emf.get());
+				recording = capture.start();
+				try {
+					base.evaluate();
+					if (expected != null) {
+						expected.verify(recording);
+					}
+				} finally {
+					recording.close();
+					expected = null;
+				}
+			}
+		};
+	}
+
+}
@@ -0,0 +1,228 @@
+package com.test.eclipselink.jpa.fetch_state.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.logging.AbstractSessionLog;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.logging.SessionLogEntry;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * Records the SQL statements a session executes, by decorating its SessionLog.
+ *
+ * EclipseLink logs every statement it sends to the database in the "sql" category at FINE, right before executing
+ * it. Batched writes are logged once between "begin batch" and "end batch" entries, followed by one entry per
+ * parameter row. StatementCapture turns these entries into SqlStatements, one per round trip, and hands everything
+ * on to the original SessionLog, which still decides what gets printed.
+ *
+ * While no Recording is open the capture only forwards: SQL logging is left to the configured log level, so an
+ * installed capture costs nothing when nobody is looking. While one is open, SQL entries are built whatever the log
+ * level, so recordings also work with quiet factories.
+ *
+ * The capture is installed on the server session, and client sessions copy the server session's log when they are
+ * created: install it before creating the EntityManagers that should be observed. Recordings see the statements of
+ * all threads.
+ *
+ */
+public final class StatementCapture extends AbstractSessionLog {
+
+	private static final String BEGIN_BATCH = "begin_batch_statements";
+	private static final String END_BATCH = "end_batch_statements";
+
+	private final SessionLog delegate;
+	private final List<Recording> recordings = new CopyOnWriteArrayList<>();
+	private final ThreadLocal<Batch> batches = new ThreadLocal<>();
+
+	private StatementCapture(SessionLog delegate) {
+		this.delegate = delegate;
+		this.session = delegate.getSession();
+	}
+
+	/**
+	 * Installs a capture on the server session of the factory, or returns the one already installed.
+	 */
+	public static StatementCapture install(EntityManagerFactory emf) {
+		Session session = JpaHelper.getServerSession(emf);
+		synchronized (session) {
+			if (session.getSessionLog() instanceof StatementCapture) {
+				return (StatementCapture) session.getSessionLog();
+			}
+			StatementCapture capture = new StatementCapture(session.getSessionLog());
+			session.setSessionLog(capture);
+			return capture;
+		}
+	}
+
+	/**
+	 * Starts recording statements, until the returned Recording is closed.
+	 */
+	public Recording start() {
+		Recording recording = new Recording();
+		recordings.add(recording);
+		return recording;
+	}
+
+	@Override
+	public void log(SessionLogEntry entry) {
+		boolean logged = false;
+		try {
+			if (!recordings.isEmpty() && SessionLog.SQL.equals(entry.getNameSpace())) {
+				capture(entry);
+			}
+			if (delegate.shouldLog(entry.getLevel(), entry.getNameSpace())) {
+				delegate.log(entry);
+			}
+			logged = true;
+		} finally {
+			if (!logged) {
+				//the batch being logged will not see its end entry, and the next statements of the thread are not
+				//rows of it
+				batches.remove();
+			}
+		}
+	}
+
+	private void capture(SessionLogEntry entry) {
+		String message = entry.getMessage();
+		Batch batch = batches.get();
+		if (BEGIN_BATCH.equals(message)) {
+			batches.set(new Batch());
+		} else if (END_BATCH.equals(message)) {
+			batches.remove();
+			if (batch != null && batch.sql != null) {
+				record(new SqlStatement(batch.sql, batch.rows));
+			}
+		} else if (entry.getLevel() == SessionLog.FINE) {
+			if (batch == null) {
+				record(new SqlStatement(message, 1));
+			} else if (batch.sql == null) {
+				batch.sql = message;
+			} else {
+				batch.rows++;
+			}
+		}
+	}
+
+	private void record(SqlStatement statement) {
+		for (Recording recording : recordings) {
+			recording.add(statement);
+		}
+	}
+
+	@Override
+	public boolean shouldLog(int level, String category) {
+		if (!recordings.isEmpty() && SessionLog.SQL.equals(category)) {
+			return true;
+		}
+		return delegate.shouldLog(level, category);
+	}
+
+	@Override
+	public boolean shouldLog(int level) {
+		return delegate.shouldLog(level);
+	}
+
+	@Override
+	public int getLevel() {
+		return delegate.getLevel();
+	}
+
+	@Override
+	public int getLevel(String category) {
+		return delegate.getLevel(category);
+	}
+
+	@Override
+	public void setLevel(int level) {
+		delegate.setLevel(level);
+	}
+
+	@Override
+	public void setLevel(int level, String category) {
+		delegate.setLevel(level, category);
+	}
+
+	@Override
+	public boolean shouldDisplayData() {
+		return delegate.shouldDisplayData();
+	}
+
+	@Override
+	public boolean shouldLogExceptionStackTrace() {
+		return delegate.shouldLogExceptionStackTrace();
+	}
+
+	@Override
+	public void throwing(Throwable throwable) {
+		delegate.throwing(throwable);
+	}
+
+	private static final class Batch {
+
+		private String sql;
+		private int rows;
+	}
+
+	/**
+	 * The statements executed between {@link StatementCapture#start()} and {@link #close()}.
+	 */
+	public final class Recording implements AutoCloseable {
+
+		private final List<SqlStatement> statements = Collections.synchronizedList(new ArrayList<SqlStatement>());
+
+		private Recording() {
+		}
+
+		private void add(SqlStatement statement) {
+			statements.add(statement);
+		}
+
+		/**
+		 * A copy of the statements recorded so far, in execution order.
+		 */
+		public List<SqlStatement> getStatements() {
+			synchronized (statements) {
+				return new ArrayList<>(statements);
+			}
+		}
+
+		public int count(StatementKind kind) {
+			return count(kind, null);
+		}
+
+		/**
+		 * @param table
+		 *            upper case table name; null for all tables
+		 */
+		public int count(StatementKind kind, String table) {
+			int count = 0;
+			for (SqlStatement statement : getStatements()) {
+				if (statement.getKind() == kind && (table == null || table.equals(statement.getTable()))) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		public void clear() {
+			statements.clear();
+		}
+
+		@Override
+		public void close() {
+			recordings.remove(this);
+		}
+
+		@Override
+		public String toString() {
+			return getStatements().toString();
+		}
+	}
+
+}
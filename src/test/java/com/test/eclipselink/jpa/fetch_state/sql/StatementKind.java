@@ -0,0 +1,27 @@
+package com.test.eclipselink.jpa.fetch_state.sql;
+
+import java.util.Locale;
+
+/**
+ * The kinds of SQL statement a StatementBudget is declared in; everything else (DDL, sequence queries, calls) is
+ * OTHER.
+ */
+public enum StatementKind {
+
+	SELECT, INSERT, UPDATE, DELETE, OTHER;
+
+	static StatementKind of(String sql) {
+		String start = sql.trim();
+		int end = 0;
+		while (end < start.length() && Character.isLetter(start.charAt(end))) {
+			end++;
+		}
+		String keyword = start.substring(0, end).toUpperCase(Locale.ROOT);
+		for (StatementKind kind : values()) {
+			if (kind.name().equals(keyword)) {
+				return kind;
+			}
+		}
+		return OTHER;
+	}
+}
@@ -0,0 +1,48 @@
+package com.test.eclipselink.jpa.fetch_state.unwoven;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+/**
+ * The children of UnwovenRoot.
+ *
+ */
+@Entity
+@Table(name = "UNWOVEN_CHILD")
+public class UnwovenChild {
+
+	@Id
+	private Long id;
+
+	private String data1;
+
+	@JoinColumn(name = "ROOT_ID")
+	@ManyToOne
+	private UnwovenRoot root;
+
+	public UnwovenChild() {
+	}
+
+	public UnwovenChild(Long id, String data1, UnwovenRoot root) {
+		this.id = id;
+		this.data1 = data1;
+		this.root = root;
+		root.getChildren().add(this);
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getData1() {
+		return data1;
+	}
+
+	public UnwovenRoot getRoot() {
+		return root;
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.test.eclipselink.jpa.fetch_state.unwoven;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.Table;
+
+/**
+ * An entity of the "unwoven" persistence unit, which is compiled with the test sources and therefore never woven:
+ * its LAZY to-one is loaded eagerly, and only its collections are lazy.
+ *
+ */
+@Entity
+@Table(name = "UNWOVEN_ROOT")
+public class UnwovenRoot {
+
+	@Id
+	private Long id;
+
+	private String data1;
+
+	@JoinColumn(name = "FAVOURITE_ID")
+	@OneToOne(fetch = FetchType.LAZY)
+	private UnwovenChild favourite;
+
+	@OneToMany(mappedBy = "root")
+	private List<UnwovenChild> children = new ArrayList<>();
+
+	@OneToMany(mappedBy = "root")
+	private Set<UnwovenChild> childSet = new HashSet<>();
+
+	public UnwovenRoot() {
+	}
+
+	public UnwovenRoot(Long id, String data1) {
+		this.id = id;
+		this.data1 = data1;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getData1() {
+		return data1;
+	}
+
+	public UnwovenChild getFavourite() {
+		return favourite;
+	}
+
+	public void setFavourite(UnwovenChild favourite) {
+		this.favourite = favourite;
+	}
+
+	public List<UnwovenChild> getChildren() {
+		return children;
+	}
+
+	/**
+	 * The children again, behind a getter that does not hand out its collection.
+	 */
+	public Set<UnwovenChild> getChildSet() {
+		return Collections.unmodifiableSet(childSet);
+	}
+
+}